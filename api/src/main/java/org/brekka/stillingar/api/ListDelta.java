@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.api;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.brekka.stillingar.api.annotations.ConfigurationListener;
+import org.brekka.stillingar.api.annotations.Configured;
+
+/**
+ * The elements that differ between the previous and latest values of a list, so that structures derived from the
+ * list can be updated incrementally rather than rebuilt. Intended to be used as a parameter in
+ * {@link ConfigurationListener} in place of a {@link List}. Elements are matched by the property named by
+ * {@link Configured#key()} when set, otherwise by equality in which case an element that was modified shows up as
+ * removed and added, rather than changed.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class ListDelta<T> implements Serializable {
+
+    /**
+     * Serial UID
+     */
+    private static final long serialVersionUID = -2516702253290345123L;
+
+    /**
+     * The latest list
+     */
+    private final List<T> latest;
+
+    /**
+     * The previous list, if any.
+     */
+    private final List<T> previous;
+
+    /**
+     * Elements only in the latest list
+     */
+    private final List<T> added;
+
+    /**
+     * Elements only in the previous list
+     */
+    private final List<T> removed;
+
+    /**
+     * Elements matched in both lists whose values differ
+     */
+    private final List<Replacement<T>> changed;
+
+    /**
+     * @param latest
+     *            the latest list
+     * @param previous
+     *            the previous list, if any.
+     * @param added
+     *            elements only in the latest list
+     * @param removed
+     *            elements only in the previous list
+     * @param changed
+     *            elements matched in both lists whose values differ
+     */
+    public ListDelta(List<T> latest, List<T> previous, List<T> added, List<T> removed,
+            List<Replacement<T>> changed) {
+        this.latest = latest;
+        this.previous = previous;
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    /**
+     * The latest list. Empty if the value is no longer available.
+     * 
+     * @return the latest list
+     */
+    public List<T> getLatest() {
+        return latest;
+    }
+
+    /**
+     * The previous list, null on the first update.
+     * 
+     * @return the previous list
+     */
+    public List<T> getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return the elements only in the latest list, in the order of that list.
+     */
+    public List<T> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the elements only in the previous list, in the order of that list.
+     */
+    public List<T> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the elements matched in both lists whose values differ, in the order of the latest list.
+     */
+    public List<Replacement<T>> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return true if no element was added, removed or changed.
+     */
+    public boolean isEmpty() {
+        return added.isEmpty()
+                && removed.isEmpty()
+                && changed.isEmpty();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("%s[added: %d, removed: %d, changed: %d]", getClass().getSimpleName(),
+                added.size(), removed.size(), changed.size());
+    }
+}
@@ -23,6 +23,8 @@ import java.lang.annotation.Target;
 import java.lang.reflect.Field;
 import java.util.List;
 
+import org.brekka.stillingar.api.ListDelta;
+
 /**
  * <p>
  * Multi-purpose annotation used by {@link ConfigurationBeanPostProcessor} to apply configuration based post processing
@@ -39,8 +41,9 @@ import java.util.List;
  * <tr>
  * <td>Type</td>
  * <td>When applied at the class level, it identifies the given type as requiring configuration. This is an optimisation
- * that allows the configuration bean post processor to completely ignore beans that do not require configuration. In
- * this context the value does nothing.</td>
+ * that allows the configuration bean post processor to completely ignore beans that do not require configuration. The
+ * optional value is an expression selecting the node that all of the other expressions on the bean (fields, setter
+ * methods and listener parameters) will be evaluated relative to.</td>
  * </tr>
  * <tr>
  * <td>Field</td>
@@ -72,7 +75,8 @@ public @interface Configured {
 
     /**
      * When used on a method, field or parameter, this value allows an optional expression to be defined which will be
-     * used to resolve the correct value to set on the target. When used on a type, this value does nothing
+     * used to resolve the correct value to set on the target. When used on a type, this value identifies the scope
+     * node that the expressions on the rest of the bean are relative to.
      * 
      * @return the expression to use.
      */
@@ -91,4 +95,16 @@ public @interface Configured {
      * @return whether this is required or not
      */
     boolean required() default true;
+
+    /**
+     * When used on a {@link ConfigurationListener} method parameter of type {@link ListDelta}, the name of the property
+     * of the list elements that identifies each element across updates, so that an element whose other properties
+     * differ is reported as changed. Elements sharing a key are matched in order. By default, elements are matched by
+     * equality. Either way the element type must implement value equality, otherwise every element will be reported
+     * as changed (or as removed and added again) on each update. Generated JAXB and XMLBeans types only compare by
+     * identity.
+     * 
+     * @return the name of the identifying property
+     */
+    String key() default "";
 }
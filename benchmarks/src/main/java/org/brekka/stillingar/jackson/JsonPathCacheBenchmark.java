@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Compares the ways {@link JsonPathCache} can resolve the same value: a JSON Pointer, a simple json-path navigated step
+ * by step, and the same json-path evaluated by the json-path engine. A filter expression, which always goes through
+ * json-path, is included for reference.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonPathCacheBenchmark {
+
+    /**
+     * The keyword as a JSON Pointer.
+     */
+    private static final String POINTER = "/services/rules/fraud/keyword/1";
+
+    /**
+     * The keyword as a simple json-path.
+     */
+    private static final String SIMPLE_PATH = "$.services.rules.fraud.keyword[1]";
+
+    /**
+     * Selects a flag by filter.
+     */
+    private static final String FILTER_PATH = "$.featureFlag[?(@.key == 'TURBO')].enabled";
+
+    /**
+     * The configuration tree.
+     */
+    private JsonNode json;
+
+    /**
+     * The cache under test.
+     */
+    private JsonPathCache cache;
+
+    /**
+     * {@link #SIMPLE_PATH} compiled by json-path, bypassing the step navigation.
+     */
+    private JsonPath simplePath;
+
+    /**
+     * Json-path configuration using the tree based provider.
+     */
+    private Configuration configuration;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        InputStream is = getClass().getResourceAsStream("BenchmarkConfiguration.json");
+        try {
+            json = objectMapper.readTree(is);
+        } finally {
+            is.close();
+        }
+        cache = new JsonPathCache(objectMapper);
+        simplePath = JsonPath.compile(SIMPLE_PATH);
+        configuration = Configuration.builder()
+                .jsonProvider(new JsonNodeJsonProvider(objectMapper))
+                .build();
+    }
+
+    @Benchmark
+    public Object pointer() {
+        return cache.read(json, POINTER);
+    }
+
+    @Benchmark
+    public Object simplePath() {
+        return cache.read(json, SIMPLE_PATH);
+    }
+
+    @Benchmark
+    public Object simplePathByJsonPath() {
+        return simplePath.read(json, configuration);
+    }
+
+    @Benchmark
+    public Object filterPath() {
+        return cache.read(json, FILTER_PATH);
+    }
+}
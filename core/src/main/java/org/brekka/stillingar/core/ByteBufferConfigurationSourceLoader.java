@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+
+/**
+ * A {@link ConfigurationSourceLoader} that can parse the content of a resource directly from a {@link ByteBuffer},
+ * such as a memory-mapped region of a file, without it first being copied through an {@link java.io.InputStream}.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface ByteBufferConfigurationSourceLoader extends ConfigurationSourceLoader {
+
+    /**
+     * Create a configuration source from the remaining content of the specified buffer. The position of the buffer
+     * will not be changed.
+     *
+     * @param buffer
+     *            the buffer to read from, which must not be null.
+     * @param encoding
+     *            the encoding of the content, if known (can be null).
+     * @return the configuration source based on <code>buffer</code> - never null.
+     * @throws ConfigurationException
+     *             if the parser is unable to extract the content it needs from the buffer.
+     * @throws IOException
+     *             if an IO problem occurs while reading from the buffer (for example a mapped file is truncated).
+     */
+    ConfigurationSource parse(ByteBuffer buffer, Charset encoding) throws ConfigurationException, IOException;
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.ResolvedValues.Kind;
+import org.brekka.stillingar.core.diff.DiffableConfigurationSource;
+import org.brekka.stillingar.core.diff.SnapshotDiff;
+import org.brekka.stillingar.core.diff.SnapshotDiffProducer;
+
+/**
+ * Serves lookups from the {@link ResolvedValues} recorded against an earlier load of the same content, avoiding the
+ * need to parse it. Lookups that were not recorded are directed to the full source, which is loaded on first use via
+ * the supplied callable and itself recorded, so the values can be written out again with the additions. Where no
+ * callable is available, such lookups fail with a {@link ValueConfigurationException} identifying the expression.
+ *
+ * The recorded values say nothing about the paths of the content, so a diff can only be worked out once the full
+ * source has been loaded, other than against a source based on the very same recorded values, which is unchanged.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class CachedConfigurationSource implements ScopeableConfigurationSource, DiffableConfigurationSource {
+
+    /**
+     * The recorded values
+     */
+    private final ResolvedValues values;
+
+    /**
+     * The scopes this source is within, empty for the root.
+     */
+    private final String scope;
+
+    /**
+     * The source this was scoped from, null for the root.
+     */
+    private final CachedConfigurationSource parent;
+
+    /**
+     * The expression used to scope this source from its parent, null for the root.
+     */
+    private final String scopeExpression;
+
+    /**
+     * Loads the full source, only used by the root (can be null).
+     */
+    private final Callable<ConfigurationSource> fullSourceLoader;
+
+    /**
+     * The full source (recorded) corresponding to this source, once loaded.
+     */
+    private volatile ConfigurationSource fullSource;
+
+    /**
+     * @param values
+     *            the values recorded against an earlier load of the content.
+     * @param fullSourceLoader
+     *            loads the full source for lookups that were not recorded (can be null).
+     */
+    public CachedConfigurationSource(ResolvedValues values, Callable<ConfigurationSource> fullSourceLoader) {
+        if (values == null) {
+            throw new IllegalArgumentException("null passed for values");
+        }
+        this.values = values;
+        this.scope = "";
+        this.parent = null;
+        this.scopeExpression = null;
+        this.fullSourceLoader = fullSourceLoader;
+    }
+
+    private CachedConfigurationSource(CachedConfigurationSource parent, String scopeExpression) {
+        this.values = parent.values;
+        this.scope = ResolvedValues.scope(parent.scope, scopeExpression);
+        this.parent = parent;
+        this.scopeExpression = scopeExpression;
+        this.fullSourceLoader = null;
+    }
+
+    /**
+     * @return the values this source is based on, including any recorded since from the full source.
+     */
+    public ResolvedValues getValues() {
+        return values;
+    }
+
+    /**
+     * Determine whether the full source has been loaded, which indicates that a lookup was made that had not been
+     * recorded.
+     *
+     * @return true if the full source has been loaded.
+     */
+    public boolean isFullSourceLoaded() {
+        if (parent != null) {
+            return parent.isFullSourceLoaded();
+        }
+        return fullSource != null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.ScopeableConfigurationSource#scope(java.lang.String)
+     */
+    @Override
+    public ConfigurationSource scope(String expression) {
+        String key = ResolvedValues.key(Kind.SCOPE, scope, expression, null);
+        if (!values.contains(key)) {
+            ConfigurationSource source = fullSource(null, expression);
+            if (!(source instanceof ScopeableConfigurationSource)
+                    || ((ScopeableConfigurationSource) source).scope(expression) == null) {
+                return null;
+            }
+        } else if (!Boolean.TRUE.equals(values.get(key))) {
+            return null;
+        }
+        return new CachedConfigurationSource(this, expression);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.String)
+     */
+    @Override
+    public boolean isAvailable(String expression) {
+        String key = ResolvedValues.key(Kind.AVAILABLE, scope, expression, null);
+        if (values.contains(key)) {
+            return Boolean.TRUE.equals(values.get(key));
+        }
+        return fullSource(null, expression).isAvailable(expression);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.Class)
+     */
+    @Override
+    public boolean isAvailable(Class<?> valueType) {
+        String key = ResolvedValues.key(Kind.AVAILABLE, scope, null, valueType);
+        if (values.contains(key)) {
+            return Boolean.TRUE.equals(values.get(key));
+        }
+        return fullSource(valueType, null).isAvailable(valueType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieve(java.lang.String, java.lang.Class)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T retrieve(String expression, Class<T> valueType) {
+        String key = ResolvedValues.key(Kind.VALUE, scope, expression, valueType);
+        if (values.contains(key)) {
+            return (T) values.get(key);
+        }
+        return fullSource(valueType, expression).retrieve(expression, valueType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieve(java.lang.Class)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T retrieve(Class<T> valueType) {
+        String key = ResolvedValues.key(Kind.VALUE, scope, null, valueType);
+        if (values.contains(key)) {
+            return (T) values.get(key);
+        }
+        return fullSource(valueType, null).retrieve(valueType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieveList(java.lang.String, java.lang.Class)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
+        String key = ResolvedValues.key(Kind.LIST, scope, expression, valueType);
+        if (values.contains(key)) {
+            return (List<T>) values.get(key);
+        }
+        return fullSource(valueType, expression).retrieveList(expression, valueType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieveList(java.lang.Class)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> List<T> retrieveList(Class<T> valueType) {
+        String key = ResolvedValues.key(Kind.LIST, scope, null, valueType);
+        if (values.contains(key)) {
+            return (List<T>) values.get(key);
+        }
+        return fullSource(valueType, null).retrieveList(valueType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.diff.DiffableConfigurationSource#diff(org.brekka.stillingar.api.ConfigurationSource,
+     * org.brekka.stillingar.core.diff.SnapshotDiff.Builder)
+     */
+    @Override
+    public boolean diff(ConfigurationSource previous, SnapshotDiff.Builder diff) {
+        if (previous instanceof CachedConfigurationSource
+                && ((CachedConfigurationSource) previous).values == values
+                && ((CachedConfigurationSource) previous).scope.equals(scope)) {
+            return true;
+        }
+        return SnapshotDiffProducer.diff(RecordingConfigurationSource.underlying(previous),
+                RecordingConfigurationSource.underlying(this), diff);
+    }
+
+    /**
+     * @return the full source corresponding to this source if it has already been loaded, otherwise null.
+     */
+    ConfigurationSource getLoadedSource() {
+        return fullSource;
+    }
+
+    /**
+     * Retrieve the full source corresponding to this source, loading the content if this is the first lookup that was
+     * not recorded.
+     *
+     * @param valueType
+     *            the type being resolved, for error reporting (can be null).
+     * @param expression
+     *            the expression being resolved, for error reporting (can be null).
+     * @return the full source
+     */
+    private ConfigurationSource fullSource(Class<?> valueType, String expression) {
+        ConfigurationSource source = fullSource;
+        if (source != null) {
+            return source;
+        }
+        synchronized (this) {
+            source = fullSource;
+            if (source == null) {
+                if (parent != null) {
+                    ConfigurationSource parentSource = parent.fullSource(valueType, expression);
+                    if (parentSource instanceof ScopeableConfigurationSource) {
+                        source = ((ScopeableConfigurationSource) parentSource).scope(scopeExpression);
+                    }
+                    if (source == null) {
+                        throw new ValueConfigurationException(String.format(
+                                "The scope '%s' no longer selects anything in the full configuration snapshot",
+                                scopeExpression), valueType, expression);
+                    }
+                } else {
+                    source = new RecordingConfigurationSource(loadFullSource(valueType, expression), values);
+                }
+                fullSource = source;
+            }
+        }
+        return source;
+    }
+
+    /**
+     * @param valueType
+     *            the type being resolved, for error reporting (can be null).
+     * @param expression
+     *            the expression being resolved, for error reporting (can be null).
+     * @return the newly loaded full source.
+     */
+    private ConfigurationSource loadFullSource(Class<?> valueType, String expression) {
+        if (fullSourceLoader == null) {
+            throw new ValueConfigurationException(
+                    "The value was not recorded in the cached configuration snapshot", valueType, expression);
+        }
+        try {
+            return fullSourceLoader.call();
+        } catch (Exception e) {
+            throw new ValueConfigurationException(
+                    "Failed to load the full configuration snapshot to resolve a value that was not cached",
+                    valueType, expression, e);
+        }
+    }
+}
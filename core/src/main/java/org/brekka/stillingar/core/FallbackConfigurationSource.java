@@ -16,48 +16,24 @@
 
 package org.brekka.stillingar.core;
 
-import java.util.List;
-
-import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
 
 /**
  * A base configuration source which supports a default source as a fallback if the expression/type cannot be resolved
- * from the primary source.
+ * from the primary source. A two layer {@link LayeredConfigurationSource}, where the default source may itself be made
+ * up of several layers.
+ * 
+ * Scopes requested via {@link #scope(String)} are resolved against both sources and cached for the lifetime of this
+ * instance, which will typically be a single snapshot.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
-public class FallbackConfigurationSource implements ConfigurationSource {
+public class FallbackConfigurationSource extends LayeredConfigurationSource {
 
     /**
      * Should be returned by {@link #getSecondarySource()} if there is no default available.
      */
-    public static final ConfigurationSource NONE = new ConfigurationSource() {
-        @Override
-        public <T> List<T> retrieveList(Class<T> valueType) {
-            return null;
-        }
-        @Override
-        public <T> List<T> retrieveList(String expression, Class<T> valueType) {
-            return null;
-        }
-        @Override
-        public <T> T retrieve(Class<T> valueType) {
-            return null;
-        }
-        @Override
-        public <T> T retrieve(String expression, Class<T> valueType) {
-            return null;
-        }
-        @Override
-        public boolean isAvailable(Class<?> valueType) {
-            return false;
-        }
-        @Override
-        public boolean isAvailable(String expression) {
-            return false;
-        }
-    };
+    public static final ConfigurationSource NONE = LayeredConfigurationSource.NONE;
 
     /**
      * The main source of 'fresh' configuration
@@ -74,9 +50,9 @@ public class FallbackConfigurationSource implements ConfigurationSource {
      *            The main source of 'fresh' configuration
      * @param secondarySource
      *            The source secondary configuration to fall back to if there is none in the primary.
-     * @throws IllegalArgumentException if both configuration sources are null.           
      */
     public FallbackConfigurationSource(ConfigurationSource primarySource, ConfigurationSource secondarySource) {
+        super(primarySource, secondarySource);
         this.primarySource = (primarySource != null ? primarySource : NONE);
         this.secondarySource = (secondarySource != null ? secondarySource : NONE);
     }
@@ -98,118 +74,4 @@ public class FallbackConfigurationSource implements ConfigurationSource {
     public final ConfigurationSource getSecondarySource() {
         return secondarySource;
     }
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.brekka.stillingar.core.ConfigurationSource#isAvailable(java.lang.Class)
-     */
-    @Override
-    public boolean isAvailable(Class<?> valueType) {
-        if (valueType == null) {
-            throw new IllegalArgumentException("A value type must be specified");
-        }
-        return primarySource.isAvailable(valueType) || secondarySource.isAvailable(valueType);
-    }
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.brekka.stillingar.core.ConfigurationSource#isAvailable(java.lang.String)
-     */
-    @Override
-    public boolean isAvailable(String expression) {
-        if (expression == null) {
-            throw new IllegalArgumentException("An expression must be specified");
-        }
-        return primarySource.isAvailable(expression) || secondarySource.isAvailable(expression);
-    }
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.brekka.stillingar.core.ConfigurationSource#retrieve(java.lang.Class)
-     */
-    @Override
-    public <T> T retrieve(Class<T> valueType) {
-        if (valueType == null) {
-            throw new IllegalArgumentException("A value type must be specified");
-        }
-        if (primarySource.isAvailable(valueType)) {
-            return primarySource.retrieve(valueType);
-        }
-        if (secondarySource.isAvailable(valueType)) {
-            return secondarySource.retrieve(valueType);
-        }
-        throw new ConfigurationException(String.format(
-                "No value found of type '%s' in any of the available configuration sources", valueType.getName()));
-    }
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.brekka.stillingar.core.ConfigurationSource#retrieve(java.lang.String, java.lang.Class)
-     */
-    @Override
-    public <T> T retrieve(String expression, Class<T> valueType) {
-        if (expression == null) {
-            throw new IllegalArgumentException("An expression must be specified");
-        }
-        if (valueType == null) {
-            throw new IllegalArgumentException("A value type must be specified");
-        }
-        if (primarySource.isAvailable(expression)) {
-            return primarySource.retrieve(expression, valueType);
-        }
-        if (secondarySource.isAvailable(expression)) {
-            return secondarySource.retrieve(expression, valueType);
-        }
-        throw new ConfigurationException(String.format("Expression '%s' did not evaluate to a value "
-                + "in any of the available configuration sources. Expected return type '%s'.", 
-                expression, valueType.getName()));
-    }
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.brekka.stillingar.core.ConfigurationSource#retrieveList(java.lang.Class)
-     */
-    @Override
-    public <T> List<T> retrieveList(Class<T> valueType) {
-        if (valueType == null) {
-            throw new IllegalArgumentException("A value type must be specified");
-        }
-        if (primarySource.isAvailable(valueType)) {
-            return primarySource.retrieveList(valueType);
-        }
-        if (secondarySource.isAvailable(valueType)) {
-            return secondarySource.retrieveList(valueType);
-        }
-        throw new ConfigurationException(String.format(
-                "No list value found of type '%s' in any of the available configuration sources", valueType.getName()));
-    }
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.brekka.stillingar.core.ConfigurationSource#retrieveList(java.lang.String, java.lang.Class)
-     */
-    @Override
-    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
-        if (expression == null) {
-            throw new IllegalArgumentException("An expression must be specified");
-        }
-        if (valueType == null) {
-            throw new IllegalArgumentException("A value type must be specified");
-        }
-        if (primarySource.isAvailable(expression)) {
-            return primarySource.retrieveList(expression, valueType);
-        }
-        if (secondarySource.isAvailable(expression)) {
-            return secondarySource.retrieveList(expression, valueType);
-        }
-        throw new ConfigurationException(String.format(
-                "Expression '%s' did not evaluate to any values within any of the available " +
-                "configuration sources. Expected to return list of type '%s'.", expression, valueType.getName()));
-    }
 }
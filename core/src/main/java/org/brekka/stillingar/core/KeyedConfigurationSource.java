@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import java.util.Set;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+
+/**
+ * A {@link ConfigurationSource} whose values are held against plain keys that can be listed up front, such as
+ * properties, where {@link #isAvailable(String)} is a single probe. {@link LayeredConfigurationSource} does not
+ * remember which of these layers owns a key, as asking again is just as cheap.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface KeyedConfigurationSource extends ConfigurationSource {
+
+    /**
+     * Retrieve every key for which {@link #isAvailable(String)} returns true, relative to the scope of this source.
+     *
+     * @return the keys
+     */
+    Set<String> getKeys();
+}
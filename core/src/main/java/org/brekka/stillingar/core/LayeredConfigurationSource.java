@@ -0,0 +1,401 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.diff.DiffableConfigurationSource;
+import org.brekka.stillingar.core.diff.SnapshotDiff;
+import org.brekka.stillingar.core.diff.SnapshotDiffProducer;
+
+/**
+ * A configuration source made up of any number of layers, such as runtime overrides, host, environment, site and
+ * defaults, where a value is taken from the first layer (in the order given) that has it.
+ *
+ * Rather than asking each layer in turn on every lookup, the layer that owns an expression is worked out on first use
+ * and remembered for the lifetime of this instance, which will typically be a single snapshot.
+ * {@link #prepare(Collection)} does the same up front for expressions known to be needed. Nothing is done on
+ * construction, as a new instance is created for each snapshot. Checking a {@link KeyedConfigurationSource} layer is
+ * already a single probe, so expressions owned by the leading keyed layers are not remembered, and the cost of a
+ * snapshot does not grow with the number of keys it holds. Nested layered sources are flattened into their layers.
+ *
+ * Lookups by type alone are not owned by a layer, so they still go through the layers in turn.
+ *
+ * A diff against another layered source with the same number of layers combines the diffs of each pair of layers.
+ * A path that differs in one layer is reported even where a layer with higher precedence masks it.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class LayeredConfigurationSource implements ScopeableConfigurationSource, DiffableConfigurationSource {
+
+    /**
+     * Source with no values, used where a layer is missing or cannot be scoped.
+     */
+    public static final ConfigurationSource NONE = new ConfigurationSource() {
+        @Override
+        public <T> List<T> retrieveList(Class<T> valueType) {
+            return null;
+        }
+        @Override
+        public <T> List<T> retrieveList(String expression, Class<T> valueType) {
+            return null;
+        }
+        @Override
+        public <T> T retrieve(Class<T> valueType) {
+            return null;
+        }
+        @Override
+        public <T> T retrieve(String expression, Class<T> valueType) {
+            return null;
+        }
+        @Override
+        public boolean isAvailable(Class<?> valueType) {
+            return false;
+        }
+        @Override
+        public boolean isAvailable(String expression) {
+            return false;
+        }
+    };
+
+    /**
+     * Owner of expressions that no layer has.
+     */
+    private static final Integer NO_OWNER = Integer.valueOf(-1);
+
+    /**
+     * The layers, in order of precedence.
+     */
+    private final ConfigurationSource[] layers;
+
+    /**
+     * The index of the first layer that is not a {@link KeyedConfigurationSource}, or the number of layers if they all
+     * are. Expressions owned by a layer before this are not remembered.
+     */
+    private final int firstUnkeyed;
+
+    /**
+     * The index of the layer that owns each expression resolved so far.
+     */
+    private final ConcurrentMap<String, Integer> owners = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Scoped sources that have already been resolved, keyed on the scope expression.
+     */
+    private final ConcurrentMap<String, LayeredConfigurationSource> scopes =
+            new ConcurrentHashMap<String, LayeredConfigurationSource>();
+
+    /**
+     * @param layers
+     *            the layers in order of precedence, nulls are ignored.
+     */
+    public LayeredConfigurationSource(ConfigurationSource... layers) {
+        this(Arrays.asList(layers));
+    }
+
+    /**
+     * @param layers
+     *            the layers in order of precedence, nulls are ignored.
+     */
+    public LayeredConfigurationSource(List<? extends ConfigurationSource> layers) {
+        if (layers == null) {
+            throw new IllegalArgumentException("null passed for layers");
+        }
+        List<ConfigurationSource> flattened = new ArrayList<ConfigurationSource>();
+        flatten(layers, flattened);
+        this.layers = flattened.toArray(new ConfigurationSource[flattened.size()]);
+        int firstUnkeyed = 0;
+        while (firstUnkeyed < this.layers.length
+                && this.layers[firstUnkeyed] instanceof KeyedConfigurationSource) {
+            firstUnkeyed++;
+        }
+        this.firstUnkeyed = firstUnkeyed;
+    }
+
+    /**
+     * Work out the owners of the expressions up front.
+     *
+     * @param expressions
+     *            the expressions that will be needed.
+     */
+    public void prepare(Collection<String> expressions) {
+        for (String expression : expressions) {
+            ownerOf(expression);
+        }
+    }
+
+    /**
+     * @return the layers, in order of precedence.
+     */
+    public List<ConfigurationSource> getLayers() {
+        return Collections.unmodifiableList(Arrays.asList(layers));
+    }
+
+    /**
+     * Identify the layer that owns the expression.
+     *
+     * @param expression
+     *            the expression
+     * @return the layer or null if no layer has the expression.
+     */
+    public ConfigurationSource getOwner(String expression) {
+        int owner = ownerOf(expression);
+        return (owner < 0 ? null : layers[owner]);
+    }
+
+    /**
+     * Compare each layer with the corresponding layer of the previous source. A path added in one layer and removed
+     * from another is reported as changed.
+     *
+     * @see org.brekka.stillingar.core.diff.DiffableConfigurationSource#diff(org.brekka.stillingar.api.ConfigurationSource,
+     *      org.brekka.stillingar.core.diff.SnapshotDiff.Builder)
+     */
+    @Override
+    public boolean diff(ConfigurationSource previous, SnapshotDiff.Builder diff) {
+        if (!(previous instanceof LayeredConfigurationSource)) {
+            return false;
+        }
+        ConfigurationSource[] previousLayers = ((LayeredConfigurationSource) previous).layers;
+        if (previousLayers.length != layers.length) {
+            return false;
+        }
+        Set<String> added = new LinkedHashSet<String>();
+        Set<String> removed = new LinkedHashSet<String>();
+        Set<String> changed = new LinkedHashSet<String>();
+        for (int i = 0; i < layers.length; i++) {
+            if (previousLayers[i] == layers[i]) {
+                continue;
+            }
+            SnapshotDiff.Builder layerDiff = new SnapshotDiff.Builder();
+            if (!SnapshotDiffProducer.diff(previousLayers[i], layers[i], layerDiff)) {
+                return false;
+            }
+            SnapshotDiff layer = layerDiff.build();
+            added.addAll(layer.getAdded());
+            removed.addAll(layer.getRemoved());
+            changed.addAll(layer.getChanged());
+        }
+        for (String path : added) {
+            if (removed.contains(path)) {
+                changed.add(path);
+            } else if (!changed.contains(path)) {
+                diff.added(path);
+            }
+        }
+        for (String path : removed) {
+            if (!changed.contains(path)) {
+                diff.removed(path);
+            }
+        }
+        for (String path : changed) {
+            diff.changed(path);
+        }
+        return true;
+    }
+
+    /**
+     * Scope every layer using the specified expression. Layers that do not support scoping, or where the expression
+     * does not select anything, are left out.
+     *
+     * @see org.brekka.stillingar.core.ScopeableConfigurationSource#scope(java.lang.String)
+     */
+    @Override
+    public ConfigurationSource scope(String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("An expression must be specified");
+        }
+        LayeredConfigurationSource scoped = scopes.get(expression);
+        if (scoped == null) {
+            List<ConfigurationSource> scopedLayers = new ArrayList<ConfigurationSource>(layers.length);
+            for (ConfigurationSource layer : layers) {
+                if (layer instanceof ScopeableConfigurationSource) {
+                    scopedLayers.add(((ScopeableConfigurationSource) layer).scope(expression));
+                }
+            }
+            scoped = new LayeredConfigurationSource(scopedLayers);
+            LayeredConfigurationSource existing = scopes.putIfAbsent(expression, scoped);
+            if (existing != null) {
+                scoped = existing;
+            }
+        }
+        return scoped;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.ConfigurationSource#isAvailable(java.lang.Class)
+     */
+    @Override
+    public boolean isAvailable(Class<?> valueType) {
+        if (valueType == null) {
+            throw new IllegalArgumentException("A value type must be specified");
+        }
+        return layerOf(valueType) != null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.ConfigurationSource#isAvailable(java.lang.String)
+     */
+    @Override
+    public boolean isAvailable(String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("An expression must be specified");
+        }
+        return ownerOf(expression) >= 0;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.ConfigurationSource#retrieve(java.lang.Class)
+     */
+    @Override
+    public <T> T retrieve(Class<T> valueType) {
+        if (valueType == null) {
+            throw new IllegalArgumentException("A value type must be specified");
+        }
+        ConfigurationSource layer = layerOf(valueType);
+        if (layer != null) {
+            return layer.retrieve(valueType);
+        }
+        throw new ConfigurationException(String.format(
+                "No value found of type '%s' in any of the available configuration sources", valueType.getName()));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.ConfigurationSource#retrieve(java.lang.String, java.lang.Class)
+     */
+    @Override
+    public <T> T retrieve(String expression, Class<T> valueType) {
+        if (expression == null) {
+            throw new IllegalArgumentException("An expression must be specified");
+        }
+        if (valueType == null) {
+            throw new IllegalArgumentException("A value type must be specified");
+        }
+        int owner = ownerOf(expression);
+        if (owner >= 0) {
+            return layers[owner].retrieve(expression, valueType);
+        }
+        throw new ConfigurationException(String.format("Expression '%s' did not evaluate to a value "
+                + "in any of the available configuration sources. Expected return type '%s'.",
+                expression, valueType.getName()));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.ConfigurationSource#retrieveList(java.lang.Class)
+     */
+    @Override
+    public <T> List<T> retrieveList(Class<T> valueType) {
+        if (valueType == null) {
+            throw new IllegalArgumentException("A value type must be specified");
+        }
+        ConfigurationSource layer = layerOf(valueType);
+        if (layer != null) {
+            return layer.retrieveList(valueType);
+        }
+        throw new ConfigurationException(String.format(
+                "No list value found of type '%s' in any of the available configuration sources", valueType.getName()));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.ConfigurationSource#retrieveList(java.lang.String, java.lang.Class)
+     */
+    @Override
+    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
+        if (expression == null) {
+            throw new IllegalArgumentException("An expression must be specified");
+        }
+        if (valueType == null) {
+            throw new IllegalArgumentException("A value type must be specified");
+        }
+        int owner = ownerOf(expression);
+        if (owner >= 0) {
+            return layers[owner].retrieveList(expression, valueType);
+        }
+        throw new ConfigurationException(String.format(
+                "Expression '%s' did not evaluate to any values within any of the available " +
+                "configuration sources. Expected to return list of type '%s'.", expression, valueType.getName()));
+    }
+
+    /**
+     * @return the index of the layer owning the expression, or -1 if there is none.
+     */
+    private int ownerOf(String expression) {
+        Integer owner = owners.get(expression);
+        if (owner != null) {
+            return owner.intValue();
+        }
+        for (int i = 0; i < layers.length; i++) {
+            if (layers[i].isAvailable(expression)) {
+                if (i >= firstUnkeyed) {
+                    owners.put(expression, Integer.valueOf(i));
+                }
+                return i;
+            }
+        }
+        if (firstUnkeyed < layers.length) {
+            owners.put(expression, NO_OWNER);
+        }
+        return NO_OWNER.intValue();
+    }
+
+    /**
+     * @return the first layer with a value of the type, or null if there is none.
+     */
+    private ConfigurationSource layerOf(Class<?> valueType) {
+        for (ConfigurationSource layer : layers) {
+            if (layer.isAvailable(valueType)) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    private static void flatten(List<? extends ConfigurationSource> layers, List<ConfigurationSource> flattened) {
+        for (ConfigurationSource layer : layers) {
+            if (layer == null
+                    || layer == NONE) {
+                continue;
+            }
+            if (layer instanceof LayeredConfigurationSource) {
+                flatten(Arrays.asList(((LayeredConfigurationSource) layer).layers), flattened);
+            } else {
+                flattened.add(layer);
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import static java.lang.String.format;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ListDelta;
+import org.brekka.stillingar.api.Replacement;
+
+/**
+ * Adapts a listener for {@link ListDelta}s for use with a {@link ValueListDefinition}, working out which elements
+ * were added, removed or changed each time the list is updated. Elements are matched by the value of a key property
+ * when one is given (or {@link #keyOf(Object)} is overridden), in which case matched elements that are not equal are
+ * reported as changed, and elements sharing a key are matched in the order they appear. Otherwise elements are
+ * matched by equality, with duplicates matched one for one. Either way the cost is linear in the length of the lists.
+ * 
+ * Both rely on the elements implementing value equality ({@link Object#equals(Object)} and
+ * {@link Object#hashCode()}). Types that only compare by identity, such as those generated by JAXB or XMLBeans, are
+ * freshly created on each update so will be reported as changed every time when keyed, or as removed and added again
+ * otherwise. For keyed elements, override {@link #isChanged(Object, Object)} to compare such types by value (for
+ * example with <code>XmlObject.valueEquals</code>).
+ * 
+ * The list last delivered is kept, as the previous value passed in by the configuration service is otherwise only
+ * weakly held.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ * 
+ * @param <T> the type of the list elements
+ */
+public class ListDeltaChangeListener<T> implements ValueChangeListener<List<T>>, Expirable {
+
+    /**
+     * The listener to deliver each delta to
+     */
+    private final ValueChangeListener<ListDelta<T>> listener;
+
+    /**
+     * Name of the property identifying each element (can be null).
+     */
+    private final String keyProperty;
+
+    /**
+     * Are elements matched by key, rather than by equality.
+     */
+    private final boolean keyed;
+
+    /**
+     * Read methods of the key property, by element type.
+     */
+    private final Map<Class<?>, Method> keyMethods = new HashMap<Class<?>, Method>();
+
+    /**
+     * The list last delivered, kept so that the weakly held old value passed in on the next change remains available.
+     */
+    private List<T> delivered;
+
+    /**
+     * @param listener
+     *            the listener to deliver each delta to. Its old value will always be null.
+     * @param keyProperty
+     *            name of the property identifying each element, null to match elements by equality.
+     */
+    public ListDeltaChangeListener(ValueChangeListener<ListDelta<T>> listener, String keyProperty) {
+        if (listener == null) {
+            throw new IllegalArgumentException("null passed for listener");
+        }
+        this.listener = listener;
+        this.keyProperty = keyProperty;
+        this.keyed = (keyProperty != null);
+    }
+
+    /**
+     * For subclasses that identify elements by overriding {@link #keyOf(Object)}.
+     * 
+     * @param listener
+     *            the listener to deliver each delta to. Its old value will always be null.
+     */
+    protected ListDeltaChangeListener(ValueChangeListener<ListDelta<T>> listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("null passed for listener");
+        }
+        this.listener = listener;
+        this.keyProperty = null;
+        this.keyed = true;
+    }
+
+    /**
+     * Work out the delta between the lists and deliver it. A null new value (no longer available) is treated as
+     * an empty list.
+     */
+    @Override
+    public synchronized void onChange(List<T> newValue, List<T> oldValue) {
+        List<T> latest = (newValue == null ? Collections.<T>emptyList() : newValue);
+        ListDelta<T> delta = (keyed ? byKey(latest, oldValue) : byEquality(latest, oldValue));
+        listener.onChange(delta, null);
+        this.delivered = newValue;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.Expirable#isExpired()
+     */
+    @Override
+    public boolean isExpired() {
+        return listener instanceof Expirable
+                && ((Expirable) listener).isExpired();
+    }
+
+    /**
+     * Identify the element. By default, the value of the key property.
+     * 
+     * @param element
+     *            the element
+     * @return the key that identifies the element across updates.
+     */
+    protected Object keyOf(T element) {
+        if (element == null) {
+            return null;
+        }
+        Method method = keyMethods.get(element.getClass());
+        if (method == null) {
+            method = keyMethod(element.getClass());
+            keyMethods.put(element.getClass(), method);
+        }
+        try {
+            return method.invoke(element);
+        } catch (IllegalAccessException e) {
+            throw new ConfigurationException(format("Unable to read key property '%s' of '%s'",
+                    keyProperty, element.getClass().getName()), e);
+        } catch (InvocationTargetException e) {
+            throw new ConfigurationException(format("Unable to read key property '%s' of '%s'",
+                    keyProperty, element.getClass().getName()), e.getCause());
+        }
+    }
+
+    /**
+     * Determine whether an element matched by key has changed since the previous update. By default, whether the two
+     * are not equal, which requires the element type to implement value equality.
+     * 
+     * @param previous
+     *            the element from the previous list (can be null)
+     * @param latest
+     *            the element from the latest list with the same key (can be null)
+     * @return true if the element should be reported as changed.
+     */
+    protected boolean isChanged(T previous, T latest) {
+        return (previous == null ? latest != null : !previous.equals(latest));
+    }
+
+    private ListDelta<T> byKey(List<T> latest, List<T> previous) {
+        // Positions in the previous list of the elements not yet matched, by key. Keys can repeat, in which case
+        // elements sharing a key are matched in order.
+        List<T> prior = (previous != null ? new ArrayList<T>(previous) : Collections.<T>emptyList());
+        Map<Object, LinkedList<Integer>> unmatched = new HashMap<Object, LinkedList<Integer>>();
+        boolean[] matched = new boolean[prior.size()];
+        for (int i = 0; i < prior.size(); i++) {
+            Object key = keyOf(prior.get(i));
+            LinkedList<Integer> positions = unmatched.get(key);
+            if (positions == null) {
+                positions = new LinkedList<Integer>();
+                unmatched.put(key, positions);
+            }
+            positions.add(i);
+        }
+        List<T> added = new ArrayList<T>();
+        List<Replacement<T>> changed = new ArrayList<Replacement<T>>();
+        for (T element : latest) {
+            LinkedList<Integer> positions = unmatched.get(keyOf(element));
+            if (positions == null
+                    || positions.isEmpty()) {
+                added.add(element);
+                continue;
+            }
+            int position = positions.removeFirst();
+            matched[position] = true;
+            T previousElement = prior.get(position);
+            if (isChanged(previousElement, element)) {
+                changed.add(new Replacement<T>(element, previousElement));
+            }
+        }
+        List<T> removed = new ArrayList<T>();
+        for (int i = 0; i < matched.length; i++) {
+            if (!matched[i]) {
+                removed.add(prior.get(i));
+            }
+        }
+        return new ListDelta<T>(latest, previous, added, removed, changed);
+    }
+
+    private ListDelta<T> byEquality(List<T> latest, List<T> previous) {
+        Map<T, int[]> counts = new HashMap<T, int[]>();
+        if (previous != null) {
+            for (T element : previous) {
+                int[] count = counts.get(element);
+                if (count == null) {
+                    count = new int[1];
+                    counts.put(element, count);
+                }
+                count[0]++;
+            }
+        }
+        List<T> added = new ArrayList<T>();
+        for (T element : latest) {
+            int[] count = counts.get(element);
+            if (count != null
+                    && count[0] > 0) {
+                count[0]--;
+            } else {
+                added.add(element);
+            }
+        }
+        List<T> removed = new ArrayList<T>();
+        if (previous != null) {
+            for (T element : previous) {
+                int[] count = counts.get(element);
+                if (count[0] > 0) {
+                    count[0]--;
+                    removed.add(element);
+                }
+            }
+        }
+        return new ListDelta<T>(latest, previous, added, removed, Collections.<Replacement<T>>emptyList());
+    }
+
+    private Method keyMethod(Class<?> elementType) {
+        try {
+            for (PropertyDescriptor descriptor : Introspector.getBeanInfo(elementType).getPropertyDescriptors()) {
+                if (descriptor.getName().equals(keyProperty)
+                        && descriptor.getReadMethod() != null) {
+                    return descriptor.getReadMethod();
+                }
+            }
+        } catch (IntrospectionException e) {
+            throw new ConfigurationException(format("Unable to inspect '%s'", elementType.getName()), e);
+        }
+        throw new ConfigurationException(format("No readable property '%s' found on '%s' to identify list elements",
+                keyProperty, elementType.getName()));
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.diff.DiffableConfigurationSource;
+import org.brekka.stillingar.core.diff.SnapshotDiff;
+import org.brekka.stillingar.core.diff.SnapshotDiffProducer;
+
+/**
+ * Wraps a source that was loaded with a projection (see {@link ProjectingConfigurationSourceLoader}), so that only
+ * the expressions the projection was built from are resolved against it. Any other lookup, including those based on
+ * type alone, is directed to the full source, which is loaded on first use via the supplied callable. Where no
+ * callable is available, such lookups fail with a {@link ValueConfigurationException} identifying the expression.
+ *
+ * Scoping is supported for the projected expressions, as the loader retains the whole subtree they select.
+ *
+ * A diff against another projected source is worked out from the full sources where both have been loaded.
+ * Otherwise, where both were loaded with the same projection, it is worked out from the projected sources and so only
+ * covers the parts of the content that the projection retains, which are all that the snapshot resolves.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ProjectedConfigurationSource implements ScopeableConfigurationSource, DiffableConfigurationSource {
+
+    /**
+     * The source loaded with the projection.
+     */
+    private final ConfigurationSource projectedSource;
+
+    /**
+     * The expressions that the projected source is able to resolve.
+     */
+    private final Set<String> expressions;
+
+    /**
+     * Loads the full source (can be null).
+     */
+    private final Callable<ConfigurationSource> fullSourceLoader;
+
+    /**
+     * The full source, once loaded.
+     */
+    private volatile ConfigurationSource fullSource;
+
+    /**
+     * @param projectedSource
+     *            the source loaded with the projection.
+     * @param expressions
+     *            the expressions that the projected source is able to resolve.
+     * @param fullSourceLoader
+     *            loads the full source for lookups outside of the projection (can be null).
+     */
+    public ProjectedConfigurationSource(ConfigurationSource projectedSource, Collection<String> expressions,
+            Callable<ConfigurationSource> fullSourceLoader) {
+        if (projectedSource == null) {
+            throw new IllegalArgumentException("null passed for projectedSource");
+        }
+        if (expressions == null) {
+            throw new IllegalArgumentException("null passed for expressions");
+        }
+        this.projectedSource = projectedSource;
+        this.expressions = Collections.unmodifiableSet(new HashSet<String>(expressions));
+        this.fullSourceLoader = fullSourceLoader;
+    }
+
+    /**
+     * @return the expressions that the projected source is able to resolve.
+     */
+    public Set<String> getExpressions() {
+        return expressions;
+    }
+
+    /**
+     * Determine whether the full source has been loaded, which indicates that a lookup was made outside of the
+     * projection.
+     *
+     * @return true if the full source has been loaded.
+     */
+    public boolean isFullSourceLoaded() {
+        return fullSource != null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.ScopeableConfigurationSource#scope(java.lang.String)
+     */
+    @Override
+    public ConfigurationSource scope(String expression) {
+        ConfigurationSource source = sourceFor(expression, null);
+        if (source instanceof ScopeableConfigurationSource) {
+            return ((ScopeableConfigurationSource) source).scope(expression);
+        }
+        return null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.String)
+     */
+    @Override
+    public boolean isAvailable(String expression) {
+        return sourceFor(expression, null).isAvailable(expression);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.Class)
+     */
+    @Override
+    public boolean isAvailable(Class<?> valueType) {
+        return fullSource(valueType, null).isAvailable(valueType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieve(java.lang.Class)
+     */
+    @Override
+    public <T> T retrieve(Class<T> valueType) {
+        return fullSource(valueType, null).retrieve(valueType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieve(java.lang.String, java.lang.Class)
+     */
+    @Override
+    public <T> T retrieve(String expression, Class<T> valueType) {
+        return sourceFor(expression, valueType).retrieve(expression, valueType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieveList(java.lang.Class)
+     */
+    @Override
+    public <T> List<T> retrieveList(Class<T> valueType) {
+        return fullSource(valueType, null).retrieveList(valueType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieveList(java.lang.String, java.lang.Class)
+     */
+    @Override
+    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
+        return sourceFor(expression, valueType).retrieveList(expression, valueType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.diff.DiffableConfigurationSource#diff(org.brekka.stillingar.api.ConfigurationSource,
+     * org.brekka.stillingar.core.diff.SnapshotDiff.Builder)
+     */
+    @Override
+    public boolean diff(ConfigurationSource previous, SnapshotDiff.Builder diff) {
+        if (!(previous instanceof ProjectedConfigurationSource)) {
+            return false;
+        }
+        ProjectedConfigurationSource other = (ProjectedConfigurationSource) previous;
+        if (fullSource != null
+                && other.fullSource != null) {
+            return SnapshotDiffProducer.diff(other.fullSource, fullSource, diff);
+        }
+        if (!expressions.equals(other.expressions)) {
+            return false;
+        }
+        return SnapshotDiffProducer.diff(other.projectedSource, projectedSource, diff);
+    }
+
+    /**
+     * Identify the source that should be used to resolve the expression.
+     *
+     * @param expression
+     *            the expression being resolved
+     * @param valueType
+     *            the type being resolved, for error reporting (can be null).
+     * @return the projected source if the expression is part of the projection, otherwise the full source.
+     */
+    private ConfigurationSource sourceFor(String expression, Class<?> valueType) {
+        if (expressions.contains(expression)) {
+            return projectedSource;
+        }
+        return fullSource(valueType, expression);
+    }
+
+    /**
+     * Retrieve the full source, loading it if this is the first lookup outside of the projection.
+     *
+     * @param valueType
+     *            the type being resolved, for error reporting (can be null).
+     * @param expression
+     *            the expression being resolved, for error reporting (can be null).
+     * @return the full source
+     */
+    private ConfigurationSource fullSource(Class<?> valueType, String expression) {
+        ConfigurationSource source = fullSource;
+        if (source != null) {
+            return source;
+        }
+        if (fullSourceLoader == null) {
+            throw new ValueConfigurationException(
+                    "The value lies outside of the projection used to load this configuration snapshot",
+                    valueType, expression);
+        }
+        synchronized (this) {
+            source = fullSource;
+            if (source == null) {
+                try {
+                    source = fullSourceLoader.call();
+                } catch (Exception e) {
+                    throw new ValueConfigurationException(
+                            "Failed to load the full configuration snapshot to resolve a value outside of its projection",
+                            valueType, expression, e);
+                }
+                fullSource = source;
+            }
+        }
+        return source;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+
+/**
+ * A {@link ConfigurationSourceLoader} that is able to discard the parts of a document that cannot be reached by a
+ * known set of expressions while it is being parsed. The source returned will only be able to resolve those
+ * expressions (and expressions relative to them), so it will normally be wrapped in a
+ * {@link ProjectedConfigurationSource}.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface ProjectingConfigurationSourceLoader extends ConfigurationSourceLoader {
+
+    /**
+     * Create a configuration source from the specified input stream, retaining only the parts of the document needed
+     * to resolve <code>expressions</code>. It is the callers responsibility to close the stream when control is
+     * returned.
+     *
+     * @param sourceStream
+     *            the stream to read from, which must not be null.
+     * @param encoding
+     *            the encoding of the stream, if known (can be null).
+     * @param expressions
+     *            the expressions that the source must be able to resolve, which must not be null.
+     * @return the configuration source based on the projection of <code>sourceStream</code> - never null.
+     * @throws ConfigurationException
+     *             if the parser is unable to extract the content it needs from the stream.
+     * @throws IOException
+     *             if an IO problem occurs while reading from the stream.
+     */
+    ConfigurationSource parse(InputStream sourceStream, Charset encoding, Collection<String> expressions)
+            throws ConfigurationException, IOException;
+}
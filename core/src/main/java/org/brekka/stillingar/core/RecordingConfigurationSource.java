@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import java.util.List;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.ResolvedValues.Kind;
+import org.brekka.stillingar.core.diff.DiffableConfigurationSource;
+import org.brekka.stillingar.core.diff.SnapshotDiff;
+import org.brekka.stillingar.core.diff.SnapshotDiffProducer;
+
+/**
+ * Passes lookups through to another source, recording the results in a {@link ResolvedValues} so that they can be
+ * persisted and served by a {@link CachedConfigurationSource} the next time the same content is loaded. Lookups that
+ * fail are not recorded. Diffs are worked out by the source being recorded.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class RecordingConfigurationSource implements ScopeableConfigurationSource, DiffableConfigurationSource {
+
+    /**
+     * The source being recorded
+     */
+    private final ConfigurationSource source;
+
+    /**
+     * Where the results are recorded
+     */
+    private final ResolvedValues values;
+
+    /**
+     * The scopes this source is within, empty for the root.
+     */
+    private final String scope;
+
+    /**
+     * @param source
+     *            the source to record the lookups of.
+     * @param values
+     *            where the results will be recorded.
+     */
+    public RecordingConfigurationSource(ConfigurationSource source, ResolvedValues values) {
+        if (source == null) {
+            throw new IllegalArgumentException("null passed for source");
+        }
+        if (values == null) {
+            throw new IllegalArgumentException("null passed for values");
+        }
+        this.source = source;
+        this.values = values;
+        this.scope = "";
+    }
+
+    RecordingConfigurationSource(ConfigurationSource source, ResolvedValues values, String scope) {
+        this.source = source;
+        this.values = values;
+        this.scope = scope;
+    }
+
+    /**
+     * @return the values recorded so far.
+     */
+    public ResolvedValues getValues() {
+        return values;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.ScopeableConfigurationSource#scope(java.lang.String)
+     */
+    @Override
+    public ConfigurationSource scope(String expression) {
+        ConfigurationSource scoped = null;
+        if (source instanceof ScopeableConfigurationSource) {
+            scoped = ((ScopeableConfigurationSource) source).scope(expression);
+        }
+        values.put(ResolvedValues.key(Kind.SCOPE, scope, expression, null), Boolean.valueOf(scoped != null));
+        if (scoped == null) {
+            return null;
+        }
+        return new RecordingConfigurationSource(scoped, values, ResolvedValues.scope(scope, expression));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.String)
+     */
+    @Override
+    public boolean isAvailable(String expression) {
+        boolean available = source.isAvailable(expression);
+        values.put(ResolvedValues.key(Kind.AVAILABLE, scope, expression, null), Boolean.valueOf(available));
+        return available;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.Class)
+     */
+    @Override
+    public boolean isAvailable(Class<?> valueType) {
+        boolean available = source.isAvailable(valueType);
+        values.put(ResolvedValues.key(Kind.AVAILABLE, scope, null, valueType), Boolean.valueOf(available));
+        return available;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieve(java.lang.String, java.lang.Class)
+     */
+    @Override
+    public <T> T retrieve(String expression, Class<T> valueType) {
+        T value = source.retrieve(expression, valueType);
+        values.put(ResolvedValues.key(Kind.VALUE, scope, expression, valueType), value);
+        return value;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieve(java.lang.Class)
+     */
+    @Override
+    public <T> T retrieve(Class<T> valueType) {
+        T value = source.retrieve(valueType);
+        values.put(ResolvedValues.key(Kind.VALUE, scope, null, valueType), value);
+        return value;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieveList(java.lang.String, java.lang.Class)
+     */
+    @Override
+    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
+        List<T> list = source.retrieveList(expression, valueType);
+        values.put(ResolvedValues.key(Kind.LIST, scope, expression, valueType), list);
+        return list;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieveList(java.lang.Class)
+     */
+    @Override
+    public <T> List<T> retrieveList(Class<T> valueType) {
+        List<T> list = source.retrieveList(valueType);
+        values.put(ResolvedValues.key(Kind.LIST, scope, null, valueType), list);
+        return list;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.brekka.stillingar.core.diff.DiffableConfigurationSource#diff(org.brekka.stillingar.api.ConfigurationSource,
+     * org.brekka.stillingar.core.diff.SnapshotDiff.Builder)
+     */
+    @Override
+    public boolean diff(ConfigurationSource previous, SnapshotDiff.Builder diff) {
+        return SnapshotDiffProducer.diff(underlying(previous), source, diff);
+    }
+
+    /**
+     * Identify the source that actually holds the content of a recording or cached source, so that it can be compared
+     * with another of its kind.
+     *
+     * @param source
+     *            the source to unwrap (can be null).
+     * @return the underlying source, or null if a cached source has not needed to load it.
+     */
+    static ConfigurationSource underlying(ConfigurationSource source) {
+        if (source instanceof RecordingConfigurationSource) {
+            return underlying(((RecordingConfigurationSource) source).source);
+        }
+        if (source instanceof CachedConfigurationSource) {
+            return underlying(((CachedConfigurationSource) source).getLoadedSource());
+        }
+        return source;
+    }
+}
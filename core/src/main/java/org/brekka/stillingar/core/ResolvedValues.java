@@ -0,0 +1,217 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The results of the lookups made against a single configuration snapshot, in a form that can be serialized and later
+ * used in place of the snapshot via {@link CachedConfigurationSource}. Populated by a
+ * {@link RecordingConfigurationSource}. Only results that are {@link Serializable} (lists included, element by
+ * element) are retained, anything else will be resolved from the original content when needed.
+ *
+ * Entries are keyed on the kind of lookup, the scopes it was made within, the expression and the value type.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ResolvedValues implements Serializable {
+
+    /**
+     * Serial UID
+     */
+    private static final long serialVersionUID = -3925028478736117466L;
+
+    /**
+     * Separates the parts of a key, chosen as it will not appear in an expression.
+     */
+    private static final char SEPARATOR = '\u001F';
+
+    /**
+     * The kinds of lookup that are recorded.
+     */
+    enum Kind {
+        AVAILABLE,
+        VALUE,
+        LIST,
+        SCOPE
+    }
+
+    /**
+     * Stands in for a null result, which cannot be stored in the map.
+     */
+    private enum Null {
+        VALUE
+    }
+
+    /**
+     * The recorded results
+     */
+    private final ConcurrentMap<String, Serializable> values = new ConcurrentHashMap<String, Serializable>();
+
+    /**
+     * Incremented each time a new result is recorded.
+     */
+    private final AtomicLong modifications = new AtomicLong();
+
+    /**
+     * @return the number of results recorded.
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Retrieve a count that changes each time a new result is recorded, allowing the caller to determine whether the
+     * values need to be written again.
+     *
+     * @return the modification count
+     */
+    public long getModifications() {
+        return modifications.get();
+    }
+
+    /**
+     * Determine whether a result has been recorded for the lookup.
+     *
+     * @param key
+     *            the key identifying the lookup, from {@link #key(Kind, String, String, Class)}.
+     * @return true if a result is available.
+     */
+    boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    /**
+     * Retrieve the result recorded for the lookup. Lists, arrays and dates (including those within lists) are copied
+     * so the caller is free to modify them. Other values are handed out as is, so must be immutable.
+     *
+     * @param key
+     *            the key identifying the lookup
+     * @return the result, which may be null if that was the result recorded.
+     */
+    Object get(String key) {
+        Object value = values.get(key);
+        if (value == Null.VALUE) {
+            return null;
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> copy = new ArrayList<Object>(list.size());
+            for (Object element : list) {
+                copy.add(copyOf(element));
+            }
+            return copy;
+        }
+        return copyOf(value);
+    }
+
+    /**
+     * Record the result of a lookup, provided it can be serialized.
+     *
+     * @param key
+     *            the key identifying the lookup
+     * @param value
+     *            the result (can be null).
+     */
+    void put(String key, Object value) {
+        Serializable serializable;
+        if (value == null) {
+            serializable = Null.VALUE;
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            for (Object object : list) {
+                if (object != null
+                        && !(object instanceof Serializable)) {
+                    return;
+                }
+            }
+            serializable = new ArrayList<Object>(list);
+        } else if (value instanceof Serializable) {
+            serializable = (Serializable) value;
+        } else {
+            return;
+        }
+        if (values.put(key, serializable) == null) {
+            modifications.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return a copy of the value if it is one of the mutable types commonly used for values, otherwise the value.
+     */
+    private static Object copyOf(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value != null
+                && value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Build the key for a lookup.
+     *
+     * @param kind
+     *            the kind of lookup
+     * @param scope
+     *            the scopes the lookup was made within, empty for none.
+     * @param expression
+     *            the expression (can be null for lookups by type).
+     * @param valueType
+     *            the value type (can be null for lookups by expression only).
+     * @return the key
+     */
+    static String key(Kind kind, String scope, String expression, Class<?> valueType) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(kind.ordinal());
+        sb.append(SEPARATOR).append(scope);
+        sb.append(SEPARATOR);
+        if (expression != null) {
+            sb.append(expression);
+        }
+        sb.append(SEPARATOR);
+        if (valueType != null) {
+            sb.append(valueType.getName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Extend a scope with a further expression.
+     *
+     * @param scope
+     *            the current scope, empty for none.
+     * @param expression
+     *            the expression being scoped to.
+     * @return the extended scope.
+     */
+    static String scope(String scope, String expression) {
+        return scope + SEPARATOR + SEPARATOR + expression;
+    }
+}
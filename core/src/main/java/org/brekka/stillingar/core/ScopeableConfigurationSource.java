@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+
+/**
+ * A {@link ConfigurationSource} that is able to produce a sub-source anchored at a context node selected by an
+ * expression. Relative expressions passed to the scoped source will be evaluated from that node, avoiding the
+ * repeated walk from the document root when many values are read from the same subtree.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface ScopeableConfigurationSource extends ConfigurationSource {
+
+    /**
+     * Obtain a configuration source anchored at the node selected by <code>expression</code>. Where the expression
+     * selects multiple nodes, the first will be used.
+     * 
+     * For XPath based sources, expressions passed to the scoped source follow XPath: relative expressions such as
+     * <code>c:Fraud/c:Keyword</code> are evaluated from the selected node, while absolute expressions, including
+     * those starting with <code>//</code>, are still evaluated from the document root. Use <code>.//c:Keyword</code>
+     * to search only beneath the selected node. For json-path based sources, the root <code>$</code> refers to the
+     * selected node.
+     *
+     * @param expression
+     *            the expression that selects the context node.
+     * @return the scoped configuration source or null if the expression does not select anything.
+     */
+    ConfigurationSource scope(String expression);
+}
@@ -48,6 +48,12 @@ public final class ValueDefinitionGroup {
      */
     private final Object semaphore;
 
+    /**
+     * Optional expression identifying the node that the expressions of the values in this group are relative to. It
+     * will be resolved once against each new configuration snapshot.
+     */
+    private final String scope;
+
     /**
      * @param name
      *            The label for this group. Used in exceptions to provide context. Does not have to be unique, but is
@@ -75,10 +81,31 @@ public final class ValueDefinitionGroup {
      */
     public ValueDefinitionGroup(String name, Collection<ValueDefinition<?,?>> values, GroupChangeListener changeListener,
             Object semaphore) {
+        this(name, values, changeListener, semaphore, null);
+    }
+
+    /**
+     * @param name
+     *            The label for this group. Used in exceptions to provide context. Does not have to be unique, but is
+     *            more useful if it is.
+     * @param values
+     *            The list of values that are part of this group and as such should be updated with it.
+     * @param changeListener
+     *            Optional listener that will be invoked once all values have been updated.
+     * @param semaphore
+     *            Optional locking semaphore that can be used to ensure exclusive access to the 'target' while it is
+     *            being updated and the listener invoked.
+     * @param scope
+     *            Optional expression identifying the node that the expressions of the values in this group are
+     *            relative to.
+     */
+    public ValueDefinitionGroup(String name, Collection<ValueDefinition<?,?>> values, GroupChangeListener changeListener,
+            Object semaphore, String scope) {
         this.name = name;
         this.values = values;
         this.changeListener = changeListener;
         this.semaphore = semaphore;
+        this.scope = (scope != null && scope.length() > 0 ? scope : null);
     }
 
     /**
@@ -117,4 +144,13 @@ public final class ValueDefinitionGroup {
     public Object getSemaphore() {
         return semaphore;
     }
+
+    /**
+     * Optional expression identifying the node that the expressions of the values in this group are relative to.
+     * 
+     * @return the scope expression or null if the values are not scoped.
+     */
+    public String getScope() {
+        return scope;
+    }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.binary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Converts existing configuration into the binary format. Properties keep their keys, with indexed keys
+ * (<code>name.0</code>, <code>name.1</code>...) combined into a list under <code>name</code>. XML is flattened so that
+ * each element without child elements becomes a key made up of the path of local names from the root (for example
+ * <code>/config/server/port</code>), attributes add <code>/@name</code> to the path of their element, and paths that
+ * occur more than once become lists. Only the simple path form is supported, not XPath in general.
+ *
+ * JSON can be converted using the equivalent class in the Jackson module. Usage:
+ *
+ * <pre>
+ * java org.brekka.stillingar.core.binary.BinaryConfigurationConverter input.(properties|xml) output
+ * </pre>
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class BinaryConfigurationConverter {
+
+    /**
+     * Matches an indexed properties key
+     */
+    private static final Pattern INDEXED_KEY = Pattern.compile("^(.+)\\.(\\d+)$");
+
+    private BinaryConfigurationConverter() {
+    }
+
+    /**
+     * Convert the file identified by the first argument, writing the result to the file identified by the second.
+     *
+     * @param args
+     *            the input and output file paths.
+     * @throws Exception
+     *             if the conversion fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: BinaryConfigurationConverter <input.properties|input.xml> <output>");
+            System.exit(1);
+        }
+        File input = new File(args[0]);
+        Map<String, Object> values;
+        InputStream is = new FileInputStream(input);
+        try {
+            if (input.getName().endsWith(".properties")) {
+                Properties properties = new Properties();
+                properties.load(is);
+                values = fromProperties(properties);
+            } else {
+                values = fromDocument(parse(is));
+            }
+        } finally {
+            is.close();
+        }
+        BinaryConfigurationWriter writer = new BinaryConfigurationWriter();
+        writer.putAll(values);
+        writer.write(new File(args[1]));
+        System.out.printf("Wrote %d entries to '%s'%n", writer.size(), args[1]);
+    }
+
+    /**
+     * Flatten properties, combining indexed keys into lists.
+     *
+     * @param properties
+     *            the properties to convert
+     * @return the values keyed as they should be written.
+     */
+    public static Map<String, Object> fromProperties(Properties properties) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        Map<String, Map<Integer, String>> indexed = new LinkedHashMap<String, Map<Integer, String>>();
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            values.put(key, value);
+            Matcher matcher = INDEXED_KEY.matcher(key);
+            if (matcher.matches()) {
+                String name = matcher.group(1);
+                Map<Integer, String> elements = indexed.get(name);
+                if (elements == null) {
+                    elements = new TreeMap<Integer, String>();
+                    indexed.put(name, elements);
+                }
+                elements.put(Integer.valueOf(matcher.group(2)), value);
+            }
+        }
+        for (Map.Entry<String, Map<Integer, String>> entry : indexed.entrySet()) {
+            // Same sequence as PropertiesConfigurationSource#retrieveList
+            Map<Integer, String> elements = entry.getValue();
+            String first = properties.getProperty(entry.getKey());
+            if (first == null) {
+                first = elements.get(0);
+            }
+            if (first == null) {
+                continue;
+            }
+            List<Object> list = new ArrayList<Object>();
+            list.add(first);
+            for (int i = 1; elements.containsKey(i); i++) {
+                list.add(elements.get(i));
+            }
+            values.put(entry.getKey(), list);
+        }
+        return values;
+    }
+
+    /**
+     * Flatten an XML document into paths.
+     *
+     * @param document
+     *            the document to convert
+     * @return the values keyed on their path.
+     */
+    public static Map<String, Object> fromDocument(Document document) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        flatten(document.getDocumentElement(), "", values);
+        return values;
+    }
+
+    private static void flatten(Element element, String parentPath, Map<String, Object> values) {
+        String path = parentPath + "/" + localName(element);
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attr = (Attr) attributes.item(i);
+            if (!"http://www.w3.org/2000/xmlns/".equals(attr.getNamespaceURI())) {
+                add(values, path + "/@" + localName(attr), attr.getValue());
+            }
+        }
+        boolean leaf = true;
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                leaf = false;
+                flatten((Element) child, path, values);
+            }
+        }
+        if (leaf) {
+            add(values, path, element.getTextContent());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void add(Map<String, Object> values, String key, String value) {
+        Object existing = values.get(key);
+        if (existing == null) {
+            values.put(key, value);
+        } else if (existing instanceof List) {
+            ((List<Object>) existing).add(value);
+        } else {
+            List<Object> list = new ArrayList<Object>();
+            list.add(existing);
+            list.add(value);
+            values.put(key, list);
+        }
+    }
+
+    private static String localName(Node node) {
+        String localName = node.getLocalName();
+        return (localName != null ? localName : node.getNodeName());
+    }
+
+    private static Document parse(InputStream is) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(is);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unable to parse XML: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.binary;
+
+import static java.lang.String.format;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.KeyedConfigurationSource;
+import org.brekka.stillingar.core.ScopeableConfigurationSource;
+import org.brekka.stillingar.core.conversion.ConversionManager;
+
+/**
+ * A {@link ConfigurationSource} that reads values directly from a buffer in the format described by
+ * {@link BinaryFormat}, typically a memory-mapped file. Keys are located by binary search of the offset table and only
+ * the value being retrieved is decoded, so neither the lookup cost nor the heap used depends on the size of the
+ * content. As with properties, lookup by type alone is not supported.
+ *
+ * Scoping is supported by key prefix, where the scope expression must be followed by either a '.' or '/'. So the
+ * scope <code>services.payment</code> will resolve the key <code>timeout</code> as
+ * <code>services.payment.timeout</code> and the scope <code>/services</code> will resolve <code>port</code> as
+ * <code>/services/port</code>.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class BinaryConfigurationSource implements ScopeableConfigurationSource, KeyedConfigurationSource {
+
+    /**
+     * The content, positioned at the header. Only ever accessed via absolute reads or duplicates.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The number of entries
+     */
+    private final int count;
+
+    /**
+     * The conversion manager
+     */
+    private final ConversionManager conversionManager;
+
+    /**
+     * Prefix that will be applied to all keys, including the trailing separator. Empty when not scoped.
+     */
+    private final String keyPrefix;
+
+    /**
+     * @param buffer
+     *            the content, which must have already been checked for a valid header.
+     * @param conversionManager
+     *            converts values to the requested type.
+     */
+    BinaryConfigurationSource(ByteBuffer buffer, ConversionManager conversionManager) {
+        this(buffer, conversionManager, "");
+    }
+
+    private BinaryConfigurationSource(ByteBuffer buffer, ConversionManager conversionManager, String keyPrefix) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.conversionManager = conversionManager;
+        this.keyPrefix = keyPrefix;
+    }
+
+    /**
+     * @return the number of entries in the content, regardless of scope.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Scope this source to the keys that start with the specified expression followed by a '.' or '/'.
+     */
+    @Override
+    public ConfigurationSource scope(String expression) {
+        String prefix = keyPrefix + expression;
+        for (String separator : new String[] { ".", "/" }) {
+            byte[] prefixBytes = (prefix + separator).getBytes(BinaryFormat.UTF8);
+            int index = lowerBound(prefixBytes);
+            if (index < count
+                    && startsWith(entryOffset(index), prefixBytes)) {
+                return new BinaryConfigurationSource(buffer, conversionManager, prefix + separator);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The keys that start with the scope prefix, with the prefix removed. Only the keys are decoded.
+     */
+    @Override
+    public Set<String> getKeys() {
+        byte[] prefixBytes = keyPrefix.getBytes(BinaryFormat.UTF8);
+        Set<String> keys = new HashSet<String>();
+        for (int index = lowerBound(prefixBytes); index < count; index++) {
+            int offset = entryOffset(index);
+            if (!startsWith(offset, prefixBytes)) {
+                break;
+            }
+            byte[] key = new byte[buffer.getInt(offset) - prefixBytes.length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + 4 + prefixBytes.length);
+            view.get(key);
+            keys.add(new String(key, BinaryFormat.UTF8));
+        }
+        return keys;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.String)
+     */
+    @Override
+    public boolean isAvailable(String expression) {
+        return find(expression) >= 0;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.Class)
+     */
+    @Override
+    public boolean isAvailable(Class<?> valueType) {
+        throw new ValueConfigurationException(
+                "A binary configuration source does not support lookup by type.", null, null);
+    }
+
+    /**
+     * NOT supported. Always throws {@link ConfigurationException}.
+     */
+    @Override
+    public <T> T retrieve(Class<T> valueType) {
+        throw new ValueConfigurationException(
+                "A key must be specified when using a binary configuration source", valueType, null);
+    }
+
+    /**
+     * Retrieve the value for the key, converted to the requested type. Where the value is a list, the first element
+     * will be returned.
+     */
+    @Override
+    public <T> T retrieve(String expression, Class<T> valueType) {
+        int offset = find(expression);
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer view = valueView(offset);
+        if (view.get(view.position()) == BinaryFormat.TYPE_LIST) {
+            view.get();
+            if (view.getInt() == 0) {
+                return null;
+            }
+        }
+        return resolve(valueType, decode(view, expression), expression);
+    }
+
+    /**
+     * NOT supported. Always throws {@link ConfigurationException}.
+     */
+    @Override
+    public <T> List<T> retrieveList(Class<T> valueType) {
+        throw new ValueConfigurationException(
+                "A key must be specified when using a binary configuration source", valueType, null);
+    }
+
+    /**
+     * Retrieve the list value for the key, with each element converted to the requested type. A single value is
+     * returned as a list of one.
+     */
+    @Override
+    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
+        int offset = find(expression);
+        if (offset < 0) {
+            return Collections.emptyList();
+        }
+        ByteBuffer view = valueView(offset);
+        if (view.get(view.position()) != BinaryFormat.TYPE_LIST) {
+            return Collections.singletonList(resolve(valueType, decode(view, expression), expression));
+        }
+        view.get();
+        int size = view.getInt();
+        List<T> valueList = new ArrayList<T>(size);
+        for (int i = 0; i < size; i++) {
+            valueList.add(resolve(valueType, decode(view, expression), expression));
+        }
+        return valueList;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return format("%s[entries: %d, prefix: '%s']", getClass().getSimpleName(), count, keyPrefix);
+    }
+
+    /**
+     * Perform type conversion.
+     */
+    protected <T> T resolve(Class<T> valueType, Object value, String key) {
+        if (valueType == String.class) {
+            // Typed values can always be read as text
+            return valueType.cast(value.toString());
+        }
+        try {
+            return conversionManager.convert(value, valueType);
+        } catch (IllegalArgumentException e) {
+            throw new ValueConfigurationException("Type conversion", valueType, key, e);
+        }
+    }
+
+    /**
+     * Locate the entry for the key.
+     *
+     * @param expression
+     *            the key, without the scope prefix.
+     * @return the offset of the entry or -1 if there is none.
+     */
+    private int find(String expression) {
+        byte[] key = (keyPrefix + expression).getBytes(BinaryFormat.UTF8);
+        int index = lowerBound(key);
+        if (index < count) {
+            int offset = entryOffset(index);
+            if (compareKey(offset, key) == 0) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param key
+     *            the key bytes
+     * @return the index of the first entry whose key is not less than the key, or the count if there is none.
+     */
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(entryOffset(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int entryOffset(int index) {
+        return buffer.getInt(BinaryFormat.HEADER_SIZE + index * 4);
+    }
+
+    /**
+     * Compare the key of the entry at the offset with the key bytes, using absolute reads only.
+     */
+    private int compareKey(int offset, byte[] key) {
+        int length = buffer.getInt(offset);
+        int start = offset + 4;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int diff = (buffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - key.length;
+    }
+
+    private boolean startsWith(int offset, byte[] prefix) {
+        int length = buffer.getInt(offset);
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + 4 + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a view on the buffer positioned at the value of the entry at the offset.
+     */
+    private ByteBuffer valueView(int offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + 4 + buffer.getInt(offset));
+        return view;
+    }
+
+    /**
+     * Decode the (non-list) value at the position of the view, leaving it positioned after the value.
+     */
+    private static Object decode(ByteBuffer view, String key) {
+        byte type = view.get();
+        switch (type) {
+            case BinaryFormat.TYPE_STRING:
+                byte[] bytes = new byte[view.getInt()];
+                view.get(bytes);
+                return new String(bytes, BinaryFormat.UTF8);
+            case BinaryFormat.TYPE_LONG:
+                return Long.valueOf(view.getLong());
+            case BinaryFormat.TYPE_DOUBLE:
+                return Double.valueOf(view.getDouble());
+            case BinaryFormat.TYPE_BOOLEAN:
+                return Boolean.valueOf(view.get() != 0);
+            default:
+                throw new ValueConfigurationException(format(
+                        "Unknown value type %d in binary configuration", type), null, key);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.binary;
+
+import static java.lang.String.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.ByteBufferConfigurationSourceLoader;
+import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSourceLoader;
+
+/**
+ * Loader for the binary key/value format written by {@link BinaryConfigurationWriter}. When given a buffer, such as a
+ * memory-mapped file, the resulting source reads from it directly without copying or parsing the content. The
+ * encoding is ignored as all strings are UTF-8.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class BinaryConfigurationSourceLoader implements ByteBufferConfigurationSourceLoader {
+
+    /**
+     * The conversion manager
+     */
+    private final ConversionManager conversionManager;
+
+    /**
+     * Uses the same converters as {@link PropertiesConfigurationSourceLoader}.
+     */
+    public BinaryConfigurationSourceLoader() {
+        this(PropertiesConfigurationSourceLoader.newConversionManager());
+    }
+
+    /**
+     * @param conversionManager
+     *            converts values to the requested type.
+     */
+    public BinaryConfigurationSourceLoader(ConversionManager conversionManager) {
+        this.conversionManager = conversionManager;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSourceLoader#parse(java.io.InputStream, java.nio.charset.Charset)
+     */
+    @Override
+    public ConfigurationSource parse(InputStream sourceStream, Charset encoding) throws ConfigurationException,
+            IOException {
+        if (sourceStream == null) {
+            throw new IllegalArgumentException("null passed for sourceStream");
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = sourceStream.read(chunk)) != -1) {
+            baos.write(chunk, 0, read);
+        }
+        return parse(ByteBuffer.wrap(baos.toByteArray()), encoding);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.ByteBufferConfigurationSourceLoader#parse(java.nio.ByteBuffer, java.nio.charset.Charset)
+     */
+    @Override
+    public ConfigurationSource parse(ByteBuffer buffer, Charset encoding) throws ConfigurationException, IOException {
+        if (buffer == null) {
+            throw new IllegalArgumentException("null passed for buffer");
+        }
+        ByteBuffer content = buffer.slice();
+        if (content.remaining() < BinaryFormat.HEADER_SIZE
+                || content.getInt(0) != BinaryFormat.MAGIC) {
+            throw new ConfigurationException("Content is not in the binary configuration format");
+        }
+        int version = content.getInt(4);
+        if (version != BinaryFormat.VERSION) {
+            throw new ConfigurationException(format(
+                    "Binary configuration format version %d is not supported, expected %d",
+                    version, BinaryFormat.VERSION));
+        }
+        int count = content.getInt(8);
+        if (count < 0
+                || BinaryFormat.HEADER_SIZE + (long) count * 4 > content.remaining()) {
+            throw new ConfigurationException("Binary configuration is truncated");
+        }
+        return new BinaryConfigurationSource(content, conversionManager);
+    }
+}
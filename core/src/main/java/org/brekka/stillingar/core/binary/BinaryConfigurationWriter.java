@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.binary;
+
+import static java.lang.String.format;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Writes key/value pairs in the binary format read by {@link BinaryConfigurationSourceLoader}. Values can be strings,
+ * numbers, booleans or lists of those. Integral primitive wrappers are stored as longs, floating point wrappers as
+ * doubles and anything else (including big numbers, to retain their precision) by its string form.
+ *
+ * When writing to a file, the content is first written to a temporary file in the same directory, which then replaces
+ * the target by rename. A process polling the target will therefore only ever see a complete file, and any process
+ * that already has the old file mapped keeps a valid view of it.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class BinaryConfigurationWriter {
+
+    /**
+     * The entries to write
+     */
+    private final Map<String, Object> entries = new HashMap<String, Object>();
+
+    /**
+     * Add a value, replacing any existing value for the key.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value, a list of values, or null to remove the key.
+     */
+    public void put(String key, Object value) {
+        if (key == null) {
+            throw new IllegalArgumentException("null passed for key");
+        }
+        if (value == null) {
+            entries.remove(key);
+        } else {
+            entries.put(key, value);
+        }
+    }
+
+    /**
+     * Add all of the values in the map.
+     *
+     * @param values
+     *            the values to add
+     */
+    public void putAll(Map<String, ?> values) {
+        for (Entry<String, ?> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return the number of entries that will be written.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Write the entries to the file, replacing it atomically.
+     *
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            OutputStream os = new BufferedOutputStream(new FileOutputStream(temp));
+            try {
+                write(os);
+            } finally {
+                os.close();
+            }
+            if (!temp.renameTo(file)) {
+                // Some platforms will not rename over an existing file
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException(format("Unable to replace '%s'", file));
+                }
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Write the entries to the stream, which is not closed.
+     *
+     * @param os
+     *            the stream to write to
+     * @throws IOException
+     *             if the stream cannot be written to
+     */
+    public void write(OutputStream os) throws IOException {
+        List<byte[]> keys = new ArrayList<byte[]>(entries.size());
+        Map<byte[], Object> values = new HashMap<byte[], Object>();
+        for (Entry<String, Object> entry : entries.entrySet()) {
+            byte[] key = entry.getKey().getBytes(BinaryFormat.UTF8);
+            keys.add(key);
+            values.put(key, entry.getValue());
+        }
+        Collections.sort(keys, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] a, byte[] b) {
+                return BinaryFormat.compare(a, b);
+            }
+        });
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        int base = BinaryFormat.HEADER_SIZE + keys.size() * 4;
+        int[] offsets = new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            offsets[i] = base + bodyOut.size();
+            bodyOut.writeInt(key.length);
+            bodyOut.write(key);
+            writeValue(bodyOut, values.get(key), true);
+        }
+        bodyOut.flush();
+
+        DataOutputStream dos = new DataOutputStream(os);
+        dos.writeInt(BinaryFormat.MAGIC);
+        dos.writeInt(BinaryFormat.VERSION);
+        dos.writeInt(keys.size());
+        for (int offset : offsets) {
+            dos.writeInt(offset);
+        }
+        body.writeTo(dos);
+        dos.flush();
+    }
+
+    private static void writeValue(DataOutputStream out, Object value, boolean listAllowed) throws IOException {
+        if (value instanceof List) {
+            if (!listAllowed) {
+                throw new IllegalArgumentException("Lists cannot be nested in the binary configuration format");
+            }
+            List<?> list = (List<?>) value;
+            out.writeByte(BinaryFormat.TYPE_LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element, false);
+            }
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            out.writeByte(BinaryFormat.TYPE_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(BinaryFormat.TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BinaryFormat.TYPE_BOOLEAN);
+            out.writeByte(((Boolean) value).booleanValue() ? 1 : 0);
+        } else {
+            byte[] bytes = String.valueOf(value).getBytes(BinaryFormat.UTF8);
+            out.writeByte(BinaryFormat.TYPE_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.binary;
+
+import java.nio.charset.Charset;
+
+/**
+ * Layout of the binary key/value format. All numbers are big-endian.
+ *
+ * <pre>
+ * int      magic
+ * int      format version
+ * int      entry count
+ * int[]    entry offsets, ordered by the unsigned bytes of the key
+ * entries  int key length, UTF-8 key bytes, value
+ * </pre>
+ *
+ * A value is a type byte followed by its content: a string is an int length plus UTF-8 bytes, a long or double is 8
+ * bytes, a boolean is a single byte and a list is an int count followed by that many (non-list) values.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class BinaryFormat {
+
+    static final int MAGIC = 0x53544B56;
+
+    static final int VERSION = 1;
+
+    /**
+     * Size of the magic, version and count
+     */
+    static final int HEADER_SIZE = 12;
+
+    static final byte TYPE_STRING = 1;
+
+    static final byte TYPE_LONG = 2;
+
+    static final byte TYPE_DOUBLE = 3;
+
+    static final byte TYPE_BOOLEAN = 4;
+
+    static final byte TYPE_LIST = 5;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Compare two keys by their unsigned bytes, which is the order of the entries.
+     */
+    static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.changelog;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * The format of a change log, a file of key/value update records that is only ever appended to. Each record is one
+ * line encoded as UTF-8:
+ *
+ * <pre>
+ * key=value    sets the key to the value
+ * -key         removes the key
+ * # comment
+ * </pre>
+ *
+ * Keys and values are trimmed and may not contain line breaks, keys may not contain '=' or start with '-'. A line is
+ * only a record once its line break has been written, so a reader will never act on a partly written record.
+ *
+ * The first line of a log is a header comment naming its generation, which changes whenever the log is truncated, so
+ * that a reader can tell a log that was truncated and has grown again from one that was appended to. The base written
+ * by compaction starts with a comment naming the generation and offset of the log it includes the records up to.
+ *
+ * Writers must use {@link #append(File, Map)}, which holds an exclusive lock on the log while writing, so that
+ * compaction (which takes the same lock) cannot lose records.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class ChangeLog {
+
+    /**
+     * Encoding of records
+     */
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Prefix of a removal
+     */
+    private static final char REMOVE = '-';
+
+    /**
+     * Prefix of a comment
+     */
+    private static final char COMMENT = '#';
+
+    /**
+     * Starts the header of a log, followed by its generation
+     */
+    private static final String LOG_HEADER = "# change-log ";
+
+    /**
+     * Starts the header of a compacted base, followed by the generation and offset of the log it includes
+     */
+    private static final String BASE_HEADER = "# compacted ";
+
+    /**
+     * The most bytes read looking for the header of a log
+     */
+    private static final int MAX_HEADER_LENGTH = 256;
+
+    private ChangeLog() {
+    }
+
+    /**
+     * Apply the records to the values.
+     *
+     * @param values
+     *            the values to apply the records to, which are not modified.
+     * @param records
+     *            complete lines of records.
+     * @param changedKeys
+     *            receives the keys whose value was changed or removed (can be null).
+     * @return the values with the records applied.
+     */
+    public static PersistentMap<String, String> apply(PersistentMap<String, String> values, CharSequence records,
+            Set<String> changedKeys) {
+        int start = 0;
+        int length = records.length();
+        while (start < length) {
+            int end = start;
+            while (end < length && records.charAt(end) != '\n') {
+                end++;
+            }
+            String line = records.subSequence(start, end).toString().trim();
+            start = end + 1;
+            if (line.length() == 0
+                    || line.charAt(0) == COMMENT) {
+                continue;
+            }
+            PersistentMap<String, String> updated;
+            String key;
+            if (line.charAt(0) == REMOVE) {
+                key = line.substring(1).trim();
+                updated = values.minus(key);
+            } else {
+                int separator = line.indexOf('=');
+                if (separator < 0) {
+                    // Not a record, ignore it rather than stall the log
+                    continue;
+                }
+                key = line.substring(0, separator).trim();
+                updated = values.plus(key, line.substring(separator + 1).trim());
+            }
+            if (updated != values
+                    && changedKeys != null) {
+                changedKeys.add(key);
+            }
+            values = updated;
+        }
+        return values;
+    }
+
+    /**
+     * @param buffer
+     *            bytes read from a log, from its position.
+     * @return the number of bytes that make up complete records, up to and including the last line break.
+     */
+    public static int completeLength(ByteBuffer buffer) {
+        for (int i = buffer.limit() - 1; i >= buffer.position(); i--) {
+            if (buffer.get(i) == '\n') {
+                return i + 1 - buffer.position();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Format the values as records, in key order, such as for the base of a compacted log.
+     *
+     * @param values
+     *            the values
+     * @return the records
+     */
+    public static String toRecords(Map<String, String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (Entry<String, String> entry : new TreeMap<String, String>(values).entrySet()) {
+            appendRecord(sb, entry.getKey(), entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a new log generation
+     */
+    public static String newGeneration() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * @param generation
+     *            the generation of the log
+     * @return the header line to start the log with
+     */
+    public static String header(String generation) {
+        return LOG_HEADER + generation + '\n';
+    }
+
+    /**
+     * Read the generation from the header of a log.
+     *
+     * @param channel
+     *            the log
+     * @return the generation, or null if the log is empty or has no header.
+     * @throws IOException
+     *             if the log cannot be read.
+     */
+    public static String readGeneration(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), MAX_HEADER_LENGTH));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        String line = firstLine(UTF8.decode(buffer));
+        if (line == null
+                || !line.startsWith(LOG_HEADER)) {
+            return null;
+        }
+        return line.substring(LOG_HEADER.length()).trim();
+    }
+
+    /**
+     * @param generation
+     *            the generation of the log being compacted
+     * @param offset
+     *            the position in the log up to which the records are included in the base.
+     * @return the header line to start the base with
+     */
+    public static String compactedHeader(String generation, long offset) {
+        return BASE_HEADER + generation + ' ' + offset + '\n';
+    }
+
+    /**
+     * Determine how much of a log is already included in a base, as recorded by {@link #compactedHeader(String, long)}.
+     *
+     * @param base
+     *            the content of the base
+     * @param generation
+     *            the generation of the log (can be null).
+     * @return the position in the log up to which its records are included in the base, zero if the base was not
+     *         compacted from this generation of the log.
+     */
+    public static long compactedOffset(CharSequence base, String generation) {
+        String line = firstLine(base);
+        if (generation == null
+                || line == null
+                || !line.startsWith(BASE_HEADER)) {
+            return 0;
+        }
+        String[] parts = line.substring(BASE_HEADER.length()).trim().split(" ");
+        if (parts.length != 2
+                || !parts[0].equals(generation)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Append records to the log, under an exclusive lock on the log. An empty log is given a header first.
+     *
+     * @param log
+     *            the log file, created if it does not exist.
+     * @param updates
+     *            the values to set, where a null value removes the key.
+     * @throws IOException
+     *             if the log cannot be written.
+     */
+    public static void append(File log, Map<String, String> updates) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Entry<String, String> entry : updates.entrySet()) {
+            appendRecord(sb, entry.getKey(), entry.getValue());
+        }
+        ByteBuffer records = UTF8.encode(sb.toString());
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                long position = channel.size();
+                if (position == 0) {
+                    ByteBuffer header = UTF8.encode(header(newGeneration()));
+                    while (header.hasRemaining()) {
+                        position += channel.write(header, position);
+                    }
+                }
+                while (records.hasRemaining()) {
+                    position += channel.write(records, position);
+                }
+                channel.force(false);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void appendRecord(StringBuilder sb, String key, String value) {
+        if (key == null) {
+            throw new IllegalArgumentException("null passed for key");
+        }
+        String trimmedKey = key.trim();
+        if (trimmedKey.length() == 0
+                || trimmedKey.charAt(0) == REMOVE
+                || trimmedKey.charAt(0) == COMMENT
+                || trimmedKey.indexOf('=') >= 0
+                || hasLineBreak(trimmedKey)) {
+            throw new IllegalArgumentException(format("The key '%s' cannot be written to a change log", key));
+        }
+        if (value == null) {
+            sb.append(REMOVE).append(trimmedKey).append('\n');
+            return;
+        }
+        if (hasLineBreak(value)) {
+            throw new IllegalArgumentException(format("The value of '%s' may not contain a line break", key));
+        }
+        sb.append(trimmedKey).append('=').append(value.trim()).append('\n');
+    }
+
+    /**
+     * @return the first complete line, or null if there is no line break.
+     */
+    private static String firstLine(CharSequence content) {
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) == '\n') {
+                return content.subSequence(0, i).toString();
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasLineBreak(String str) {
+        return str.indexOf('\n') >= 0
+                || str.indexOf('\r') >= 0;
+    }
+}
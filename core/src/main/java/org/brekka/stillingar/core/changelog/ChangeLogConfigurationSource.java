@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.changelog;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.diff.DiffableConfigurationSource;
+import org.brekka.stillingar.core.diff.SnapshotDiff;
+import org.brekka.stillingar.core.properties.AbstractKeyValueConfigurationSource;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSource;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSourceLoader;
+
+/**
+ * A {@link ConfigurationSource} backed by the values of a change log (see {@link ChangeLog}), held in a
+ * {@link PersistentMap} so that each snapshot of the log is a new source sharing almost all of its values with the
+ * previous one. Keys, scopes, lists and type conversion behave as for {@link PropertiesConfigurationSource}, sharing
+ * its {@link AbstractKeyValueConfigurationSource} base, though the keys are not offered up front, as a lookup in the
+ * map is already a single probe.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ChangeLogConfigurationSource extends AbstractKeyValueConfigurationSource implements
+        DiffableConfigurationSource {
+
+    /**
+     * The values of the log
+     */
+    private final PersistentMap<String, String> values;
+
+    /**
+     * @param values
+     *            the values of the log
+     */
+    public ChangeLogConfigurationSource(PersistentMap<String, String> values) {
+        this(values, new ConversionManager(PropertiesConfigurationSourceLoader.CONVERTERS), "");
+    }
+
+    private ChangeLogConfigurationSource(PersistentMap<String, String> values, ConversionManager conversionManager,
+            String keyPrefix) {
+        super(conversionManager, keyPrefix);
+        if (values == null) {
+            throw new IllegalArgumentException("null passed for values");
+        }
+        this.values = values;
+    }
+
+    /**
+     * @return the values of the log
+     */
+    public PersistentMap<String, String> getValues() {
+        return values;
+    }
+
+    /**
+     * Compares unscoped sources via {@link PersistentMap#diff(PersistentMap, Set, Set, Set)}, so only the parts of the
+     * map touched by the log entries applied in between are visited.
+     */
+    @Override
+    public boolean diff(ConfigurationSource previous, SnapshotDiff.Builder diff) {
+        if (!(previous instanceof ChangeLogConfigurationSource)) {
+            return false;
+        }
+        ChangeLogConfigurationSource other = (ChangeLogConfigurationSource) previous;
+        if (keyPrefix.length() > 0
+                || other.keyPrefix.length() > 0) {
+            return false;
+        }
+        Set<String> added = new TreeSet<String>();
+        Set<String> removed = new TreeSet<String>();
+        Set<String> changed = new TreeSet<String>();
+        values.diff(other.values, added, removed, changed);
+        for (String key : added) {
+            diff.added(key);
+        }
+        for (String key : removed) {
+            diff.removed(key);
+        }
+        for (String key : changed) {
+            diff.changed(key);
+        }
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.properties.AbstractKeyValueConfigurationSource#valueOf(java.lang.String)
+     */
+    @Override
+    protected String valueOf(String key) {
+        return values.get(key);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.properties.AbstractKeyValueConfigurationSource#allKeys()
+     */
+    @Override
+    protected Iterable<?> allKeys() {
+        return values.keySet();
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.properties.AbstractKeyValueConfigurationSource#withPrefix(java.lang.String)
+     */
+    @Override
+    protected ConfigurationSource withPrefix(String prefix) {
+        return new ChangeLogConfigurationSource(values, conversionManager, prefix);
+    }
+}
@@ -0,0 +1,553 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.changelog;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable map where {@link #plus(Object, Object)} and {@link #minus(Object)} return a new map sharing all but
+ * the changed path with this one, so applying a change costs time proportional to the depth of the trie (at most
+ * seven levels) rather than the size of the map, and earlier versions remain valid and unchanged.
+ *
+ * Implemented as a hash array mapped trie, where each level consumes five bits of the hash. Neither keys nor values
+ * may be null. The {@link Map} view is read-only.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * Number of hash bits consumed per level
+     */
+    private static final int BITS = 5;
+
+    /**
+     * Mask for the hash bits of one level
+     */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * The map with no entries
+     */
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY = new PersistentMap(null, 0);
+
+    /**
+     * The root of the trie, null when empty.
+     */
+    private final Node root;
+
+    /**
+     * Number of entries
+     */
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return the map with no entries
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @return a map with the key set to the value, this map if it already was.
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("null passed for key");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("null passed for value");
+        }
+        Node current = (root == null ? BitmapNode.EMPTY : root);
+        boolean[] added = new boolean[1];
+        Node updated = current.put(hash(key), key, value, 0, added);
+        if (updated == root) {
+            return this;
+        }
+        return new PersistentMap<K, V>(updated, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @param key
+     *            the key
+     * @return a map without the key, this map if it did not have it.
+     */
+    public PersistentMap<K, V> minus(Object key) {
+        if (root == null
+                || key == null) {
+            return this;
+        }
+        Node updated = root.remove(hash(key), key, 0);
+        if (updated == root) {
+            return this;
+        }
+        return new PersistentMap<K, V>(updated, size - 1);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#get(java.lang.Object)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null
+                || key == null) {
+            return null;
+        }
+        return (V) root.find(hash(key), key, 0);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#containsKey(java.lang.Object)
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#size()
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A read-only view of the entries, in no particular order.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            public Iterator<Map.Entry<K, V>> iterator() {
+                List leaves = new ArrayList<Leaf>(size);
+                if (root != null) {
+                    root.collect(leaves);
+                }
+                return Collections.unmodifiableList((List<Map.Entry<K, V>>) leaves).iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Identify the keys that differ from an earlier version of this map. Parts of the trie shared by the two versions
+     * are skipped, so when one is derived from the other the cost is proportional to the number of changes rather than
+     * the size of the map.
+     *
+     * @param previous
+     *            the earlier version
+     * @param added
+     *            receives the keys only in this map
+     * @param removed
+     *            receives the keys only in the previous map
+     * @param changed
+     *            receives the keys whose values differ
+     */
+    public void diff(PersistentMap<K, V> previous, Set<? super K> added, Set<? super K> removed,
+            Set<? super K> changed) {
+        if (previous == null) {
+            throw new IllegalArgumentException("null passed for previous");
+        }
+        diff(previous.root, root, added, removed, changed);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void diff(Object previous, Object latest, Set added, Set removed, Set changed) {
+        if (previous == latest) {
+            return;
+        }
+        if (previous instanceof BitmapNode
+                && latest instanceof BitmapNode) {
+            // Same level of the trie, so each slot covers the same hashes on both sides
+            BitmapNode previousNode = (BitmapNode) previous;
+            BitmapNode latestNode = (BitmapNode) latest;
+            for (int i = 0; i <= MASK; i++) {
+                int bit = 1 << i;
+                diff(previousNode.slot(bit), latestNode.slot(bit), added, removed, changed);
+            }
+            return;
+        }
+        Map<Object, Object> previousEntries = entriesOf(previous);
+        Map<Object, Object> latestEntries = entriesOf(latest);
+        for (Map.Entry<Object, Object> entry : latestEntries.entrySet()) {
+            Object previousValue = previousEntries.get(entry.getKey());
+            if (previousValue == null) {
+                added.add(entry.getKey());
+            } else if (!previousValue.equals(entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (Object key : previousEntries.keySet()) {
+            if (!latestEntries.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+    }
+
+    /**
+     * @return the entries of a slot, which may be empty (null), a {@link Leaf} or a {@link Node}.
+     */
+    private static Map<Object, Object> entriesOf(Object slot) {
+        if (slot == null) {
+            return Collections.emptyMap();
+        }
+        List<Leaf> leaves = new ArrayList<Leaf>();
+        if (slot instanceof Leaf) {
+            leaves.add((Leaf) slot);
+        } else {
+            ((Node) slot).collect(leaves);
+        }
+        Map<Object, Object> entries = new HashMap<Object, Object>();
+        for (Leaf leaf : leaves) {
+            entries.put(leaf.key, leaf.value);
+        }
+        return entries;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A node of the trie.
+     */
+    private abstract static class Node {
+
+        abstract Object find(int hash, Object key, int shift);
+
+        /**
+         * @return the node with the entry, this node if unchanged.
+         */
+        abstract Node put(int hash, Object key, Object value, int shift, boolean[] added);
+
+        /**
+         * @return the node without the entry, this node if it was not present or null if now empty.
+         */
+        abstract Node remove(int hash, Object key, int shift);
+
+        abstract void collect(List<Leaf> leaves);
+    }
+
+    /**
+     * A single entry
+     */
+    private static final class Leaf implements Map.Entry<Object, Object> {
+
+        private final int hash;
+
+        private final Object key;
+
+        private final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean matches(int otherHash, Object otherKey) {
+            return hash == otherHash
+                    && key.equals(otherKey);
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Map.Entry#getKey()
+         */
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Map.Entry#getValue()
+         */
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * Not supported, the map is immutable.
+         */
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException("The map is immutable");
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+            return key.equals(other.getKey())
+                    && value.equals(other.getValue());
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+    }
+
+    /**
+     * A node with up to 32 slots, each either a {@link Leaf} or a child {@link Node}, where the bitmap identifies the
+     * slots that are occupied.
+     */
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+
+        private final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        Object find(int hash, Object key, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[index(bit)];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return (leaf.matches(hash, key) ? leaf.value : null);
+            }
+            return ((Node) slot).find(hash, key, shift + BITS);
+        }
+
+        @Override
+        Node put(int hash, Object key, Object value, int shift, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] updated = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, updated, 0, index);
+                updated[index] = new Leaf(hash, key, value);
+                System.arraycopy(slots, index, updated, index + 1, slots.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, updated);
+            }
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                if (leaf.matches(hash, key)) {
+                    if (leaf.value.equals(value)) {
+                        return this;
+                    }
+                    replacement = new Leaf(hash, key, value);
+                } else {
+                    added[0] = true;
+                    replacement = merge(leaf, new Leaf(hash, key, value), shift + BITS);
+                }
+            } else {
+                Node child = (Node) slot;
+                replacement = child.put(hash, key, value, shift + BITS, added);
+                if (replacement == child) {
+                    return this;
+                }
+            }
+            Object[] updated = slots.clone();
+            updated[index] = replacement;
+            return new BitmapNode(bitmap, updated);
+        }
+
+        @Override
+        Node remove(int hash, Object key, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Leaf) {
+                if (!((Leaf) slot).matches(hash, key)) {
+                    return this;
+                }
+                replacement = null;
+            } else {
+                Node child = (Node) slot;
+                replacement = child.remove(hash, key, shift + BITS);
+                if (replacement == child) {
+                    return this;
+                }
+            }
+            if (replacement != null) {
+                Object[] updated = slots.clone();
+                updated[index] = replacement;
+                return new BitmapNode(bitmap, updated);
+            }
+            if (slots.length == 1) {
+                return null;
+            }
+            Object[] updated = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, updated, 0, index);
+            System.arraycopy(slots, index + 1, updated, index, slots.length - index - 1);
+            return new BitmapNode(bitmap & ~bit, updated);
+        }
+
+        @Override
+        void collect(List<Leaf> leaves) {
+            for (Object slot : slots) {
+                if (slot instanceof Leaf) {
+                    leaves.add((Leaf) slot);
+                } else {
+                    ((Node) slot).collect(leaves);
+                }
+            }
+        }
+
+        /**
+         * @return the content of the slot for the bit, null if empty.
+         */
+        Object slot(int bit) {
+            return ((bitmap & bit) == 0 ? null : slots[index(bit)]);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        /**
+         * Combine two leaves with different keys that share a slot at the level above.
+         */
+        private static Node merge(Leaf first, Leaf second, int shift) {
+            if (first.hash == second.hash) {
+                return new CollisionNode(first.hash, new Leaf[] { first, second });
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(first.hash, first.key, first.value, shift, added)
+                        .put(second.hash, second.key, second.value, shift, added);
+        }
+    }
+
+    /**
+     * Keys whose hashes are identical.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+
+        private final Leaf[] leaves;
+
+        CollisionNode(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        @Override
+        Object find(int otherHash, Object key, int shift) {
+            for (Leaf leaf : leaves) {
+                if (leaf.matches(otherHash, key)) {
+                    return leaf.value;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node put(int otherHash, Object key, Object value, int shift, boolean[] added) {
+            if (otherHash != hash) {
+                // Push this node down a level alongside the new entry
+                BitmapNode parent = new BitmapNode(BitmapNode.bit(hash, shift), new Object[] { this });
+                return parent.put(otherHash, key, value, shift, added);
+            }
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(key)) {
+                    if (leaves[i].value.equals(value)) {
+                        return this;
+                    }
+                    Leaf[] updated = leaves.clone();
+                    updated[i] = new Leaf(hash, key, value);
+                    return new CollisionNode(hash, updated);
+                }
+            }
+            Leaf[] updated = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, updated, 0, leaves.length);
+            updated[leaves.length] = new Leaf(hash, key, value);
+            added[0] = true;
+            return new CollisionNode(hash, updated);
+        }
+
+        @Override
+        Node remove(int otherHash, Object key, int shift) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].matches(otherHash, key)) {
+                    if (leaves.length == 1) {
+                        return null;
+                    }
+                    Leaf[] updated = new Leaf[leaves.length - 1];
+                    System.arraycopy(leaves, 0, updated, 0, i);
+                    System.arraycopy(leaves, i + 1, updated, i, leaves.length - i - 1);
+                    return new CollisionNode(hash, updated);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        void collect(List<Leaf> leaves) {
+            for (Leaf leaf : this.leaves) {
+                leaves.add(leaf);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.delta;
+
+/**
+ * Identifies the expressions whose values may differ between the configuration currently applied and its
+ * replacement, so that groups only using other expressions need not be refreshed.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface AffectedExpressions {
+
+    /**
+     * @param expression
+     *            the expression, which may also be the scope of a group.
+     * @return true if the value (or anything below the scope) may have changed.
+     */
+    boolean isAffected(String expression);
+}
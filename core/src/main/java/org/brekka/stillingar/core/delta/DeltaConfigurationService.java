@@ -32,6 +32,7 @@ import org.brekka.stillingar.core.ConfigurationService;
 import org.brekka.stillingar.core.DelegatingConfigurationSource;
 import org.brekka.stillingar.core.Expirable;
 import org.brekka.stillingar.core.FallbackConfigurationSource;
+import org.brekka.stillingar.core.ScopeableConfigurationSource;
 import org.brekka.stillingar.core.ValueDefinition;
 import org.brekka.stillingar.core.ValueDefinitionGroup;
 
@@ -43,7 +44,7 @@ import org.brekka.stillingar.core.ValueDefinitionGroup;
  */
 public class DeltaConfigurationService 
       extends DelegatingConfigurationSource<FallbackConfigurationSource> 
-   implements ConfigurationService {
+   implements ConfigurationService, ScopeableConfigurationSource {
 
     /**
      * The group that will contain all of the {@link ValueDefinition}s that were registered via
@@ -139,6 +140,42 @@ public class DeltaConfigurationService
         }
     }
     
+    /**
+     * Scope the current configuration source. The scoped source returned is bound to the current snapshot and will not
+     * see subsequent changes, register a {@link ValueDefinitionGroup} with a scope to receive updates.
+     * 
+     * @see org.brekka.stillingar.core.ScopeableConfigurationSource#scope(java.lang.String)
+     */
+    @Override
+    public ConfigurationSource scope(String expression) {
+        return getDelegate().scope(expression);
+    }
+    
+    /**
+     * Identify the expressions that must be resolvable for the registered values to be updated. Groups with a scope
+     * contribute their scope expression only, as their values are resolved relative to it.
+     *
+     * @return the expressions, or null if any registered value is resolved by type alone, in which case the whole
+     *         configuration is required.
+     */
+    public synchronized Set<String> getRegisteredExpressions() {
+        Set<String> expressions = new LinkedHashSet<String>();
+        for (ValueDefinitionGroup group : valueGroups) {
+            if (group.getScope() != null) {
+                expressions.add(group.getScope());
+                continue;
+            }
+            for (ValueDefinition<?, ?> valueDefinition : group.getValues()) {
+                String expression = valueDefinition.getExpression();
+                if (expression == null) {
+                    return null;
+                }
+                expressions.add(expression);
+            }
+        }
+        return expressions;
+    }
+
     /**
      * Shutdown this {@link ConfigurationSource}, releasing all values.
      */
@@ -163,14 +200,54 @@ public class DeltaConfigurationService
      * @throws ChangeConfigurationException
      *             if problems are encountered during the first or second phases.
      */
-    protected synchronized void refresh(ConfigurationSource latest) throws ChangeConfigurationException {
+    protected void refresh(ConfigurationSource latest) throws ChangeConfigurationException {
+        refresh(latest, null);
+    }
+
+    /**
+     * Updates the primary configuration source, notifying only the listeners of groups that use an affected
+     * expression. The other groups keep their current values, which must therefore resolve the same from the latest
+     * source.
+     * 
+     * @param latest
+     *            the latest configuration source
+     * @param affected
+     *            identifies the expressions affected by the change, null to refresh every group.
+     * @throws ChangeConfigurationException
+     *             if problems are encountered during the first or second phases.
+     */
+    protected synchronized void refresh(ConfigurationSource latest, AffectedExpressions affected)
+            throws ChangeConfigurationException {
         Map<ValueDefinition<?, ?>, WeakReference<?>> newValueMap = new LinkedHashMap<ValueDefinition<?, ?>, WeakReference<?>>();
         FallbackConfigurationSource newSource = new FallbackConfigurationSource(latest, getDelegate()
                 .getSecondarySource());
+        Set<String> registeredExpressions = getRegisteredExpressions();
+        if (registeredExpressions != null) {
+            // Work out which layer owns each expression once, rather than on every lookup
+            newSource.prepare(registeredExpressions);
+        }
 
         checkAndRemoveExpired();
 
-        TwoPhasedGroupsUpdater updater = new TwoPhasedGroupsUpdater(valueGroups, newSource, deltaOperations);
+        Collection<ValueDefinitionGroup> refreshGroups = valueGroups;
+        if (affected != null) {
+            refreshGroups = new ArrayList<ValueDefinitionGroup>(valueGroups.size());
+            for (ValueDefinitionGroup group : valueGroups) {
+                if (isAffected(group, affected)) {
+                    refreshGroups.add(group);
+                } else {
+                    // Unchanged, so carry over the values already applied
+                    for (ValueDefinition<?, ?> valueDefinition : group.getValues()) {
+                        WeakReference<?> valueRef = lastValueMap.get(valueDefinition);
+                        if (valueRef != null) {
+                            newValueMap.put(valueDefinition, valueRef);
+                        }
+                    }
+                }
+            }
+        }
+
+        TwoPhasedGroupsUpdater updater = new TwoPhasedGroupsUpdater(refreshGroups, newSource, deltaOperations);
 
         // Phase One
         List<GroupChangeAction> updateActionList = updater.phaseOneUpdate();
@@ -304,6 +381,24 @@ public class DeltaConfigurationService
     }
     
 
+    /**
+     * Determine whether the group uses any affected expression. Values resolved by type alone are always considered
+     * affected.
+     */
+    private static boolean isAffected(ValueDefinitionGroup group, AffectedExpressions affected) {
+        if (group.getScope() != null) {
+            return affected.isAffected(group.getScope());
+        }
+        for (ValueDefinition<?, ?> valueDefinition : group.getValues()) {
+            String expression = valueDefinition.getExpression();
+            if (expression == null
+                    || affected.isAffected(expression)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Checks to see if the specified instance implements {@link Expirable} and if it is, check whether it has
      * expired.
@@ -30,6 +30,7 @@ import org.brekka.stillingar.core.ValueDefinition;
 import org.brekka.stillingar.core.ValueDefinitionGroup;
 import org.brekka.stillingar.core.ValueListDefinition;
 import org.brekka.stillingar.core.GroupConfigurationException.Phase;
+import org.brekka.stillingar.core.support.ScopeSupport;
 
 /**
  * Operations that prepare/change the state of {@link ValueDefinition} and {@link ValueDefinitionGroup}s.
@@ -108,7 +109,9 @@ public class DeltaOperations {
     }
 
     /**
-     * Prepares a {@link ValueChangeAction} for each {@link ValueDefinition} in the specified group.
+     * Prepares a {@link ValueChangeAction} for each {@link ValueDefinition} in the specified group. If the group
+     * declares a scope, it will be resolved once against the configuration source and the values of the group resolved
+     * relative to it.
      * 
      * @param valueDefinitionGroup
      *            the group to prepare value changes for
@@ -124,8 +127,9 @@ public class DeltaOperations {
         List<ValueChangeAction> updateActions = new ArrayList<ValueChangeAction>(valueDefinitionList.size());
         List<ConfigurationException> valueResolveErrors = new ArrayList<ConfigurationException>();
         try {
+            ConfigurationSource groupSource = ScopeSupport.resolve(configurationSource, valueDefinitionGroup.getScope());
             for (ValueDefinition<?,?> valueDefinition : valueDefinitionList) {
-                ValueChangeAction valueChangeAction = prepareValueChange(valueDefinition, configurationSource);
+                ValueChangeAction valueChangeAction = prepareValueChange(valueDefinition, groupSource);
                 updateActions.add(valueChangeAction);
             }
         } catch (ConfigurationException e) {
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.diff;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+
+/**
+ * A configuration source that can work out what differs from an earlier source of the same kind, ideally at a cost
+ * proportional to the size of the difference rather than the size of the configuration.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface DiffableConfigurationSource extends ConfigurationSource {
+
+    /**
+     * Add the paths that differ from the previous source to the diff.
+     *
+     * @param previous
+     *            the source of the previous snapshot
+     * @param diff
+     *            receives the differences
+     * @return false if the previous source cannot be compared to this one, in which case nothing was added.
+     */
+    boolean diff(ConfigurationSource previous, SnapshotDiff.Builder diff);
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.diff;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The paths that were added, removed or changed between two consecutive snapshots. The form of a path depends on the
+ * kind of configuration, such as an XPath for XML or the key for properties. A changed path means the value at that
+ * path, or something below it that could not be broken down further, differs.
+ *
+ * Where the two snapshots could not be compared, the diff is not complete and everything must be considered changed.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class SnapshotDiff {
+
+    /**
+     * The diff where the snapshots could not be compared
+     */
+    private static final SnapshotDiff INCOMPLETE = new SnapshotDiff(Collections.<String>emptyList(),
+            Collections.<String>emptyList(), Collections.<String>emptyList(), false);
+
+    /**
+     * Paths only present in the latest snapshot
+     */
+    private final List<String> added;
+
+    /**
+     * Paths only present in the previous snapshot
+     */
+    private final List<String> removed;
+
+    /**
+     * Paths present in both, with different values
+     */
+    private final List<String> changed;
+
+    /**
+     * Whether the snapshots could be compared
+     */
+    private final boolean complete;
+
+    private SnapshotDiff(List<String> added, List<String> removed, List<String> changed, boolean complete) {
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+        this.complete = complete;
+    }
+
+    /**
+     * @return the diff for snapshots that could not be compared.
+     */
+    public static SnapshotDiff incomplete() {
+        return INCOMPLETE;
+    }
+
+    /**
+     * @return the paths only present in the latest snapshot
+     */
+    public List<String> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the paths only present in the previous snapshot
+     */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the paths present in both, with different values
+     */
+    public List<String> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return true if the snapshots could be compared, otherwise everything must be considered changed.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return true if the snapshots were compared and found to be the same.
+     */
+    public boolean isEmpty() {
+        return complete
+                && added.isEmpty()
+                && removed.isEmpty()
+                && changed.isEmpty();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        if (!complete) {
+            return format("%s[incomplete]", getClass().getSimpleName());
+        }
+        return format("%s[added: %s, removed: %s, changed: %s]", getClass().getSimpleName(), added, removed, changed);
+    }
+
+    /**
+     * Collects the paths of a diff.
+     */
+    public static final class Builder {
+
+        private final List<String> added = new ArrayList<String>();
+
+        private final List<String> removed = new ArrayList<String>();
+
+        private final List<String> changed = new ArrayList<String>();
+
+        /**
+         * @param path
+         *            a path only present in the latest snapshot
+         * @return this builder
+         */
+        public Builder added(String path) {
+            added.add(path);
+            return this;
+        }
+
+        /**
+         * @param path
+         *            a path only present in the previous snapshot
+         * @return this builder
+         */
+        public Builder removed(String path) {
+            removed.add(path);
+            return this;
+        }
+
+        /**
+         * @param path
+         *            a path present in both, with different values
+         * @return this builder
+         */
+        public Builder changed(String path) {
+            changed.add(path);
+            return this;
+        }
+
+        /**
+         * @return the complete diff
+         */
+        public SnapshotDiff build() {
+            return new SnapshotDiff(Collections.unmodifiableList(new ArrayList<String>(added)),
+                    Collections.unmodifiableList(new ArrayList<String>(removed)),
+                    Collections.unmodifiableList(new ArrayList<String>(changed)), true);
+        }
+    }
+}
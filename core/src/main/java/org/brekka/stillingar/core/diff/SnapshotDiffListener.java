@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.diff;
+
+import org.brekka.stillingar.core.snapshot.Snapshot;
+
+/**
+ * Notified of what changed each time a new snapshot is applied, such as to invalidate the affected entries of a
+ * downstream cache rather than comparing whole sections.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface SnapshotDiffListener {
+
+    /**
+     * Called after the snapshot has been applied, on the thread that applied it. Should not throw exceptions.
+     *
+     * @param snapshot
+     *            the snapshot now applied
+     * @param diff
+     *            what differs from the snapshot applied before it, never empty.
+     */
+    void onDiff(Snapshot snapshot, SnapshotDiff diff);
+}
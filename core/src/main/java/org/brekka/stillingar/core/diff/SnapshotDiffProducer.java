@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.diff;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+
+/**
+ * Compares consecutive snapshots and publishes the differences to the registered listeners. Nothing is compared
+ * while there are no listeners. Sources that are not {@link DiffableConfigurationSource}s, or that cannot be compared
+ * to the previous source, produce an incomplete diff.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotDiffProducer {
+
+    /**
+     * The listeners
+     */
+    private final List<SnapshotDiffListener> listeners = new CopyOnWriteArrayList<SnapshotDiffListener>();
+
+    /**
+     * @param listener
+     *            to be notified of differences
+     */
+    public void addListener(SnapshotDiffListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("null passed for listener");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener
+     *            to no longer be notified
+     */
+    public void removeListener(SnapshotDiffListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Compare the snapshots and notify the listeners, unless nothing differs. A listener that fails is reported to
+     * the uncaught exception handler of the current thread, without preventing the others from being notified or
+     * disrupting the refresh that applied the snapshot.
+     *
+     * @param previous
+     *            the snapshot applied before (can be null).
+     * @param latest
+     *            the snapshot now applied
+     */
+    public void publish(Snapshot previous, Snapshot latest) {
+        if (listeners.isEmpty()
+                || previous == latest) {
+            return;
+        }
+        SnapshotDiff diff = diff(previous == null ? null : previous.getSource(), latest.getSource());
+        if (diff.isEmpty()) {
+            return;
+        }
+        for (SnapshotDiffListener listener : listeners) {
+            try {
+                listener.onDiff(latest, diff);
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    /**
+     * @param previous
+     *            the source of the previous snapshot (can be null).
+     * @param latest
+     *            the source of the latest snapshot
+     * @return the differences
+     */
+    public static SnapshotDiff diff(ConfigurationSource previous, ConfigurationSource latest) {
+        SnapshotDiff.Builder builder = new SnapshotDiff.Builder();
+        if (!diff(previous, latest, builder)) {
+            return SnapshotDiff.incomplete();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Add the differences between two sources to the builder, for use by sources that wrap or combine others.
+     *
+     * @param previous
+     *            the previous source (can be null).
+     * @param latest
+     *            the latest source (can be null).
+     * @param diff
+     *            receives the differences
+     * @return false if the sources cannot be compared, in which case nothing was added.
+     */
+    public static boolean diff(ConfigurationSource previous, ConfigurationSource latest, SnapshotDiff.Builder diff) {
+        if (previous == null
+                || !(latest instanceof DiffableConfigurationSource)) {
+            return false;
+        }
+        return ((DiffableConfigurationSource) latest).diff(previous, diff);
+    }
+}
@@ -31,23 +31,33 @@ import javax.xml.xpath.XPathFactory;
 
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.ScopeableConfigurationSource;
 import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.diff.DiffableConfigurationSource;
+import org.brekka.stillingar.core.diff.SnapshotDiff;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 /**
- * A {@link ConfigurationSource} implementation that is backed by a DOM {@link Document} instance.
+ * A {@link ConfigurationSource} implementation that is backed by a DOM {@link Document} instance. Expressions are
+ * evaluated relative to a context node which will be the document itself, unless the source was obtained via
+ * {@link #scope(String)}.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
-public class DOMConfigurationSource implements ConfigurationSource {
+public class DOMConfigurationSource implements ScopeableConfigurationSource, DiffableConfigurationSource {
 
     /**
      * The document from which configuration values will be resolved.
      */
     private final Document document;
     
+    /**
+     * The node against which expressions will be evaluated.
+     */
+    private final Node contextNode;
+    
     /**
      * The conversion manager
      */
@@ -57,17 +67,54 @@ public class DOMConfigurationSource implements ConfigurationSource {
      * Namespace context to use in XPath operations (can be null).
      */
     private final NamespaceContext xPathNamespaceContext;
+
+    /**
+     * Subtree hashes of the document, computed on the first diff.
+     */
+    private NodeHashes nodeHashes;
     
     /**
      * @param document
      *            The document from which configuration values will be resolved.
      */
     public DOMConfigurationSource(Document document, NamespaceContext xPathNamespaceContext, ConversionManager conversionManager) {
+        this(document, document, xPathNamespaceContext, conversionManager);
+    }
+    
+    /**
+     * @param document
+     *            The document from which configuration values will be resolved.
+     * @param contextNode
+     *            The node against which expressions will be evaluated.
+     */
+    protected DOMConfigurationSource(Document document, Node contextNode, NamespaceContext xPathNamespaceContext, 
+            ConversionManager conversionManager) {
         this.document = document;
+        this.contextNode = contextNode;
         this.conversionManager = conversionManager;
         this.xPathNamespaceContext = xPathNamespaceContext;
     }
 
+    /**
+     * Only unscoped sources are compared, structurally via {@link DOMDiff}.
+     *
+     * @see org.brekka.stillingar.core.diff.DiffableConfigurationSource#diff(org.brekka.stillingar.api.ConfigurationSource,
+     *      org.brekka.stillingar.core.diff.SnapshotDiff.Builder)
+     */
+    @Override
+    public boolean diff(ConfigurationSource previous, SnapshotDiff.Builder diff) {
+        if (!(previous instanceof DOMConfigurationSource)) {
+            return false;
+        }
+        DOMConfigurationSource other = (DOMConfigurationSource) previous;
+        if (contextNode != document
+                || other.contextNode != other.document) {
+            return false;
+        }
+        DOMDiff.diff(other.document, other.nodeHashes(), document, nodeHashes(), diff);
+        return true;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -119,6 +166,20 @@ public class DOMConfigurationSource implements ConfigurationSource {
         return retVal;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.brekka.stillingar.core.ScopeableConfigurationSource#scope(java.lang.String)
+     */
+    @Override
+    public ConfigurationSource scope(String expression) {
+        Object result = doXPath(expression, XPathConstants.NODE, null);
+        if (result instanceof Node) {
+            return newScopedSource((Node) result);
+        }
+        return null;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -176,7 +237,7 @@ public class DOMConfigurationSource implements ConfigurationSource {
         }
         try {
             XPathExpression expr = xpath.compile(expression);
-            retVal = expr.evaluate(document, returnQName);
+            retVal = expr.evaluate(contextNode, returnQName);
         } catch (XPathExpressionException e) {
             throw new ValueConfigurationException(
                     "Not a vaild XPath expression",  returnType, expression, e);
@@ -184,6 +245,18 @@ public class DOMConfigurationSource implements ConfigurationSource {
         return retVal;
     }
     
+    /**
+     * Create the configuration source that will be anchored at the specified context node. Sub-classes should
+     * override to return a source of their own type.
+     * 
+     * @param contextNode
+     *            the node that expressions will be evaluated against.
+     * @return the new scoped source
+     */
+    protected ConfigurationSource newScopedSource(Node contextNode) {
+        return new DOMConfigurationSource(document, contextNode, xPathNamespaceContext, conversionManager);
+    }
+    
     /**
      * Determine whether the xPathNamespaceContext should be assigned to the xpath.
      * 
@@ -223,10 +296,38 @@ public class DOMConfigurationSource implements ConfigurationSource {
         return retVal;
     }
 
+    /**
+     * @return the document
+     */
+    protected final Document getDocument() {
+        return document;
+    }
+    
+    /**
+     * @return the contextNode
+     */
+    protected final Node getContextNode() {
+        return contextNode;
+    }
+    
+    /**
+     * @return the xPathNamespaceContext
+     */
+    protected final NamespaceContext getXPathNamespaceContext() {
+        return xPathNamespaceContext;
+    }
+
     /**
      * @return the conversionManager
      */
     protected final ConversionManager getConversionManager() {
         return conversionManager;
     }
+
+    private synchronized NodeHashes nodeHashes() {
+        if (nodeHashes == null) {
+            nodeHashes = new NodeHashes();
+        }
+        return nodeHashes;
+    }
 }
@@ -5,6 +5,7 @@ package org.brekka.stillingar.core.dom;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.List;
 
@@ -14,7 +15,7 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
-import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.ByteBufferConfigurationSourceLoader;
 import org.brekka.stillingar.core.conversion.BigDecimalConverter;
 import org.brekka.stillingar.core.conversion.BigIntegerConverter;
 import org.brekka.stillingar.core.conversion.BooleanConverter;
@@ -37,6 +38,7 @@ import org.brekka.stillingar.core.conversion.URIConverter;
 import org.brekka.stillingar.core.conversion.UUIDConverter;
 import org.brekka.stillingar.core.conversion.xml.DocumentConverter;
 import org.brekka.stillingar.core.conversion.xml.ElementConverter;
+import org.brekka.stillingar.core.support.ByteBufferInputStream;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
@@ -45,7 +47,7 @@ import org.xml.sax.SAXException;
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
-public class DOMConfigurationSourceLoader implements ConfigurationSourceLoader {
+public class DOMConfigurationSourceLoader implements ByteBufferConfigurationSourceLoader {
 
     /**
      * The conversion manager
@@ -108,6 +110,17 @@ public class DOMConfigurationSourceLoader implements ConfigurationSourceLoader {
         return new DOMConfigurationSource(document, xPathNamespaceContext, conversionManager);
     }
     
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.ByteBufferConfigurationSourceLoader#parse(java.nio.ByteBuffer, java.nio.charset.Charset)
+     */
+    @Override
+    public ConfigurationSource parse(ByteBuffer buffer, Charset encoding) throws ConfigurationException, IOException {
+        if (buffer == null) {
+            throw new IllegalArgumentException("null passed for buffer");
+        }
+        return parse(new ByteBufferInputStream(buffer), encoding);
+    }
+    
     public static List<TypeConverter<?>> prepareConverters(TemporalAdapter temporalAdapter) {
         return new TypeConverterListBuilder().<TypeConverter<?>> 
             addAll(
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.dom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.brekka.stillingar.core.diff.SnapshotDiff;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Structural diff of two DOM documents, producing XPath style paths such as <code>/config/service[2]/@timeout</code>.
+ * Elements are matched by name and position among the siblings of the same name, with the position only included in
+ * the path where either side has more than one. Subtrees with the same {@link NodeHashes hash} are skipped, so the
+ * cost is proportional to the size of the change.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class DOMDiff {
+
+    private DOMDiff() {
+    }
+
+    /**
+     * @param previous
+     *            the previous document or root element
+     * @param previousHashes
+     *            the hashes kept for the previous document
+     * @param latest
+     *            the latest document or root element
+     * @param latestHashes
+     *            the hashes kept for the latest document
+     * @param diff
+     *            receives the differences
+     */
+    public static void diff(Node previous, NodeHashes previousHashes, Node latest, NodeHashes latestHashes,
+            SnapshotDiff.Builder diff) {
+        Node previousRoot = rootOf(previous);
+        Node latestRoot = rootOf(latest);
+        if (previousRoot == null
+                || latestRoot == null
+                || !previousRoot.getNodeName().equals(latestRoot.getNodeName())) {
+            if (previousRoot != null) {
+                diff.removed("/" + previousRoot.getNodeName());
+            }
+            if (latestRoot != null) {
+                diff.added("/" + latestRoot.getNodeName());
+            }
+            return;
+        }
+        diffElement(previousRoot, previousHashes, latestRoot, latestHashes, "/" + latestRoot.getNodeName(), diff);
+    }
+
+    /**
+     * @return the text directly within the element, trimmed.
+     */
+    static String textOf(Node element) {
+        StringBuilder sb = null;
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            short type = child.getNodeType();
+            if (type == Node.TEXT_NODE
+                    || type == Node.CDATA_SECTION_NODE) {
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                sb.append(child.getNodeValue());
+            }
+        }
+        return (sb == null ? "" : sb.toString().trim());
+    }
+
+    private static void diffElement(Node previous, NodeHashes previousHashes, Node latest, NodeHashes latestHashes,
+            String path, SnapshotDiff.Builder diff) {
+        if (previousHashes.hashOf(previous) == latestHashes.hashOf(latest)) {
+            return;
+        }
+        Map<String, String> previousAttributes = attributesOf(previous);
+        Map<String, String> latestAttributes = attributesOf(latest);
+        for (Entry<String, String> entry : latestAttributes.entrySet()) {
+            String previousValue = previousAttributes.get(entry.getKey());
+            if (previousValue == null) {
+                diff.added(path + "/@" + entry.getKey());
+            } else if (!previousValue.equals(entry.getValue())) {
+                diff.changed(path + "/@" + entry.getKey());
+            }
+        }
+        for (String name : previousAttributes.keySet()) {
+            if (!latestAttributes.containsKey(name)) {
+                diff.removed(path + "/@" + name);
+            }
+        }
+        if (!textOf(previous).equals(textOf(latest))) {
+            diff.changed(path);
+        }
+
+        Map<String, List<Node>> previousChildren = childElementsOf(previous);
+        Map<String, List<Node>> latestChildren = childElementsOf(latest);
+        Set<String> names = new LinkedHashSet<String>(latestChildren.keySet());
+        names.addAll(previousChildren.keySet());
+        for (String name : names) {
+            List<Node> previousList = listOf(previousChildren, name);
+            List<Node> latestList = listOf(latestChildren, name);
+            boolean indexed = previousList.size() > 1 || latestList.size() > 1;
+            int count = Math.max(previousList.size(), latestList.size());
+            for (int i = 0; i < count; i++) {
+                String childPath = path + "/" + name + (indexed ? "[" + (i + 1) + "]" : "");
+                if (i >= previousList.size()) {
+                    diff.added(childPath);
+                } else if (i >= latestList.size()) {
+                    diff.removed(childPath);
+                } else {
+                    diffElement(previousList.get(i), previousHashes, latestList.get(i), latestHashes, childPath, diff);
+                }
+            }
+        }
+    }
+
+    private static Node rootOf(Node node) {
+        if (node instanceof Document) {
+            return ((Document) node).getDocumentElement();
+        }
+        return node;
+    }
+
+    private static Map<String, String> attributesOf(Node element) {
+        NamedNodeMap attributes = element.getAttributes();
+        if (attributes == null
+                || attributes.getLength() == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            map.put(attribute.getNodeName(), attribute.getNodeValue());
+        }
+        return map;
+    }
+
+    private static Map<String, List<Node>> childElementsOf(Node element) {
+        Map<String, List<Node>> children = new LinkedHashMap<String, List<Node>>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                List<Node> list = children.get(child.getNodeName());
+                if (list == null) {
+                    list = new ArrayList<Node>(1);
+                    children.put(child.getNodeName(), list);
+                }
+                list.add(child);
+            }
+        }
+        return children;
+    }
+
+    private static List<Node> listOf(Map<String, List<Node>> children, String name) {
+        List<Node> list = children.get(name);
+        return (list == null ? Collections.<Node>emptyList() : list);
+    }
+}
@@ -35,6 +35,11 @@ public class DefaultNamespaceContext implements NamespaceContext, NamespaceAware
     
     private final Map<String, List<String>> namespaceToPrefix;
     
+    /**
+     * Incremented each time a new namespace is registered, allowing derived state to be invalidated.
+     */
+    private volatile int version;
+    
     public DefaultNamespaceContext(String... prefixToNamespacePairs) {
         this.prefixToNamespace = new HashMap<String, String>();
         this.namespaceToPrefix = new HashMap<String, List<String>>();
@@ -96,6 +101,7 @@ public class DefaultNamespaceContext implements NamespaceContext, NamespaceAware
             this.namespaceToPrefix.put(uri, new ArrayList<String>());
         }
         this.namespaceToPrefix.get(uri).add(prefix);
+        this.version++;
     }
 
     /* (non-Javadoc)
@@ -127,4 +133,12 @@ public class DefaultNamespaceContext implements NamespaceContext, NamespaceAware
     public boolean hasNamespaces() {
         return !prefixToNamespace.isEmpty();
     }
+    
+    /**
+     * The version of this context which will change each time a new namespace is registered.
+     * @return the current version
+     */
+    public int getVersion() {
+        return version;
+    }
 }
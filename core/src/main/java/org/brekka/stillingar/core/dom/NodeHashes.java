@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.dom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The 64 bit hash of each element subtree of a document, covering the element name, its attributes, its own text
+ * and the hashes of its child elements, but not comments or whitespace. Computed for the whole document on first use
+ * then kept, so that a diff against another document only needs to descend into the subtrees whose hashes differ.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class NodeHashes {
+
+    /**
+     * FNV-1a offset basis
+     */
+    private static final long OFFSET = 0xcbf29ce484222325L;
+
+    /**
+     * FNV-1a prime
+     */
+    private static final long PRIME = 0x100000001b3L;
+
+    /**
+     * The hash of each element visited so far
+     */
+    private final Map<Node, Long> hashes = new IdentityHashMap<Node, Long>();
+
+    /**
+     * @param element
+     *            an element of the document
+     * @return the hash of the subtree of the element
+     */
+    public synchronized long hashOf(Node element) {
+        Long hash = hashes.get(element);
+        if (hash == null) {
+            hash = Long.valueOf(compute(element));
+        }
+        return hash.longValue();
+    }
+
+    private long compute(Node element) {
+        long hash = mix(OFFSET, element.getNodeName());
+        NamedNodeMap attributes = element.getAttributes();
+        if (attributes != null) {
+            List<String> pairs = new ArrayList<String>(attributes.getLength());
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node attribute = attributes.item(i);
+                pairs.add(attribute.getNodeName() + "=" + attribute.getNodeValue());
+            }
+            Collections.sort(pairs);
+            for (String pair : pairs) {
+                hash = mix(hash, pair);
+            }
+        }
+        hash = mix(hash, DOMDiff.textOf(element));
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                long childHash = compute(child);
+                hash = (hash ^ childHash) * PRIME;
+            }
+        }
+        hashes.put(element, Long.valueOf(hash));
+        return hash;
+    }
+
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * PRIME;
+        }
+        // Separator, so that adjacent values cannot run together
+        return (hash ^ 0xffff) * PRIME;
+    }
+}
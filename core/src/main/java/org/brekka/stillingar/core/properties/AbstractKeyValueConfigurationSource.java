@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.properties;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.ScopeableConfigurationSource;
+import org.brekka.stillingar.core.conversion.ConversionManager;
+
+/**
+ * Base for sources whose values are strings looked up by key, such as properties. Lookups by type alone are not
+ * supported. Values are converted to the requested type by the {@link ConversionManager}, a list is made up of the
+ * values of the key itself or <code>key.0</code>, followed by <code>key.1</code>, <code>key.2</code> and so on, and
+ * scoping is by key prefix, so the scope <code>services.payment</code> will resolve the key <code>timeout</code> as
+ * <code>services.payment.timeout</code>.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public abstract class AbstractKeyValueConfigurationSource implements ScopeableConfigurationSource {
+
+    /**
+     * The conversion manager
+     */
+    protected final ConversionManager conversionManager;
+
+    /**
+     * Prefix that will be applied to all keys, including the trailing separator. Empty when not scoped.
+     */
+    protected final String keyPrefix;
+
+    /**
+     * @param conversionManager
+     *            the conversion manager
+     * @param keyPrefix
+     *            prefix that will be applied to all keys, including the trailing separator. Empty when not scoped.
+     */
+    protected AbstractKeyValueConfigurationSource(ConversionManager conversionManager, String keyPrefix) {
+        this.conversionManager = conversionManager;
+        this.keyPrefix = keyPrefix;
+    }
+
+    /**
+     * @param key
+     *            the full key, including any prefix.
+     * @return the value or null if there is no such key.
+     */
+    protected abstract String valueOf(String key);
+
+    /**
+     * @return every full key, whatever the prefix.
+     */
+    protected abstract Iterable<?> allKeys();
+
+    /**
+     * @param prefix
+     *            the prefix for the new source, including the trailing separator.
+     * @return a source over the same values with the prefix applied to all keys.
+     */
+    protected abstract ConfigurationSource withPrefix(String prefix);
+
+    /**
+     * Scope this source to the keys that start with the specified expression followed by a dot.
+     */
+    @Override
+    public ConfigurationSource scope(String expression) {
+        String prefix = keyPrefix + expression + ".";
+        for (Object key : allKeys()) {
+            if (key.toString().startsWith(prefix)) {
+                return withPrefix(prefix);
+            }
+        }
+        return null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.String)
+     */
+    @Override
+    public boolean isAvailable(String key) {
+        return valueOf(keyPrefix + key) != null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.Class)
+     */
+    @Override
+    public boolean isAvailable(Class<?> valueType) {
+        throw new ValueConfigurationException(format(
+                "A %s does not support lookup by type.", getClass().getSimpleName()), null, null);
+    }
+
+    /**
+     * NOT supported. Always throws {@link ValueConfigurationException}.
+     */
+    @Override
+    public <T> T retrieve(Class<T> valueType) {
+        throw new ValueConfigurationException(format(
+                "A key must be specified when using a %s", getClass().getSimpleName()), null, null);
+    }
+
+    /**
+     * Retrieve the value that corresponds to <code>key</code>, converted to the value type.
+     * 
+     * @param key
+     *            the key of the value to return.
+     * @param valueType
+     *            can be any type supported by the conversion manager.
+     */
+    @Override
+    public <T> T retrieve(String key, Class<T> valueType) {
+        return resolve(valueType, valueOf(keyPrefix + key), key);
+    }
+
+    /**
+     * NOT supported. Always throws {@link ValueConfigurationException}.
+     */
+    @Override
+    public <T> List<T> retrieveList(Class<T> valueType) {
+        throw new ValueConfigurationException(format(
+                "A key must be specified when using a %s", getClass().getSimpleName()), null, null);
+    }
+
+    /**
+     * Retrieve the list of values that are defined by the indexed <code>key</code>, converted to the value type.
+     * 
+     * @param expression
+     *            the key of the values to return.
+     * @param valueType
+     *            can be any type supported by the conversion manager.
+     */
+    @Override
+    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
+        List<T> valueList = new ArrayList<T>();
+        String key = keyPrefix + expression;
+        String value = valueOf(key);
+        if (value == null) {
+            value = valueOf(key + ".0");
+        }
+        int index = 1;
+        while (value != null) {
+            valueList.add(resolve(valueType, value, expression));
+            value = valueOf(key + "." + (index++));
+        }
+        return valueList;
+    }
+
+    /**
+     * Perform type conversion.
+     * 
+     * @param valueType
+     *            the type to convert to
+     * @param value
+     *            the value (can be null).
+     * @param key
+     *            the key of the value, for error reporting.
+     * @return the converted value, or null if there is no value.
+     */
+    protected <T> T resolve(Class<T> valueType, String value, String key) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return conversionManager.convert(value, valueType);
+        } catch (IllegalArgumentException e) {
+            throw new ValueConfigurationException(format("Type conversion"), valueType, key, e);
+        }
+    }
+}
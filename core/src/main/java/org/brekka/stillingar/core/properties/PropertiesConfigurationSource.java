@@ -16,17 +16,17 @@
 
 package org.brekka.stillingar.core.properties;
 
-import static java.lang.String.format;
-
 import java.beans.PropertyEditorManager;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
 
-import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
-import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.KeyedConfigurationSource;
 import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.diff.DiffableConfigurationSource;
+import org.brekka.stillingar.core.diff.SnapshotDiff;
 
 /**
  * A {@link ConfigurationSource} implementation that is backed by a {@link Properties} instance. The nature of
@@ -36,22 +36,19 @@ import org.brekka.stillingar.core.conversion.ConversionManager;
  * The valueType used in combination with the expression does not have to be just {@link String}, anything registered
  * with the {@link PropertyEditorManager} will be resolvable.
  * 
+ * Scoping is supported by key prefix, so the scope <code>services.payment</code> will resolve the key
+ * <code>timeout</code> as <code>services.payment.timeout</code>.
+ * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
-public class PropertiesConfigurationSource implements ConfigurationSource {
+public class PropertiesConfigurationSource extends AbstractKeyValueConfigurationSource implements
+        KeyedConfigurationSource, DiffableConfigurationSource {
 
     /**
      * The properties from which configuration values will be resolved.
      */
     private final Properties properties;
     
-    /**
-     * The conversion manager
-     */
-    private final ConversionManager conversionManager;
-    
-    
-    
     /**
      * @param properties
      */
@@ -64,104 +61,98 @@ public class PropertiesConfigurationSource implements ConfigurationSource {
      *            The properties from which configuration values will be resolved.
      */
     public PropertiesConfigurationSource(Properties properties, ConversionManager conversionManager) {
-        this.properties = properties;
-        this.conversionManager = conversionManager;
+        this(properties, conversionManager, "");
     }
     
     /**
-     * Does the specified properties contain this key?
+     * @param properties
+     *            The properties from which configuration values will be resolved.
+     * @param keyPrefix
+     *            Prefix that will be applied to all keys.
      */
-    @Override
-    public boolean isAvailable(String key) {
-        return properties.containsKey(key);
+    private PropertiesConfigurationSource(Properties properties, ConversionManager conversionManager, String keyPrefix) {
+        super(conversionManager, keyPrefix);
+        this.properties = properties;
     }
     
     /* (non-Javadoc)
-     * @see org.brekka.stillingar.core.ConfigurationSource#isAvailable(java.lang.Class)
+     * @see org.brekka.stillingar.core.properties.AbstractKeyValueConfigurationSource#valueOf(java.lang.String)
      */
     @Override
-    public boolean isAvailable(Class<?> valueType) {
-        throw new ValueConfigurationException(
-                "A Properties configuration source does not support lookup by type.", null, null);
+    protected String valueOf(String key) {
+        return properties.getProperty(key);
     }
 
-    /**
-     * NOT supported. Always throws {@link ConfigurationException}.
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.properties.AbstractKeyValueConfigurationSource#allKeys()
      */
     @Override
-    public <T> T retrieve(Class<T> valueType) {
-        throw new ValueConfigurationException(
-                "A property key must be specified when using Properties", null, null);
+    protected Iterable<?> allKeys() {
+        return properties.keySet();
     }
 
-    /**
-     * Retrieve the property value that corresponds to <code>key</code>. The valueType can be any type supported by
-     * {@link PropertyEditorManager}.
-     * 
-     * @param key
-     *            the properties key of the value to return.
-     * @param valueType
-     *            can be any type supported by the {@link PropertyEditorManager}.
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.properties.AbstractKeyValueConfigurationSource#withPrefix(java.lang.String)
      */
     @Override
-    public <T> T retrieve(String key, Class<T> valueType) {
-        String value = properties.getProperty(key);
-        return resolve(valueType, value, key);
+    protected ConfigurationSource withPrefix(String prefix) {
+        return new PropertiesConfigurationSource(properties, conversionManager, prefix);
     }
-
+    
     /**
-     * NOT supported. Always throws {@link ConfigurationException}.
+     * The property names that start with the scope prefix, with the prefix removed.
      */
     @Override
-    public <T> List<T> retrieveList(Class<T> valueType) {
-        throw new ValueConfigurationException(
-                "A property key must be specified when using Properties", null, null);
+    public Set<String> getKeys() {
+        Set<String> keys = new HashSet<String>();
+        for (Object key : properties.keySet()) {
+            String name = key.toString();
+            if (name.startsWith(keyPrefix)) {
+                keys.add(name.substring(keyPrefix.length()));
+            }
+        }
+        return keys;
     }
-
+    
     /**
-     * Retrieve the list of values that are defined by the indexed <code>key</code>. The valueType can be any type
-     * supported by {@link PropertyEditorManager}.
-     * 
-     * @param key
-     *            the properties key of the value to return.
-     * @param valueType
-     *            can be any type supported by the {@link PropertyEditorManager}.
+     * Compares the keys of sources with the same scope, the paths being the keys with the prefix removed.
      */
     @Override
-    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
-        List<T> valueList = new ArrayList<T>();
-        String value = properties.getProperty(expression);
-        if (value == null) {
-            value = properties.getProperty(expression + ".0");
+    public boolean diff(ConfigurationSource previous, SnapshotDiff.Builder diff) {
+        if (!(previous instanceof PropertiesConfigurationSource)) {
+            return false;
+        }
+        PropertiesConfigurationSource other = (PropertiesConfigurationSource) previous;
+        if (!keyPrefix.equals(other.keyPrefix)) {
+            return false;
+        }
+        for (Entry<Object, Object> entry : properties.entrySet()) {
+            String name = entry.getKey().toString();
+            if (!name.startsWith(keyPrefix)) {
+                continue;
+            }
+            Object previousValue = other.properties.get(entry.getKey());
+            if (previousValue == null) {
+                diff.added(name.substring(keyPrefix.length()));
+            } else if (!previousValue.equals(entry.getValue())) {
+                diff.changed(name.substring(keyPrefix.length()));
+            }
         }
-        int index = 1;
-        while (value != null) {
-            valueList.add(resolve(valueType, value, expression));
-            value = properties.getProperty(expression + "." + (index++));
+        for (Object key : other.properties.keySet()) {
+            String name = key.toString();
+            if (name.startsWith(keyPrefix)
+                    && !properties.containsKey(key)) {
+                diff.removed(name.substring(keyPrefix.length()));
+            }
         }
-        return valueList;
+        return true;
     }
-
+    
     /**
-     * Perform type conversion.
-     * 
-     * @param valueType
-     * @param value
-     * @param key
-     * @return
+     * Does the specified properties contain this key?
      */
-    protected <T> T resolve(Class<T> valueType, String value, String key) {
-        T retVal;
-        if (value != null) {
-            try {
-                retVal = conversionManager.convert(value, valueType);
-            } catch (IllegalArgumentException e) {
-                throw new ValueConfigurationException(format(
-                        "Type conversion", key), valueType, key, e);
-            }
-        } else {
-            retVal = null;
-        }
-        return retVal;
+    @Override
+    public boolean isAvailable(String key) {
+        return properties.containsKey(keyPrefix + key);
     }
 }
@@ -6,6 +6,7 @@ package org.brekka.stillingar.core.properties;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.List;
@@ -13,7 +14,7 @@ import java.util.Properties;
 
 import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
-import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.ByteBufferConfigurationSourceLoader;
 import org.brekka.stillingar.core.conversion.BigDecimalConverter;
 import org.brekka.stillingar.core.conversion.BigIntegerConverter;
 import org.brekka.stillingar.core.conversion.BooleanConverter;
@@ -32,15 +33,19 @@ import org.brekka.stillingar.core.conversion.URIConverter;
 import org.brekka.stillingar.core.conversion.UUIDConverter;
 import org.brekka.stillingar.core.conversion.xml.DocumentConverter;
 import org.brekka.stillingar.core.conversion.xml.ElementConverter;
+import org.brekka.stillingar.core.support.ByteBufferInputStream;
 
 /**
  * Properties based configuration loader.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
-public class PropertiesConfigurationSourceLoader implements ConfigurationSourceLoader {
+public class PropertiesConfigurationSourceLoader implements ByteBufferConfigurationSourceLoader {
 
-    static final List<TypeConverter<?>> CONVERTERS = Arrays.<TypeConverter<?>> asList(
+    /**
+     * The converters for values held as strings, also used by other string based sources.
+     */
+    public static final List<TypeConverter<?>> CONVERTERS = Arrays.<TypeConverter<?>> asList(
             new BigDecimalConverter(), new BigIntegerConverter(), new BooleanConverter(), new ByteConverter(),
             new DoubleConverter(), new FloatConverter(), new IntegerConverter(), new LongConverter(), 
             new ShortConverter(), new StringConverter(), new URIConverter(), new ElementConverter(), 
@@ -65,7 +70,17 @@ public class PropertiesConfigurationSourceLoader implements ConfigurationSourceL
     public PropertiesConfigurationSourceLoader(ConversionManager conversionManager) {
         this.conversionManager = conversionManager;
     }
-    
+
+    /**
+     * Create a conversion manager with the converters used for properties, which suit any source whose values are
+     * strings or boxed primitives.
+     *
+     * @return the new conversion manager
+     */
+    public static ConversionManager newConversionManager() {
+        return new ConversionManager(CONVERTERS);
+    }
+
 
     /* (non-Javadoc)
      * @see org.brekka.stillingar.core.ConfigurationSourceLoader#parse(java.io.InputStream, java.nio.charset.Charset)
@@ -81,4 +96,15 @@ public class PropertiesConfigurationSourceLoader implements ConfigurationSourceL
         }
         return new PropertiesConfigurationSource(props, conversionManager);
     }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.ByteBufferConfigurationSourceLoader#parse(java.nio.ByteBuffer, java.nio.charset.Charset)
+     */
+    @Override
+    public ConfigurationSource parse(ByteBuffer buffer, Charset encoding) throws ConfigurationException, IOException {
+        if (buffer == null) {
+            throw new IllegalArgumentException("null passed for buffer");
+        }
+        return parse(new ByteBufferInputStream(buffer), encoding);
+    }
 }
@@ -17,6 +17,7 @@
 package org.brekka.stillingar.core.snapshot;
 
 import java.io.PrintWriter;
+import java.net.URI;
 import java.util.List;
 import java.util.Set;
 
@@ -182,6 +183,19 @@ public class ConsoleSnapshotEventHandler implements SnapshotEventHandler {
         this.err.printf("Failed to update configuration for '%s' from snapshot%n", applicationName);
         e.printStackTrace(this.err);
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.brekka.stillingar.core.snapshot.SnapshotEventHandler#unchangedSnapshot(java.net.URI)
+     */
+    @Override
+    public void unchangedSnapshot(URI location) {
+        if (!enabled) {
+            return;
+        }
+        this.out.printf("Snapshot for '%s' at '%s' is unchanged, reload skipped%n", applicationName, location);
+    }
     
     /**
      * Write a summary of the information contained within NoSnapshotAvailableException, to the specified print writer.
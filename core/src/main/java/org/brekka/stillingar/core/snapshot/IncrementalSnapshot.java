@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.snapshot;
+
+import org.brekka.stillingar.core.delta.AffectedExpressions;
+
+/**
+ * A snapshot loaded as changes to an earlier snapshot, its base, which knows what those changes affect. When the
+ * base is the snapshot currently applied, only the groups using affected expressions are refreshed.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface IncrementalSnapshot extends Snapshot, AffectedExpressions {
+
+    /**
+     * @return the snapshot this one was loaded as changes to, null if it was loaded in full.
+     */
+    Snapshot getBase();
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.snapshot;
+
+import java.util.Set;
+
+/**
+ * A {@link SnapshotManager} that is able to restrict the snapshots it loads to the parts of the configuration that
+ * are actually referenced. The {@link SnapshotBasedConfigurationService} will inform the manager of the expressions
+ * registered with it prior to each request for an updated snapshot.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface ProjectableSnapshotManager extends SnapshotManager {
+
+    /**
+     * Set the expressions that snapshots loaded from now on must be able to resolve. It is up to the manager whether
+     * the projection is actually applied.
+     *
+     * @param expressions
+     *            the expressions, or null if the whole configuration is required.
+     */
+    void project(Set<String> expressions);
+}
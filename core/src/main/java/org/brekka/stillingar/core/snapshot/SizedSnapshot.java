@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.snapshot;
+
+/**
+ * A snapshot that knows how much content was parsed to produce it, used by {@link SnapshotHistory} to estimate the
+ * memory it holds.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface SizedSnapshot extends Snapshot {
+
+    /**
+     * @return the number of bytes parsed to produce this snapshot, not counting anything shared with the snapshot it
+     *         was loaded as changes to, or -1 if not known.
+     */
+    long getContentLength();
+}
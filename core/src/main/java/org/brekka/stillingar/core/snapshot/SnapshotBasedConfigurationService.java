@@ -21,7 +21,10 @@ import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.core.ChangeConfigurationException;
 import org.brekka.stillingar.core.ConfigurationService;
 import org.brekka.stillingar.core.FallbackConfigurationSource;
+import org.brekka.stillingar.core.delta.AffectedExpressions;
 import org.brekka.stillingar.core.delta.DeltaConfigurationService;
+import org.brekka.stillingar.core.diff.SnapshotDiffListener;
+import org.brekka.stillingar.core.diff.SnapshotDiffProducer;
 
 /**
  * Snapshot based implementation of {@link ConfigurationService} which provides atomic updates to group
@@ -30,7 +33,16 @@ import org.brekka.stillingar.core.delta.DeltaConfigurationService;
  * Implements {@link ConfigurationService} to support refreshing the configuration based new snapshots obtained
  * via the {@link SnapshotManager}. During a reload, standalone values will be updated first, then the groups. All will
  * be performed in the order they were registered.
- * 
+ *
+ * Where the manager is a {@link ProjectableSnapshotManager}, it is passed the currently registered expressions before
+ * each update so that it can avoid loading the parts of the configuration that nothing refers to.
+ *
+ * With a {@link SnapshotHistory}, each accepted snapshot is retained so that the configuration can be rolled back to
+ * it (see {@link #rollback(Snapshot, boolean)}) without loading it again. While pinned, changes are ignored.
+ *
+ * Listeners added via {@link #addDiffListener(SnapshotDiffListener)} are told which paths differ each time a new
+ * snapshot is applied.
+ *
  * @author Andrew Taylor (andrew@brekka.org)
  */
 public class SnapshotBasedConfigurationService extends DeltaConfigurationService {
@@ -55,6 +67,21 @@ public class SnapshotBasedConfigurationService extends DeltaConfigurationService
 	 * The current snapshot, used for error reporting.
 	 */
 	private Snapshot currentSnapshot;
+	
+	/**
+	 * Retains accepted snapshots for rollback (can be null).
+	 */
+	private SnapshotHistory snapshotHistory;
+	
+	/**
+	 * While true, changes are ignored.
+	 */
+	private volatile boolean pinned;
+	
+	/**
+	 * Publishes the differences between the snapshots applied.
+	 */
+	private final SnapshotDiffProducer diffProducer = new SnapshotDiffProducer();
 
 	
     /**
@@ -121,6 +148,7 @@ public class SnapshotBasedConfigurationService extends DeltaConfigurationService
 	    } 
 	    try {
 	        refresh(initialSource);
+	        retain(initial);
 	        snapshotEventHandler.initialConfigure(initial, null);
 	    } catch (ChangeConfigurationException e) {
 	        snapshotManager.reject(initial);
@@ -138,7 +166,13 @@ public class SnapshotBasedConfigurationService extends DeltaConfigurationService
     /**
      * Request that the configuration be updated to a new snapshot
      */
-    public void refresh() {
+    public synchronized void refresh() {
+        if (pinned) {
+            return;
+        }
+        if (snapshotManager instanceof ProjectableSnapshotManager) {
+            ((ProjectableSnapshotManager) snapshotManager).project(getRegisteredExpressions());
+        }
         Snapshot updated = null;
         try {
             updated = snapshotManager.retrieveUpdated();
@@ -149,9 +183,12 @@ public class SnapshotBasedConfigurationService extends DeltaConfigurationService
         if (updated != null) {
             // Configuration has changed, trigger a refresh
             try {
-                refresh(updated.getSource());
+                refresh(updated.getSource(), affectedBy(updated));
                 snapshotEventHandler.refreshConfigure(updated, null);
+                Snapshot previous = this.currentSnapshot;
                 this.currentSnapshot = updated;
+                retain(updated);
+                diffProducer.publish(previous, updated);
             } catch (ChangeConfigurationException e) {
                 snapshotManager.reject(updated);
                 snapshotEventHandler.refreshConfigure(updated, e);
@@ -159,6 +196,118 @@ public class SnapshotBasedConfigurationService extends DeltaConfigurationService
         }
     }
     
+    /**
+     * Apply a snapshot retained by the history (or one obtained earlier from the snapshot manager) through the normal
+     * two-phase refresh, without loading anything. Unless pinned, it remains in place until the snapshot manager
+     * next finds a change. Should the refresh fail, the current snapshot remains in place and nothing is rejected.
+     * 
+     * @param snapshot
+     *            the snapshot to apply
+     * @param pin
+     *            true to then ignore changes until unpinned, false to leave the pinned state unchanged.
+     * @throws ChangeConfigurationException
+     *             if the snapshot could not be applied.
+     */
+    public synchronized void rollback(Snapshot snapshot, boolean pin) throws ChangeConfigurationException {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("null passed for snapshot");
+        }
+        try {
+            refresh(snapshot.getSource());
+            snapshotEventHandler.refreshConfigure(snapshot, null);
+        } catch (ChangeConfigurationException e) {
+            snapshotEventHandler.refreshConfigure(snapshot, e);
+            throw e;
+        }
+        Snapshot previous = this.currentSnapshot;
+        this.currentSnapshot = snapshot;
+        diffProducer.publish(previous, snapshot);
+        if (pin) {
+            this.pinned = true;
+        }
+    }
+    
+    /**
+     * @return the snapshot currently applied, null if running on defaults only.
+     */
+    public Snapshot getCurrentSnapshot() {
+        return currentSnapshot;
+    }
+    
+    /**
+     * @return the history of accepted snapshots (can be null).
+     */
+    public SnapshotHistory getSnapshotHistory() {
+        return snapshotHistory;
+    }
+    
+    /**
+     * @param snapshotHistory
+     *            retains accepted snapshots for rollback (can be null).
+     */
+    public void setSnapshotHistory(SnapshotHistory snapshotHistory) {
+        this.snapshotHistory = snapshotHistory;
+        if (snapshotHistory != null
+                && currentSnapshot != null) {
+            snapshotHistory.add(currentSnapshot);
+        }
+    }
+    
+    /**
+     * @return true if changes are being ignored.
+     */
+    public boolean isPinned() {
+        return pinned;
+    }
+    
+    /**
+     * @param pinned
+     *            true to ignore changes, keeping the snapshot currently applied.
+     */
+    public void setPinned(boolean pinned) {
+        this.pinned = pinned;
+    }
+    
+    /**
+     * @param listener
+     *            to be told which paths differ each time a new snapshot is applied.
+     */
+    public void addDiffListener(SnapshotDiffListener listener) {
+        diffProducer.addListener(listener);
+    }
+    
+    /**
+     * @param listener
+     *            to no longer be told of differences
+     */
+    public void removeDiffListener(SnapshotDiffListener listener) {
+        diffProducer.removeListener(listener);
+    }
+    
+    private void retain(Snapshot snapshot) {
+        if (snapshotHistory != null
+                && snapshot != null) {
+            snapshotHistory.add(snapshot);
+        }
+    }
+    
+    /**
+     * Determine what the updated snapshot affects, which is only known when it was loaded as changes to the snapshot
+     * currently applied.
+     * 
+     * @return the affected expressions, or null if every group must be refreshed.
+     */
+    private AffectedExpressions affectedBy(Snapshot updated) {
+        if (updated instanceof IncrementalSnapshot) {
+            IncrementalSnapshot incremental = (IncrementalSnapshot) updated;
+            if (incremental.getBase() != null
+                    && incremental.getBase() == currentSnapshot) {
+                return incremental;
+            }
+        }
+        return null;
+    }
+    
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
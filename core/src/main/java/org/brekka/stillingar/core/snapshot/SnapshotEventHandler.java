@@ -3,6 +3,8 @@
  */
 package org.brekka.stillingar.core.snapshot;
 
+import java.net.URI;
+
 import org.brekka.stillingar.core.ChangeConfigurationException;
 
 /**
@@ -61,4 +63,13 @@ public interface SnapshotEventHandler {
      */
     void invalidSnapshotUpdate(InvalidSnapshotException e);
 
+    /**
+     * For when a change to the snapshot resource was detected, but its content turned out to be identical to that of
+     * the current snapshot. The resource will not have been parsed and no refresh will take place.
+     * 
+     * @param location
+     *            the location of the unchanged resource.
+     */
+    void unchangedSnapshot(URI location);
+
 }
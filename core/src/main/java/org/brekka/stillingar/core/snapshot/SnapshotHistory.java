@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retains the most recently accepted snapshots, already parsed, so that the configuration can be rolled back to any
+ * of them without loading anything. Held in a ring buffer bounded both by the number of snapshots and by their
+ * estimated size, evicting the oldest first. The newest snapshot is always retained, whatever its size. Each snapshot
+ * is given an id when retained, which stays the same while the history changes around it.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotHistory {
+
+    /**
+     * The retained snapshots, oldest at <code>head</code>.
+     */
+    private final Snapshot[] snapshots;
+
+    /**
+     * The estimated size of each retained snapshot, in the same positions.
+     */
+    private final long[] sizes;
+
+    /**
+     * The id of each retained snapshot, in the same positions.
+     */
+    private final long[] ids;
+
+    /**
+     * Estimated bytes beyond which the oldest snapshots are evicted, zero for no limit.
+     */
+    private final long maxBytes;
+
+    /**
+     * Position of the oldest snapshot
+     */
+    private int head;
+
+    /**
+     * Number of snapshots retained
+     */
+    private int count;
+
+    /**
+     * Estimated size of all retained snapshots
+     */
+    private long totalBytes;
+
+    /**
+     * The id for the next snapshot retained
+     */
+    private long nextId = 1;
+
+    /**
+     * @param maxSnapshots
+     *            the most snapshots to retain, at least one.
+     * @param maxBytes
+     *            estimated bytes beyond which the oldest snapshots are evicted, zero for no limit.
+     */
+    public SnapshotHistory(int maxSnapshots, long maxBytes) {
+        if (maxSnapshots < 1) {
+            throw new IllegalArgumentException("At least one snapshot must be retained");
+        }
+        this.snapshots = new Snapshot[maxSnapshots];
+        this.sizes = new long[maxSnapshots];
+        this.ids = new long[maxSnapshots];
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Retain a newly accepted snapshot, evicting the oldest as necessary. A snapshot that is already the newest is
+     * ignored.
+     *
+     * @param snapshot
+     *            the snapshot
+     */
+    public synchronized void add(Snapshot snapshot) {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("null passed for snapshot");
+        }
+        if (count > 0
+                && snapshots[position(count - 1)] == snapshot) {
+            return;
+        }
+        if (count == snapshots.length) {
+            evictOldest();
+        }
+        int position = position(count);
+        long size = estimateSize(snapshot);
+        snapshots[position] = snapshot;
+        sizes[position] = size;
+        ids[position] = nextId++;
+        totalBytes += size;
+        count++;
+        while (maxBytes > 0
+                && totalBytes > maxBytes
+                && count > 1) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * @return the retained snapshots, newest first.
+     */
+    public synchronized List<Snapshot> getSnapshots() {
+        List<Snapshot> list = new ArrayList<Snapshot>(count);
+        for (int i = count - 1; i >= 0; i--) {
+            list.add(snapshots[position(i)]);
+        }
+        return list;
+    }
+
+    /**
+     * @return the ids of the retained snapshots, newest first, in the same order as {@link #getSnapshots()}.
+     */
+    public synchronized long[] getIds() {
+        long[] list = new long[count];
+        for (int i = count - 1; i >= 0; i--) {
+            list[count - 1 - i] = ids[position(i)];
+        }
+        return list;
+    }
+
+    /**
+     * @param id
+     *            the id given to the snapshot when it was retained
+     * @return the snapshot, or null if it is not (or no longer) retained.
+     */
+    public synchronized Snapshot getSnapshot(long id) {
+        for (int i = 0; i < count; i++) {
+            int position = position(i);
+            if (ids[position] == id) {
+                return snapshots[position];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the estimated size of all retained snapshots.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Estimate the memory held by the parsed snapshot, which by default is the length of the content it reports as
+     * parsed (see {@link SizedSnapshot}). Snapshots that do not report it count as zero. Override for a better
+     * estimate of a particular kind of snapshot.
+     *
+     * @param snapshot
+     *            the snapshot
+     * @return the estimated size in bytes
+     */
+    protected long estimateSize(Snapshot snapshot) {
+        if (snapshot instanceof SizedSnapshot) {
+            return Math.max(0, ((SizedSnapshot) snapshot).getContentLength());
+        }
+        return 0;
+    }
+
+    private void evictOldest() {
+        totalBytes -= sizes[head];
+        snapshots[head] = null;
+        sizes[head] = 0;
+        ids[head] = 0;
+        head = (head + 1) % snapshots.length;
+        count--;
+    }
+
+    private int position(int index) {
+        return (head + index) % snapshots.length;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.snapshot;
+
+import static java.lang.String.format;
+
+import java.util.List;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.core.ChangeConfigurationException;
+
+/**
+ * Exposes the snapshot history of a {@link SnapshotBasedConfigurationService} for management, such as via JMX.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotHistoryControl implements SnapshotHistoryControlMBean {
+
+    /**
+     * The service being managed
+     */
+    private final SnapshotBasedConfigurationService configurationService;
+
+    /**
+     * @param configurationService
+     *            the service being managed, which must have a snapshot history.
+     */
+    public SnapshotHistoryControl(SnapshotBasedConfigurationService configurationService) {
+        if (configurationService == null) {
+            throw new IllegalArgumentException("null passed for configurationService");
+        }
+        this.configurationService = configurationService;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotHistoryControlMBean#getSnapshots()
+     */
+    @Override
+    public String[] getSnapshots() {
+        SnapshotHistory history = history();
+        List<Snapshot> snapshots;
+        long[] ids;
+        synchronized (history) {
+            snapshots = history.getSnapshots();
+            ids = history.getIds();
+        }
+        String[] descriptions = new String[snapshots.size()];
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i] = format("#%d %s", ids[i], describe(snapshots.get(i)));
+        }
+        return descriptions;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotHistoryControlMBean#getCurrentSnapshot()
+     */
+    @Override
+    public String getCurrentSnapshot() {
+        Snapshot current = configurationService.getCurrentSnapshot();
+        return (current == null ? null : describe(current));
+    }
+
+    /**
+     * The snapshot is identified by id, so the target cannot shift should a new snapshot be retained in the meantime.
+     * The service reports the outcome to its event handler, failures are also returned to the caller.
+     */
+    @Override
+    public void rollback(long id, boolean pin) {
+        Snapshot snapshot = history().getSnapshot(id);
+        if (snapshot == null) {
+            throw new IllegalArgumentException(format("No snapshot is retained with id %d", id));
+        }
+        try {
+            configurationService.rollback(snapshot, pin);
+        } catch (ChangeConfigurationException e) {
+            // Not all exception types will be known to a remote client
+            throw new ConfigurationException(format("Rollback failed: %s", e.getMessage()));
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotHistoryControlMBean#pin()
+     */
+    @Override
+    public void pin() {
+        configurationService.setPinned(true);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotHistoryControlMBean#unpin()
+     */
+    @Override
+    public void unpin() {
+        configurationService.setPinned(false);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotHistoryControlMBean#isPinned()
+     */
+    @Override
+    public boolean isPinned() {
+        return configurationService.isPinned();
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotHistoryControlMBean#getRetainedBytes()
+     */
+    @Override
+    public long getRetainedBytes() {
+        return history().getTotalBytes();
+    }
+
+    private SnapshotHistory history() {
+        SnapshotHistory history = configurationService.getSnapshotHistory();
+        if (history == null) {
+            throw new IllegalStateException("The configuration service does not retain a snapshot history");
+        }
+        return history;
+    }
+
+    private static String describe(Snapshot snapshot) {
+        return format("%s modified '%TF %<TT'", snapshot.getLocation(), snapshot.getTimestamp());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.snapshot;
+
+/**
+ * Management interface for rolling back to a retained snapshot, for exposure via JMX.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface SnapshotHistoryControlMBean {
+
+    /**
+     * @return a description of each retained snapshot, newest first, starting with the id to roll back to.
+     */
+    String[] getSnapshots();
+
+    /**
+     * @return a description of the snapshot currently applied.
+     */
+    String getCurrentSnapshot();
+
+    /**
+     * Roll back to a retained snapshot.
+     *
+     * @param id
+     *            the id of the snapshot, as shown by {@link #getSnapshots()}.
+     * @param pin
+     *            true to ignore subsequent changes until unpinned.
+     */
+    void rollback(long id, boolean pin);
+
+    /**
+     * Ignore changes, keeping the snapshot currently applied.
+     */
+    void pin();
+
+    /**
+     * Resume applying changes
+     */
+    void unpin();
+
+    /**
+     * @return true if changes are being ignored.
+     */
+    boolean isPinned();
+
+    /**
+     * @return the estimated size in bytes of the retained snapshots.
+     */
+    long getRetainedBytes();
+}
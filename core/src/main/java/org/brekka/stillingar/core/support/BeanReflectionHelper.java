@@ -18,31 +18,95 @@ package org.brekka.stillingar.core.support;
 
 import static java.lang.String.format;
 
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.brekka.stillingar.api.ValueConfigurationException;
 
 /**
  * Use reflection to find instances of a given type on the specified bean.
+ * 
+ * The fields to traverse for each class are identified once and then cached for all helpers of the same type, so the
+ * {@link #acceptClass(Class)} and {@link #acceptField(Field)} filters should only depend on the class/field passed to
+ * them. When the bean will not change (as is the case for configuration snapshots), the helper can be created as
+ * <code>indexed</code>, in which case the whole bean property tree is traversed once on first use to build an index of
+ * the instances of each class. Subsequent lookups are then a map probe.
  *
  * @author Andrew Taylor
  */
 public class BeanReflectionHelper {
+    
+    /**
+     * The plans for each class, keyed on the type of helper that produced them (as the filters may differ). Both
+     * levels are weakly keyed. A plan holds the {@link Field}s of its class, which keep the class (and so its
+     * classloader) reachable, so plans are only softly referenced: an unused classloader is held by this cache until
+     * memory runs short, when the soft references are cleared, rather than indefinitely.
+     */
+    private static final Map<Class<?>, Map<Class<?>, Reference<ClassPlan>>> PLANS = 
+            new WeakHashMap<Class<?>, Map<Class<?>, Reference<ClassPlan>>>();
+    
     protected final Object bean;
+    
+    /**
+     * Whether to build an index of the instances found within the bean.
+     */
+    private final boolean indexed;
+    
+    /**
+     * The plans for this type of helper.
+     */
+    private final Map<Class<?>, Reference<ClassPlan>> plans;
+
+    /**
+     * The plans used by this helper, so that the shared {@link #plans} (and its lock) are only consulted the first
+     * time each class is seen. Lives as long as the helper, which holds the bean anyway.
+     */
+    private final ConcurrentMap<Class<?>, ClassPlan> localPlans = new ConcurrentHashMap<Class<?>, ClassPlan>();
+    
+    /**
+     * Instances found within the bean keyed on their class, built on first use when indexed.
+     */
+    private volatile Map<Class<?>, List<Object>> index;
 
     /**
      * @param bean
      */
     public BeanReflectionHelper(Object bean) {
+        this(bean, false);
+    }
+    
+    /**
+     * @param bean
+     * @param indexed
+     *            if true, the bean property tree will be traversed once on first use to build an index of the instances
+     *            it contains. The bean must not be modified after that point.
+     */
+    public BeanReflectionHelper(Object bean, boolean indexed) {
         this.bean = bean;
+        this.indexed = indexed;
+        Map<Class<?>, Reference<ClassPlan>> plans;
+        synchronized (PLANS) {
+            plans = PLANS.get(getClass());
+            if (plans == null) {
+                plans = new WeakHashMap<Class<?>, Reference<ClassPlan>>();
+                PLANS.put(getClass(), plans);
+            }
+        }
+        this.plans = plans;
     }
 
     /**
@@ -53,6 +117,9 @@ public class BeanReflectionHelper {
      * @return true if at least one value is found
      */
     public boolean isAvailable(Class<?> lookingFor) {
+        if (indexed) {
+            return index(lookingFor).containsKey(lookingFor);
+        }
         Map<Object, Void> seen = new IdentityHashMap<Object, Void>();
         try {
             return collect(bean, lookingFor, seen, null);
@@ -74,8 +141,7 @@ public class BeanReflectionHelper {
      */
     public <T> T findValueOf(Class<T> valueType) {
         T retVal;
-        List<T> values = new ArrayList<T>();
-        collect(bean, valueType, values);
+        List<T> values = findListOf(valueType);
         if (values.size() == 0) {
             retVal = null;
         } else if (values.size() == 1) {
@@ -94,9 +160,20 @@ public class BeanReflectionHelper {
      *            the class to look for instances of.
      * @return the list of values found.
      */
+    @SuppressWarnings("unchecked")
     public <T> List<T> findListOf(Class<T> valueType) {
-        List<T> values = new ArrayList<T>();
-        collect(bean, valueType, values);
+        List<T> values;
+        if (indexed) {
+            List<Object> found = index(valueType).get(valueType);
+            if (found == null) {
+                values = new ArrayList<T>(0);
+            } else {
+                values = new ArrayList<T>((List<T>) found);
+            }
+        } else {
+            values = new ArrayList<T>();
+            collect(bean, valueType, values);
+        }
         return values;
     }
     
@@ -126,9 +203,8 @@ public class BeanReflectionHelper {
         if (current == null) {
             return false;
         }
-        if (current.getClass().isPrimitive() 
-                || current.getClass().isArray()
-                || current.getClass().getPackage().getName().startsWith("java")) {
+        ClassPlan plan = plan(current.getClass());
+        if (plan.ignored) {
             // Ignore primitives or any class in the Java namespace.
             return false;
         }
@@ -136,8 +212,7 @@ public class BeanReflectionHelper {
             return false;
         }
         
-        Class<? extends Object> currentClass = current.getClass();
-        if (currentClass == lookingFor) {
+        if (current.getClass() == lookingFor) {
             if (values != null) {
                 values.add((T) current);
             }
@@ -145,31 +220,23 @@ public class BeanReflectionHelper {
         }
         seen.put(current, null);
         
-        if (!acceptClass(currentClass)) {
+        if (plan.fields == null) {
             return false;
         }
 
-        Field[] declaredFields = current.getClass().getDeclaredFields();
         boolean found = false;
-        for (Field field : declaredFields) {
-            if (Modifier.isStatic(field.getModifiers())) {
-                continue;
-            }
-            if (!acceptField(field)) {
-                continue;
-            }
-            Object fieldValue = extractFieldValue(current, field);
+        for (FieldPlan field : plan.fields) {
+            Object fieldValue = extractFieldValue(current, field.field);
             if (fieldValue == null) {
                 continue;
             }
             
-            if (Collection.class.isAssignableFrom(field.getType())) {
+            if (field.collection) {
                 Collection<?> collection = (Collection<?>) fieldValue;
                 for (Object entry : collection) {
                     collect(entry, lookingFor, seen, values);
                 }
-            } else if (field.getType().isArray() 
-                    && !field.getType().getComponentType().isPrimitive()) {
+            } else if (field.array) {
                 Object[] arr = (Object[]) fieldValue;
                 for (Object entry : arr) {
                     collect(entry, lookingFor, seen, values);
@@ -184,6 +251,126 @@ public class BeanReflectionHelper {
         return found;
     }
     
+    /**
+     * Retrieve the index of instances, building it if necessary.
+     * 
+     * @param lookingFor
+     *            the type being looked for, used when reporting errors.
+     * @return the index
+     */
+    private Map<Class<?>, List<Object>> index(Class<?> lookingFor) {
+        Map<Class<?>, List<Object>> index = this.index;
+        if (index == null) {
+            index = new HashMap<Class<?>, List<Object>>();
+            try {
+                index(bean, new IdentityHashMap<Object, Void>(), new HashSet<Class<?>>(), index);
+            } catch (IllegalStateException e) {
+                throw new ValueConfigurationException(format(
+                        "Indexing the values under fields of the class '%s'", bean.getClass().getName()), 
+                        lookingFor, null, e);
+            }
+            this.index = index;
+        }
+        return index;
+    }
+    
+    /**
+     * Add <code>current</code> and everything beneath it to the index. Mirrors {@link #collect(Object, Class, Map, List)}
+     * in that instances nested beneath an instance of the same class are not included.
+     * 
+     * @param current
+     *            the object to index
+     * @param seen
+     *            the objects already visited
+     * @param enclosing
+     *            the classes of the objects enclosing <code>current</code>
+     * @param index
+     *            the index to add to
+     */
+    private void index(Object current, Map<Object, Void> seen, Set<Class<?>> enclosing, 
+            Map<Class<?>, List<Object>> index) {
+        if (current == null) {
+            return;
+        }
+        Class<?> currentClass = current.getClass();
+        ClassPlan plan = plan(currentClass);
+        if (plan.ignored
+                || seen.containsKey(current)) {
+            return;
+        }
+        seen.put(current, null);
+        
+        boolean outermost = enclosing.add(currentClass);
+        if (outermost) {
+            List<Object> list = index.get(currentClass);
+            if (list == null) {
+                list = new ArrayList<Object>(1);
+                index.put(currentClass, list);
+            }
+            list.add(current);
+        }
+        if (plan.fields != null) {
+            for (FieldPlan field : plan.fields) {
+                Object fieldValue = extractFieldValue(current, field.field);
+                if (fieldValue == null) {
+                    continue;
+                }
+                if (field.collection) {
+                    for (Object entry : (Collection<?>) fieldValue) {
+                        index(entry, seen, enclosing, index);
+                    }
+                } else if (field.array) {
+                    for (Object entry : (Object[]) fieldValue) {
+                        index(entry, seen, enclosing, index);
+                    }
+                } else {
+                    index(fieldValue, seen, enclosing, index);
+                }
+            }
+        }
+        if (outermost) {
+            enclosing.remove(currentClass);
+        }
+    }
+    
+    /**
+     * Retrieve the plan for the specified class, creating it if this is the first time the class has been seen by this
+     * type of helper.
+     * 
+     * @param type
+     * @return the plan
+     */
+    private ClassPlan plan(Class<?> type) {
+        ClassPlan plan = localPlans.get(type);
+        if (plan == null) {
+            plan = sharedPlan(type);
+            localPlans.put(type, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Retrieve the plan from those shared by this type of helper. The plan is built outside the lock, so two threads
+     * may both build the plan for a new class, in which case the last one wins.
+     * 
+     * @param type
+     * @return the plan
+     */
+    private ClassPlan sharedPlan(Class<?> type) {
+        Reference<ClassPlan> ref;
+        synchronized (plans) {
+            ref = plans.get(type);
+        }
+        ClassPlan plan = (ref != null ? ref.get() : null);
+        if (plan == null) {
+            plan = new ClassPlan(type, this);
+            synchronized (plans) {
+                plans.put(type, new SoftReference<ClassPlan>(plan));
+            }
+        }
+        return plan;
+    }
+    
     /**
      * @param current
      * @param field
@@ -202,4 +389,69 @@ public class BeanReflectionHelper {
         }
         return next;
     }
+    
+    /**
+     * How to traverse instances of a given class.
+     */
+    private static final class ClassPlan {
+        /**
+         * Primitives, arrays and classes in the Java namespace are not traversed or matched.
+         */
+        private final boolean ignored;
+        
+        /**
+         * The fields to traverse, null if the class is not accepted.
+         */
+        private final List<FieldPlan> fields;
+        
+        ClassPlan(Class<?> type, BeanReflectionHelper helper) {
+            this.ignored = type.isPrimitive() 
+                    || type.isArray()
+                    || type.getName().startsWith("java");
+            if (ignored
+                    || !helper.acceptClass(type)) {
+                this.fields = null;
+                return;
+            }
+            List<FieldPlan> fields = new ArrayList<FieldPlan>();
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                if (!helper.acceptField(field)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.add(new FieldPlan(field));
+            }
+            this.fields = Collections.unmodifiableList(fields);
+        }
+    }
+    
+    /**
+     * A field to traverse along with how its value should be handled.
+     */
+    private static final class FieldPlan {
+        /**
+         * The field, already made accessible.
+         */
+        private final Field field;
+        
+        /**
+         * The field holds a collection whose entries should be traversed.
+         */
+        private final boolean collection;
+        
+        /**
+         * The field holds an object array whose entries should be traversed.
+         */
+        private final boolean array;
+        
+        FieldPlan(Field field) {
+            this.field = field;
+            this.collection = Collection.class.isAssignableFrom(field.getType());
+            this.array = field.getType().isArray() 
+                    && !field.getType().getComponentType().isPrimitive();
+        }
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.support;
+
+import static java.lang.String.format;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.FallbackConfigurationSource;
+import org.brekka.stillingar.core.ScopeableConfigurationSource;
+
+/**
+ * Helper for resolving scoped configuration sources.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class ScopeSupport {
+
+    /**
+     * Non-instantiable
+     */
+    private ScopeSupport() {
+    }
+
+    /**
+     * Resolve the configuration source for the specified scope expression.
+     *
+     * @param source
+     *            the source to scope
+     * @param scope
+     *            the scope expression, if null then the source will be returned unchanged.
+     * @return the scoped source, or {@link FallbackConfigurationSource#NONE} if the scope expression did not select
+     *         anything.
+     * @throws ConfigurationException
+     *             if the source does not support scoping.
+     */
+    public static ConfigurationSource resolve(ConfigurationSource source, String scope) {
+        if (scope == null) {
+            return source;
+        }
+        if (source instanceof ScopeableConfigurationSource) {
+            ConfigurationSource scoped = ((ScopeableConfigurationSource) source).scope(scope);
+            if (scoped == null) {
+                return FallbackConfigurationSource.NONE;
+            }
+            return scoped;
+        }
+        throw new ConfigurationException(format(
+                "The configuration source '%s' does not support the scope '%s'", source, scope));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ValueConfigurationException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * CachedConfigurationSource Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CachedConfigurationSourceTest {
+
+    @Mock
+    private ScopeableConfigurationSource original;
+
+    @Mock
+    private ConfigurationSource originalScoped;
+
+    @Mock
+    private Callable<ConfigurationSource> fullLoader;
+
+    @Test
+    public void testRecordedValuesServed() throws Exception {
+        when(original.retrieve("a", String.class)).thenReturn("A");
+        when(original.retrieveList("b", Integer.class)).thenReturn(Arrays.asList(1, 2));
+        when(original.isAvailable("c")).thenReturn(false);
+        when(original.scope("d")).thenReturn(originalScoped);
+        when(originalScoped.retrieve("e", String.class)).thenReturn("E");
+
+        RecordingConfigurationSource recording = new RecordingConfigurationSource(original, new ResolvedValues());
+        recording.retrieve("a", String.class);
+        recording.retrieveList("b", Integer.class);
+        recording.isAvailable("c");
+        ((ScopeableConfigurationSource) recording.scope("d")).retrieve("e", String.class);
+
+        CachedConfigurationSource cached = new CachedConfigurationSource(roundTrip(recording.getValues()), fullLoader);
+        assertEquals("A", cached.retrieve("a", String.class));
+        assertEquals(Arrays.asList(1, 2), cached.retrieveList("b", Integer.class));
+        assertFalse(cached.isAvailable("c"));
+        assertEquals("E", ((ScopeableConfigurationSource) cached.scope("d")).retrieve("e", String.class));
+        assertFalse(cached.isFullSourceLoaded());
+        verifyZeroInteractions(fullLoader);
+    }
+
+    @Test
+    public void testFallbackToFullLoadIsRecorded() throws Exception {
+        ResolvedValues values = new ResolvedValues();
+        CachedConfigurationSource cached = new CachedConfigurationSource(values, fullLoader);
+        when(fullLoader.call()).thenReturn(original);
+        when(original.scope("d")).thenReturn(originalScoped);
+        when(originalScoped.retrieve("e", String.class)).thenReturn("E");
+
+        ConfigurationSource scoped = cached.scope("d");
+        assertEquals("E", scoped.retrieve("e", String.class));
+        assertEquals("E", scoped.retrieve("e", String.class));
+        assertTrue(cached.isFullSourceLoaded());
+        verify(fullLoader, times(1)).call();
+        verify(originalScoped, times(1)).retrieve("e", String.class);
+        assertEquals(2, values.size());
+    }
+
+    @Test
+    public void testNotRecordedWithoutFullLoad() throws Exception {
+        CachedConfigurationSource cached = new CachedConfigurationSource(new ResolvedValues(), null);
+        try {
+            cached.retrieve("a", String.class);
+            fail("Exception expected");
+        } catch (ValueConfigurationException e) {
+            assertEquals("a", e.getExpression());
+            assertEquals(String.class, e.getValueType());
+        }
+    }
+
+    private static ResolvedValues roundTrip(ResolvedValues values) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(values);
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        return (ResolvedValues) ois.readObject();
+    }
+}
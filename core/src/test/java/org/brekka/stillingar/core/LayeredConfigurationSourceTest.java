@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSource;
+import org.junit.Test;
+
+/**
+ * LayeredConfigurationSource Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class LayeredConfigurationSourceTest {
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.LayeredConfigurationSource#retrieve(java.lang.String, java.lang.Class)}.
+     */
+    @Test
+    public void testKeyedLayers() {
+        PropertiesConfigurationSource host = properties("timeout", "30");
+        PropertiesConfigurationSource environment = properties("timeout", "20", "retries", "3");
+        PropertiesConfigurationSource defaults = properties("timeout", "10", "retries", "1", "name", "app");
+        LayeredConfigurationSource source = new LayeredConfigurationSource(
+                host, new LayeredConfigurationSource(environment, defaults));
+
+        assertEquals(3, source.getLayers().size());
+        assertSame(host, source.getOwner("timeout"));
+        assertSame(environment, source.getOwner("retries"));
+        assertSame(defaults, source.getOwner("name"));
+        assertEquals(Integer.valueOf(30), source.retrieve("timeout", Integer.class));
+        assertEquals("app", source.retrieve("name", String.class));
+        assertFalse(source.isAvailable("missing"));
+
+        ConfigurationSource scoped = new LayeredConfigurationSource(
+                properties("db.url", "host"), properties("db.url", "default", "db.user", "sa")).scope("db");
+        assertEquals("host", scoped.retrieve("url", String.class));
+        assertEquals("sa", scoped.retrieve("user", String.class));
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.LayeredConfigurationSource#prepare(java.util.Collection)}.
+     */
+    @Test
+    public void testPreparedExpressionsProbedOnce() {
+        ConfigurationSource runtime = mock(ConfigurationSource.class);
+        ConfigurationSource site = mock(ConfigurationSource.class);
+        when(site.isAvailable("/c:Port")).thenReturn(Boolean.TRUE);
+        when(site.retrieve("/c:Port", Integer.class)).thenReturn(Integer.valueOf(8080));
+        LayeredConfigurationSource source = new LayeredConfigurationSource(runtime, site);
+        source.prepare(Arrays.asList("/c:Port"));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.valueOf(8080), source.retrieve("/c:Port", Integer.class));
+        }
+        verify(runtime, times(1)).isAvailable("/c:Port");
+        verify(site, times(1)).isAvailable("/c:Port");
+        verify(site, times(3)).retrieve("/c:Port", Integer.class);
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.LayeredConfigurationSource#LayeredConfigurationSource(java.util.List)}.
+     */
+    @Test
+    public void testKeysNotListed() {
+        KeyedConfigurationSource keyed = mock(KeyedConfigurationSource.class);
+        when(keyed.isAvailable("timeout")).thenReturn(Boolean.TRUE);
+        when(keyed.retrieve("timeout", Integer.class)).thenReturn(Integer.valueOf(30));
+        LayeredConfigurationSource source = new LayeredConfigurationSource(keyed, properties("timeout", "10"));
+
+        assertEquals(Integer.valueOf(30), source.retrieve("timeout", Integer.class));
+        verify(keyed, never()).getKeys();
+    }
+
+    private static PropertiesConfigurationSource properties(String... keyValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            properties.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        return new PropertiesConfigurationSource(properties);
+    }
+}
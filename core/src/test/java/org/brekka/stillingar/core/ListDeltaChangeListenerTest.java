@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.brekka.stillingar.api.ListDelta;
+import org.brekka.stillingar.api.Replacement;
+import org.junit.Test;
+
+/**
+ * ListDeltaChangeListener Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ListDeltaChangeListenerTest {
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.ListDeltaChangeListener#onChange(List, List)}.
+     */
+    @Test
+    public void testByEquality() {
+        Capture<String> capture = new Capture<String>();
+        ListDeltaChangeListener<String> listener = new ListDeltaChangeListener<String>(capture, null);
+        List<String> first = Arrays.asList("a", "b", "b", "c");
+        listener.onChange(first, null);
+        assertEquals(first, capture.delta.getAdded());
+        assertNull(capture.delta.getPrevious());
+
+        listener.onChange(Arrays.asList("b", "c", "d", "c"), first);
+        assertEquals(Arrays.asList("d", "c"), capture.delta.getAdded());
+        assertEquals(Arrays.asList("a", "b"), capture.delta.getRemoved());
+        assertTrue(capture.delta.getChanged().isEmpty());
+        assertSame(first, capture.delta.getPrevious());
+
+        listener.onChange(null, first);
+        assertTrue(capture.delta.getLatest().isEmpty());
+        assertEquals(first, capture.delta.getRemoved());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.ListDeltaChangeListener#keyOf(Object)}.
+     */
+    @Test
+    public void testByKey() {
+        Capture<Rule> capture = new Capture<Rule>();
+        ListDeltaChangeListener<Rule> listener = new ListDeltaChangeListener<Rule>(capture, "name");
+        List<Rule> previous = Arrays.asList(new Rule("a", 1), new Rule("b", 2), new Rule("c", 3));
+        Rule changed = new Rule("b", 5);
+        Rule added = new Rule("d", 4);
+        listener.onChange(Arrays.asList(new Rule("a", 1), changed, added), previous);
+        ListDelta<Rule> delta = capture.delta;
+        assertEquals(Collections.singletonList(added), delta.getAdded());
+        assertEquals(Collections.singletonList(previous.get(2)), delta.getRemoved());
+        assertEquals(1, delta.getChanged().size());
+        Replacement<Rule> replacement = delta.getChanged().get(0);
+        assertSame(changed, replacement.getLatest());
+        assertSame(previous.get(1), replacement.getPrevious());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.ListDeltaChangeListener#onChange(List, List)}.
+     */
+    @Test
+    public void testByKeyDuplicates() {
+        Capture<Rule> capture = new Capture<Rule>();
+        ListDeltaChangeListener<Rule> listener = new ListDeltaChangeListener<Rule>(capture, "name");
+        List<Rule> previous = Arrays.asList(new Rule("a", 1), new Rule("a", 2), new Rule("b", 3));
+        Rule changed = new Rule("a", 5);
+        listener.onChange(Arrays.asList(changed, new Rule("b", 3)), previous);
+        ListDelta<Rule> delta = capture.delta;
+        assertTrue(delta.getAdded().isEmpty());
+        assertEquals(Collections.singletonList(previous.get(1)), delta.getRemoved());
+        assertEquals(1, delta.getChanged().size());
+        assertSame(changed, delta.getChanged().get(0).getLatest());
+        assertSame(previous.get(0), delta.getChanged().get(0).getPrevious());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.ListDeltaChangeListener#isChanged(Object, Object)}.
+     */
+    @Test
+    public void testIsChangedOverridden() {
+        Capture<Holder> capture = new Capture<Holder>();
+        ListDeltaChangeListener<Holder> listener = new ListDeltaChangeListener<Holder>(capture, "name") {
+            @Override
+            protected boolean isChanged(Holder previous, Holder latest) {
+                return previous.weight != latest.weight;
+            }
+        };
+        List<Holder> previous = Arrays.asList(new Holder("a", 1), new Holder("b", 2));
+        Holder changed = new Holder("b", 5);
+        listener.onChange(Arrays.asList(new Holder("a", 1), changed), previous);
+        ListDelta<Holder> delta = capture.delta;
+        assertTrue(delta.getAdded().isEmpty());
+        assertTrue(delta.getRemoved().isEmpty());
+        assertEquals(1, delta.getChanged().size());
+        assertSame(changed, delta.getChanged().get(0).getLatest());
+        assertSame(previous.get(1), delta.getChanged().get(0).getPrevious());
+    }
+
+    private static final class Capture<T> implements ValueChangeListener<ListDelta<T>> {
+        private ListDelta<T> delta;
+
+        @Override
+        public void onChange(ListDelta<T> newValue, ListDelta<T> oldValue) {
+            this.delta = newValue;
+        }
+    }
+
+    public static final class Rule {
+        private final String name;
+        private final int weight;
+
+        Rule(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Rule
+                    && ((Rule) obj).name.equals(name)
+                    && ((Rule) obj).weight == weight;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + weight;
+        }
+    }
+
+    /**
+     * Compares by identity, like generated JAXB types.
+     */
+    public static final class Holder {
+        private final String name;
+        private final int weight;
+
+        Holder(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ValueConfigurationException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * ProjectedConfigurationSource Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ProjectedConfigurationSourceTest {
+
+    @Mock
+    private ConfigurationSource projected;
+
+    @Mock
+    private ConfigurationSource full;
+
+    @Mock
+    private Callable<ConfigurationSource> fullLoader;
+
+    @Test
+    public void testProjectedExpression() throws Exception {
+        ProjectedConfigurationSource source = new ProjectedConfigurationSource(projected, Arrays.asList("$.a"), fullLoader);
+        when(projected.retrieve("$.a", String.class)).thenReturn("A");
+        assertEquals("A", source.retrieve("$.a", String.class));
+        assertFalse(source.isFullSourceLoaded());
+        verifyZeroInteractions(fullLoader);
+    }
+
+    @Test
+    public void testFallbackToFullLoad() throws Exception {
+        ProjectedConfigurationSource source = new ProjectedConfigurationSource(projected, Arrays.asList("$.a"), fullLoader);
+        when(fullLoader.call()).thenReturn(full);
+        when(full.retrieve("$.b", String.class)).thenReturn("B");
+        when(full.retrieve(Integer.class)).thenReturn(1);
+        assertEquals("B", source.retrieve("$.b", String.class));
+        assertEquals(Integer.valueOf(1), source.retrieve(Integer.class));
+        assertTrue(source.isFullSourceLoaded());
+        // Only loaded once
+        verify(fullLoader, times(1)).call();
+        verifyZeroInteractions(projected);
+    }
+
+    @Test
+    public void testOutsideProjectionWithoutFullLoad() throws Exception {
+        ProjectedConfigurationSource source = new ProjectedConfigurationSource(projected, Arrays.asList("$.a"), null);
+        try {
+            source.retrieve("$.b", String.class);
+            fail("Exception expected");
+        } catch (ValueConfigurationException e) {
+            assertEquals("$.b", e.getExpression());
+            assertEquals(String.class, e.getValueType());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.binary;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.ScopeableConfigurationSource;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * BinaryConfigurationSource Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class BinaryConfigurationSourceTest {
+
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        BinaryConfigurationWriter writer = new BinaryConfigurationWriter();
+        writer.put("name", "Stillingar");
+        writer.put("port", 8080);
+        writer.put("ratio", 0.5d);
+        writer.put("enabled", Boolean.TRUE);
+        writer.put("hosts", Arrays.asList("a", "b", "c"));
+        writer.put("services.payment.uri", "http://example.com/pay");
+        writer.put("/config/\u00e9t\u00e9", "summer");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer.write(baos);
+        content = baos.toByteArray();
+    }
+
+    @Test
+    public void testRetrieve() throws Exception {
+        ConfigurationSource source = new BinaryConfigurationSourceLoader().parse(new ByteArrayInputStream(content), null);
+        assertEquals("Stillingar", source.retrieve("name", String.class));
+        assertEquals(Integer.valueOf(8080), source.retrieve("port", Integer.class));
+        assertEquals("8080", source.retrieve("port", String.class));
+        assertEquals(Double.valueOf(0.5d), source.retrieve("ratio", Double.class));
+        assertEquals(Boolean.TRUE, source.retrieve("enabled", Boolean.class));
+        assertEquals("summer", source.retrieve("/config/\u00e9t\u00e9", String.class));
+        assertNull(source.retrieve("missing", String.class));
+        assertTrue(source.isAvailable("hosts"));
+        assertFalse(source.isAvailable("host"));
+    }
+
+    @Test
+    public void testRetrieveList() throws Exception {
+        ConfigurationSource source = new BinaryConfigurationSourceLoader().parse(ByteBuffer.wrap(content), null);
+        assertEquals(Arrays.asList("a", "b", "c"), source.retrieveList("hosts", String.class));
+        assertEquals("a", source.retrieve("hosts", String.class));
+        assertEquals(Arrays.asList(8080), source.retrieveList("port", Integer.class));
+        assertEquals(Collections.emptyList(), source.retrieveList("missing", String.class));
+    }
+
+    @Test
+    public void testScope() throws Exception {
+        ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+        direct.put(content).flip();
+        ScopeableConfigurationSource source = (ScopeableConfigurationSource) new BinaryConfigurationSourceLoader()
+                .parse(direct, null);
+        ConfigurationSource scoped = ((ScopeableConfigurationSource) source.scope("services")).scope("payment");
+        assertEquals(URI.create("http://example.com/pay"), scoped.retrieve("uri", URI.class));
+        assertNull(source.scope("serv"));
+        assertEquals(0, direct.position());
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testNotBinary() throws Exception {
+        new BinaryConfigurationSourceLoader().parse(ByteBuffer.wrap("key=value".getBytes("UTF-8")), null);
+    }
+
+    @Test
+    public void testConvertProperties() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("list.0", "x");
+        properties.setProperty("list.1", "y");
+        properties.setProperty("single", "z");
+        File file = File.createTempFile(getClass().getSimpleName(), ".bin");
+        try {
+            BinaryConfigurationWriter writer = new BinaryConfigurationWriter();
+            writer.putAll(BinaryConfigurationConverter.fromProperties(properties));
+            writer.write(file);
+            FileInputStream fis = new FileInputStream(file);
+            ConfigurationSource source;
+            try {
+                source = new BinaryConfigurationSourceLoader().parse(fis, null);
+            } finally {
+                fis.close();
+            }
+            assertEquals(Arrays.asList("x", "y"), source.retrieveList("list", String.class));
+            assertEquals("y", source.retrieve("list.1", String.class));
+            assertEquals("z", source.retrieve("single", String.class));
+        } finally {
+            file.delete();
+        }
+    }
+}
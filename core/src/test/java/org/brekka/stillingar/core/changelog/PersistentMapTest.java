@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.changelog;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * PersistentMap Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class PersistentMapTest {
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.changelog.PersistentMap#plus(java.lang.Object, java.lang.Object)}.
+     */
+    @Test
+    public void testVersionsAreIndependent() {
+        PersistentMap<String, String> first = PersistentMap.<String, String>empty().plus("a", "1");
+        PersistentMap<String, String> second = first.plus("a", "2").plus("b", "1");
+        assertEquals("1", first.get("a"));
+        assertNull(first.get("b"));
+        assertEquals(1, first.size());
+        assertEquals("2", second.get("a"));
+        assertEquals(2, second.size());
+        assertSame(second, second.plus("b", "1"));
+        assertSame(second, second.minus("c"));
+        assertEquals(1, second.minus("a").size());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.changelog.PersistentMap#minus(java.lang.Object)}.
+     */
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(42);
+        Map<Key, Integer> expected = new HashMap<Key, Integer>();
+        PersistentMap<Key, Integer> actual = PersistentMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            // Few distinct hashes so that collisions are exercised too
+            Key key = new Key(random.nextInt(2000), random.nextInt(4));
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                actual = actual.minus(key);
+            } else {
+                expected.put(key, i);
+                actual = actual.plus(key, i);
+            }
+        }
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+        Set<Key> keys = new HashSet<Key>(actual.keySet());
+        assertEquals(expected.keySet(), keys);
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.changelog.PersistentMap#diff(PersistentMap, Set, Set, Set)}.
+     */
+    @Test
+    public void testDiff() {
+        Random random = new Random(7);
+        PersistentMap<Key, Integer> previous = PersistentMap.empty();
+        for (int i = 0; i < 5000; i++) {
+            previous = previous.plus(new Key(random.nextInt(2000), random.nextInt(4)), i % 10);
+        }
+        PersistentMap<Key, Integer> latest = previous;
+        for (int i = 0; i < 50; i++) {
+            Key key = new Key(random.nextInt(2000), random.nextInt(4));
+            latest = (random.nextBoolean() ? latest.minus(key) : latest.plus(key, random.nextInt(10)));
+        }
+        Set<Key> added = new HashSet<Key>();
+        Set<Key> removed = new HashSet<Key>();
+        Set<Key> changed = new HashSet<Key>();
+        latest.diff(previous, added, removed, changed);
+
+        Set<Key> expectedAdded = new HashSet<Key>(latest.keySet());
+        expectedAdded.removeAll(previous.keySet());
+        Set<Key> expectedRemoved = new HashSet<Key>(previous.keySet());
+        expectedRemoved.removeAll(latest.keySet());
+        Set<Key> expectedChanged = new HashSet<Key>();
+        for (Map.Entry<Key, Integer> entry : latest.entrySet()) {
+            Integer previousValue = previous.get(entry.getKey());
+            if (previousValue != null && !previousValue.equals(entry.getValue())) {
+                expectedChanged.add(entry.getKey());
+            }
+        }
+        assertEquals(expectedAdded, added);
+        assertEquals(expectedRemoved, removed);
+        assertEquals(expectedChanged, changed);
+        assertFalse(added.isEmpty() && removed.isEmpty() && changed.isEmpty());
+    }
+
+    private static final class Key {
+        private final int id;
+        private final int hash;
+
+        Key(int id, int variant) {
+            this.id = id * 4 + variant;
+            this.hash = id % 500;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.brekka.stillingar.core.delta;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -257,6 +258,54 @@ public class DeltaConfigurationServiceTest {
         verify(deltaValueInterceptor).released(eq(THE_VALUE));
     }
     
+    /**
+     * Test method for {@link org.brekka.stillingar.core.delta.DeltaConfigurationService#getRegisteredExpressions()}.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetRegisteredExpressions() {
+        when(defaultConfigurationSource.isAvailable(anyString())).thenReturn(Boolean.TRUE);
+        when(defaultConfigurationSource.retrieve(anyString(), eq(String.class))).thenReturn("value");
+        configurationSource.register(new SingleValueDefinition<String>(String.class, "$.a",
+                mock(ValueChangeListener.class)), false);
+        configurationSource.register(new SingleValueDefinition<String>(String.class, "$.b",
+                mock(ValueChangeListener.class)), false);
+        assertEquals(Arrays.asList("$.a", "$.b"),
+                new ArrayList<String>(configurationSource.getRegisteredExpressions()));
+
+        // A value resolved by type requires the whole configuration
+        when(deltaValueInterceptor.created(eq(THE_VALUE))).thenReturn(THE_VALUE);
+        configurationSource.register(new SingleValueDefinition<ConfigBean>(ConfigBean.class,
+                mock(ValueChangeListener.class)), false);
+        assertNull(configurationSource.getRegisteredExpressions());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.delta.DeltaConfigurationService#refresh(ConfigurationSource, AffectedExpressions)}.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRefreshAffectedOnly() throws Exception {
+        when(defaultConfigurationSource.isAvailable(anyString())).thenReturn(Boolean.TRUE);
+        when(defaultConfigurationSource.retrieve(anyString(), eq(String.class))).thenReturn("value");
+        GroupChangeListener listenerA = mock(GroupChangeListener.class);
+        GroupChangeListener listenerB = mock(GroupChangeListener.class);
+        configurationSource.register(new ValueDefinitionGroup("A", Arrays.<ValueDefinition<?,?>>asList(
+                new SingleValueDefinition<String>(String.class, "a", mock(ValueChangeListener.class))), listenerA), false);
+        configurationSource.register(new ValueDefinitionGroup("B", Arrays.<ValueDefinition<?,?>>asList(
+                new SingleValueDefinition<String>(String.class, "b", mock(ValueChangeListener.class))), listenerB), false);
+        
+        configurationSource.refresh(defaultConfigurationSource, new AffectedExpressions() {
+            @Override
+            public boolean isAffected(String expression) {
+                return "a".equals(expression);
+            }
+        });
+        
+        verify(listenerA).onChange(any(ConfigurationSource.class));
+        verify(listenerB, never()).onChange(any(ConfigurationSource.class));
+    }
+
     @Test(expected=IllegalArgumentException.class)
     public void testSetDeltaOperationsNull() {
         configurationSource.setDeltaOperations(null);
@@ -29,6 +29,7 @@ import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ValueConfigurationException;
 import org.brekka.stillingar.core.GroupChangeListener;
 import org.brekka.stillingar.core.GroupConfigurationException;
+import org.brekka.stillingar.core.ScopeableConfigurationSource;
 import org.brekka.stillingar.core.SingleValueDefinition;
 import org.brekka.stillingar.core.ValueChangeListener;
 import org.brekka.stillingar.core.ValueDefinition;
@@ -168,6 +169,28 @@ public class DeltaOperationsTest {
         }
     }
     
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPrepareGroupChangeScoped() {
+        ConfigBean value = new ConfigBean();
+        String expression = "c:Test";
+        ScopeableConfigurationSource scopeable = mock(ScopeableConfigurationSource.class);
+        ConfigurationSource scoped = mock(ConfigurationSource.class);
+        SingleValueDefinition<?> vdSingleExpression = new SingleValueDefinition<ConfigBean>(ConfigBean.class, expression, mock(ValueChangeListener.class));
+        ValueDefinitionGroup valueDefinitionGroup = new ValueDefinitionGroup("Test", 
+                Arrays.<ValueDefinition<?,?>>asList(vdSingleExpression), null, null, "/c:Scope");
+        
+        when(scopeable.scope(eq("/c:Scope"))).thenReturn(scoped);
+        when(scoped.isAvailable(eq(expression))).thenReturn(Boolean.TRUE);
+        when(scoped.retrieve(eq(expression), eq(ConfigBean.class))).thenReturn(value);
+        
+        GroupChangeAction groupChangeAction = deltaOperations.prepareGroupChange(valueDefinitionGroup, scopeable);
+        
+        verify(scopeable).scope(eq("/c:Scope"));
+        verify(scopeable, never()).retrieve(eq(expression), eq(ConfigBean.class));
+        assertSame(value, groupChangeAction.getActionList().get(0).getNewValue());
+    }
+    
     /**
      * Test method for {@link org.brekka.stillingar.core.delta.DeltaOperations#prepareGroupChange(org.brekka.stillingar.core.ValueDefinitionGroup, org.brekka.stillingar.api.ConfigurationSource)}.
      */
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.CachedConfigurationSource;
+import org.brekka.stillingar.core.FallbackConfigurationSource;
+import org.brekka.stillingar.core.LayeredConfigurationSource;
+import org.brekka.stillingar.core.ProjectedConfigurationSource;
+import org.brekka.stillingar.core.RecordingConfigurationSource;
+import org.brekka.stillingar.core.ResolvedValues;
+import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.conversion.TemporalAdapter;
+import org.brekka.stillingar.core.dom.DOMConfigurationSource;
+import org.brekka.stillingar.core.dom.DOMConfigurationSourceLoader;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSource;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * SnapshotDiffProducer Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotDiffProducerTest {
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.diff.SnapshotDiffProducer#diff(ConfigurationSource, ConfigurationSource)}.
+     */
+    @Test
+    public void testDOMDiff() throws Exception {
+        ConfigurationSource previous = dom("<config timeout=\"5\"><name>a</name>"
+                + "<rule>x</rule><rule>y</rule><old/></config>");
+        ConfigurationSource latest = dom("<config timeout=\"10\" mode=\"fast\">\n  <name>a</name>"
+                + "<rule>x</rule><rule>z</rule><rule>w</rule></config>");
+        SnapshotDiff diff = SnapshotDiffProducer.diff(previous, latest);
+        assertTrue(diff.isComplete());
+        assertEquals(Arrays.asList("/config/@mode", "/config/rule[3]"), diff.getAdded());
+        assertEquals(Arrays.asList("/config/old"), diff.getRemoved());
+        assertEquals(Arrays.asList("/config/@timeout", "/config/rule[2]"), diff.getChanged());
+
+        assertTrue(SnapshotDiffProducer.diff(previous, dom("<config timeout=\"5\">  <name>a</name>"
+                + "<rule>x</rule>\n<rule>y</rule><old/></config>")).isEmpty());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.diff.SnapshotDiffProducer#diff(ConfigurationSource, ConfigurationSource)}.
+     */
+    @Test
+    public void testPropertiesDiff() throws Exception {
+        SnapshotDiff diff = SnapshotDiffProducer.diff(properties("a=1", "b=2", "c=3"), properties("a=1", "b=4", "d=5"));
+        assertEquals(Arrays.asList("d"), diff.getAdded());
+        assertEquals(Arrays.asList("c"), diff.getRemoved());
+        assertEquals(Arrays.asList("b"), diff.getChanged());
+
+        SnapshotDiff incomplete = SnapshotDiffProducer.diff(properties("a=1"), dom("<config/>"));
+        assertFalse(incomplete.isComplete());
+        assertFalse(incomplete.isEmpty());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.diff.SnapshotDiffProducer#diff(ConfigurationSource, ConfigurationSource)}.
+     */
+    @Test
+    public void testWrappedSourcesDiff() throws Exception {
+        SnapshotDiff recorded = SnapshotDiffProducer.diff(
+                new RecordingConfigurationSource(properties("a=1"), new ResolvedValues()),
+                new RecordingConfigurationSource(properties("a=2"), new ResolvedValues()));
+        assertEquals(Arrays.asList("a"), recorded.getChanged());
+
+        ResolvedValues values = new ResolvedValues();
+        assertTrue(SnapshotDiffProducer.diff(new CachedConfigurationSource(values, null),
+                new CachedConfigurationSource(values, null)).isEmpty());
+        assertFalse(SnapshotDiffProducer.diff(new CachedConfigurationSource(new ResolvedValues(), null),
+                new CachedConfigurationSource(values, null)).isComplete());
+
+        SnapshotDiff projected = SnapshotDiffProducer.diff(
+                new ProjectedConfigurationSource(properties("a=1"), Arrays.asList("a"), null),
+                new ProjectedConfigurationSource(properties("a=1", "b=2"), Arrays.asList("a"), null));
+        assertEquals(Arrays.asList("b"), projected.getAdded());
+
+        SnapshotDiff layered = SnapshotDiffProducer.diff(
+                new LayeredConfigurationSource(properties("a=1", "b=1"), properties("c=1")),
+                new FallbackConfigurationSource(properties("a=2"), properties("b=1", "c=1")));
+        assertTrue(layered.isComplete());
+        assertEquals(Collections.emptyList(), layered.getAdded());
+        assertEquals(Collections.emptyList(), layered.getRemoved());
+        assertEquals(Arrays.asList("a", "b"), layered.getChanged());
+
+        assertFalse(SnapshotDiffProducer.diff(new LayeredConfigurationSource(properties("a=1")),
+                new LayeredConfigurationSource(properties("a=1"), properties("b=1"))).isComplete());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.diff.SnapshotDiffProducer#publish(Snapshot, Snapshot)}.
+     */
+    @Test
+    public void testPublish() {
+        final List<SnapshotDiff> diffs = new ArrayList<SnapshotDiff>();
+        SnapshotDiffProducer producer = new SnapshotDiffProducer();
+        producer.addListener(new SnapshotDiffListener() {
+            @Override
+            public void onDiff(Snapshot snapshot, SnapshotDiff diff) {
+                diffs.add(diff);
+            }
+        });
+        Snapshot first = snapshot(properties("a=1"));
+        Snapshot second = snapshot(properties("a=1"));
+        Snapshot third = snapshot(properties("a=2"));
+        producer.publish(null, first);
+        producer.publish(first, second);
+        producer.publish(second, third);
+        assertEquals(2, diffs.size());
+        assertFalse(diffs.get(0).isComplete());
+        assertEquals(Collections.singletonList("a"), diffs.get(1).getChanged());
+    }
+
+    private static ConfigurationSource dom(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        return new DOMConfigurationSource(document, null,
+                new ConversionManager(DOMConfigurationSourceLoader.prepareConverters(new TemporalAdapter())));
+    }
+
+    private static ConfigurationSource properties(String... entries) {
+        Properties properties = new Properties();
+        for (String entry : entries) {
+            String[] pair = entry.split("=");
+            properties.setProperty(pair[0], pair[1]);
+        }
+        return new PropertiesConfigurationSource(properties);
+    }
+
+    private static Snapshot snapshot(final ConfigurationSource source) {
+        return new Snapshot() {
+            @Override
+            public ConfigurationSource getSource() {
+                return source;
+            }
+            @Override
+            public Date getTimestamp() {
+                return new Date();
+            }
+            @Override
+            public URI getLocation() {
+                return null;
+            }
+        };
+    }
+}
@@ -19,6 +19,7 @@ package org.brekka.stillingar.core.dom;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
@@ -34,6 +35,7 @@ import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
+import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.core.conversion.ConversionManager;
 import org.brekka.stillingar.core.conversion.TemporalAdapter;
 import org.junit.Before;
@@ -105,6 +107,30 @@ public class DOMConfigurationSourceTest {
     
     
 
+    @Test
+    public void testScopeRelative() {
+        ConfigurationSource scoped = configurationSource.scope("//c:Services/c:Rules");
+        assertNotNull(scoped);
+        assertEquals(Integer.valueOf(42), scoped.retrieve("c:Transaction/c:MaxQuantity", Integer.class));
+        assertEquals(Arrays.asList("KeywordA", "KeywordB", "KeywordC"), 
+                scoped.retrieveList("c:Fraud/c:Keyword", String.class));
+        assertFalse(scoped.isAvailable("c:MOTD"));
+    }
+    
+    @Test
+    public void testScopeAbsolute() {
+        ConfigurationSource scoped = configurationSource.scope("//c:Services/c:Rules");
+        assertTrue(scoped.isAvailable("//c:MOTD"));
+        assertTrue(scoped.isAvailable("/c:Configuration/c:MOTD"));
+        assertFalse(scoped.isAvailable(".//c:MOTD"));
+        assertEquals(Integer.valueOf(42), scoped.retrieve(".//c:MaxQuantity", Integer.class));
+    }
+    
+    @Test
+    public void testScopeMissing() {
+        assertNull(configurationSource.scope("//c:CompanyX"));
+    }
+    
     @Test
     public void testRetrieveShort() {
         assertEquals(Short.valueOf((short) 169), configurationSource.retrieve("//c:Scale", Short.class));
@@ -18,6 +18,7 @@ package org.brekka.stillingar.core.properties;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 import org.brekka.stillingar.api.ConfigurationSource;
@@ -53,5 +54,21 @@ public class PropertiesConfigurationSourceLoaderTest {
         ConfigurationSource configurationSource = loader.parse(getClass().getResourceAsStream("config_ISO-8859-1.properties"), null);
         assertEquals("rækjusalat", configurationSource.retrieve("key1", String.class));
     }
+    
+    /**
+     * Test method for {@link org.brekka.stillingar.core.properties.PropertiesConfigurationSourceLoader#parse(java.nio.ByteBuffer, java.nio.charset.Charset)}.
+     */
+    @Test
+    public void testParseByteBuffer() throws Exception {
+        PropertiesConfigurationSourceLoader loader = new PropertiesConfigurationSourceLoader();
+        byte[] content = "key1=rækjusalat\nkey2=2".getBytes("UTF-8");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content).flip();
+        ConfigurationSource configurationSource = loader.parse(buffer, Charset.forName("UTF-8"));
+        assertEquals("rækjusalat", configurationSource.retrieve("key1", String.class));
+        assertEquals(Integer.valueOf(2), configurationSource.retrieve("key2", Integer.class));
+        // Position is unchanged
+        assertEquals(0, buffer.position());
+    }
 
 }
@@ -147,6 +147,15 @@ public class ConsoleSnapshotEventHandlerTest {
 //        assertEquals(defaults("testInvalidSnapshotUpdate"), err());
     }
     
+    /**
+     * Test method for {@link org.brekka.stillingar.core.snapshot.ConsoleSnapshotEventHandler#unchangedSnapshot(java.net.URI)}.
+     */
+    @Test
+    public void testUnchangedSnapshot() throws Exception {
+        handler.unchangedSnapshot(new URI("http://brekka.org/test"));
+        assertEquals("Snapshot for 'test' at 'http://brekka.org/test' is unchanged, reload skipped", out());
+    }
+    
     /**
      * @param string
      * @return
@@ -16,8 +16,10 @@
 
 package org.brekka.stillingar.core.snapshot;
 
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.util.Arrays;
 import java.util.Collections;
 
 import org.brekka.stillingar.api.ConfigurationException;
@@ -75,4 +77,29 @@ public class SnapshotBasedConfigurationServiceTest {
         verify(snapshotEventHandler).initialConfigure(eq(initialSnapshot), isNull(ChangeConfigurationException.class));
     }
     
+    @Test
+    public void testRollbackAndPin() throws Exception {
+        when(snapshotManager.retrieveInitial()).thenReturn(initialSnapshot);
+        when(initialSnapshot.getSource()).thenReturn(snapshotConfigurationSource);
+        Snapshot updatedSnapshot = mock(Snapshot.class);
+        when(updatedSnapshot.getSource()).thenReturn(mock(ConfigurationSource.class));
+        when(snapshotManager.retrieveUpdated()).thenReturn(updatedSnapshot);
+        
+        source = new SnapshotBasedConfigurationService(snapshotManager, true, defaultConfigurationSource, snapshotEventHandler);
+        source.setSnapshotHistory(new SnapshotHistory(5, 0));
+        source.refresh();
+        assertSame(updatedSnapshot, source.getCurrentSnapshot());
+        assertEquals(Arrays.asList(updatedSnapshot, initialSnapshot), source.getSnapshotHistory().getSnapshots());
+        
+        source.rollback(initialSnapshot, true);
+        assertSame(initialSnapshot, source.getCurrentSnapshot());
+        assertTrue(source.isPinned());
+        
+        // Changes are ignored while pinned
+        source.refresh();
+        verify(snapshotManager, times(1)).retrieveUpdated();
+        assertSame(initialSnapshot, source.getCurrentSnapshot());
+        verify(snapshotManager, never()).reject(any(Snapshot.class));
+    }
+    
 }
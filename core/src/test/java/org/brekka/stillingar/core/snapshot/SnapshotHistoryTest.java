@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.snapshot;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * SnapshotHistory Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotHistoryTest {
+
+    private final Snapshot first = mock(Snapshot.class);
+
+    private final Snapshot second = mock(Snapshot.class);
+
+    private final Snapshot third = mock(Snapshot.class);
+
+    private final Snapshot fourth = mock(Snapshot.class);
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.snapshot.SnapshotHistory#add(Snapshot)}.
+     */
+    @Test
+    public void testEvictsOldestBeyondCount() {
+        SnapshotHistory history = new SnapshotHistory(3, 0);
+        history.add(first);
+        history.add(second);
+        history.add(second);
+        history.add(third);
+        history.add(fourth);
+        assertEquals(Arrays.asList(fourth, third, second), history.getSnapshots());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.snapshot.SnapshotHistory#add(Snapshot)}.
+     */
+    @Test
+    public void testEvictsOldestBeyondBytes() {
+        SnapshotHistory history = new SnapshotHistory(5, 25) {
+            @Override
+            protected long estimateSize(Snapshot snapshot) {
+                return 10;
+            }
+        };
+        history.add(first);
+        history.add(second);
+        history.add(third);
+        assertEquals(Arrays.asList(third, second), history.getSnapshots());
+        assertEquals(20, history.getTotalBytes());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.snapshot.SnapshotHistory#add(Snapshot)}.
+     */
+    @Test
+    public void testSizeReportedBySnapshot() {
+        SizedSnapshot sized = mock(SizedSnapshot.class);
+        when(sized.getContentLength()).thenReturn(Long.valueOf(12));
+        SizedSnapshot unknown = mock(SizedSnapshot.class);
+        when(unknown.getContentLength()).thenReturn(Long.valueOf(-1));
+        SnapshotHistory history = new SnapshotHistory(5, 0);
+        history.add(first);
+        history.add(sized);
+        history.add(unknown);
+        assertEquals(12, history.getTotalBytes());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.core.snapshot.SnapshotHistory#getSnapshot(long)}.
+     */
+    @Test
+    public void testIdsSurviveEviction() {
+        SnapshotHistory history = new SnapshotHistory(2, 0);
+        history.add(first);
+        history.add(second);
+        long secondId = history.getIds()[0];
+        history.add(third);
+        assertArrayEquals(new long[] { 3, 2 }, history.getIds());
+        assertSame(second, history.getSnapshot(secondId));
+        assertNull(history.getSnapshot(1));
+    }
+}
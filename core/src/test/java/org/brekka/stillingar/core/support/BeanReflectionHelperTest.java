@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+import org.brekka.stillingar.api.ValueConfigurationException;
+import org.junit.Test;
+
+/**
+ * Test of BeanReflectionHelper
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class BeanReflectionHelperTest {
+
+    @Test
+    public void testFindValueOf() {
+        Root root = new Root();
+        assertSame(root.single, new BeanReflectionHelper(root).findValueOf(Leaf.class));
+        assertSame(root.single, new BeanReflectionHelper(root, true).findValueOf(Leaf.class));
+    }
+    
+    @Test
+    public void testFindListOf() {
+        Root root = new Root();
+        List<Branch> plain = new BeanReflectionHelper(root).findListOf(Branch.class);
+        List<Branch> indexed = new BeanReflectionHelper(root, true).findListOf(Branch.class);
+        assertEquals(root.branches, plain);
+        assertEquals(root.branches, indexed);
+    }
+    
+    @Test
+    public void testNestedSameTypeExcluded() {
+        Root root = new Root();
+        root.branches.get(0).nested = new Branch();
+        assertEquals(2, new BeanReflectionHelper(root).findListOf(Branch.class).size());
+        assertEquals(2, new BeanReflectionHelper(root, true).findListOf(Branch.class).size());
+    }
+    
+    @Test
+    public void testIsAvailable() {
+        Root root = new Root();
+        BeanReflectionHelper helper = new BeanReflectionHelper(root, true);
+        assertTrue(helper.isAvailable(Branch.class));
+        assertFalse(helper.isAvailable(ConfigBean.class));
+        assertNull(helper.findValueOf(ConfigBean.class));
+    }
+    
+    @Test(expected=ValueConfigurationException.class)
+    public void testFindValueOfMultiple() {
+        new BeanReflectionHelper(new Root(), true).findValueOf(Branch.class);
+    }
+    
+    @Test
+    public void testFieldFilter() {
+        Root root = new Root();
+        BeanReflectionHelper helper = new BeanReflectionHelper(root, true) {
+            @Override
+            protected boolean acceptField(Field field) {
+                return !field.getName().equals("single");
+            }
+        };
+        assertFalse(helper.isAvailable(Leaf.class));
+        assertEquals(2, helper.findListOf(Branch.class).size());
+    }
+    
+    static class Root {
+        private final Leaf single = new Leaf();
+        private final List<Branch> branches = Arrays.asList(new Branch(), new Branch());
+    }
+    
+    static class Branch {
+        private Branch nested;
+    }
+    
+    static class Leaf {
+    }
+}
@@ -22,50 +22,168 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.ScopeableConfigurationSource;
 import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.diff.DiffableConfigurationSource;
+import org.brekka.stillingar.core.diff.SnapshotDiff;
 import org.brekka.stillingar.core.support.BeanReflectionHelper;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.ReadContext;
+import com.fasterxml.jackson.databind.node.TextNode;
 
 /**
  * A configuration source based on the Jackson JSON processor. Supports type based lookup (when available) and 
- * json-path based expressions.
+ * json-path based expressions. Expressions are evaluated directly against the Jackson tree, with the compiled form of
+ * each expression cached. JSON Pointer (RFC 6901) expressions such as <code>/services/rules/fraud/enabled</code> are
+ * also accepted, and together with json-path expressions made up only of member names and indexes are resolved by
+ * navigating the tree directly rather than via json-path.
+ * 
+ * When scoped, the root '$' of json-path expressions refers to the selected node. Type based lookups are unaffected
+ * by scoping and will continue to operate against the bean bound from the whole document. That bean is only bound on
+ * the first type based lookup, so a document that cannot be bound to the root type will not be detected until then.
  *
  * @author Andrew Taylor
  */
-public class JacksonConfigurationSource implements ConfigurationSource {
+public class JacksonConfigurationSource implements ScopeableConfigurationSource, DiffableConfigurationSource {
+
+    /**
+     * Member names that can be used in a json-path without quoting.
+     */
+    private static final Pattern PLAIN_MEMBER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
 
     private final ConversionManager conversionManager;
     private final ObjectMapper objectMapper;
-    private final ReadContext jsonPathContext;
-    private final BeanReflectionHelper reflectionHelper;
+    
+    /**
+     * The object or array node that json-path expressions are evaluated against.
+     */
+    private final JsonNode json;
+    
+    /**
+     * Compiled json-path expressions.
+     */
+    private final JsonPathCache pathCache;
+    
+    /**
+     * Readers used to bind nodes to the requested types.
+     */
+    private final ObjectReaderCache readers;
+    
+    /**
+     * Lazily binds the whole document for type based lookups. Null when no root type is available.
+     */
+    private final RootBinding rootBinding;
+
+    /**
+     * True when obtained via {@link #scope(String)}.
+     */
+    private final boolean scoped;
+
+    /**
+     * Subtree hashes of the document, computed on the first diff.
+     */
+    private JsonNodeHashes nodeHashes;
     
     /**
      * @param value
      */
     public JacksonConfigurationSource(ObjectNode objectNode, Class<?> rootNodeClass,
             ConversionManager conversionManager, ObjectMapper objectMapper) throws IOException {
+        this(objectNode, rootNodeClass, conversionManager, objectMapper, new JsonPathCache(objectMapper), 
+                new ObjectReaderCache(objectMapper));
+    }
+    
+    /**
+     * @param objectNode
+     * @param rootNodeClass
+     * @param conversionManager
+     * @param objectMapper
+     * @param pathCache
+     *            compiled expressions, shared with the other snapshots of the same loader.
+     * @param readers
+     *            readers for each bound type, shared with the other snapshots of the same loader.
+     */
+    JacksonConfigurationSource(ObjectNode objectNode, Class<?> rootNodeClass, ConversionManager conversionManager, 
+            ObjectMapper objectMapper, JsonPathCache pathCache, ObjectReaderCache readers) {
         this.conversionManager = conversionManager;
         this.objectMapper = objectMapper;
-        Object pathNode = objectMapper.treeToValue(objectNode, Map.class);
-        this.jsonPathContext = JsonPath.parse(pathNode);
-        
-        BeanReflectionHelper helper = null;
-        if (rootNodeClass != null) {
-            Object bean = objectMapper.treeToValue(objectNode, rootNodeClass);
-            helper = new BeanReflectionHelper(bean);
+        this.json = objectNode;
+        this.pathCache = pathCache;
+        this.readers = readers;
+        this.rootBinding = (rootNodeClass != null ? new RootBinding(objectNode, rootNodeClass, readers) : null);
+        this.scoped = false;
+    }
+    
+    /**
+     * Constructor for scoped sources
+     * 
+     * @param json
+     * @param parent
+     */
+    private JacksonConfigurationSource(JsonNode json, JacksonConfigurationSource parent) {
+        this.json = json;
+        this.pathCache = parent.pathCache;
+        this.readers = parent.readers;
+        this.rootBinding = parent.rootBinding;
+        this.conversionManager = parent.conversionManager;
+        this.objectMapper = parent.objectMapper;
+        this.scoped = true;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.ScopeableConfigurationSource#scope(java.lang.String)
+     */
+    @Override
+    public ConfigurationSource scope(String expression) {
+        Object result = pathCache.read(json, expression);
+        if (result instanceof Collection<?> 
+                && ((Collection<?>) result).size() == 1
+                && !pathCache.isDefinite(expression)) {
+            // The single match of a query, rather than an array with one element
+            result = ((Collection<?>) result).iterator().next();
+        }
+        if (result == null
+                || (result instanceof Collection<?> && ((Collection<?>) result).isEmpty())) {
+            return null;
+        }
+        JsonNode scopeNode;
+        if (result instanceof JsonNode) {
+            scopeNode = (JsonNode) result;
+        } else if (result instanceof Map || result instanceof Collection<?>) {
+            scopeNode = objectMapper.valueToTree(result);
+        } else {
+            throw new ValueConfigurationException(format(
+                    "Scope must select an object or array, not '%s'", result.getClass().getName()), null, expression);
         }
-        this.reflectionHelper = helper;
+        return new JacksonConfigurationSource(scopeNode, this);
+    }
+
+    /**
+     * Compares unscoped sources node by node, with json-path style paths such as <code>$.services.rules[0]</code>,
+     * quoting member names that are not plain identifiers, as in <code>$['a.b']</code>.
+     * Array elements are matched by position.
+     */
+    @Override
+    public boolean diff(ConfigurationSource previous, SnapshotDiff.Builder diff) {
+        if (!(previous instanceof JacksonConfigurationSource)) {
+            return false;
+        }
+        JacksonConfigurationSource other = (JacksonConfigurationSource) previous;
+        if (scoped
+                || other.scoped) {
+            return false;
+        }
+        diff(other.json, other.nodeHashes(), json, nodeHashes(), "$", diff);
+        return true;
     }
 
     /* (non-Javadoc)
@@ -73,7 +191,7 @@ public class JacksonConfigurationSource implements ConfigurationSource {
      */
     @Override
     public boolean isAvailable(String expression) {
-        return jsonPathContext.read(expression) != null;
+        return pathCache.read(json, expression) != null;
     }
 
     /* (non-Javadoc)
@@ -81,11 +199,11 @@ public class JacksonConfigurationSource implements ConfigurationSource {
      */
     @Override
     public boolean isAvailable(Class<?> valueType) {
-        if (reflectionHelper == null) {
+        if (rootBinding == null) {
             throw new ValueConfigurationException(
                     "Retrieval by type is not supported when no type information is available.", valueType, null);
         }
-        return reflectionHelper.isAvailable(valueType);
+        return rootBinding.reflectionHelper(valueType).isAvailable(valueType);
     }
 
     /* (non-Javadoc)
@@ -94,7 +212,7 @@ public class JacksonConfigurationSource implements ConfigurationSource {
     @Override
     public <T> T retrieve(String expression, Class<T> valueType) {
         Object retVal;
-        Object result = jsonPathContext.read(expression);
+        Object result = pathCache.read(json, expression);
         if (result == null) {
             retVal = null;
         } else if (result instanceof Collection<?>) {
@@ -119,11 +237,11 @@ public class JacksonConfigurationSource implements ConfigurationSource {
      */
     @Override
     public <T> T retrieve(Class<T> valueType) {
-        if (reflectionHelper == null) {
+        if (rootBinding == null) {
             throw new ValueConfigurationException(
                     "Retrieval by type is not supported when no type information is available.", valueType, null);
         }
-        return reflectionHelper.findValueOf(valueType);
+        return rootBinding.reflectionHelper(valueType).findValueOf(valueType);
     }
 
     /* (non-Javadoc)
@@ -131,7 +249,7 @@ public class JacksonConfigurationSource implements ConfigurationSource {
      */
     @Override
     public <T> List<T> retrieveList(String expression, Class<T> valueType) {
-        Object result = jsonPathContext.read(expression);
+        Object result = pathCache.read(json, expression);
         Collection<?> vals;
         if (result instanceof Collection<?>) {
             vals = (Collection<?>) result;
@@ -154,11 +272,11 @@ public class JacksonConfigurationSource implements ConfigurationSource {
      */
     @Override
     public <T> List<T> retrieveList(Class<T> valueType) {
-        if (reflectionHelper == null) {
+        if (rootBinding == null) {
             throw new ValueConfigurationException(
                     "List retrieval by type is not supported when no type information is available.", valueType, null);
         }
-        return reflectionHelper.findListOf(valueType);
+        return rootBinding.reflectionHelper(valueType).findListOf(valueType);
     }
     
 
@@ -167,17 +285,26 @@ public class JacksonConfigurationSource implements ConfigurationSource {
      * @return
      */
     protected Object toObject(Object retVal, Class<?> expectedClass) {
+        JsonNode tree;
         if (expectedClass == byte[].class
                 && retVal instanceof String) {
             // Let Jackson convert the string to a byte array
-        } else if (retVal instanceof Map == false) {
+            tree = TextNode.valueOf((String) retVal);
+        } else if (retVal instanceof JsonNode) {
+            if (expectedClass.isInstance(retVal)) {
+                return retVal;
+            }
+            tree = (JsonNode) retVal;
+        } else if (retVal instanceof Map) {
+            // Multiple fields selected
+            tree = objectMapper.valueToTree(retVal);
+        } else {
             // Not an object
             return retVal;
         }
-        JsonNode tree = objectMapper.valueToTree(retVal);
         try {
-            return objectMapper.treeToValue(tree, expectedClass);
-        } catch (JsonProcessingException e) {
+            return readers.treeToValue(tree, expectedClass);
+        } catch (IOException e) {
             throw new ValueConfigurationException(
                     "Failed to convert JSON model into expected type.", expectedClass, null);
         }
@@ -205,4 +332,137 @@ public class JacksonConfigurationSource implements ConfigurationSource {
         }
         return value;
     }
+    
+    /**
+     * Binds the whole document to the root type on the first type based lookup. Shared by a source and any scoped
+     * sources derived from it.
+     */
+    private static final class RootBinding {
+        private final ObjectNode objectNode;
+        private final Class<?> rootNodeClass;
+        private final ObjectReaderCache readers;
+        private volatile BeanReflectionHelper reflectionHelper;
+        
+        RootBinding(ObjectNode objectNode, Class<?> rootNodeClass, ObjectReaderCache readers) {
+            this.objectNode = objectNode;
+            this.rootNodeClass = rootNodeClass;
+            this.readers = readers;
+        }
+        
+        /**
+         * @param valueType
+         *            the type being looked up, used when reporting errors.
+         * @return the helper for the bound root bean
+         */
+        BeanReflectionHelper reflectionHelper(Class<?> valueType) {
+            BeanReflectionHelper helper = this.reflectionHelper;
+            if (helper == null) {
+                synchronized (this) {
+                    helper = this.reflectionHelper;
+                    if (helper == null) {
+                        Object bean;
+                        try {
+                            bean = readers.treeToValue(objectNode, rootNodeClass);
+                        } catch (IOException e) {
+                            throw new ValueConfigurationException(format(
+                                    "Failed to bind the document to the root type '%s'", rootNodeClass.getName()), 
+                                    valueType, null, e);
+                        }
+                        helper = new BeanReflectionHelper(bean, true);
+                        this.reflectionHelper = helper;
+                    }
+                }
+            }
+            return helper;
+        }
+    }
+
+    /**
+     * Add the differences between two nodes to the diff, recursing into objects and arrays that are present in both.
+     *
+     * Containers whose subtree hashes match are skipped without being descended into.
+     *
+     * @param previous
+     *            the node from the previous source
+     * @param previousHashes
+     *            subtree hashes of the previous source
+     * @param latest
+     *            the node at the same path in the latest source
+     * @param latestHashes
+     *            subtree hashes of the latest source
+     * @param path
+     *            the json-path of the nodes
+     * @param diff
+     *            receives the differences
+     */
+    private static void diff(JsonNode previous, JsonNodeHashes previousHashes, JsonNode latest,
+            JsonNodeHashes latestHashes, String path, SnapshotDiff.Builder diff) {
+        if (previous == latest) {
+            return;
+        }
+        if (previous.isContainerNode()
+                && latest.isContainerNode()
+                && previousHashes.hashOf(previous) == latestHashes.hashOf(latest)) {
+            return;
+        }
+        if (previous.isObject()
+                && latest.isObject()) {
+            for (Iterator<Map.Entry<String, JsonNode>> it = latest.fields(); it.hasNext();) {
+                Map.Entry<String, JsonNode> field = it.next();
+                JsonNode previousValue = previous.get(field.getKey());
+                String fieldPath = memberPath(path, field.getKey());
+                if (previousValue == null) {
+                    diff.added(fieldPath);
+                } else {
+                    diff(previousValue, previousHashes, field.getValue(), latestHashes, fieldPath, diff);
+                }
+            }
+            for (Iterator<String> it = previous.fieldNames(); it.hasNext();) {
+                String name = it.next();
+                if (!latest.has(name)) {
+                    diff.removed(memberPath(path, name));
+                }
+            }
+        } else if (previous.isArray()
+                && latest.isArray()) {
+            int count = Math.max(previous.size(), latest.size());
+            for (int i = 0; i < count; i++) {
+                String elementPath = path + "[" + i + "]";
+                if (i >= previous.size()) {
+                    diff.added(elementPath);
+                } else if (i >= latest.size()) {
+                    diff.removed(elementPath);
+                } else {
+                    diff(previous.get(i), previousHashes, latest.get(i), latestHashes, elementPath, diff);
+                }
+            }
+        } else if (!previous.equals(latest)) {
+            diff.changed(path);
+        }
+    }
+
+    /**
+     * @return the subtree hashes of the document, created on first use.
+     */
+    private synchronized JsonNodeHashes nodeHashes() {
+        if (nodeHashes == null) {
+            nodeHashes = new JsonNodeHashes();
+        }
+        return nodeHashes;
+    }
+
+    /**
+     * @param path
+     *            the json-path of an object
+     * @param name
+     *            the name of a member of the object
+     * @return the json-path of the member, using bracket notation where the name is not a plain identifier, such as
+     *         <code>$['a.b']</code>.
+     */
+    private static String memberPath(String path, String name) {
+        if (PLAIN_MEMBER.matcher(name).matches()) {
+            return path + "." + name;
+        }
+        return path + "['" + name.replace("\\", "\\\\").replace("'", "\\'") + "']";
+    }
 }
@@ -18,29 +18,41 @@ package org.brekka.stillingar.jackson;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 
 import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
-import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.ByteBufferConfigurationSourceLoader;
+import org.brekka.stillingar.core.ProjectingConfigurationSourceLoader;
 import org.brekka.stillingar.core.conversion.ConversionManager;
 import org.brekka.stillingar.core.conversion.TemporalAdapter;
 import org.brekka.stillingar.core.conversion.TypeConverter;
 import org.brekka.stillingar.core.conversion.TypeConverterListBuilder;
 import org.brekka.stillingar.core.dom.DOMConfigurationSourceLoader;
+import org.brekka.stillingar.core.support.ByteBufferInputStream;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
- * Loader for {@link JacksonConfigurationSource} instances
+ * Loader for {@link JacksonConfigurationSource} instances. Documents are read in a single pass over the parser token
+ * stream. When a {@link JsonProjection} is set, any part of the document that cannot be reached by the projected
+ * expressions is skipped without being materialised, which keeps large lookup tables that are not referenced out of
+ * memory. Note that type based lookups will then only see the projected parts of the document.
+ * 
+ * A projection can also be supplied per load via {@link #parse(InputStream, Charset, Collection)}, which is how the
+ * expressions registered with the configuration service are applied. Buffers passed to
+ * {@link #parse(ByteBuffer, Charset)} that are backed by an array are parsed in place.
  *
  * @author Andrew Taylor
  */
-public class JacksonConfigurationSourceLoader implements ConfigurationSourceLoader {
+public class JacksonConfigurationSourceLoader implements ProjectingConfigurationSourceLoader,
+        ByteBufferConfigurationSourceLoader {
 
     private final ObjectMapper objectMapper;
     
@@ -48,6 +60,26 @@ public class JacksonConfigurationSourceLoader implements ConfigurationSourceLoad
     
     private final ConversionManager conversionManager;
     
+    /**
+     * Compiled json-path expressions, shared by all snapshots.
+     */
+    private final JsonPathCache pathCache;
+    
+    /**
+     * Readers for each bound type, shared by all snapshots.
+     */
+    private final ObjectReaderCache readers;
+    
+    /**
+     * Builds the tree from the token stream.
+     */
+    private final JsonTreeReader treeReader;
+    
+    /**
+     * The parts of the document to retain, null to retain everything.
+     */
+    private volatile JsonProjection projection;
+    
     public JacksonConfigurationSourceLoader(ObjectMapper objectMapper, Class<?> rootNodeClass) {
         this(objectMapper, rootNodeClass, null);
     }
@@ -62,6 +94,9 @@ public class JacksonConfigurationSourceLoader implements ConfigurationSourceLoad
         this.rootNodeClass = rootNodeClass;
         this.conversionManager = conversionManager != null ? conversionManager : new ConversionManager(
                 prepareConverters());
+        this.pathCache = new JsonPathCache(objectMapper);
+        this.readers = new ObjectReaderCache(objectMapper);
+        this.treeReader = new JsonTreeReader(objectMapper);
     }
 
 
@@ -72,18 +107,86 @@ public class JacksonConfigurationSourceLoader implements ConfigurationSourceLoad
     public ConfigurationSource parse(InputStream sourceStream, Charset encoding) throws ConfigurationException,
             IOException {
         Objects.requireNonNull(sourceStream, "source stream is null");
+        return parse(sourceStream, projection);
+    }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.ProjectingConfigurationSourceLoader#parse(java.io.InputStream, java.nio.charset.Charset, java.util.Collection)
+     */
+    @Override
+    public ConfigurationSource parse(InputStream sourceStream, Charset encoding, Collection<String> expressions)
+            throws ConfigurationException, IOException {
+        if (sourceStream == null) {
+            throw new IllegalArgumentException("null passed for sourceStream");
+        }
+        if (expressions == null) {
+            throw new IllegalArgumentException("null passed for expressions");
+        }
+        JsonProjection expressionProjection = JsonProjection.of(expressions);
+        return parse(sourceStream, expressionProjection.isComplete() ? null : expressionProjection);
+    }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.ByteBufferConfigurationSourceLoader#parse(java.nio.ByteBuffer, java.nio.charset.Charset)
+     */
+    @Override
+    public ConfigurationSource parse(ByteBuffer buffer, Charset encoding) throws ConfigurationException, IOException {
+        if (buffer == null) {
+            throw new IllegalArgumentException("null passed for buffer");
+        }
+        if (!buffer.hasArray()) {
+            return parse(new ByteBufferInputStream(buffer), projection);
+        }
+        ObjectNode objectNode;
+        try {
+            objectNode = treeReader.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(),
+                    projection);
+        } catch (JsonProcessingException e) {
+            throw new ConfigurationException(String.format(
+                    "This does not appear to be a valid JSON document"), e);
+        }
+        return new JacksonConfigurationSource(objectNode, rootNodeClass, conversionManager, objectMapper, 
+                pathCache, readers);
+    }
+    
+    /**
+     * @param sourceStream
+     *            the stream to read from
+     * @param projection
+     *            the parts of the document to retain, null to retain everything.
+     * @return the source
+     * @throws IOException
+     */
+    private ConfigurationSource parse(InputStream sourceStream, JsonProjection projection) throws IOException {
         ObjectNode objectNode;
         try {
             // Encoding is ignored, should always be UTF-8
-            objectNode = objectMapper.readValue(sourceStream, ObjectNode.class);
+            objectNode = treeReader.read(sourceStream, projection);
         } catch (JsonProcessingException e) {
             throw new ConfigurationException(String.format(
                     "This does not appear to be a valid JSON document"), e);
         }
-        JacksonConfigurationSource source = new JacksonConfigurationSource(objectNode, rootNodeClass, conversionManager, objectMapper);
+        JacksonConfigurationSource source = new JacksonConfigurationSource(objectNode, rootNodeClass, conversionManager, objectMapper, 
+                pathCache, readers);
         return source;
     }
     
+    /**
+     * Set the parts of the document to retain when subsequent snapshots are loaded.
+     * 
+     * @param projection
+     *            the projection, null (or a complete projection) to retain the whole document.
+     */
+    public void setProjection(JsonProjection projection) {
+        this.projection = (projection == null || projection.isComplete() ? null : projection);
+    }
+    
+    /**
+     * @return the projection applied when loading, or null if the whole document is retained.
+     */
+    public JsonProjection getProjection() {
+        return projection;
+    }
     
     public static List<TypeConverter<?>> prepareConverters() {
         TemporalAdapter temporalAdapter = new TemporalAdapter();
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.brekka.stillingar.core.binary.BinaryConfigurationWriter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Converts JSON into the binary format read by {@link org.brekka.stillingar.core.binary.BinaryConfigurationSourceLoader}.
+ * Each scalar is keyed on its JSON Pointer (for example <code>/server/port</code>), so the keys match the pointer
+ * expressions used with {@link JacksonConfigurationSource}. Arrays of scalars become a list under the pointer of the
+ * array, other arrays are flattened element by element. Nulls are omitted. Usage:
+ *
+ * <pre>
+ * java org.brekka.stillingar.jackson.JsonBinaryConverter input.json output
+ * </pre>
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class JsonBinaryConverter {
+
+    private JsonBinaryConverter() {
+    }
+
+    /**
+     * Convert the file identified by the first argument, writing the result to the file identified by the second.
+     *
+     * @param args
+     *            the input and output file paths.
+     * @throws Exception
+     *             if the conversion fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: JsonBinaryConverter <input.json> <output>");
+            System.exit(1);
+        }
+        JsonNode root = new ObjectMapper().readTree(new File(args[0]));
+        BinaryConfigurationWriter writer = new BinaryConfigurationWriter();
+        writer.putAll(fromJson(root));
+        writer.write(new File(args[1]));
+        System.out.printf("Wrote %d entries to '%s'%n", writer.size(), args[1]);
+    }
+
+    /**
+     * Flatten a JSON tree into pointers.
+     *
+     * @param root
+     *            the tree to convert
+     * @return the values keyed on their pointer.
+     */
+    public static Map<String, Object> fromJson(JsonNode root) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        flatten(root, "", values);
+        return values;
+    }
+
+    private static void flatten(JsonNode node, String pointer, Map<String, Object> values) {
+        if (node.isObject()) {
+            Iterator<Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Entry<String, JsonNode> field = fields.next();
+                flatten(field.getValue(), pointer + "/" + escape(field.getKey()), values);
+            }
+        } else if (node.isArray()) {
+            if (isScalarArray(node)) {
+                List<Object> list = new ArrayList<Object>(node.size());
+                for (JsonNode element : node) {
+                    list.add(scalar(element));
+                }
+                values.put(pointer, list);
+            } else {
+                for (int i = 0; i < node.size(); i++) {
+                    flatten(node.get(i), pointer + "/" + i, values);
+                }
+            }
+        } else if (!node.isNull()) {
+            values.put(pointer, scalar(node));
+        }
+    }
+
+    private static boolean isScalarArray(JsonNode array) {
+        for (JsonNode element : array) {
+            if (element.isContainerNode()
+                    || element.isNull()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object scalar(JsonNode node) {
+        if (node.isIntegralNumber()
+                && node.canConvertToLong()) {
+            return Long.valueOf(node.longValue());
+        }
+        if (node.isFloatingPointNumber()
+                && !node.isBigDecimal()) {
+            return Double.valueOf(node.doubleValue());
+        }
+        if (node.isBoolean()) {
+            return Boolean.valueOf(node.booleanValue());
+        }
+        return node.asText();
+    }
+
+    /**
+     * Escape a field name as a JSON Pointer reference token.
+     */
+    private static String escape(String name) {
+        return name.replace("~", "~0").replace("/", "~1");
+    }
+}
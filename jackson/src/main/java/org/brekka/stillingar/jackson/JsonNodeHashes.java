@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The 64 bit hash of each object and array subtree of a document, covering member names, element order and the type
+ * and text of each value. Member order is ignored, as objects are compared member by member. Computed for a subtree
+ * on first use then kept, so that a diff against another document only needs to descend into the subtrees whose
+ * hashes differ.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class JsonNodeHashes {
+
+    /**
+     * FNV-1a offset basis
+     */
+    private static final long OFFSET = 0xcbf29ce484222325L;
+
+    /**
+     * FNV-1a prime
+     */
+    private static final long PRIME = 0x100000001b3L;
+
+    /**
+     * The hash of each container node visited so far
+     */
+    private final Map<JsonNode, Long> hashes = new IdentityHashMap<JsonNode, Long>();
+
+    /**
+     * @param node
+     *            a node of the document
+     * @return the hash of the subtree of the node
+     */
+    synchronized long hashOf(JsonNode node) {
+        Long hash = hashes.get(node);
+        if (hash == null) {
+            hash = Long.valueOf(compute(node));
+        }
+        return hash.longValue();
+    }
+
+    private long compute(JsonNode node) {
+        long hash = mix(OFFSET, node.getNodeType().name());
+        if (node.isObject()) {
+            // Summed, so that the order of the members does not matter
+            long members = 0;
+            for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext();) {
+                Map.Entry<String, JsonNode> field = it.next();
+                members += (mix(OFFSET, field.getKey()) ^ compute(field.getValue())) * PRIME;
+            }
+            hash = (hash ^ members) * PRIME;
+        } else if (node.isArray()) {
+            for (JsonNode element : node) {
+                hash = (hash ^ compute(element)) * PRIME;
+            }
+        } else {
+            return mix(hash, node.asText());
+        }
+        hashes.put(node, Long.valueOf(hash));
+        return hash;
+    }
+
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * PRIME;
+        }
+        // Separator, so that adjacent values cannot run together
+        return (hash ^ 0xffff) * PRIME;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.jayway.jsonpath.InvalidJsonException;
+import com.jayway.jsonpath.spi.Mode;
+import com.jayway.jsonpath.spi.impl.AbstractJsonProvider;
+
+/**
+ * Json-path provider that navigates a Jackson {@link JsonNode} tree directly, avoiding the need to copy the tree into
+ * maps and lists before expressions can be evaluated. Objects and arrays are exposed as the corresponding
+ * {@link ObjectNode} and {@link ArrayNode}, while value nodes are unwrapped to their Java equivalents (so that filter
+ * predicates compare as they would against a map copy). The maps and lists json-path creates to hold multiple results
+ * are plain Java collections, which are handled by {@link AbstractJsonProvider}.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class JsonNodeJsonProvider extends AbstractJsonProvider {
+
+    /**
+     * Used to parse JSON text when json-path is given a string/stream rather than a tree.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param objectMapper
+     *            used to parse JSON text when json-path is given a string/stream rather than a tree.
+     */
+    JsonNodeJsonProvider(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.JsonProvider#getMode()
+     */
+    @Override
+    public Mode getMode() {
+        return Mode.STRICT;
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.JsonProvider#parse(java.lang.String)
+     */
+    @Override
+    public Object parse(String json) throws InvalidJsonException {
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new InvalidJsonException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.JsonProvider#parse(java.io.Reader)
+     */
+    @Override
+    public Object parse(Reader jsonReader) throws InvalidJsonException {
+        try {
+            return objectMapper.readTree(jsonReader);
+        } catch (IOException e) {
+            throw new InvalidJsonException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.JsonProvider#parse(java.io.InputStream)
+     */
+    @Override
+    public Object parse(InputStream jsonStream) throws InvalidJsonException {
+        try {
+            return objectMapper.readTree(jsonStream);
+        } catch (IOException e) {
+            throw new InvalidJsonException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.JsonProvider#toJson(java.lang.Object)
+     */
+    @Override
+    public String toJson(Object obj) {
+        try {
+            return objectMapper.writeValueAsString(obj);
+        } catch (IOException e) {
+            throw new InvalidJsonException(e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.JsonProvider#createMap()
+     */
+    @Override
+    public Object createMap() {
+        return new LinkedHashMap<String, Object>();
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.JsonProvider#createArray()
+     */
+    @Override
+    public Iterable<Object> createArray() {
+        return new ArrayList<Object>();
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.impl.AbstractJsonProvider#clone(java.lang.Object)
+     */
+    @Override
+    public Object clone(Object model) {
+        if (model instanceof JsonNode) {
+            return ((JsonNode) model).deepCopy();
+        }
+        return super.clone(model);
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.impl.AbstractJsonProvider#isArray(java.lang.Object)
+     */
+    @Override
+    public boolean isArray(Object obj) {
+        return obj instanceof ArrayNode
+                || super.isArray(obj);
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.impl.AbstractJsonProvider#isMap(java.lang.Object)
+     */
+    @Override
+    public boolean isMap(Object obj) {
+        return obj instanceof ObjectNode
+                || super.isMap(obj);
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.impl.AbstractJsonProvider#getProperty(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public Object getProperty(Object obj, Object key) {
+        if (obj instanceof ObjectNode) {
+            return unwrap(((ObjectNode) obj).get(key.toString()));
+        }
+        if (obj instanceof ArrayNode) {
+            return unwrap(((ArrayNode) obj).get(Integer.parseInt(key.toString())));
+        }
+        return super.getProperty(obj, key);
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.impl.AbstractJsonProvider#setProperty(java.lang.Object, java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void setProperty(Object obj, Object key, Object value) {
+        if (obj instanceof JsonNode) {
+            throw new UnsupportedOperationException("The configuration tree is read-only");
+        }
+        super.setProperty(obj, key, value);
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.impl.AbstractJsonProvider#getPropertyKeys(java.lang.Object)
+     */
+    @Override
+    public Collection<String> getPropertyKeys(Object obj) {
+        if (obj instanceof ObjectNode) {
+            List<String> keys = new ArrayList<String>(((ObjectNode) obj).size());
+            Iterator<String> fieldNames = ((ObjectNode) obj).fieldNames();
+            while (fieldNames.hasNext()) {
+                keys.add(fieldNames.next());
+            }
+            return keys;
+        }
+        return super.getPropertyKeys(obj);
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.impl.AbstractJsonProvider#length(java.lang.Object)
+     */
+    @Override
+    public int length(Object obj) {
+        if (obj instanceof JsonNode) {
+            return ((JsonNode) obj).size();
+        }
+        return super.length(obj);
+    }
+
+    /* (non-Javadoc)
+     * @see com.jayway.jsonpath.spi.impl.AbstractJsonProvider#toIterable(java.lang.Object)
+     */
+    @Override
+    public Iterable<Object> toIterable(Object obj) {
+        if (obj instanceof ObjectNode) {
+            List<Object> values = new ArrayList<Object>(((ObjectNode) obj).size());
+            Iterator<Map.Entry<String, JsonNode>> fields = ((ObjectNode) obj).fields();
+            while (fields.hasNext()) {
+                values.add(unwrap(fields.next().getValue()));
+            }
+            return values;
+        }
+        if (obj instanceof ArrayNode) {
+            return toList((ArrayNode) obj);
+        }
+        return super.toIterable(obj);
+    }
+
+    /**
+     * Convert the elements of an array node to a list, unwrapping any value nodes.
+     *
+     * @param arrayNode
+     *            the array to convert
+     * @return the list of elements
+     */
+    static List<Object> toList(ArrayNode arrayNode) {
+        List<Object> values = new ArrayList<Object>(arrayNode.size());
+        for (JsonNode element : arrayNode) {
+            values.add(unwrap(element));
+        }
+        return values;
+    }
+
+    /**
+     * Unwrap a value node to its Java equivalent. Object and array nodes are returned unchanged.
+     *
+     * @param node
+     *            the node to unwrap (can be null)
+     * @return the value
+     */
+    static Object unwrap(JsonNode node) {
+        if (node == null
+                || node.isContainerNode()) {
+            return node;
+        }
+        if (node.isTextual()) {
+            return node.textValue();
+        }
+        if (node.isNumber()) {
+            return node.numberValue();
+        }
+        if (node.isBoolean()) {
+            return node.booleanValue();
+        }
+        if (node.isPojo()) {
+            return ((POJONode) node).getPojo();
+        }
+        if (node.isBinary()) {
+            try {
+                return node.binaryValue();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to extract binary value", e);
+            }
+        }
+        // Null or missing
+        return null;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Caches the compiled form of each expression, evaluating them directly against a Jackson {@link JsonNode} tree. A
+ * single instance is shared by all of the snapshots produced by a loader.
+ * 
+ * Expressions starting with '/' are treated as JSON Pointers (RFC 6901). Json-path expressions that consist solely of
+ * member names and array indexes (for example <code>$.services.rules['fraud'].keyword[1]</code>) are resolved by
+ * navigating the tree directly. Anything else (filters, wildcards, deep scans, slices) is evaluated by json-path via
+ * {@link JsonNodeJsonProvider}.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class JsonPathCache {
+    
+    /**
+     * Matches a json-path made up only of member names and non-negative array indexes. Indexes are limited to nine
+     * digits so that they always fit in an int, longer ones being left to json-path.
+     */
+    private static final Pattern SIMPLE_PATH = Pattern.compile(
+            "\\$(?:\\.[A-Za-z_][A-Za-z0-9_\\-]*|\\[\\d{1,9}\\]|\\['[^'\\\\]*'\\])*");
+    
+    /**
+     * Extracts the individual steps from a path matched by {@link #SIMPLE_PATH}.
+     */
+    private static final Pattern SIMPLE_STEP = Pattern.compile(
+            "\\.([A-Za-z_][A-Za-z0-9_\\-]*)|\\[(\\d+)\\]|\\['([^'\\\\]*)'\\]");
+
+    /**
+     * Json-path configuration using the tree based provider.
+     */
+    private final Configuration configuration;
+
+    /**
+     * Compiled expressions keyed on expression.
+     */
+    private final ConcurrentMap<String, Expression> expressions = new ConcurrentHashMap<String, Expression>();
+
+    /**
+     * @param objectMapper
+     *            the object mapper of the loader.
+     */
+    JsonPathCache(ObjectMapper objectMapper) {
+        this.configuration = Configuration.builder()
+                .jsonProvider(new JsonNodeJsonProvider(objectMapper))
+                .build();
+    }
+
+    /**
+     * Evaluate the expression against the specified node. Where the expression selects an array node, it will be
+     * returned as a list of its elements, matching the form in which multiple results are returned by json-path.
+     *
+     * @param json
+     *            the object or array node to evaluate against
+     * @param expression
+     *            the JSON Pointer or json-path expression
+     * @return the result, which may be an unwrapped value, {@link JsonNode} object, list or null.
+     */
+    Object read(JsonNode json, String expression) {
+        Object result = compile(expression).read(json);
+        if (result instanceof ArrayNode) {
+            result = JsonNodeJsonProvider.toList((ArrayNode) result);
+        }
+        return result;
+    }
+
+    /**
+     * Determine whether the expression can only select a single node, in which case a list returned by
+     * {@link #read(JsonNode, String)} is an actual array rather than the set of nodes matched.
+     *
+     * @param expression
+     *            the JSON Pointer or json-path expression
+     * @return true if the expression is definite
+     */
+    boolean isDefinite(String expression) {
+        return compile(expression).isDefinite();
+    }
+
+    /**
+     * Retrieve the compiled expression, compiling it if this is the first time it has been seen.
+     *
+     * @param expression
+     *            the expression to compile
+     * @return the compiled expression
+     */
+    Expression compile(String expression) {
+        Expression compiled = expressions.get(expression);
+        if (compiled == null) {
+            if (expression.startsWith("/")) {
+                compiled = new PointerExpression(JsonPointer.compile(expression));
+            } else if (SIMPLE_PATH.matcher(expression).matches()) {
+                compiled = new StepExpression(expression);
+            } else {
+                compiled = new PathExpression(JsonPath.compile(expression), configuration);
+            }
+            Expression existing = expressions.putIfAbsent(expression, compiled);
+            if (existing != null) {
+                compiled = existing;
+            }
+        }
+        return compiled;
+    }
+    
+    /**
+     * A compiled expression
+     */
+    abstract static class Expression {
+        /**
+         * @param json
+         *            the node to evaluate against
+         * @return the result
+         */
+        abstract Object read(JsonNode json);
+
+        /**
+         * @return true if this can only select a single node.
+         */
+        boolean isDefinite() {
+            return true;
+        }
+    }
+    
+    /**
+     * Evaluated by json-path
+     */
+    static final class PathExpression extends Expression {
+        private final JsonPath path;
+        private final Configuration configuration;
+        
+        PathExpression(JsonPath path, Configuration configuration) {
+            this.path = path;
+            this.configuration = configuration;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.jackson.JsonPathCache.Expression#read(com.fasterxml.jackson.databind.JsonNode)
+         */
+        @Override
+        Object read(JsonNode json) {
+            return path.read(json, configuration);
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.jackson.JsonPathCache.Expression#isDefinite()
+         */
+        @Override
+        boolean isDefinite() {
+            return path.isPathDefinite();
+        }
+    }
+    
+    /**
+     * An RFC 6901 JSON Pointer
+     */
+    static final class PointerExpression extends Expression {
+        private final JsonPointer pointer;
+        
+        PointerExpression(JsonPointer pointer) {
+            this.pointer = pointer;
+        }
+        
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.jackson.JsonPathCache.Expression#read(com.fasterxml.jackson.databind.JsonNode)
+         */
+        @Override
+        Object read(JsonNode json) {
+            return JsonNodeJsonProvider.unwrap(json.at(pointer));
+        }
+    }
+    
+    /**
+     * A json-path of member names and array indexes, navigated step by step. Member names only match object nodes
+     * and indexes only match array nodes, as would be the case for json-path.
+     */
+    static final class StepExpression extends Expression {
+        /**
+         * Each step, either a member name (String) or array index (Integer).
+         */
+        private final Object[] steps;
+        
+        StepExpression(String expression) {
+            List<Object> steps = new ArrayList<Object>();
+            Matcher matcher = SIMPLE_STEP.matcher(expression);
+            while (matcher.find()) {
+                if (matcher.group(2) != null) {
+                    steps.add(Integer.valueOf(matcher.group(2)));
+                } else if (matcher.group(1) != null) {
+                    steps.add(matcher.group(1));
+                } else {
+                    steps.add(matcher.group(3));
+                }
+            }
+            this.steps = steps.toArray();
+        }
+        
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.jackson.JsonPathCache.Expression#read(com.fasterxml.jackson.databind.JsonNode)
+         */
+        @Override
+        Object read(JsonNode json) {
+            JsonNode node = json;
+            for (int i = 0; i < steps.length && node != null; i++) {
+                Object step = steps[i];
+                if (step instanceof Integer) {
+                    node = (node.isArray() ? node.get(((Integer) step).intValue()) : null);
+                } else {
+                    node = (node.isObject() ? node.get((String) step) : null);
+                }
+            }
+            return JsonNodeJsonProvider.unwrap(node);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Identifies the parts of a JSON document that can be reached by a set of expressions, allowing everything else to be
+ * skipped while the document is loaded. Both json-path and JSON Pointer expressions are understood. Member names,
+ * array indexes and wildcards narrow the projection, while any step that cannot be analysed statically (deep scans,
+ * filters, slices and unions) causes the whole subtree at that point to be retained. The value selected by an
+ * expression is always retained in full, so that it can be bound to a type.
+ *
+ * Instances are immutable once created.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class JsonProjection {
+
+    /**
+     * The projection of the document root.
+     */
+    private final Node root;
+
+    /**
+     * @param root
+     */
+    private JsonProjection(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Build the projection that retains everything reachable by the specified expressions.
+     *
+     * @param expressions
+     *            the json-path or JSON Pointer expressions.
+     * @return the projection
+     */
+    public static JsonProjection of(Collection<String> expressions) {
+        Node root = new Node();
+        for (String expression : expressions) {
+            if (expression.startsWith("/")) {
+                addPointer(root, expression);
+            } else {
+                addPath(root, expression);
+            }
+        }
+        root.resolve();
+        return new JsonProjection(root);
+    }
+
+    /**
+     * Determine whether the projection retains the entire document.
+     *
+     * @return true if nothing will be skipped.
+     */
+    public boolean isComplete() {
+        return root.all;
+    }
+
+    /**
+     * @return the projection of the document root
+     */
+    Node getRoot() {
+        return root;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        root.appendTo(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Add the steps of a JSON Pointer
+     *
+     * @param root
+     * @param pointer
+     */
+    private static void addPointer(Node root, String pointer) {
+        Node node = root;
+        // Skip the leading '/'
+        for (String segment : pointer.substring(1).split("/", -1)) {
+            node = node.child(segment.replace("~1", "/").replace("~0", "~"));
+        }
+        node.all = true;
+    }
+
+    /**
+     * Add the steps of a json-path expression, up to the first step that cannot be analysed.
+     *
+     * @param root
+     * @param path
+     */
+    private static void addPath(Node root, String path) {
+        Node node = root;
+        String expression = path.trim();
+        int len = expression.length();
+        if (!expression.startsWith("$")) {
+            root.all = true;
+            return;
+        }
+        int i = 1;
+        while (i < len) {
+            char c = expression.charAt(i);
+            if (c == '.') {
+                if (i + 1 < len
+                        && expression.charAt(i + 1) == '.') {
+                    // Deep scan
+                    break;
+                }
+                int end = i + 1;
+                while (end < len
+                        && expression.charAt(end) != '.'
+                        && expression.charAt(end) != '[') {
+                    end++;
+                }
+                String name = expression.substring(i + 1, end);
+                node = ("*".equals(name) ? node.any() : node.child(name));
+                i = end;
+            } else if (c == '[') {
+                int end = expression.indexOf(']', i);
+                if (end < 0) {
+                    break;
+                }
+                String content = expression.substring(i + 1, end).trim();
+                if (content.length() > 1
+                        && (content.charAt(0) == '\'' || content.charAt(0) == '"')
+                        && content.indexOf(content.charAt(0), 1) == content.length() - 1) {
+                    node = node.child(content.substring(1, content.length() - 1));
+                } else if ("*".equals(content)) {
+                    node = node.any();
+                } else if (content.matches("\\d+")) {
+                    node = node.child(content);
+                } else {
+                    // Filter, slice or union
+                    break;
+                }
+                i = end + 1;
+            } else {
+                break;
+            }
+        }
+        node.all = true;
+    }
+
+    /**
+     * A position within the document
+     */
+    static final class Node {
+        /**
+         * Retain everything beneath this position.
+         */
+        private boolean all;
+
+        /**
+         * Positions beneath this one, keyed on member name or array index.
+         */
+        private Map<String, Node> children;
+
+        /**
+         * Applies to any member/element not in children.
+         */
+        private Node any;
+
+        /**
+         * @return true if everything beneath this position is retained.
+         */
+        boolean isAll() {
+            return all;
+        }
+
+        /**
+         * Identify the projection of the specified member or array element.
+         *
+         * @param name
+         *            the member name or array index.
+         * @return the projection or null if the member/element is not required.
+         */
+        Node select(String name) {
+            Node child = null;
+            if (children != null) {
+                child = children.get(name);
+            }
+            if (child == null) {
+                child = any;
+            }
+            return child;
+        }
+
+        private Node child(String name) {
+            if (children == null) {
+                children = new LinkedHashMap<String, Node>();
+            }
+            Node child = children.get(name);
+            if (child == null) {
+                child = new Node();
+                children.put(name, child);
+            }
+            return child;
+        }
+
+        private Node any() {
+            if (any == null) {
+                any = new Node();
+            }
+            return any;
+        }
+
+        /**
+         * Fold the wildcard into each named child so that {@link #select(String)} need only consult one node, then
+         * discard anything beneath a position that is retained in full.
+         */
+        private void resolve() {
+            if (all) {
+                children = null;
+                any = null;
+                return;
+            }
+            if (any != null) {
+                any.resolve();
+                if (children != null) {
+                    for (Node child : children.values()) {
+                        child.merge(any);
+                    }
+                }
+            }
+            if (children != null) {
+                for (Node child : children.values()) {
+                    child.resolve();
+                }
+            }
+        }
+
+        private void merge(Node other) {
+            all |= other.all;
+            if (other.children != null) {
+                for (Map.Entry<String, Node> entry : other.children.entrySet()) {
+                    child(entry.getKey()).merge(entry.getValue());
+                }
+            }
+            if (other.any != null) {
+                any().merge(other.any);
+            }
+        }
+
+        private void appendTo(StringBuilder sb) {
+            if (all) {
+                sb.append("**");
+                return;
+            }
+            sb.append('{');
+            boolean first = true;
+            if (children != null) {
+                for (Map.Entry<String, Node> entry : children.entrySet()) {
+                    if (!first) {
+                        sb.append(", ");
+                    }
+                    sb.append(entry.getKey()).append('=');
+                    entry.getValue().appendTo(sb);
+                    first = false;
+                }
+            }
+            if (any != null) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                sb.append("*=");
+                any.appendTo(sb);
+            }
+            sb.append('}');
+        }
+    }
+}
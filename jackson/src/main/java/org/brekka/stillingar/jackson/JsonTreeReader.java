@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.brekka.stillingar.api.ConfigurationException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Builds the tree for a JSON document in a single pass over the token stream. When a {@link JsonProjection} is
+ * supplied, members and elements that it does not retain are skipped by the parser without ever being materialised,
+ * so the memory used while loading is bounded by the size of the projected tree rather than the whole document.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class JsonTreeReader {
+
+    /**
+     * Supplies the parser, node factory and number handling features.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param objectMapper
+     *            supplies the parser, node factory and number handling features.
+     */
+    JsonTreeReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Read the document from the stream, which must have an object at its root.
+     *
+     * @param sourceStream
+     *            the stream to read from
+     * @param projection
+     *            the parts of the document to retain, or null to retain everything.
+     * @return the root object node
+     * @throws IOException
+     *             if the stream cannot be read or does not contain valid JSON.
+     */
+    ObjectNode read(InputStream sourceStream, JsonProjection projection) throws IOException {
+        return read(objectMapper.getFactory().createParser(sourceStream), projection);
+    }
+
+    /**
+     * Read the document from a region of a byte array, which must have an object at its root.
+     *
+     * @param data
+     *            the array containing the document
+     * @param offset
+     *            the offset of the document within the array
+     * @param length
+     *            the length of the document
+     * @param projection
+     *            the parts of the document to retain, or null to retain everything.
+     * @return the root object node
+     * @throws IOException
+     *             if the content is not valid JSON.
+     */
+    ObjectNode read(byte[] data, int offset, int length, JsonProjection projection) throws IOException {
+        return read(objectMapper.getFactory().createParser(data, offset, length), projection);
+    }
+
+    /**
+     * @param parser
+     *            the parser, which will be closed
+     * @param projection
+     *            the parts of the document to retain, or null to retain everything.
+     * @return the root object node
+     * @throws IOException
+     */
+    private ObjectNode read(JsonParser parser, JsonProjection projection) throws IOException {
+        try {
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.START_OBJECT) {
+                throw new ConfigurationException(String.format(
+                        "Expected the document to contain an object, found '%s'", token));
+            }
+            JsonProjection.Node root = (projection == null ? null : projection.getRoot());
+            return (ObjectNode) readValue(parser, objectMapper.getNodeFactory(), root);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Read the value at the current token.
+     *
+     * @param parser
+     *            positioned at the first token of the value
+     * @param factory
+     *            creates the nodes
+     * @param projection
+     *            the projection of this value, null if the value is to be retained in full.
+     * @return the node
+     * @throws IOException
+     */
+    private JsonNode readValue(JsonParser parser, JsonNodeFactory factory, JsonProjection.Node projection)
+            throws IOException {
+        if (projection != null
+                && projection.isAll()) {
+            projection = null;
+        }
+        switch (parser.getCurrentToken()) {
+            case START_OBJECT:
+                ObjectNode objectNode = factory.objectNode();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    JsonProjection.Node child = null;
+                    if (projection != null) {
+                        child = projection.select(name);
+                        if (child == null) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                    }
+                    objectNode.set(name, readValue(parser, factory, child));
+                }
+                return objectNode;
+            case START_ARRAY:
+                ArrayNode arrayNode = factory.arrayNode();
+                int index = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    JsonProjection.Node child = null;
+                    if (projection != null) {
+                        child = projection.select(String.valueOf(index));
+                        if (child == null) {
+                            // Retain the position of subsequent elements
+                            parser.skipChildren();
+                            arrayNode.addNull();
+                            index++;
+                            continue;
+                        }
+                    }
+                    arrayNode.add(readValue(parser, factory, child));
+                    index++;
+                }
+                return arrayNode;
+            case VALUE_STRING:
+                return factory.textNode(parser.getText());
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        if (!objectMapper.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS)) {
+                            return factory.numberNode(parser.getIntValue());
+                        }
+                        return factory.numberNode(parser.getBigIntegerValue());
+                    case LONG:
+                        if (!objectMapper.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS)) {
+                            return factory.numberNode(parser.getLongValue());
+                        }
+                        return factory.numberNode(parser.getBigIntegerValue());
+                    default:
+                        return factory.numberNode(parser.getBigIntegerValue());
+                }
+            case VALUE_NUMBER_FLOAT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL
+                        || objectMapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)) {
+                    return factory.numberNode(parser.getDecimalValue());
+                }
+                return factory.numberNode(parser.getDoubleValue());
+            case VALUE_TRUE:
+                return factory.booleanNode(true);
+            case VALUE_FALSE:
+                return factory.booleanNode(false);
+            case VALUE_NULL:
+                return factory.nullNode();
+            case VALUE_EMBEDDED_OBJECT:
+                return factory.pojoNode(parser.getEmbeddedObject());
+            default:
+                throw new ConfigurationException(String.format(
+                        "Unexpected token '%s' in JSON document", parser.getCurrentToken()));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Caches an {@link ObjectReader} for each type that JSON nodes are bound to, so the deserializer lookup is only
+ * performed once per type. A single instance is shared by all of the snapshots produced by a loader.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class ObjectReaderCache {
+
+    /**
+     * The mapper from which the readers are derived.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Readers keyed on the type they bind to.
+     */
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+    /**
+     * @param objectMapper
+     *            the mapper from which the readers are derived.
+     */
+    ObjectReaderCache(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Bind the node to an instance of the specified type.
+     *
+     * @param node
+     *            the node to bind
+     * @param type
+     *            the type to bind to
+     * @return the bound value
+     * @throws IOException
+     *             if the node cannot be bound to the type.
+     */
+    <T> T treeToValue(JsonNode node, Class<T> type) throws IOException {
+        return forType(type).readValue(node);
+    }
+
+    /**
+     * Retrieve the reader for the specified type, creating it if this is the first time it has been requested.
+     *
+     * @param type
+     *            the type to bind to
+     * @return the reader
+     */
+    ObjectReader forType(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = objectMapper.reader(type);
+            ObjectReader existing = readers.putIfAbsent(type, reader);
+            if (existing != null) {
+                reader = existing;
+            }
+        }
+        return reader;
+    }
+}
@@ -16,12 +16,22 @@
 
 package org.brekka.stillingar.jackson;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ValueConfigurationException;
 import org.brekka.stillingar.core.conversion.ConversionManager;
 import org.brekka.stillingar.jackson.config.TestConfig;
+import org.brekka.stillingar.jackson.config.TestConfig.CompanyY;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -78,6 +88,50 @@ public class JacksonConfigurationSourceLoaderTest {
         assertNotNull(configurationSource);
     }
     
+    @Test
+    public void testParseRootBoundLazily() throws Exception {
+        // The document cannot be bound to Integer, which should only matter once a type based lookup is made
+        JacksonConfigurationSourceLoader snapshotLoader =  new JacksonConfigurationSourceLoader(om, Integer.class);
+        ConfigurationSource configurationSource = snapshotLoader.parse(
+                getClass().getResourceAsStream("TestConfiguration.json"), null);
+        assertEquals(Integer.valueOf(42), configurationSource.retrieve("$..maxQuantity", Integer.class));
+        try {
+            configurationSource.retrieve(CompanyY.class);
+            fail("Exception expected");
+        } catch (ValueConfigurationException e) {
+            assertEquals(CompanyY.class, e.getValueType());
+        }
+    }
+    
+    @Test
+    public void testParseWithExpressions() throws Exception {
+        JacksonConfigurationSourceLoader snapshotLoader =  new JacksonConfigurationSourceLoader(om, TestConfig.class);
+        ConfigurationSource configurationSource = snapshotLoader.parse(
+                getClass().getResourceAsStream("TestConfiguration.json"), null,
+                Arrays.asList("$.services.rules.transaction", "/motd/message"));
+        assertEquals(Integer.valueOf(42), configurationSource.retrieve("$.services.rules.transaction.maxQuantity", Integer.class));
+        assertEquals("Test message", configurationSource.retrieve("/motd/message", String.class));
+        assertFalse(configurationSource.isAvailable("$.services.rules.fraud"));
+        assertFalse(configurationSource.isAvailable("/motd/id"));
+        assertFalse(configurationSource.isAvailable("$.security"));
+    }
+
+    @Test
+    public void testParseByteBuffer() throws Exception {
+        JacksonConfigurationSourceLoader snapshotLoader =  new JacksonConfigurationSourceLoader(om, TestConfig.class);
+        byte[] content = read("TestConfiguration.json");
+        // Array backed, with content offset within the array
+        byte[] padded = new byte[content.length + 4];
+        System.arraycopy(content, 0, padded, 2, content.length);
+        ConfigurationSource configurationSource = snapshotLoader.parse(ByteBuffer.wrap(padded, 2, content.length), null);
+        assertEquals(Integer.valueOf(42), configurationSource.retrieve("$.services.rules.transaction.maxQuantity", Integer.class));
+        // Direct
+        ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+        direct.put(content).flip();
+        configurationSource = snapshotLoader.parse(direct, null);
+        assertEquals("Test message", configurationSource.retrieve("/motd/message", String.class));
+    }
+
     @Test(expected=ConfigurationException.class)
     public void testParseNonJson() throws Exception {
         JacksonConfigurationSourceLoader snapshotLoader =  new JacksonConfigurationSourceLoader(om, TestConfig.class);
@@ -87,7 +141,27 @@ public class JacksonConfigurationSourceLoaderTest {
     @Test(expected=NullPointerException.class)
     public void testParseNullStream() throws Exception {
         JacksonConfigurationSourceLoader snapshotLoader =  new JacksonConfigurationSourceLoader(om, TestConfig.class);
-        snapshotLoader.parse(null, null);
+        snapshotLoader.parse((InputStream) null, null);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testParseNullBuffer() throws Exception {
+        JacksonConfigurationSourceLoader snapshotLoader =  new JacksonConfigurationSourceLoader(om, TestConfig.class);
+        snapshotLoader.parse((ByteBuffer) null, null);
+    }
+    
+    private byte[] read(String name) throws Exception {
+        InputStream is = getClass().getResourceAsStream(name);
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
+            }
+            return baos.toByteArray();
+        } finally {
+            is.close();
+        }
     }
-
 }
@@ -19,8 +19,10 @@ package org.brekka.stillingar.jackson;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URI;
@@ -34,7 +36,10 @@ import java.util.concurrent.TimeUnit;
 
 import net.iharder.Base64;
 
+import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.diff.SnapshotDiff;
+import org.brekka.stillingar.core.diff.SnapshotDiffProducer;
 import org.brekka.stillingar.jackson.config.TestConfig;
 import org.brekka.stillingar.jackson.config.TestConfig.CompanyX;
 import org.brekka.stillingar.jackson.config.TestConfig.CompanyY;
@@ -44,6 +49,7 @@ import org.joda.time.Period;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 
@@ -148,6 +154,49 @@ public class JacksonConfigurationSourceTest {
         assertEquals(Arrays.asList("KeywordA", "KeywordB", "KeywordC"), list);
     }
     
+    @Test
+    public void testScopeRelative() {
+        ConfigurationSource scoped = configurationSource.scope("$.services.rules");
+        assertNotNull(scoped);
+        assertEquals(Integer.valueOf(42), scoped.retrieve("$.transaction.maxQuantity", Integer.class));
+        assertEquals(Arrays.asList("KeywordA", "KeywordB", "KeywordC"), 
+                scoped.retrieveList("$.fraud.keyword[*]", String.class));
+    }
+    
+    @Test
+    public void testScopeArray() {
+        ConfigurationSource scoped = configurationSource.scope("$.featureFlag");
+        assertNotNull(scoped);
+        assertEquals("DEBUG", scoped.retrieve("$[?(@.enabled == false)].key", String.class));
+    }
+    
+    @Test
+    public void testScopeSingleElementArray() throws Exception {
+        JacksonConfigurationSource source = (JacksonConfigurationSource) parse("{\"hosts\": [{\"name\": \"alpha\"}]}");
+        ConfigurationSource scoped = source.scope("$.hosts");
+        assertNotNull(scoped);
+        assertEquals("alpha", scoped.retrieve("$[0].name", String.class));
+    }
+
+    @Test
+    public void testScopeSingleMatchUnwrapped() throws Exception {
+        JacksonConfigurationSource source = (JacksonConfigurationSource) parse("{\"a\": {\"hosts\": {\"name\": \"alpha\"}}}");
+        ConfigurationSource scoped = source.scope("$..hosts");
+        assertNotNull(scoped);
+        assertEquals("alpha", scoped.retrieve("$.name", String.class));
+    }
+
+    @Test
+    public void testRetrieveJsonNode() {
+        JsonNode node = configurationSource.retrieve("$.companyY.warehouseWebService", JsonNode.class);
+        assertEquals("Username", node.get("username").textValue());
+    }
+    
+    @Test
+    public void testScopeMissing() {
+        assertNull(configurationSource.scope("$.companyX"));
+    }
+    
     @Test
     public void testRetrieveShort() {
         assertEquals(Short.valueOf((short) 169), configurationSource.retrieve("$..scale", Short.class));
@@ -236,5 +285,29 @@ public class JacksonConfigurationSourceTest {
     public void testRetrieveIncorrectType() throws Exception {
         configurationSource.retrieve("$..maxQuantity", URL.class);
     }
-    
+
+    @Test
+    public void testDiffQuotesMemberNames() throws Exception {
+        ConfigurationSource previous = parse("{\"a.b\": 1, \"it's\": 1, \"plain\": {\"c\": 1}}");
+        ConfigurationSource latest = parse("{\"a.b\": 2, \"it's\": 1, \"plain\": {\"c\": 2}}");
+        SnapshotDiff diff = SnapshotDiffProducer.diff(previous, latest);
+        assertEquals(Arrays.asList("$['a.b']", "$.plain.c"), diff.getChanged());
+        assertEquals(Integer.valueOf(2), latest.retrieve(diff.getChanged().get(0), Integer.class));
+    }
+
+    @Test
+    public void testDiffSkipsUnchangedSubtrees() throws Exception {
+        ConfigurationSource previous = parse("{\"a\": {\"x\": 1, \"y\": [1, 2]}, \"b\": {\"c\": {\"d\": \"e\"}}}");
+        ConfigurationSource latest = parse("{\"a\": {\"y\": [1, 2], \"x\": 1}, \"b\": {\"c\": {\"d\": \"f\"}}}");
+        assertTrue(SnapshotDiffProducer.diff(previous, previous).getChanged().isEmpty());
+        SnapshotDiff diff = SnapshotDiffProducer.diff(previous, latest);
+        assertEquals(Arrays.asList("$.b.c.d"), diff.getChanged());
+        assertTrue(diff.getAdded().isEmpty());
+        assertTrue(diff.getRemoved().isEmpty());
+    }
+
+    private static ConfigurationSource parse(String json) throws Exception {
+        JacksonConfigurationSourceLoader loader = new JacksonConfigurationSourceLoader(new ObjectMapper(), TestConfig.class);
+        return loader.parse(new ByteArrayInputStream(json.getBytes("UTF-8")), null);
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Test of JsonPathCache
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class JsonPathCacheTest {
+
+    private ObjectMapper objectMapper;
+    
+    private JsonNode json;
+    
+    private JsonPathCache pathCache;
+    
+    @Before
+    public void setup() throws Exception {
+        objectMapper = new ObjectMapper();
+        json = objectMapper.readTree(getClass().getResourceAsStream("TestConfiguration.json"));
+        pathCache = new JsonPathCache(objectMapper);
+    }
+    
+    @Test
+    public void testSimplePathMatchesJsonPath() {
+        Configuration configuration = Configuration.builder()
+                .jsonProvider(new JsonNodeJsonProvider(objectMapper)).build();
+        for (String expression : Arrays.asList(
+                "$.motd.message",
+                "$.featureFlag[1].key",
+                "$.services.rules.fraud.keyword",
+                "$.services['rules'].transaction.maxQuantity",
+                "$.companyY",
+                "$.companyX")) {
+            assertTrue(pathCache.compile(expression) instanceof JsonPathCache.StepExpression);
+            Object expected = JsonPath.compile(expression).read(json, configuration);
+            assertEquals(expression, expected, pathCache.compile(expression).read(json));
+        }
+    }
+    
+    @Test
+    public void testPointer() {
+        assertEquals(Integer.valueOf(42), pathCache.read(json, "/services/rules/transaction/maxQuantity"));
+        assertEquals("DEBUG", pathCache.read(json, "/featureFlag/1/key"));
+        assertEquals(Arrays.asList("KeywordA", "KeywordB", "KeywordC"), 
+                pathCache.read(json, "/services/rules/fraud/keyword"));
+        assertNull(pathCache.read(json, "/companyX/url"));
+    }
+    
+    @Test
+    public void testComplexPathUsesJsonPath() {
+        assertTrue(pathCache.compile("$..maxQuantity") instanceof JsonPathCache.PathExpression);
+        assertTrue(pathCache.compile("$.featureFlag[*].key") instanceof JsonPathCache.PathExpression);
+        assertTrue(pathCache.compile("$.featureFlag[?(@.key == 'DEBUG')]") instanceof JsonPathCache.PathExpression);
+        assertEquals(Arrays.asList("TURBO", "DEBUG"), pathCache.read(json, "$.featureFlag[*].key"));
+    }
+    
+    @Test
+    public void testLargeIndexUsesJsonPath() {
+        assertTrue(pathCache.compile("$.featureFlag[999999999]") instanceof JsonPathCache.StepExpression);
+        assertNull(pathCache.read(json, "$.featureFlag[999999999]"));
+        assertTrue(pathCache.compile("$.featureFlag[99999999999]") instanceof JsonPathCache.PathExpression);
+    }
+    
+    @Test
+    public void testCompiledOnce() {
+        assertTrue(pathCache.compile("$.motd.message") == pathCache.compile("$.motd.message"));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Test of JsonProjection
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class JsonProjectionTest {
+
+    @Test
+    public void testMembers() {
+        JsonProjection projection = JsonProjection.of(Arrays.asList(
+                "$.services.rules.transaction.maxQuantity", "$.motd['message']"));
+        assertFalse(projection.isComplete());
+        assertEquals("{services={rules={transaction={maxQuantity=**}}}, motd={message=**}}", projection.toString());
+    }
+    
+    @Test
+    public void testPointer() {
+        JsonProjection projection = JsonProjection.of(Arrays.asList("/featureFlag/1/key", "/a~1b"));
+        assertEquals("{featureFlag={1={key=**}}, a/b=**}", projection.toString());
+    }
+    
+    @Test
+    public void testFilterRetainsSubtree() {
+        JsonProjection projection = JsonProjection.of(Arrays.asList(
+                "$.featureFlag[?(@.key == 'TURBO')].enabled", "$.services..maxQuantity"));
+        assertEquals("{featureFlag=**, services=**}", projection.toString());
+    }
+    
+    @Test
+    public void testWildcardMerged() {
+        JsonProjection projection = JsonProjection.of(Arrays.asList("$.a[*].x", "$.a[0].y"));
+        assertEquals("{a={0={y=**, x=**}, *={x=**}}}", projection.toString());
+    }
+    
+    @Test
+    public void testDeepScanIsComplete() {
+        assertTrue(JsonProjection.of(Arrays.asList("$.motd.id", "$..companyY")).isComplete());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Test of JsonTreeReader
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class JsonTreeReaderTest {
+
+    private ObjectMapper objectMapper;
+    
+    private JsonTreeReader treeReader;
+    
+    @Before
+    public void setup() {
+        objectMapper = new ObjectMapper();
+        treeReader = new JsonTreeReader(objectMapper);
+    }
+    
+    @Test
+    public void testReadMatchesMapper() throws Exception {
+        ObjectNode expected = (ObjectNode) objectMapper.readTree(getClass().getResourceAsStream("TestConfiguration.json"));
+        ObjectNode actual = treeReader.read(getClass().getResourceAsStream("TestConfiguration.json"), null);
+        assertEquals(expected, actual);
+    }
+    
+    @Test
+    public void testReadProjected() throws Exception {
+        JsonProjection projection = JsonProjection.of(Arrays.asList(
+                "$.services.rules.transaction.maxQuantity", 
+                "$.featureFlag[1].key"));
+        ObjectNode node = treeReader.read(getClass().getResourceAsStream("TestConfiguration.json"), projection);
+        assertEquals(42, node.path("services").path("rules").path("transaction").path("maxQuantity").intValue());
+        assertFalse(node.path("services").path("rules").has("fraud"));
+        assertFalse(node.has("security"));
+        assertTrue(node.path("featureFlag").get(0).isNull());
+        assertEquals("DEBUG", node.path("featureFlag").get(1).path("key").textValue());
+        assertFalse(node.path("featureFlag").get(1).has("enabled"));
+    }
+    
+    @Test(expected=ConfigurationException.class)
+    public void testReadArrayRoot() throws Exception {
+        treeReader.read(new ByteArrayInputStream("[1, 2]".getBytes("UTF-8")), null);
+    }
+}
@@ -36,6 +36,14 @@ public class JAXBBeanReflectionHelper extends BeanReflectionHelper {
     public JAXBBeanReflectionHelper(Object bean) {
         super(bean);
     }
+    
+    /**
+     * @param bean
+     * @param indexed
+     */
+    public JAXBBeanReflectionHelper(Object bean, boolean indexed) {
+        super(bean, indexed);
+    }
 
     /* (non-Javadoc)
      * @see org.brekka.stillingar.core.support.BeanReflectionHelper#acceptClass(java.lang.Class)
@@ -22,12 +22,14 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlType;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.xpath.XPathConstants;
 
+import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ValueConfigurationException;
 import org.brekka.stillingar.core.conversion.ConversionManager;
 import org.brekka.stillingar.core.dom.DOMConfigurationSource;
@@ -38,9 +40,14 @@ import org.w3c.dom.NodeList;
 
 /**
  * Configuration source based on JAXB. Due to the lack of direct XPath support in JAXB, a standard DOM model will also
- * be retained and used as the basis for XPath operations. Some simple logic then finds to corresponding JAXB bean.
+ * be retained and used as the basis for XPath operations. Where the loader supplies the objects bound to each element
+ * (captured at unmarshal time), the JAXB bean corresponding to a node is found with a single lookup, allowing
+ * expressions with arbitrary predicates to select beans. Otherwise some simple logic walks from the document root to
+ * find the corresponding JAXB bean.
  * 
- * It should be noted that searches by type are performed by traversing the JAXB object model graph. 
+ * It should be noted that searches by type are performed by traversing the JAXB object model graph, which is done once
+ * on the first such search to build an index of the instances of each type. When scoped, only the graph beneath the
+ * JAXB object corresponding to the context node is traversed.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
@@ -50,6 +57,15 @@ public class JAXBConfigurationSource extends DOMConfigurationSource {
      * JAXB object representation of the XML
      */
     private final Object object;
+    
+    /**
+     * The JAXB object bound to each element, keyed on node identity (can be null).
+     */
+    private final Map<Node, Object> nodeObjects;
+    
+    /**
+     * Resolves type based lookups from the JAXB object corresponding to the context node.
+     */
     private final BeanReflectionHelper reflectionHelper;
 
     /**
@@ -59,9 +75,46 @@ public class JAXBConfigurationSource extends DOMConfigurationSource {
      * @param conversionManager
      */
     public JAXBConfigurationSource(Document document, Object object, NamespaceContext xPathNamespaceContext, ConversionManager conversionManager) {
-        super(document, xPathNamespaceContext, conversionManager);
+        this(document, document, object, null, xPathNamespaceContext, conversionManager);
+    }
+    
+    /**
+     * @param document
+     * @param object
+     * @param nodeObjects
+     *            the JAXB object bound to each element, keyed on node identity. Elements bound to simple values need
+     *            not be included.
+     * @param xPathNamespaceContext
+     * @param conversionManager
+     */
+    public JAXBConfigurationSource(Document document, Object object, Map<Node, Object> nodeObjects, 
+            NamespaceContext xPathNamespaceContext, ConversionManager conversionManager) {
+        this(document, document, object, nodeObjects, xPathNamespaceContext, conversionManager);
+    }
+    
+    /**
+     * @param document
+     * @param contextNode
+     * @param object
+     * @param nodeObjects
+     * @param xPathNamespaceContext
+     * @param conversionManager
+     */
+    protected JAXBConfigurationSource(Document document, Node contextNode, Object object, Map<Node, Object> nodeObjects,
+            NamespaceContext xPathNamespaceContext, ConversionManager conversionManager) {
+        super(document, contextNode, xPathNamespaceContext, conversionManager);
         this.object = object;
-        this.reflectionHelper = new JAXBBeanReflectionHelper(object);
+        this.nodeObjects = nodeObjects;
+        this.reflectionHelper = new JAXBBeanReflectionHelper(resolveContextObject(contextNode), true);
+    }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.dom.DOMConfigurationSource#newScopedSource(org.w3c.dom.Node)
+     */
+    @Override
+    protected ConfigurationSource newScopedSource(Node contextNode) {
+        return new JAXBConfigurationSource(getDocument(), contextNode, object, nodeObjects, 
+                getXPathNamespaceContext(), getConversionManager());
     }
     
 
@@ -126,9 +179,18 @@ public class JAXBConfigurationSource extends DOMConfigurationSource {
     public <T> List<T> retrieveList(String expression, Class<T> valueType) {
         List<T> valueList;
         if (isJaxb(valueType)) {
-            Object obj = doXPath(expression, XPathConstants.NODE, valueType);
-            if (obj instanceof Node) {
-                Node node = (Node) obj;
+            NodeList nodeList = doXPathList(expression, valueType);
+            if (nodeList.getLength() == 0) {
+                valueList = null;
+            } else if (nodeObjects != null
+                    && nodeObjects.containsKey(nodeList.item(0))) {
+                // Each selected element is bound to its own object
+                valueList = new ArrayList<T>(nodeList.getLength());
+                for (int i = 0; i < nodeList.getLength(); i++) {
+                    valueList.add(toJaxbObject(nodeList.item(i), valueType));
+                }
+            } else {
+                Node node = nodeList.item(0);
                 Object resolvedObject = toJaxbObject(node, valueType);
                 if (resolvedObject == null) {
                     valueList = null;
@@ -140,10 +202,6 @@ public class JAXBConfigurationSource extends DOMConfigurationSource {
                             resolvedObject.getClass().getName()
                             ), valueType, expression);
                 }
-            } else {
-                throw new ValueConfigurationException(format(
-                        "Result is not a single node, it is instead: '%s'", 
-                        obj.getClass().getName()), valueType, expression);
             }
         } else {
             valueList = super.retrieveList(expression, valueType);
@@ -203,11 +261,39 @@ public class JAXBConfigurationSource extends DOMConfigurationSource {
         return (T) value;
     }
     
+    /**
+     * Identify the JAXB object that corresponds to the context node.
+     * 
+     * @param contextNode
+     * @return the object, or null if it cannot be resolved.
+     */
+    @SuppressWarnings("unchecked")
+    private Object resolveContextObject(Node contextNode) {
+        if (contextNode instanceof Document) {
+            return this.object;
+        }
+        Object value = resolveObject(contextNode);
+        if (value instanceof List) {
+            try {
+                value = resolveValueFromList(contextNode, (List<Object>) value);
+            } catch (IllegalStateException e) {
+                value = null;
+            }
+        }
+        return value;
+    }
+    
     /**
      * @param node
      * @return
      */
     protected Object resolveObject(Node node) {
+        if (nodeObjects != null) {
+            Object mapped = nodeObjects.get(node);
+            if (mapped != null) {
+                return mapped;
+            }
+        }
         Node parentNode = node.getParentNode();
         Object parentObj;
         if (parentNode instanceof Document) {
@@ -22,11 +22,16 @@ import java.io.InputStream;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import javax.xml.bind.Binder;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.JAXBIntrospector;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -46,10 +51,16 @@ import org.brekka.stillingar.core.dom.DOMConfigurationSourceLoader;
 import org.brekka.stillingar.core.dom.DefaultNamespaceContext;
 import org.brekka.stillingar.jaxb.conversion.JAXBTemporalAdapter;
 import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 /**
- * Snapshot loader of XML files using JAXB
+ * Snapshot loader of XML files using JAXB. The {@link JAXBContext} is created once for the lifetime of the loader, with
+ * the {@link DocumentBuilder}s pooled, allowing multiple threads to parse at the same time.
+ * 
+ * Documents are unmarshalled via a {@link Binder} so that the JAXB object created for each element can be recorded
+ * against its DOM node. This allows the resulting {@link JAXBConfigurationSource} to resolve the object selected by an
+ * XPath expression with a single map lookup.
  *
  * @author Andrew Taylor (andrew@brekka.org)
  */
@@ -75,6 +86,21 @@ public class JAXBConfigurationSourceLoader implements ConfigurationSourceLoader
      */
     private final ConversionManager conversionManager;
     
+    /**
+     * Factory for document builders, only accessed when the pool is empty.
+     */
+    private final DocumentBuilderFactory documentBuilderFactory;
+    
+    /**
+     * Document builders available for reuse.
+     */
+    private final Queue<DocumentBuilder> documentBuilderPool = new ConcurrentLinkedQueue<DocumentBuilder>();
+    
+    /**
+     * The JAXB context, created on first use and then retained.
+     */
+    private volatile JAXBContext jaxbContext;
+    
     public JAXBConfigurationSourceLoader(String contextPath, List<URL> schemas) {
         this(contextPath, schemas, new DefaultNamespaceContext());
     }
@@ -122,24 +148,26 @@ public class JAXBConfigurationSourceLoader implements ConfigurationSourceLoader
         if (conversionManager == null) {
             throw new IllegalArgumentException("null passed for conversionManager");
         }
+        this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        this.documentBuilderFactory.setNamespaceAware(true);
     }
 
     /* (non-Javadoc)
      * @see org.brekka.stillingar.core.ConfigurationSourceLoader#parse(java.io.InputStream, java.nio.charset.Charset)
      */
     @Override
-    public synchronized ConfigurationSource parse(InputStream sourceStream, Charset encoding) throws ConfigurationException,
+    public ConfigurationSource parse(InputStream sourceStream, Charset encoding) throws ConfigurationException,
             IOException {
+        DocumentBuilder documentBuilder = null;
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(xPathNamespaceContext != null);
-            DocumentBuilder documentBuilder = factory.newDocumentBuilder();
+            documentBuilder = borrowDocumentBuilder();
             Document document = documentBuilder.parse(sourceStream);
-            JAXBContext jc = JAXBContext.newInstance(this.contextPath);
-            Unmarshaller u = jc.createUnmarshaller();
-            u.setSchema( this.schema );
-            Object object = u.unmarshal(document);
-            return new JAXBConfigurationSource(document, object, xPathNamespaceContext, conversionManager);
+            Binder<Node> binder = jaxbContext().createBinder();
+            binder.setSchema(this.schema);
+            Object object = binder.unmarshal(document);
+            Map<Node, Object> nodeObjects = new IdentityHashMap<Node, Object>();
+            mapNodeObjects(document.getDocumentElement(), binder, nodeObjects);
+            return new JAXBConfigurationSource(document, object, nodeObjects, xPathNamespaceContext, conversionManager);
         } catch (JAXBException e) {
             throw new ConfigurationException(String.format(
                     "Failed to establish new JAXB context for path '%s'", this.contextPath), e);
@@ -149,7 +177,71 @@ public class JAXBConfigurationSourceLoader implements ConfigurationSourceLoader
         } catch (ParserConfigurationException e) {
             throw new ConfigurationException(String.format(
                     "Failed to obtain XML parser"), e);
+        } finally {
+            if (documentBuilder != null) {
+                documentBuilder.reset();
+                documentBuilderPool.offer(documentBuilder);
+            }
+        }
+    }
+    
+    /**
+     * Record the JAXB object bound to <code>element</code> and each of its descendants. Elements that are not bound to
+     * an object of their own (such as those mapped to simple values) are omitted.
+     * 
+     * @param element
+     *            the element to start from
+     * @param binder
+     *            the binder used to unmarshal the document
+     * @param nodeObjects
+     *            the map to add the objects to
+     */
+    protected static void mapNodeObjects(Node element, Binder<Node> binder, Map<Node, Object> nodeObjects) {
+        Object object = binder.getJAXBNode(element);
+        if (object != null) {
+            nodeObjects.put(element, JAXBIntrospector.getValue(object));
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                mapNodeObjects(child, binder, nodeObjects);
+            }
+        }
+    }
+    
+    /**
+     * Take a document builder from the pool, creating a new one if the pool is empty.
+     * 
+     * @return the document builder
+     * @throws ParserConfigurationException
+     */
+    protected DocumentBuilder borrowDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder documentBuilder = documentBuilderPool.poll();
+        if (documentBuilder == null) {
+            synchronized (documentBuilderFactory) {
+                documentBuilder = documentBuilderFactory.newDocumentBuilder();
+            }
+        }
+        return documentBuilder;
+    }
+    
+    /**
+     * Retrieve the JAXB context, creating it on first use.
+     * 
+     * @return the JAXB context for the context path.
+     * @throws JAXBException
+     */
+    protected JAXBContext jaxbContext() throws JAXBException {
+        JAXBContext jc = this.jaxbContext;
+        if (jc == null) {
+            synchronized (this) {
+                jc = this.jaxbContext;
+                if (jc == null) {
+                    jc = JAXBContext.newInstance(this.contextPath);
+                    this.jaxbContext = jc;
+                }
+            }
         }
+        return jc;
     }
 
     private static void closeQuietly(Closeable closeable) {
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.jaxb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.dom.DefaultNamespaceContext;
+import org.brekka.stillingar.test.jaxb.Configuration.CompanyY;
+import org.brekka.stillingar.test.jaxb.Configuration.FeatureFlag;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of JAXBConfigurationSourceLoader
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class JAXBConfigurationSourceLoaderTest {
+
+    private JAXBConfigurationSourceLoader loader;
+    
+    @Before
+    public void setup() throws Exception {
+        DefaultNamespaceContext namespaceContext = new DefaultNamespaceContext(
+            "c", "http://brekka.org/xml/stillingar/test/v1"
+        );
+        loader = new JAXBConfigurationSourceLoader("org.brekka.stillingar.test.jaxb", 
+                Collections.<URL>emptyList(), namespaceContext);
+    }
+    
+    @Test
+    public void testParseRepeatedly() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            ConfigurationSource source = loader.parse(getClass().getResourceAsStream("TestConfiguration.xml"), null);
+            assertNotNull(source.retrieve(CompanyY.class));
+        }
+    }
+    
+    @Test
+    public void testParseConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        ConfigurationSource source = loader.parse(
+                                getClass().getResourceAsStream("TestConfiguration.xml"), null);
+                        return source.retrieve("//c:MaxQuantity", Integer.class);
+                    }
+                }));
+            }
+            for (Future<Integer> future : results) {
+                assertEquals(Integer.valueOf(42), future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testRetrieveWithPredicate() throws Exception {
+        ConfigurationSource source = loader.parse(getClass().getResourceAsStream("TestConfiguration.xml"), null);
+        FeatureFlag flag = source.retrieve("//c:FeatureFlag[@key='beta']", FeatureFlag.class);
+        assertEquals("beta", flag.getKey());
+    }
+    
+    @Test
+    public void testRetrieveListWithPredicate() throws Exception {
+        ConfigurationSource source = loader.parse(getClass().getResourceAsStream("TestConfiguration.xml"), null);
+        List<FeatureFlag> flags = source.retrieveList("//c:FeatureFlag[@key!='alpha']", FeatureFlag.class);
+        assertEquals(1, flags.size());
+        assertEquals("beta", flags.get(0).getKey());
+    }
+    
+    @Test
+    public void testRetrieveSimpleValues() throws Exception {
+        ConfigurationSource source = loader.parse(getClass().getResourceAsStream("TestConfiguration.xml"), null);
+        assertEquals("KeywordB", source.retrieve("//c:Fraud/c:Keyword[2]", String.class));
+        assertEquals(2, source.retrieveList("//c:FeatureFlag", FeatureFlag.class).size());
+    }
+    
+    @Test(expected=ConfigurationException.class)
+    public void testParseInvalid() throws Exception {
+        loader.parse(new ByteArrayInputStream("<notxml".getBytes("UTF-8")), null);
+    }
+}
@@ -19,6 +19,7 @@ package org.brekka.stillingar.jaxb;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
@@ -40,6 +41,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 
 import net.iharder.Base64;
 
+import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.core.conversion.ConversionManager;
 import org.brekka.stillingar.core.dom.DefaultNamespaceContext;
 import org.brekka.stillingar.test.jaxb.Configuration.CompanyX;
@@ -153,6 +155,37 @@ public class JAXBConfigurationSourceTest {
     
     
 
+    @Test
+    public void testScopeRelative() {
+        ConfigurationSource scoped = configurationSource.scope("//c:Services/c:Rules");
+        assertNotNull(scoped);
+        assertEquals(Integer.valueOf(42), scoped.retrieve("c:Transaction/c:MaxQuantity", Integer.class));
+        assertEquals(Arrays.asList("KeywordA", "KeywordB", "KeywordC"), 
+                scoped.retrieveList("c:Fraud/c:Keyword", String.class));
+        assertNotNull(scoped.retrieve("c:Fraud", Fraud.class));
+    }
+    
+    @Test
+    public void testScopeByType() {
+        ConfigurationSource scoped = configurationSource.scope("//c:Services/c:Rules");
+        assertTrue(scoped.isAvailable(Fraud.class));
+        assertFalse(scoped.isAvailable(CompanyY.class));
+    }
+    
+    @Test
+    public void testScopeAbsolute() {
+        ConfigurationSource scoped = configurationSource.scope("//c:Services/c:Rules");
+        assertTrue(scoped.isAvailable("//c:MOTD"));
+        assertTrue(scoped.isAvailable("/c:Configuration/c:MOTD"));
+        assertFalse(scoped.isAvailable(".//c:MOTD"));
+        assertEquals(Integer.valueOf(42), scoped.retrieve(".//c:MaxQuantity", Integer.class));
+    }
+    
+    @Test
+    public void testScopeMissing() {
+        assertNull(configurationSource.scope("//c:CompanyX"));
+    }
+    
     @Test
     public void testRetrieveShort() {
         assertEquals(Short.valueOf((short) 169), configurationSource.retrieve("//c:Scale", Short.class));
@@ -35,17 +35,20 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ListDelta;
 import org.brekka.stillingar.api.Replacement;
 import org.brekka.stillingar.api.annotations.ConfigurationListener;
 import org.brekka.stillingar.api.annotations.Configured;
 import org.brekka.stillingar.core.ConfigurationService;
 import org.brekka.stillingar.core.GroupChangeListener;
 import org.brekka.stillingar.core.GroupConfigurationException;
+import org.brekka.stillingar.core.ListDeltaChangeListener;
 import org.brekka.stillingar.core.SingleValueDefinition;
 import org.brekka.stillingar.core.ValueChangeListener;
 import org.brekka.stillingar.core.ValueDefinition;
 import org.brekka.stillingar.core.ValueDefinitionGroup;
 import org.brekka.stillingar.core.ValueListDefinition;
+import org.brekka.stillingar.core.support.ScopeSupport;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
@@ -186,20 +189,21 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
                 onceOnlyDefinitionCache.put(targetClass, valueDefinitionGroup);
             }
         }
+        ConfigurationSource groupSource = ScopeSupport.resolve(configurationSource, valueDefinitionGroup.getScope());
         Collection<ValueDefinition<?,?>> values = valueDefinitionGroup.getValues();
         for (ValueDefinition<?,?> valueDefinition : values) {
             Object value;
             if (valueDefinition instanceof ValueListDefinition) {
                 if (valueDefinition.getExpression() != null) {
-                    value = configurationSource.retrieveList(valueDefinition.getExpression(), valueDefinition.getType());
+                    value = groupSource.retrieveList(valueDefinition.getExpression(), valueDefinition.getType());
                 } else {
-                    value = configurationSource.retrieveList(valueDefinition.getType());
+                    value = groupSource.retrieveList(valueDefinition.getType());
                 }
             } else {
                 if (valueDefinition.getExpression() != null) {
-                    value = configurationSource.retrieve(valueDefinition.getExpression(), valueDefinition.getType());
+                    value = groupSource.retrieve(valueDefinition.getExpression(), valueDefinition.getType());
                 } else {
-                    value = configurationSource.retrieve(valueDefinition.getType());
+                    value = groupSource.retrieve(valueDefinition.getType());
                 }
             }
             ValueChangeListener listener = valueDefinition.getChangeListener();
@@ -295,9 +299,31 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
                 processSetterMethod(configured, method, valueList, target);
             }
         }
-        ValueDefinitionGroup group = new ValueDefinitionGroup(beanName, valueList, beanChangeListener, target);
+        ValueDefinitionGroup group = new ValueDefinitionGroup(beanName, valueList, beanChangeListener, target, 
+                identifyScope(beanClass));
         return group;
     }
+    
+    /**
+     * Identify the scope expression declared by a class level {@link Configured} annotation. The first class in the
+     * hierarchy that declares a non-empty value wins.
+     * 
+     * @param beanClass
+     *            the class of the bean being configured
+     * @return the scope expression or null if none is declared.
+     */
+    protected String identifyScope(Class<?> beanClass) {
+        Class<?> inpectClass = beanClass;
+        while (inpectClass != null) {
+            Configured configured = inpectClass.getAnnotation(Configured.class);
+            if (configured != null
+                    && configured.value().length() > 0) {
+                return configured.value();
+            }
+            inpectClass = inpectClass.getSuperclass();
+        }
+        return null;
+    }
 
     /**
      * Encapsulates a field in a {@link ValueDefinition} so that it can be registered for updates.
@@ -390,9 +416,13 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
             Class type = parameterTypes[i];
             boolean list = false;
             boolean replacement = false;
+            boolean listDelta = false;
             if (type == List.class) {
                 type = identifyParameterizedType(genericParameterTypes[i]);
                 list = true;
+            } else if (type == ListDelta.class) {
+                type = identifyParameterizedType(genericParameterTypes[i]);
+                listDelta = true;
             } else if (type == Replacement.class) {
                 type = identifyParameterizedType(genericParameterTypes[i]);
                 replacement = true;
@@ -401,11 +431,15 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
             for (Annotation annotation : annotations) {
                 if (annotation instanceof Configured) {
                     Configured paramConfigured = (Configured) annotation;
-                    Object primitiveDefault = list ? null : primitiveDefault(type);
+                    Object primitiveDefault = list || listDelta ? null : primitiveDefault(type);
                     MethodParameterListener mpl = new MethodParameterListener(replacement, primitiveDefault);
                     ValueDefinition<Object, ?> value;
                     if (list) {
                         value = new ValueListDefinition(type, paramConfigured.value(), mpl);
+                    } else if (listDelta) {
+                        String key = paramConfigured.key();
+                        value = new ValueListDefinition(type, paramConfigured.value(), 
+                                new ListDeltaChangeListener(mpl, key.length() > 0 ? key : null));
                     } else {
                         value = new SingleValueDefinition(type, paramConfigured.value(), mpl);
                     }
@@ -533,11 +567,11 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
     }
 
     /**
-     * Identifies the type of the parameterised list/replacement.
+     * Identifies the type of the parameterised list/delta/replacement.
      * 
      * @param type
-     *            the list/replacement type to inspect
-     * @return the list/replacement type or null if it is not parameterised.
+     *            the list/delta/replacement type to inspect
+     * @return the list/delta/replacement type or null if it is not parameterised.
      */
     @SuppressWarnings("rawtypes")
     private static Class<?> identifyParameterizedType(Type type) {
@@ -548,7 +582,7 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
             genericClass = (Class) actualTypeArguments[0];
         } else {
             throw new ConfigurationException(String.format(
-                    "Not a parameterised list or replacement type: '%s'", type));
+                    "Not a parameterised list, delta or replacement type: '%s'", type));
         }
         return genericClass;
     }
@@ -22,9 +22,12 @@ import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.core.LayeredConfigurationSource;
+import org.brekka.stillingar.core.binary.BinaryConfigurationSourceLoader;
 import org.brekka.stillingar.core.conversion.ConversionManager;
 import org.brekka.stillingar.core.conversion.TemporalAdapter;
 import org.brekka.stillingar.core.conversion.xml.DocumentConverter;
@@ -32,6 +35,8 @@ import org.brekka.stillingar.core.dom.DOMConfigurationSourceLoader;
 import org.brekka.stillingar.core.dom.DefaultNamespaceContext;
 import org.brekka.stillingar.core.properties.PropertiesConfigurationSourceLoader;
 import org.brekka.stillingar.core.snapshot.SnapshotBasedConfigurationService;
+import org.brekka.stillingar.core.snapshot.SnapshotHistory;
+import org.brekka.stillingar.core.snapshot.SnapshotHistoryControl;
 import org.brekka.stillingar.spring.bpp.ConfigurationBeanPostProcessor;
 import org.brekka.stillingar.spring.converter.ApplicationContextConverter;
 import org.brekka.stillingar.spring.expr.DefaultPlaceholderParser;
@@ -51,18 +56,23 @@ import org.brekka.stillingar.spring.snapshot.LoggingSnapshotEventHandler;
 import org.brekka.stillingar.spring.snapshot.NoopResourceMonitor;
 import org.brekka.stillingar.spring.snapshot.PollingResourceMonitor;
 import org.brekka.stillingar.spring.snapshot.ResourceSnapshotManager;
+import org.brekka.stillingar.spring.snapshot.SharedSnapshotManager;
+import org.brekka.stillingar.spring.snapshot.SnapshotCache;
 import org.brekka.stillingar.spring.snapshot.SnapshotDeltaValueInterceptor;
 import org.brekka.stillingar.spring.version.ApplicationVersionFromMaven;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
 import org.springframework.beans.factory.parsing.BeanComponentDefinition;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.ManagedArray;
 import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
 import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.jmx.export.MBeanExporter;
 import org.springframework.scheduling.concurrent.ScheduledExecutorFactoryBean;
 import org.springframework.scheduling.concurrent.ScheduledExecutorTask;
 import org.springframework.util.ClassUtils;
@@ -82,6 +92,16 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
 
     private static final int MINIMUM_RELOAD_INTERVAL = 500;
     
+    /**
+     * The maximum interval of adaptive polling, relative to the reload-interval, if not specified.
+     */
+    private static final int DEFAULT_MAX_INTERVAL_FACTOR = 32;
+    
+    /**
+     * Bytes of change log records applied before compacting, if not specified.
+     */
+    private static final long DEFAULT_COMPACT_THRESHOLD = 1024 * 1024;
+    
     /**
      * Determine if Watchable is available (Java 7).
      */
@@ -100,12 +120,27 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
 
         Engine engine = determineEngine(element);
 
-        builder.addConstructorArgValue(prepareResourceManager(element, engine, parserContext));
+        Object snapshotEventHandler = prepareSnapshotEventHandler(element);
+        AbstractBeanDefinition directoryManager = prepareConfigMapSnapshotManager(element);
+        if (directoryManager == null) {
+            directoryManager = prepareConfDirectorySnapshotManager(element);
+        }
+        if (directoryManager == null) {
+            directoryManager = prepareChangeLogSnapshotManager(element);
+        }
+        if (directoryManager != null) {
+            builder.addConstructorArgValue(directoryManager);
+        } else {
+            AbstractBeanDefinition resourceManager = prepareResourceManager(element, engine, parserContext);
+            resourceManager.getPropertyValues().addPropertyValue("snapshotEventHandler", snapshotEventHandler);
+            builder.addConstructorArgValue(prepareSharedSnapshotManager(element, resourceManager));
+        }
         builder.addConstructorArgValue("true".equals(element.getAttribute("snapshot-required")));
         builder.addConstructorArgValue(prepareDefaultConfigurationSource(element, engine));
-        prepareSnapshotEventHandler(element, builder);
+        builder.addConstructorArgValue(snapshotEventHandler);
         builder.addPropertyValue("deltaValueInterceptor", prepareDeltaValueInterceptor(element));
         builder.getRawBeanDefinition().setDestroyMethodName("shutdown");
+        prepareSnapshotHistory(element, parserContext, builder);
 
         // Other identifiable context beans
         prepareNamespaces(element, parserContext);
@@ -315,7 +350,15 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
             } catch (NumberFormatException e) {
                 throw new IllegalArgumentException("The attribute reload-interval is invalid", e);
             }
-            if (reloadInterval >= MINIMUM_RELOAD_INTERVAL) {
+            if (isWatchRefresh(element)) {
+                // Changes are pushed by the shared watcher, nothing to schedule
+                BeanDefinitionBuilder refresher = BeanDefinitionBuilder
+                        .genericBeanDefinition("org.brekka.stillingar.spring.snapshot.WatchedConfigurationRefresher");
+                refresher.addConstructorArgReference(id);
+                refresher.addConstructorArgReference(id + "-Monitor");
+                parserContext.registerBeanComponent(new BeanComponentDefinition(refresher
+                        .getBeanDefinition(), id + "-Refresher"));
+            } else if (reloadInterval >= MINIMUM_RELOAD_INTERVAL) {
                 // Update task
                 BeanDefinitionBuilder updateTask = BeanDefinitionBuilder
                         .genericBeanDefinition(ConfigurationSnapshotRefresher.class);
@@ -325,17 +368,8 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
                 BeanDefinitionBuilder scheduledExecutorTask = BeanDefinitionBuilder
                         .genericBeanDefinition(ScheduledExecutorTask.class);
                 scheduledExecutorTask.addConstructorArgValue(updateTask.getBeanDefinition());
-                if (watchableAvailable) {
-                    /*
-                     * The WatchedResourceMonitor is blocking with a timeout of reloadInterval. Must set a period, choose
-                     * an interval of 1s.
-                     */
-                    scheduledExecutorTask.addPropertyValue("period", 1000);
-                    scheduledExecutorTask.addPropertyValue("delay", 1000);
-                } else {
-                    scheduledExecutorTask.addPropertyValue("period", reloadInterval);
-                    scheduledExecutorTask.addPropertyValue("delay", reloadInterval);
-                }
+                scheduledExecutorTask.addPropertyValue("period", reloadInterval);
+                scheduledExecutorTask.addPropertyValue("delay", reloadInterval);
 
                 ManagedList<Object> taskList = new ManagedList<Object>();
                 taskList.add(scheduledExecutorTask.getBeanDefinition());
@@ -360,7 +394,21 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
         BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(ResourceSnapshotManager.class);
         builder.addConstructorArgValue(prepareResourceSelector(element, engine, parserContext));
         builder.addConstructorArgReference(getLoaderReference(element));
-        builder.addConstructorArgValue(prepareResourceMonitor(element));
+        AbstractBeanDefinition resourceMonitor = prepareResourceMonitor(element);
+        Element pollingElement = selectSingleChildElement(element, "polling", true);
+        if (isWatchRefresh(element)
+                || isAdaptivePolling(element)) {
+            // Also referenced by the refresher, or for the polling metrics
+            String monitorId = element.getAttribute("id") + "-Monitor";
+            parserContext.registerBeanComponent(new BeanComponentDefinition(resourceMonitor, monitorId));
+            builder.addConstructorArgReference(monitorId);
+            if (isAdaptivePolling(element)
+                    && StringUtils.hasLength(pollingElement.getAttribute("object-name"))) {
+                exportMBean(pollingElement.getAttribute("object-name"), monitorId, parserContext);
+            }
+        } else {
+            builder.addConstructorArgValue(resourceMonitor);
+        }
         Element handlers = selectSingleChildElement(element, "handlers", true);
         if (handlers != null) {
             String rejectedRef = handlers.getAttribute("rejected-ref");
@@ -368,8 +416,238 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
                 builder.addPropertyReference("rejectedResourceHandler", rejectedRef);
             }
         }
+        Element projection = selectSingleChildElement(element, "projection", true);
+        if (projection != null) {
+            builder.addPropertyValue("projectionEnabled", Boolean.TRUE);
+            List<Element> retainElements = selectChildElements(projection, "retain");
+            ManagedList<String> retainedExpressions = new ManagedList<String>(retainElements.size());
+            for (Element retainElement : retainElements) {
+                retainedExpressions.add(retainElement.getTextContent().trim());
+            }
+            builder.addPropertyValue("retainedExpressions", retainedExpressions);
+        }
+        AbstractBeanDefinition snapshotCache = prepareSnapshotCache(element, engine);
+        if (snapshotCache != null) {
+            builder.addPropertyValue("snapshotCache", snapshotCache);
+        }
         return builder.getBeanDefinition();
     }
+    
+    /**
+     * Prepare the manager that loads a whole ConfigMap-style directory, if requested. In 'keys' mode each file becomes
+     * a key, otherwise each file is parsed using the loader for the engine.
+     * 
+     * @param element
+     * @return the manager definition or null if there is no 'config-map' element.
+     */
+    protected AbstractBeanDefinition prepareConfigMapSnapshotManager(Element element) {
+        Element configMapElement = selectSingleChildElement(element, "config-map", true);
+        if (configMapElement == null) {
+            return null;
+        }
+        BeanDefinitionBuilder directory = BeanDefinitionBuilder
+                .genericBeanDefinition("org.brekka.stillingar.spring.snapshot.ConfigMapDirectory");
+        directory.addConstructorArgValue(configMapElement.getAttribute("directory"));
+        String suffix = configMapElement.getAttribute("suffix");
+        directory.addConstructorArgValue(StringUtils.hasLength(suffix) ? suffix : null);
+        
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder
+                .genericBeanDefinition("org.brekka.stillingar.spring.snapshot.ConfigMapSnapshotManager");
+        builder.addConstructorArgValue(directory.getBeanDefinition());
+        if ("keys".equals(configMapElement.getAttribute("mode"))) {
+            builder.addConstructorArgValue(null);
+        } else {
+            builder.addConstructorArgReference(getLoaderReference(element));
+        }
+        return builder.getBeanDefinition();
+    }
+    
+    /**
+     * Prepare the manager that loads a conf.d-style directory of fragments, if requested. Each fragment is parsed
+     * using the loader for the engine.
+     * 
+     * @param element
+     * @return the manager definition or null if there is no 'conf-dir' element.
+     */
+    protected AbstractBeanDefinition prepareConfDirectorySnapshotManager(Element element) {
+        Element confDirElement = selectSingleChildElement(element, "conf-dir", true);
+        if (confDirElement == null) {
+            return null;
+        }
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder
+                .genericBeanDefinition("org.brekka.stillingar.spring.snapshot.ConfDirectorySnapshotManager");
+        builder.addConstructorArgValue(confDirElement.getAttribute("directory"));
+        String suffix = confDirElement.getAttribute("suffix");
+        builder.addConstructorArgValue(StringUtils.hasLength(suffix) ? suffix : null);
+        builder.addConstructorArgReference(getLoaderReference(element));
+        return builder.getBeanDefinition();
+    }
+    
+    /**
+     * Retain accepted snapshots for rollback, if requested, along with the control bean for managing them which is
+     * also exported to JMX if an 'object-name' is given.
+     * 
+     * @param element
+     * @param parserContext
+     * @param builder
+     *            the builder of the configuration service.
+     */
+    protected void prepareSnapshotHistory(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        Element historyElement = selectSingleChildElement(element, "history", true);
+        if (historyElement == null) {
+            return;
+        }
+        String id = element.getAttribute("id");
+        BeanDefinitionBuilder history = BeanDefinitionBuilder.genericBeanDefinition(SnapshotHistory.class);
+        history.addConstructorArgValue(Integer.valueOf(attribute(historyElement, "max-snapshots", "5")));
+        history.addConstructorArgValue(Long.valueOf(attribute(historyElement, "max-bytes", "0")));
+        builder.addPropertyValue("snapshotHistory", history.getBeanDefinition());
+
+        String controlId = id + "-History";
+        BeanDefinitionBuilder control = BeanDefinitionBuilder.genericBeanDefinition(SnapshotHistoryControl.class);
+        control.addConstructorArgReference(id);
+        parserContext.registerBeanComponent(new BeanComponentDefinition(control.getBeanDefinition(), controlId));
+
+        String objectName = historyElement.getAttribute("object-name");
+        if (StringUtils.hasLength(objectName)) {
+            exportMBean(objectName, controlId, parserContext);
+        }
+    }
+
+    /**
+     * Export the bean to JMX under the specified object name.
+     * 
+     * @param objectName
+     * @param beanId
+     *            the id of the bean to export
+     * @param parserContext
+     */
+    protected void exportMBean(String objectName, String beanId, ParserContext parserContext) {
+        ManagedMap<String, Object> beans = new ManagedMap<String, Object>();
+        beans.put(objectName, new RuntimeBeanReference(beanId));
+        BeanDefinitionBuilder exporter = BeanDefinitionBuilder.genericBeanDefinition(MBeanExporter.class);
+        exporter.addPropertyValue("beans", beans);
+        parserContext.registerBeanComponent(new BeanComponentDefinition(exporter.getBeanDefinition(),
+                beanId + "Exporter"));
+    }
+    
+    /**
+     * Prepare the manager that loads a base file plus a log of update records, if requested.
+     * 
+     * @param element
+     * @return the manager definition or null if there is no 'change-log' element.
+     */
+    protected AbstractBeanDefinition prepareChangeLogSnapshotManager(Element element) {
+        Element changeLogElement = selectSingleChildElement(element, "change-log", true);
+        if (changeLogElement == null) {
+            return null;
+        }
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder
+                .genericBeanDefinition("org.brekka.stillingar.spring.snapshot.ChangeLogSnapshotManager");
+        builder.addConstructorArgValue(changeLogElement.getAttribute("base"));
+        builder.addConstructorArgValue(changeLogElement.getAttribute("log"));
+        builder.addConstructorArgValue(Long.valueOf(attribute(changeLogElement, "compact-threshold",
+                String.valueOf(DEFAULT_COMPACT_THRESHOLD))));
+        return builder.getBeanDefinition();
+    }
+    
+    /**
+     * Wrap the resource manager so that snapshots are shared with other processes, if requested.
+     * 
+     * @param element
+     * @param resourceManager
+     * @return the shared snapshot manager definition, or the resource manager if there is no 'shared' element.
+     */
+    protected AbstractBeanDefinition prepareSharedSnapshotManager(Element element, AbstractBeanDefinition resourceManager) {
+        Element sharedElement = selectSingleChildElement(element, "shared", true);
+        if (sharedElement == null) {
+            return resourceManager;
+        }
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(SharedSnapshotManager.class);
+        builder.addConstructorArgValue(resourceManager);
+        builder.addConstructorArgValue(sharedElement.getAttribute("directory"));
+        builder.addPropertyValue("allowedClasses", allowedClasses(sharedElement));
+        return builder.getBeanDefinition();
+    }
+    
+    /**
+     * Prepare the snapshot cache, if one is requested. The cache key is made up of the engine, the settings that
+     * affect how the loader resolves values and the 'key' attribute, so a change to any of them invalidates the cache.
+     * 
+     * @param element
+     * @param engine
+     * @return the cache definition or null if there is no 'cache' element.
+     */
+    protected AbstractBeanDefinition prepareSnapshotCache(Element element, Engine engine) {
+        Element cacheElement = selectSingleChildElement(element, "cache", true);
+        if (cacheElement == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(engine.name());
+        Element jaxbElement = selectSingleChildElement(element, "jaxb", true);
+        if (jaxbElement != null) {
+            key.append('|').append(jaxbElement.getAttribute("context-path"));
+            for (Element schemaElement : selectChildElements(jaxbElement, "schema")) {
+                key.append('|').append(schemaElement.getTextContent().trim());
+            }
+        }
+        Element jsonElement = selectSingleChildElement(element, "json", true);
+        if (jsonElement != null) {
+            key.append('|').append(jsonElement.getAttribute("root-node-class"));
+        }
+        for (Element namespaceElement : selectChildElements(element, "namespace")) {
+            key.append('|').append(namespaceElement.getAttribute("prefix"))
+               .append('=').append(namespaceElement.getAttribute("uri"));
+        }
+        key.append('|').append(cacheElement.getAttribute("key"));
+        
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(SnapshotCache.class);
+        builder.addConstructorArgValue(cacheElement.getAttribute("path"));
+        builder.addConstructorArgValue(key.toString());
+        builder.addPropertyValue("allowedClasses", allowedClasses(cacheElement));
+        return builder.getBeanDefinition();
+    }
+
+    /**
+     * @param element
+     *            the element with the optional 'allowed-classes' attribute.
+     * @return the class names or packages that may be read from snapshot files.
+     */
+    protected static List<String> allowedClasses(Element element) {
+        return Arrays.asList(StringUtils.tokenizeToStringArray(element.getAttribute("allowed-classes"), ", \t\r\n"));
+    }
+
+    /**
+     * Determine whether changes should be pushed to the service by the shared watcher. This requires a
+     * 'reload-interval' (which then only serves to enable reloading) and Java 7. Shared snapshots are excluded as
+     * subscribers must poll the shared sequence, as are ConfigMap and conf.d directories and change logs which are
+     * polled. Also excluded when adaptive 'polling' is requested explicitly.
+     * 
+     * @param element
+     * @return true if the service is to be refreshed by the WatchedConfigurationRefresher.
+     */
+    protected boolean isWatchRefresh(Element element) {
+        return watchableAvailable
+                && StringUtils.hasLength(element.getAttribute("reload-interval"))
+                && selectSingleChildElement(element, "shared", true) == null
+                && selectSingleChildElement(element, "polling", true) == null
+                && selectSingleChildElement(element, "config-map", true) == null
+                && selectSingleChildElement(element, "conf-dir", true) == null
+                && selectSingleChildElement(element, "change-log", true) == null;
+    }
+
+    /**
+     * Determine whether the resource should be polled at an adaptive interval, as requested by a 'polling' element.
+     * Requires a 'reload-interval' and Java 7, otherwise the plain {@link PollingResourceMonitor} is used.
+     * 
+     * @param element
+     * @return true if the resource monitor is to be the AdaptivePollingResourceMonitor.
+     */
+    protected boolean isAdaptivePolling(Element element) {
+        return watchableAvailable
+                && StringUtils.hasLength(element.getAttribute("reload-interval"))
+                && selectSingleChildElement(element, "polling", true) != null;
+    }
 
     /**
      * @param element
@@ -379,9 +657,19 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
         BeanDefinitionBuilder builder = null;
         String reloadIntervalStr = element.getAttribute("reload-interval");
         if (StringUtils.hasLength(reloadIntervalStr)) {
-            if (watchableAvailable) { // Must have a reload-interval to use watched.
+            Element pollingElement = selectSingleChildElement(element, "polling", true);
+            if (isWatchRefresh(element)) {
                 builder = BeanDefinitionBuilder.genericBeanDefinition("org.brekka.stillingar.spring.snapshot.WatchedResourceMonitor");
-                builder.addConstructorArgValue(Integer.valueOf(reloadIntervalStr));
+            } else if (isAdaptivePolling(element)) {
+                long minInterval = Long.parseLong(reloadIntervalStr);
+                builder = BeanDefinitionBuilder.genericBeanDefinition("org.brekka.stillingar.spring.snapshot.AdaptivePollingResourceMonitor");
+                builder.addConstructorArgValue(minInterval);
+                builder.addConstructorArgValue(Long.valueOf(attribute(pollingElement, "max-interval",
+                        String.valueOf(minInterval * DEFAULT_MAX_INTERVAL_FACTOR))));
+                builder.addConstructorArgValue(Double.valueOf(attribute(pollingElement, "backoff", "2")));
+            } else if (watchableAvailable) {
+                // Follows the '..data' link of ConfigMap-style directories, otherwise polls the lastModified
+                builder = BeanDefinitionBuilder.genericBeanDefinition("org.brekka.stillingar.spring.snapshot.ConfigMapResourceMonitor");
             } else {
                 builder = BeanDefinitionBuilder.genericBeanDefinition(PollingResourceMonitor.class);
             }
@@ -583,18 +871,17 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
      * @param element
      * @return
      */
-    protected void prepareSnapshotEventHandler(Element element, BeanDefinitionBuilder serviceBuilder) {
+    protected Object prepareSnapshotEventHandler(Element element) {
         Element handlers = selectSingleChildElement(element, "handlers", true);
         if (handlers != null) {
             String eventRef = handlers.getAttribute("event-ref");
             if (StringUtils.hasLength(eventRef)) {
-                serviceBuilder.addConstructorArgReference(eventRef);
-                return;
+                return new RuntimeBeanReference(eventRef);
             }
         }
         BeanDefinitionBuilder eventBuilder = BeanDefinitionBuilder.genericBeanDefinition(LoggingSnapshotEventHandler.class);
         eventBuilder.addConstructorArgValue(getName(element));
-        serviceBuilder.addConstructorArgValue(eventBuilder.getBeanDefinition());
+        return eventBuilder.getBeanDefinition();
     }
     
     /**
@@ -615,7 +902,9 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
         String defaultsPath = null;
         String encoding = null;
         if (defaultsElement != null) {
-            defaultsPath = defaultsElement.getAttribute("path");
+            if (StringUtils.hasLength(defaultsElement.getAttribute("path"))) {
+                defaultsPath = defaultsElement.getAttribute("path");
+            }
             encoding = defaultsElement.getAttribute("encoding");
         }
         if (defaultsPath == null) {
@@ -625,6 +914,7 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
                 defaultsPath = guessPath;
             }
         }
+        AbstractBeanDefinition defaults = null;
         if (defaultsPath != null) {
             BeanDefinitionBuilder builder = BeanDefinitionBuilder
                     .genericBeanDefinition(DefaultConfigurationSourceFactoryBean.class);
@@ -632,9 +922,31 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
             builder.addConstructorArgValue(prepareClassPathResource(defaultsPath));
             builder.addConstructorArgReference(getLoaderReference(element));
             builder.addConstructorArgValue(encoding == null ? null : Charset.forName(encoding));
-            return builder.getBeanDefinition();
+            defaults = builder.getBeanDefinition();
+        }
+        List<Element> layerElements = (defaultsElement != null 
+                ? selectChildElements(defaultsElement, "layer") : Collections.<Element>emptyList());
+        if (layerElements.isEmpty()) {
+            return defaults;
         }
-        return null;
+        // Later layers take precedence
+        ManagedList<AbstractBeanDefinition> layers = new ManagedList<AbstractBeanDefinition>();
+        for (Element layerElement : layerElements) {
+            BeanDefinitionBuilder builder = BeanDefinitionBuilder
+                    .genericBeanDefinition(DefaultConfigurationSourceFactoryBean.class);
+            builder.addConstructorArgValue(layerElement.getAttribute("location"));
+            builder.addConstructorArgReference(getLoaderReference(element));
+            String layerEncoding = layerElement.getAttribute("encoding");
+            builder.addConstructorArgValue(StringUtils.hasLength(layerEncoding) ? Charset.forName(layerEncoding) : null);
+            builder.addConstructorArgValue(!"true".equals(layerElement.getAttribute("required")));
+            layers.add(0, builder.getBeanDefinition());
+        }
+        if (defaults != null) {
+            layers.add(defaults);
+        }
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(LayeredConfigurationSource.class);
+        builder.addConstructorArgValue(layers);
+        return builder.getBeanDefinition();
     }
 
     /**
@@ -888,6 +1200,8 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
         JAXB("org.brekka.stillingar.jaxb.JAXBConfigurationSourceLoader", "xml"),
         
         JSON("org.brekka.stillingar.jackson.JacksonConfigurationSourceLoader", "json"),
+        
+        BINARY(BinaryConfigurationSourceLoader.class.getName(), "bin"),
 
         ;
 
@@ -16,13 +16,14 @@
 
 package org.brekka.stillingar.spring.config;
 
-import java.io.InputStream;
 import java.net.URL;
 import java.nio.charset.Charset;
 
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ConfigurationSourceLoader;
 import org.brekka.stillingar.core.DelegatingConfigurationSource;
+import org.brekka.stillingar.core.LayeredConfigurationSource;
+import org.brekka.stillingar.spring.resource.ResourceContent;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.core.io.Resource;
 
@@ -48,15 +49,32 @@ class DefaultConfigurationSourceFactoryBean implements FactoryBean<Configuration
      */
     private final Charset encoding;
     
+    /**
+     * Whether a missing resource is to be ignored, rather than treated as an error.
+     */
+    private final boolean optional;
+    
     /**
      * @param resource The resource to load the default configuration from
      * @param loader Will load a {@link ConfigurationSource} based on the contents of the resource.
      * @param encoding The encoding of the resource if it needs to be explicitly stated (can be null).
+     * @param optional Whether a missing resource is to be ignored, rather than treated as an error.
      */
-    public DefaultConfigurationSourceFactoryBean(Resource resource, ConfigurationSourceLoader loader, Charset encoding) {
+    public DefaultConfigurationSourceFactoryBean(Resource resource, ConfigurationSourceLoader loader, Charset encoding,
+            boolean optional) {
         this.resource = resource;
         this.loader = loader;
         this.encoding = encoding;
+        this.optional = optional;
+    }
+    
+    /**
+     * @param resource The resource to load the default configuration from
+     * @param loader Will load a {@link ConfigurationSource} based on the contents of the resource.
+     * @param encoding The encoding of the resource if it needs to be explicitly stated (can be null).
+     */
+    public DefaultConfigurationSourceFactoryBean(Resource resource, ConfigurationSourceLoader loader, Charset encoding) {
+        this(resource, loader, encoding, false);
     }
     
     /**
@@ -72,18 +90,14 @@ class DefaultConfigurationSourceFactoryBean implements FactoryBean<Configuration
      */
     @Override
     public ConfigurationSource getObject() throws Exception {
-        InputStream is = null;
-        try {
-            is = resource.getInputStream();
-            ConfigurationSource configurationSource = loader.parse(is, encoding);
-            ConfigurationSource wrapper = new DefaultsConfigurationSourceWrapper(
-                    resource.getURL(), configurationSource);
-            return wrapper;
-        } finally {
-            if (is != null) {
-                is.close();
-            }
+        if (optional
+                && !resource.exists()) {
+            return LayeredConfigurationSource.NONE;
         }
+        ConfigurationSource configurationSource = ResourceContent.parse(resource, loader, encoding);
+        ConfigurationSource wrapper = new DefaultsConfigurationSourceWrapper(
+                resource.getURL(), configurationSource);
+        return wrapper;
     }
 
     /* (non-Javadoc)
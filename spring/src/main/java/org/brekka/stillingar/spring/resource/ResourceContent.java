@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.resource;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.ByteBufferConfigurationSourceLoader;
+import org.springframework.core.io.Resource;
+
+/**
+ * Utilities for reading the content of a {@link Resource} as efficiently as its type allows. File resources passed to
+ * a {@link ByteBufferConfigurationSourceLoader} are handed over as a single buffer, memory-mapped for files of at least
+ * {@link #MAP_THRESHOLD} bytes. Everything else is read through a buffered stream.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class ResourceContent {
+
+    /**
+     * Files of at least this size will be memory-mapped rather than read onto the heap.
+     */
+    public static final long MAP_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Size of the buffer used for streams.
+     */
+    public static final int BUFFER_SIZE = 8192;
+
+    private ResourceContent() {
+    }
+
+    /**
+     * Parse the content of the resource using the specified loader.
+     *
+     * @param resource
+     *            the resource to parse
+     * @param loader
+     *            the loader to parse it with
+     * @param encoding
+     *            the encoding of the resource, if known (can be null).
+     * @return the configuration source
+     * @throws IOException
+     *             if the resource cannot be read.
+     */
+    public static ConfigurationSource parse(Resource resource, ConfigurationSourceLoader loader, Charset encoding)
+            throws IOException {
+        File file;
+        if (loader instanceof ByteBufferConfigurationSourceLoader
+                && (file = fileOf(resource)) != null) {
+            return ((ByteBufferConfigurationSourceLoader) loader).parse(read(file), encoding);
+        }
+        InputStream sourceStream = openStream(resource);
+        try {
+            return loader.parse(sourceStream, encoding);
+        } finally {
+            sourceStream.close();
+        }
+    }
+
+    /**
+     * Open a buffered stream on the content of the resource. It is the callers responsibility to close it.
+     *
+     * @param resource
+     *            the resource to open
+     * @return the stream
+     * @throws IOException
+     *             if the resource cannot be opened.
+     */
+    public static InputStream openStream(Resource resource) throws IOException {
+        return new BufferedInputStream(resource.getInputStream(), BUFFER_SIZE);
+    }
+
+    /**
+     * Read the entire content of the file into a buffer, which will be memory-mapped if the file is at least
+     * {@link #MAP_THRESHOLD} bytes.
+     *
+     * @param file
+     *            the file to read
+     * @return the buffer, positioned at the start of the content.
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    public static ByteBuffer read(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                // The mapping remains valid after the channel is closed
+                return channel.map(MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()
+                    && channel.read(buffer) != -1) {
+                // Keep reading until full
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Identify the file behind the resource.
+     *
+     * @param resource
+     *            the resource
+     * @return the file, or null if the resource is not an existing regular file.
+     */
+    public static File fileOf(Resource resource) {
+        try {
+            File file = resource.getFile();
+            return (file.isFile() ? file : null);
+        } catch (IOException e) {
+            // Not a file resource
+            return null;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.spring.resource.ResourceContent;
+import org.springframework.core.io.Resource;
+
+/**
+ * Determines whether a file has changed by comparing its modification time (to the nanosecond where the file system
+ * supports it), size and file key (inode), all obtained from a single stat call. Unlike
+ * {@link PollingResourceMonitor}, a replacement of the file or an edit that changes its size within the granularity
+ * of the modification time is still detected.
+ *
+ * The interval between checks adapts to how often the file changes. It starts at the minimum interval, grows by the
+ * backoff factor with every check that finds nothing, up to the maximum, and drops back to the minimum as soon as a
+ * change is found, so a burst of edits is followed closely while idle files cost very little. Calls to
+ * {@link #hasChanged()} made before the next check is due return false without touching the file system, so this
+ * should be polled at the minimum interval.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class AdaptivePollingResourceMonitor implements ResourceMonitor, AdaptivePollingResourceMonitorMBean {
+
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(AdaptivePollingResourceMonitor.class);
+
+    /**
+     * Interval in milliseconds after a change
+     */
+    private final long minInterval;
+
+    /**
+     * The longest interval in milliseconds
+     */
+    private final long maxInterval;
+
+    /**
+     * Factor the interval grows by for each check that finds no change.
+     */
+    private final double backoff;
+
+    /**
+     * Number of times the file was checked
+     */
+    private final AtomicLong polls = new AtomicLong();
+
+    /**
+     * Number of changes found
+     */
+    private final AtomicLong changes = new AtomicLong();
+
+    /**
+     * The file being checked
+     */
+    private Path file;
+
+    /**
+     * The state of the file at the last check
+     */
+    private FileState previousState;
+
+    /**
+     * The current interval in milliseconds
+     */
+    private long interval;
+
+    /**
+     * When the last check was made, from {@link System#nanoTime()}.
+     */
+    private long lastPoll;
+
+    /**
+     * @param minInterval
+     *            interval in milliseconds after a change, which should match the rate at which this is polled.
+     * @param maxInterval
+     *            the longest interval in milliseconds.
+     * @param backoff
+     *            factor the interval grows by for each check that finds no change, at least one.
+     */
+    public AdaptivePollingResourceMonitor(long minInterval, long maxInterval, double backoff) {
+        if (minInterval <= 0) {
+            throw new IllegalArgumentException("The minimum interval must be positive");
+        }
+        if (maxInterval < minInterval) {
+            throw new IllegalArgumentException("The maximum interval must not be less than the minimum");
+        }
+        if (backoff < 1) {
+            throw new IllegalArgumentException("The backoff must be at least one");
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.backoff = backoff;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.snapshot.ResourceMonitor#initialise(org.springframework.core.io.Resource)
+     */
+    @Override
+    public synchronized void initialise(Resource resource) {
+        File resourceFile = ResourceContent.fileOf(resource);
+        if (resourceFile == null) {
+            throw new ConfigurationException(format("Resource '%s' is not a file", resource));
+        }
+        this.file = resourceFile.toPath();
+        this.previousState = stat();
+        this.interval = minInterval;
+        this.lastPoll = System.nanoTime();
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.snapshot.ResourceMonitor#hasChanged()
+     */
+    @Override
+    public synchronized boolean hasChanged() {
+        long now = System.nanoTime();
+        // Allow for the scheduler running slightly early
+        if (TimeUnit.NANOSECONDS.toMillis(now - lastPoll) < interval - minInterval / 2) {
+            return false;
+        }
+        this.lastPoll = now;
+        polls.incrementAndGet();
+        FileState state = stat();
+        if (state.equals(previousState)) {
+            this.interval = Math.min(maxInterval, (long) (interval * backoff));
+            return false;
+        }
+        this.previousState = state;
+        this.interval = minInterval;
+        long changeCount = changes.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug(format("Change %d to '%s' found after %d polls in total", changeCount, file, polls.get()));
+        }
+        return true;
+    }
+
+    /**
+     * Only file resources can be monitored.
+     */
+    @Override
+    public boolean canMonitor(Resource resource) {
+        return ResourceContent.fileOf(resource) != null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.snapshot.AdaptivePollingResourceMonitorMBean#getPolls()
+     */
+    @Override
+    public long getPolls() {
+        return polls.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.snapshot.AdaptivePollingResourceMonitorMBean#getChanges()
+     */
+    @Override
+    public long getChanges() {
+        return changes.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.snapshot.AdaptivePollingResourceMonitorMBean#getPollsPerChange()
+     */
+    @Override
+    public double getPollsPerChange() {
+        long changeCount = changes.get();
+        long pollCount = polls.get();
+        return (changeCount == 0 ? pollCount : (double) pollCount / changeCount);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.snapshot.AdaptivePollingResourceMonitorMBean#getInterval()
+     */
+    @Override
+    public synchronized long getInterval() {
+        return interval;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return format("%s[%s, polls: %d, changes: %d]", getClass().getSimpleName(), file, polls.get(), changes.get());
+    }
+
+    private FileState stat() {
+        try {
+            return FileState.of(file);
+        } catch (IOException e) {
+            throw new ConfigurationException(format("Unable to read the attributes of '%s'", file), e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+/**
+ * Management interface exposing how effective adaptive polling is, for exposure via JMX.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface AdaptivePollingResourceMonitorMBean {
+
+    /**
+     * @return the number of times the file has been checked.
+     */
+    long getPolls();
+
+    /**
+     * @return the number of changes found.
+     */
+    long getChanges();
+
+    /**
+     * @return the average number of checks made per change found, or the number of checks if there has been no change.
+     */
+    double getPollsPerChange();
+
+    /**
+     * @return the current interval between checks in milliseconds.
+     */
+    long getInterval();
+}
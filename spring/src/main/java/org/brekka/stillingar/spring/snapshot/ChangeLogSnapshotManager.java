@@ -0,0 +1,498 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.changelog.ChangeLog;
+import org.brekka.stillingar.core.changelog.ChangeLogConfigurationSource;
+import org.brekka.stillingar.core.changelog.PersistentMap;
+import org.brekka.stillingar.core.snapshot.IncrementalSnapshot;
+import org.brekka.stillingar.core.snapshot.InvalidSnapshotException;
+import org.brekka.stillingar.core.snapshot.NoSnapshotAvailableException;
+import org.brekka.stillingar.core.snapshot.RejectedSnapshotLocation;
+import org.brekka.stillingar.core.snapshot.SizedSnapshot;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.brekka.stillingar.core.snapshot.SnapshotManager;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Loads values from a base file plus a {@link ChangeLog} of update records appended to it, for values that change
+ * many times a minute where rewriting and parsing a whole document for each change would be wasteful.
+ *
+ * Each check is a stat of the base and the log. Records appended since the last check are read from where the last
+ * check stopped and applied to the {@link PersistentMap} of the current snapshot, so the cost depends only on the
+ * number of new records. Snapshots are {@link IncrementalSnapshot}s affecting only the keys that changed (along with
+ * any scope or list containing them).
+ *
+ * Once the records applied exceed the compaction threshold, the current values are written as the new base and the
+ * log is cut back to the records not yet applied under a new generation, all under the lock also held by
+ * {@link ChangeLog#append}. Should the base be replaced or the log truncated by anything else, such as another
+ * process compacting it, everything is loaded again and the keys that differ are affected. A change to the generation
+ * in the header of the log is how a log that was truncated and has since grown past the offset is recognised.
+ *
+ * Records rejected by the service are skipped, and are left out of the base when the log is next compacted. Until
+ * then they remain in the log, so are applied again should everything need to be loaded again.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ChangeLogSnapshotManager implements SnapshotManager {
+
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(ChangeLogSnapshotManager.class);
+
+    /**
+     * The compacted values
+     */
+    private final File baseFile;
+
+    /**
+     * The records appended since the base was compacted
+     */
+    private final File logFile;
+
+    /**
+     * Bytes of applied records after which the log is compacted, zero to never compact.
+     */
+    private final long compactThreshold;
+
+    /**
+     * The latest snapshot returned.
+     */
+    private ChangeLogSnapshot current;
+
+    /**
+     * The state of the base when last read
+     */
+    private FileState baseState;
+
+    /**
+     * The state of the log when last read
+     */
+    private FileState logState;
+
+    /**
+     * Position in the log up to which records have been applied.
+     */
+    private long offset;
+
+    /**
+     * Position in the log where the records start, after the header.
+     */
+    private long recordsStart;
+
+    /**
+     * The generation of the log when last read, null if it has no header.
+     */
+    private String logGeneration;
+
+    /**
+     * @param baseFile
+     *            the compacted values, which need not exist.
+     * @param logFile
+     *            the records appended since the base was compacted.
+     * @param compactThreshold
+     *            bytes of applied records after which the log is compacted, zero to never compact.
+     */
+    public ChangeLogSnapshotManager(File baseFile, File logFile, long compactThreshold) {
+        if (baseFile == null) {
+            throw new IllegalArgumentException("null passed for baseFile");
+        }
+        if (logFile == null) {
+            throw new IllegalArgumentException("null passed for logFile");
+        }
+        this.baseFile = baseFile;
+        this.logFile = logFile;
+        this.compactThreshold = compactThreshold;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#retrieveInitial()
+     */
+    @Override
+    public synchronized Snapshot retrieveInitial() throws NoSnapshotAvailableException {
+        String message;
+        if (baseFile.exists()
+                || logFile.exists()) {
+            try {
+                this.current = loadAll(null);
+                return current;
+            } catch (IOException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn(format("Unable to load '%s'", logFile), e);
+                }
+                message = e.getMessage();
+            }
+        } else {
+            message = "Neither the base nor the log exist";
+        }
+        throw new NoSnapshotAvailableException(Collections.<String>emptySet(),
+                Collections.<RejectedSnapshotLocation>singletonList(
+                        new RejectedFileLocation(logFile, "Change log", message)));
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#retrieveUpdated()
+     */
+    @Override
+    public synchronized Snapshot retrieveUpdated() throws InvalidSnapshotException {
+        if (current == null) {
+            // No initial configuration yet
+            return null;
+        }
+        try {
+            if (compactThreshold > 0
+                    && offset - recordsStart >= compactThreshold) {
+                compact();
+            }
+            FileState base = FileState.of(baseFile.toPath());
+            FileState logged = FileState.of(logFile.toPath());
+            ChangeLogSnapshot updated;
+            if (!base.equals(baseState)
+                    || !logged.isSameFile(logState)
+                    || Math.max(logged.size(), 0) < offset
+                    || (!logged.equals(logState) && !equal(logGeneration, readGeneration()))) {
+                // Replaced, truncated or compacted elsewhere
+                updated = loadAll(current);
+            } else if (logged.size() > offset) {
+                Set<String> changedKeys = new HashSet<String>();
+                PersistentMap<String, String> values = readLog(current.values, changedKeys);
+                this.logState = logged;
+                updated = (changedKeys.isEmpty() ? null : new ChangeLogSnapshot(values, changedKeys, current,
+                        contentLength(values, changedKeys)));
+            } else {
+                updated = null;
+            }
+            if (updated != null) {
+                this.current = updated;
+            }
+            return updated;
+        } catch (IOException e) {
+            throw new InvalidSnapshotException(format("Unable to read the change log '%s'", logFile), e);
+        }
+    }
+
+    /**
+     * The values are restored to those of the snapshot the rejected one was based on, skipping its records.
+     */
+    @Override
+    public synchronized void reject(Snapshot rejectedSnapshot) {
+        if (rejectedSnapshot instanceof ChangeLogSnapshot) {
+            ChangeLogSnapshot snapshot = (ChangeLogSnapshot) rejectedSnapshot;
+            if (snapshot == current
+                    && snapshot.base != null) {
+                this.current = snapshot.base;
+            }
+        }
+    }
+
+    /**
+     * Load the base and the whole of the log.
+     *
+     * @param previous
+     *            the snapshot to compare the values to, null if this is the first load.
+     * @return the snapshot or null if no values differ from the previous snapshot.
+     */
+    private ChangeLogSnapshot loadAll(ChangeLogSnapshot previous) throws IOException {
+        // State first, so a change made while reading is picked up next time
+        this.baseState = FileState.of(baseFile.toPath());
+        this.logState = FileState.of(logFile.toPath());
+        PersistentMap<String, String> values = PersistentMap.empty();
+        CharSequence base = "";
+        if (baseState != FileState.MISSING) {
+            base = ChangeLog.UTF8.decode(ByteBuffer.wrap(Files.readAllBytes(baseFile.toPath())));
+            values = ChangeLog.apply(values, base, null);
+        }
+        this.offset = 0;
+        this.recordsStart = 0;
+        this.logGeneration = null;
+        if (logState != FileState.MISSING) {
+            this.logGeneration = readGeneration();
+            if (logGeneration != null) {
+                this.recordsStart = ChangeLog.UTF8.encode(ChangeLog.header(logGeneration)).remaining();
+            }
+            // Skip the records already in the base, should a compaction not have completed
+            this.offset = Math.max(recordsStart,
+                    Math.min(ChangeLog.compactedOffset(base, logGeneration), logState.size()));
+            values = readLog(values, null);
+        }
+        if (log.isInfoEnabled()) {
+            log.info(format("Loaded %d values from '%s' and '%s'", values.size(), baseFile, logFile));
+        }
+        if (previous == null) {
+            return new ChangeLogSnapshot(values, Collections.<String>emptySet(), null,
+                    contentLength(values, values.keySet()));
+        }
+        Set<String> changedKeys = new HashSet<String>();
+        for (Entry<String, String> entry : values.entrySet()) {
+            if (!entry.getValue().equals(previous.values.get(entry.getKey()))) {
+                changedKeys.add(entry.getKey());
+            }
+        }
+        for (String key : previous.values.keySet()) {
+            if (!values.containsKey(key)) {
+                changedKeys.add(key);
+            }
+        }
+        return (changedKeys.isEmpty() ? null : new ChangeLogSnapshot(values, changedKeys, previous,
+                contentLength(values, values.keySet())));
+    }
+
+    /**
+     * Apply the complete records appended to the log since the offset, advancing the offset past them.
+     */
+    private PersistentMap<String, String> readLog(PersistentMap<String, String> values, Set<String> changedKeys)
+            throws IOException {
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            ByteBuffer buffer = readFrom(file.getChannel(), offset);
+            int length = ChangeLog.completeLength(buffer);
+            buffer.limit(length);
+            this.offset += length;
+            return ChangeLog.apply(values, ChangeLog.UTF8.decode(buffer), changedKeys);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Write the values of the current snapshot as the new base, leaving only the records not yet applied in the log
+     * under a new generation. The base records the generation and offset of the log it includes, so should the log
+     * not be cut back (such as after a crash), the records already in the base, including any that were rejected,
+     * are skipped rather than applied again.
+     */
+    private void compact() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                if (channel.size() < offset
+                        || !equal(logGeneration, ChangeLog.readGeneration(channel))) {
+                    // Truncated elsewhere, will be loaded again
+                    return;
+                }
+                ByteBuffer pending = readFrom(channel, offset);
+                StringBuilder records = new StringBuilder();
+                if (logGeneration != null) {
+                    records.append(ChangeLog.compactedHeader(logGeneration, offset));
+                }
+                records.append(ChangeLog.toRecords(current.values));
+                String generation = ChangeLog.newGeneration();
+                ByteBuffer header = ChangeLog.UTF8.encode(ChangeLog.header(generation));
+                int headerLength = header.remaining();
+
+                Path base = baseFile.toPath();
+                Path temp = Files.createTempFile(base.toAbsolutePath().getParent(), ".compact", ".tmp");
+                try {
+                    Files.write(temp, records.toString().getBytes(ChangeLog.UTF8.name()));
+                    Files.move(temp, base, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                channel.truncate(0);
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                while (pending.hasRemaining()) {
+                    channel.write(pending, headerLength + pending.position());
+                }
+                channel.force(false);
+                if (log.isInfoEnabled()) {
+                    log.info(format("Compacted %d bytes of '%s' into '%s'", offset, logFile, baseFile));
+                }
+                this.offset = headerLength;
+                this.recordsStart = headerLength;
+                this.logGeneration = generation;
+                this.baseState = FileState.of(base);
+                this.logState = FileState.of(logFile.toPath());
+            } finally {
+                lock.release();
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return the generation in the header of the log, null if it has none.
+     */
+    private String readGeneration() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            return ChangeLog.readGeneration(file.getChannel());
+        } finally {
+            file.close();
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return (a == null ? b == null : a.equals(b));
+    }
+
+    /**
+     * Estimate the memory held for the keys, as the characters of each key and its value.
+     *
+     * @param values
+     *            the values
+     * @param keys
+     *            the keys to count, those not in the values only count their own length.
+     * @return the estimated size in bytes
+     */
+    private static long contentLength(PersistentMap<String, String> values, Collection<String> keys) {
+        long length = 0;
+        for (String key : keys) {
+            String value = values.get(key);
+            length += 2 * (key.length() + (value == null ? 0 : value.length()));
+        }
+        return length;
+    }
+
+    private static ByteBuffer readFrom(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() - position));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The values at one point in the log, which knows the keys that changed since its base.
+     */
+    private class ChangeLogSnapshot implements IncrementalSnapshot, SizedSnapshot {
+
+        private final ResourceSnapshot delegate;
+
+        /**
+         * The values
+         */
+        private final PersistentMap<String, String> values;
+
+        /**
+         * The keys whose values changed since the base
+         */
+        private final Set<String> changedKeys;
+
+        /**
+         * The snapshot this was loaded as changes to (can be null).
+         */
+        private ChangeLogSnapshot base;
+
+        ChangeLogSnapshot(PersistentMap<String, String> values, Set<String> changedKeys, ChangeLogSnapshot base,
+                long contentLength) {
+            this.delegate = new ResourceSnapshot(new ChangeLogConfigurationSource(values),
+                    new Date(logFile.lastModified()), new FileSystemResource(logFile), contentLength);
+            this.values = values;
+            this.changedKeys = changedKeys;
+            this.base = base;
+            if (base != null) {
+                // The base is now settled, so there is no need to keep the snapshots before it
+                base.base = null;
+            }
+        }
+
+        /**
+         * A changed key, or a scope or list containing one.
+         */
+        @Override
+        public boolean isAffected(String expression) {
+            if (changedKeys.contains(expression)) {
+                return true;
+            }
+            String prefix = expression + ".";
+            for (String key : changedKeys) {
+                if (key.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.IncrementalSnapshot#getBase()
+         */
+        @Override
+        public Snapshot getBase() {
+            return base;
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getSource()
+         */
+        @Override
+        public ConfigurationSource getSource() {
+            return delegate.getSource();
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getTimestamp()
+         */
+        @Override
+        public Date getTimestamp() {
+            return delegate.getTimestamp();
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getLocation()
+         */
+        @Override
+        public URI getLocation() {
+            return delegate.getLocation();
+        }
+
+        /**
+         * Only the values read for this snapshot, those shared with the base are not counted again.
+         */
+        @Override
+        public long getContentLength() {
+            return delegate.getContentLength();
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.LayeredConfigurationSource;
+import org.brekka.stillingar.core.snapshot.IncrementalSnapshot;
+import org.brekka.stillingar.core.snapshot.InvalidSnapshotException;
+import org.brekka.stillingar.core.snapshot.NoSnapshotAvailableException;
+import org.brekka.stillingar.core.snapshot.RejectedSnapshotLocation;
+import org.brekka.stillingar.core.snapshot.SizedSnapshot;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.brekka.stillingar.core.snapshot.SnapshotManager;
+import org.brekka.stillingar.spring.resource.ResourceContent;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Loads a conf.d-style directory of fragments, each parsed as a document, into a single snapshot where fragments later
+ * in name order take precedence over earlier ones.
+ *
+ * Each fragment is parsed once and kept until the file changes, as determined by a single stat of each file (see
+ * {@link FileState}). A check for an update therefore costs one stat per fragment, and an update only parses the
+ * fragments that were added or changed. The fragments become the layers of a {@link LayeredConfigurationSource}, so
+ * lookups go straight to the fragment owning the expression.
+ *
+ * Snapshots are {@link IncrementalSnapshot}s, where only expressions available in a changed, added or removed fragment
+ * are affected. Groups using other expressions resolve to the same fragment as before, so are not refreshed.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfDirectorySnapshotManager implements SnapshotManager {
+
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(ConfDirectorySnapshotManager.class);
+
+    /**
+     * The directory of fragments
+     */
+    private final File directory;
+
+    /**
+     * Only files with this suffix are fragments (can be null).
+     */
+    private final String suffix;
+
+    /**
+     * Parses each fragment
+     */
+    private final ConfigurationSourceLoader configurationSourceLoader;
+
+    /**
+     * The latest snapshot returned.
+     */
+    private ConfDirectorySnapshot current;
+
+    /**
+     * The state of the fragments of the last snapshot rejected, which will not be loaded again.
+     */
+    private Map<String, FileState> rejectedStates;
+
+    /**
+     * @param directory
+     *            the directory of fragments
+     * @param suffix
+     *            only files with this suffix are fragments (can be null).
+     * @param configurationSourceLoader
+     *            parses each fragment
+     */
+    public ConfDirectorySnapshotManager(File directory, String suffix,
+            ConfigurationSourceLoader configurationSourceLoader) {
+        if (directory == null) {
+            throw new IllegalArgumentException("null passed for directory");
+        }
+        if (configurationSourceLoader == null) {
+            throw new IllegalArgumentException("null passed for configurationSourceLoader");
+        }
+        this.directory = directory;
+        this.suffix = suffix;
+        this.configurationSourceLoader = configurationSourceLoader;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#retrieveInitial()
+     */
+    @Override
+    public synchronized Snapshot retrieveInitial() throws NoSnapshotAvailableException {
+        try {
+            this.current = load(currentStates(), null);
+            return current;
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn(format("Unable to load '%s'", directory), e);
+            }
+            throw new NoSnapshotAvailableException(Collections.<String>emptySet(),
+                    Collections.<RejectedSnapshotLocation>singletonList(
+                            new RejectedFileLocation(directory, "conf.d directory", e.getMessage())));
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#retrieveUpdated()
+     */
+    @Override
+    public synchronized Snapshot retrieveUpdated() throws InvalidSnapshotException {
+        if (current == null) {
+            // No initial configuration yet
+            return null;
+        }
+        try {
+            Map<String, FileState> states = currentStates();
+            if (states.equals(current.states)
+                    || states.equals(rejectedStates)) {
+                return null;
+            }
+            ConfDirectorySnapshot snapshot;
+            try {
+                snapshot = load(states, current);
+            } catch (ConfigurationException e) {
+                // A fragment itself is invalid, so will not be parsed again until the fragments change.
+                this.rejectedStates = states;
+                throw new InvalidSnapshotException(format("Unable to parse the fragments of '%s'", directory), e);
+            }
+            this.current = snapshot;
+            return current;
+        } catch (IOException e) {
+            // A fragment may have been removed while being read, will be retried next time.
+            throw new InvalidSnapshotException(format("Unable to load '%s'", directory), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#reject(org.brekka.stillingar.core.snapshot.Snapshot)
+     */
+    @Override
+    public synchronized void reject(Snapshot rejectedSnapshot) {
+        if (rejectedSnapshot instanceof ConfDirectorySnapshot) {
+            ConfDirectorySnapshot snapshot = (ConfDirectorySnapshot) rejectedSnapshot;
+            this.rejectedStates = snapshot.states;
+            if (snapshot == current) {
+                this.current = snapshot.base;
+            }
+        }
+    }
+
+    /**
+     * Load the fragments, reusing those of the base whose state is unchanged.
+     *
+     * @param states
+     *            the state of each fragment, keyed by name.
+     * @param base
+     *            the snapshot to reuse fragments from, null to parse every fragment.
+     */
+    private ConfDirectorySnapshot load(Map<String, FileState> states, ConfDirectorySnapshot base)
+            throws IOException {
+        Map<String, ConfigurationSource> fragments = new TreeMap<String, ConfigurationSource>();
+        List<ConfigurationSource> changed = new ArrayList<ConfigurationSource>();
+        long lastModified = 0;
+        long contentLength = 0;
+        for (Entry<String, FileState> entry : states.entrySet()) {
+            String name = entry.getKey();
+            FileState state = entry.getValue();
+            lastModified = Math.max(lastModified, state.lastModified());
+            ConfigurationSource previous = null;
+            if (base != null) {
+                previous = base.fragments.get(name);
+                if (previous != null
+                        && state.equals(base.states.get(name))) {
+                    fragments.put(name, previous);
+                    continue;
+                }
+            }
+            // The state was taken first, so a change made while parsing is picked up next time
+            ConfigurationSource fragment = ResourceContent.parse(
+                    new FileSystemResource(new File(directory, name)), configurationSourceLoader, null);
+            fragments.put(name, fragment);
+            contentLength += state.size();
+            if (previous != null) {
+                changed.add(previous);
+            }
+            changed.add(fragment);
+        }
+        if (base != null) {
+            // The base is now settled, so there is no need to keep the snapshots before it
+            base.base = null;
+            for (Entry<String, ConfigurationSource> entry : base.fragments.entrySet()) {
+                if (!fragments.containsKey(entry.getKey())) {
+                    changed.add(entry.getValue());
+                }
+            }
+        }
+        // Later names take precedence
+        List<ConfigurationSource> layers = new ArrayList<ConfigurationSource>(fragments.values());
+        Collections.reverse(layers);
+        if (log.isInfoEnabled()) {
+            log.info(format("Loaded %d of %d fragments from '%s'", (base == null ? fragments.size() : changed.size()),
+                    fragments.size(), directory));
+        }
+        return new ConfDirectorySnapshot(new LayeredConfigurationSource(layers), new Date(lastModified),
+                new FileSystemResource(directory), contentLength, states, fragments, changed, base);
+    }
+
+    /**
+     * @return the state of each fragment in the directory, keyed by name.
+     */
+    private Map<String, FileState> currentStates() throws IOException {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return !name.startsWith(".")
+                        && (suffix == null || name.endsWith(suffix))
+                        && file.isFile();
+            }
+        });
+        if (files == null) {
+            throw new IOException(format("Unable to list directory '%s'", directory));
+        }
+        Map<String, FileState> states = new TreeMap<String, FileState>();
+        for (File file : files) {
+            FileState state = FileState.of(file.toPath());
+            if (state != FileState.MISSING) {
+                states.put(file.getName(), state);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * A snapshot of the fragments, which knows the fragments that changed since its base.
+     */
+    private static class ConfDirectorySnapshot implements IncrementalSnapshot, SizedSnapshot {
+
+        private final ResourceSnapshot delegate;
+
+        /**
+         * The state of each fragment when loaded, keyed by name.
+         */
+        private final Map<String, FileState> states;
+
+        /**
+         * The parsed fragments, keyed by name.
+         */
+        private final Map<String, ConfigurationSource> fragments;
+
+        /**
+         * Both the old and new versions of the fragments that changed since the base.
+         */
+        private final List<ConfigurationSource> changed;
+
+        /**
+         * The snapshot this was loaded as changes to (can be null).
+         */
+        private ConfDirectorySnapshot base;
+
+        ConfDirectorySnapshot(ConfigurationSource source, Date timestamp, FileSystemResource resource,
+                long contentLength, Map<String, FileState> states, Map<String, ConfigurationSource> fragments,
+                List<ConfigurationSource> changed, ConfDirectorySnapshot base) {
+            this.delegate = new ResourceSnapshot(source, timestamp, resource, contentLength);
+            this.states = states;
+            this.fragments = fragments;
+            this.changed = changed;
+            this.base = base;
+        }
+
+        /**
+         * Only expressions available in one of the changed fragments, before or after the change, can resolve to a
+         * different value.
+         */
+        @Override
+        public boolean isAffected(String expression) {
+            for (ConfigurationSource fragment : changed) {
+                if (fragment.isAvailable(expression)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.IncrementalSnapshot#getBase()
+         */
+        @Override
+        public Snapshot getBase() {
+            return base;
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getSource()
+         */
+        @Override
+        public ConfigurationSource getSource() {
+            return delegate.getSource();
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getTimestamp()
+         */
+        @Override
+        public Date getTimestamp() {
+            return delegate.getTimestamp();
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getLocation()
+         */
+        @Override
+        public URI getLocation() {
+            return delegate.getLocation();
+        }
+
+        /**
+         * Only the fragments parsed for this snapshot, those reused from the base are not counted again.
+         */
+        @Override
+        public long getContentLength() {
+            return delegate.getContentLength();
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A directory updated in the manner of a Kubernetes ConfigMap/Secret volume. Each update is written to a new
+ * timestamped directory, then the <code>..data</code> symbolic link is atomically swapped to point at it. The files
+ * visible in the directory itself are links via <code>..data</code>.
+ *
+ * The target of <code>..data</code> identifies the generation, so detecting a change is a single
+ * <code>readlink</code>, and reading the files of a generation via its own directory (rather than via the links) means
+ * a swap made part way through cannot mix two generations. Where there is no <code>..data</code> link, the names,
+ * sizes and modification times of the files make up the generation instead.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfigMapDirectory {
+
+    /**
+     * The link swapped on each update
+     */
+    public static final String DATA_LINK = "..data";
+
+    /**
+     * The directory
+     */
+    private final File directory;
+
+    /**
+     * Only files with this suffix are included (can be null).
+     */
+    private final String suffix;
+
+    /**
+     * @param directory
+     *            the directory
+     * @param suffix
+     *            only files with this suffix are included (can be null).
+     */
+    public ConfigMapDirectory(File directory, String suffix) {
+        if (directory == null) {
+            throw new IllegalArgumentException("null passed for directory");
+        }
+        this.directory = directory;
+        this.suffix = suffix;
+    }
+
+    /**
+     * @return true if the directory contains the <code>..data</code> link.
+     */
+    public boolean isLinked() {
+        return Files.isSymbolicLink(dataLink());
+    }
+
+    /**
+     * Identify the current generation.
+     *
+     * @return the generation
+     * @throws IOException
+     *             if the directory cannot be read.
+     */
+    public String currentGeneration() throws IOException {
+        Path dataLink = dataLink();
+        if (Files.isSymbolicLink(dataLink)) {
+            return Files.readSymbolicLink(dataLink).toString();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (File file : listFiles(directory)) {
+            sb.append(file.getName()).append(':').append(file.length())
+              .append(':').append(file.lastModified()).append('/');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param generation
+     *            the generation, as returned by {@link #currentGeneration()}.
+     * @return the directory holding the files of the generation.
+     */
+    public File dataDirectory(String generation) {
+        if (isLinked()) {
+            return directory.toPath().resolve(generation).toFile();
+        }
+        return directory;
+    }
+
+    /**
+     * @param generation
+     *            the generation, as returned by {@link #currentGeneration()}.
+     * @return the files of the generation, in name order.
+     * @throws IOException
+     *             if the directory cannot be listed, typically because the generation has since been removed.
+     */
+    public List<File> files(String generation) throws IOException {
+        return listFiles(dataDirectory(generation));
+    }
+
+    /**
+     * @return the directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return format("%s[%s]", getClass().getSimpleName(), directory);
+    }
+
+    private Path dataLink() {
+        return new File(directory, DATA_LINK).toPath();
+    }
+
+    private List<File> listFiles(File dir) throws IOException {
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return !name.startsWith(".")
+                        && (suffix == null || name.endsWith(suffix))
+                        && file.isFile();
+            }
+        });
+        if (files == null) {
+            throw new IOException(format("Unable to list directory '%s'", dir));
+        }
+        List<File> fileList = new ArrayList<File>(Arrays.asList(files));
+        Collections.sort(fileList);
+        return fileList;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.spring.resource.ResourceContent;
+import org.springframework.core.io.Resource;
+
+/**
+ * Determines whether a resource has changed by polling, comparing the generation of the directory (see
+ * {@link ConfigMapDirectory}) where the resource lies in a ConfigMap-style directory. The lastModified of a file
+ * linked via <code>..data</code> cannot be relied on, as the link is swapped rather than the file modified. Resources
+ * anywhere else are checked by the delegate monitor, by default a {@link PollingResourceMonitor}.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfigMapResourceMonitor implements ResourceMonitor {
+
+    /**
+     * Checks resources that are not in a ConfigMap-style directory
+     */
+    private final ResourceMonitor delegate;
+
+    /**
+     * The directory containing the resource, null when the delegate is in use.
+     */
+    private ConfigMapDirectory configMapDirectory;
+
+    /**
+     * The generation the last time hasChanged was called.
+     */
+    private String previousGeneration;
+
+    /**
+     * Poll the lastModified of resources outside of ConfigMap-style directories.
+     */
+    public ConfigMapResourceMonitor() {
+        this(new PollingResourceMonitor());
+    }
+
+    /**
+     * @param delegate
+     *            checks resources that are not in a ConfigMap-style directory.
+     */
+    public ConfigMapResourceMonitor(ResourceMonitor delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("null passed for delegate");
+        }
+        this.delegate = delegate;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.snapshot.ResourceMonitor#initialise(org.springframework.core.io.Resource)
+     */
+    @Override
+    public void initialise(Resource resource) {
+        ConfigMapDirectory directory = directoryOf(resource);
+        if (directory != null
+                && directory.isLinked()) {
+            this.configMapDirectory = directory;
+            this.previousGeneration = currentGeneration();
+        } else {
+            this.configMapDirectory = null;
+            this.previousGeneration = null;
+            delegate.initialise(resource);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.snapshot.ResourceMonitor#hasChanged()
+     */
+    @Override
+    public boolean hasChanged() {
+        if (configMapDirectory == null) {
+            return delegate.hasChanged();
+        }
+        String generation = currentGeneration();
+        if (generation.equals(previousGeneration)) {
+            return false;
+        }
+        this.previousGeneration = generation;
+        return true;
+    }
+
+    /**
+     * Resources in a directory with the <code>..data</code> link can always be monitored, anything else is down to
+     * the delegate.
+     */
+    @Override
+    public boolean canMonitor(Resource resource) {
+        ConfigMapDirectory directory = directoryOf(resource);
+        if (directory != null
+                && directory.isLinked()) {
+            return true;
+        }
+        return delegate.canMonitor(resource);
+    }
+
+    /**
+     * @return true if the resource passed to {@link #initialise(Resource)} is being checked by its generation.
+     */
+    public boolean isGenerationBased() {
+        return configMapDirectory != null;
+    }
+
+    private String currentGeneration() {
+        try {
+            return configMapDirectory.currentGeneration();
+        } catch (IOException e) {
+            throw new ConfigurationException(String.format(
+                    "Unable to determine the generation of '%s'", configMapDirectory.getDirectory()), e);
+        }
+    }
+
+    private static ConfigMapDirectory directoryOf(Resource resource) {
+        File file = ResourceContent.fileOf(resource);
+        if (file == null) {
+            return null;
+        }
+        return new ConfigMapDirectory(file.getAbsoluteFile().getParentFile(), null);
+    }
+}
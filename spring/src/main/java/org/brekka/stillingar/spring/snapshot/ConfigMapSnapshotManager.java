@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.FallbackConfigurationSource;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSource;
+import org.brekka.stillingar.core.snapshot.InvalidSnapshotException;
+import org.brekka.stillingar.core.snapshot.NoSnapshotAvailableException;
+import org.brekka.stillingar.core.snapshot.RejectedSnapshotLocation;
+import org.brekka.stillingar.core.snapshot.SizedSnapshot;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.brekka.stillingar.core.snapshot.SnapshotManager;
+import org.brekka.stillingar.spring.resource.ResourceContent;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Loads every file of a ConfigMap-style directory (see {@link ConfigMapDirectory}) into a single snapshot, with each
+ * generation of the directory becoming one snapshot. Checking for an update is just a comparison of the generation.
+ *
+ * Without a loader, each file becomes one key, named after the file, whose value is the content of the file. With a
+ * loader, each file is parsed as a document and the documents are merged, with files later in name order taking
+ * precedence over earlier ones.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfigMapSnapshotManager implements SnapshotManager {
+
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(ConfigMapSnapshotManager.class);
+
+    /**
+     * Encoding of file content in the key per file mode.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The directory
+     */
+    private final ConfigMapDirectory configMapDirectory;
+
+    /**
+     * Parses each file as a document, null for one key per file.
+     */
+    private final ConfigurationSourceLoader configurationSourceLoader;
+
+    /**
+     * The generation of the latest snapshot returned.
+     */
+    private String currentGeneration;
+
+    /**
+     * The generation of the last snapshot rejected, which will not be loaded again.
+     */
+    private String rejectedGeneration;
+
+    /**
+     * @param configMapDirectory
+     *            the directory
+     * @param configurationSourceLoader
+     *            parses each file as a document, null for one key per file.
+     */
+    public ConfigMapSnapshotManager(ConfigMapDirectory configMapDirectory,
+            ConfigurationSourceLoader configurationSourceLoader) {
+        if (configMapDirectory == null) {
+            throw new IllegalArgumentException("null passed for configMapDirectory");
+        }
+        this.configMapDirectory = configMapDirectory;
+        this.configurationSourceLoader = configurationSourceLoader;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#retrieveInitial()
+     */
+    @Override
+    public synchronized Snapshot retrieveInitial() throws NoSnapshotAvailableException {
+        try {
+            String generation = configMapDirectory.currentGeneration();
+            Snapshot snapshot = load(generation);
+            this.currentGeneration = generation;
+            return snapshot;
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn(format("Unable to load '%s'", configMapDirectory.getDirectory()), e);
+            }
+            throw new NoSnapshotAvailableException(Collections.<String>emptySet(),
+                    Collections.<RejectedSnapshotLocation>singletonList(
+                            new RejectedFileLocation(configMapDirectory.getDirectory(), "ConfigMap directory",
+                                    e.getMessage())));
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#retrieveUpdated()
+     */
+    @Override
+    public synchronized Snapshot retrieveUpdated() throws InvalidSnapshotException {
+        if (currentGeneration == null) {
+            // No initial configuration yet
+            return null;
+        }
+        try {
+            String generation = configMapDirectory.currentGeneration();
+            if (generation.equals(currentGeneration)
+                    || generation.equals(rejectedGeneration)) {
+                return null;
+            }
+            Snapshot snapshot;
+            try {
+                snapshot = load(generation);
+            } catch (ConfigurationException e) {
+                // The content itself is invalid, so will not be parsed again until the generation changes.
+                this.rejectedGeneration = generation;
+                throw new InvalidSnapshotException(format(
+                        "Unable to parse generation '%s' of '%s'", generation, configMapDirectory.getDirectory()), e);
+            }
+            this.currentGeneration = generation;
+            return snapshot;
+        } catch (IOException e) {
+            // The generation may have been replaced while being read, will be retried next time.
+            throw new InvalidSnapshotException(format(
+                    "Unable to load '%s'", configMapDirectory.getDirectory()), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#reject(org.brekka.stillingar.core.snapshot.Snapshot)
+     */
+    @Override
+    public synchronized void reject(Snapshot rejectedSnapshot) {
+        if (rejectedSnapshot instanceof ConfigMapSnapshot) {
+            ConfigMapSnapshot snapshot = (ConfigMapSnapshot) rejectedSnapshot;
+            this.rejectedGeneration = snapshot.generation;
+            if (snapshot.generation.equals(currentGeneration)) {
+                this.currentGeneration = snapshot.previousGeneration;
+            }
+        }
+    }
+
+    /**
+     * Load the files of the generation into one source.
+     */
+    protected Snapshot load(String generation) throws IOException {
+        File dataDirectory = configMapDirectory.dataDirectory(generation);
+        List<File> files = configMapDirectory.files(generation);
+        ConfigurationSource source;
+        long contentLength = 0;
+        for (File file : files) {
+            contentLength += file.length();
+        }
+        if (configurationSourceLoader == null) {
+            Properties properties = new Properties();
+            for (File file : files) {
+                properties.setProperty(file.getName(), UTF8.decode(ResourceContent.read(file)).toString());
+            }
+            source = new PropertiesConfigurationSource(properties);
+        } else {
+            source = FallbackConfigurationSource.NONE;
+            for (File file : files) {
+                ConfigurationSource document = ResourceContent.parse(
+                        new FileSystemResource(file), configurationSourceLoader, null);
+                source = new FallbackConfigurationSource(document, source);
+            }
+        }
+        if (log.isInfoEnabled()) {
+            log.info(format("Loaded %d files from generation '%s' of '%s'",
+                    files.size(), generation, configMapDirectory.getDirectory()));
+        }
+        return new ConfigMapSnapshot(source, new Date(dataDirectory.lastModified()),
+                new FileSystemResource(dataDirectory), contentLength, generation, currentGeneration);
+    }
+
+    /**
+     * A snapshot of one generation.
+     */
+    private static class ConfigMapSnapshot implements SizedSnapshot {
+
+        private final ResourceSnapshot delegate;
+
+        private final String generation;
+
+        /**
+         * The generation current when this was loaded, restored should this be rejected.
+         */
+        private final String previousGeneration;
+
+        ConfigMapSnapshot(ConfigurationSource source, Date timestamp, FileSystemResource resource,
+                long contentLength, String generation, String previousGeneration) {
+            this.delegate = new ResourceSnapshot(source, timestamp, resource, contentLength);
+            this.generation = generation;
+            this.previousGeneration = previousGeneration;
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getSource()
+         */
+        @Override
+        public ConfigurationSource getSource() {
+            return delegate.getSource();
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getTimestamp()
+         */
+        @Override
+        public Date getTimestamp() {
+            return delegate.getTimestamp();
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getLocation()
+         */
+        @Override
+        public URI getLocation() {
+            return delegate.getLocation();
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.SizedSnapshot#getContentLength()
+         */
+        @Override
+        public long getContentLength() {
+            return delegate.getContentLength();
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The attributes of a file compared to detect a change, obtained from a single stat call: the modification time (to
+ * the nanosecond where the file system supports it), the size and the file key (inode).
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class FileState {
+
+    /**
+     * The file does not exist
+     */
+    static final FileState MISSING = new FileState(-1, -1, null);
+
+    /**
+     * Modification time in nanoseconds
+     */
+    private final long modified;
+
+    /**
+     * Size in bytes
+     */
+    private final long size;
+
+    /**
+     * Identifies the file (inode), null where not supported.
+     */
+    private final Object fileKey;
+
+    private FileState(long modified, long size, Object fileKey) {
+        this.modified = modified;
+        this.size = size;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * @param file
+     *            the file
+     * @return the current state of the file, {@link #MISSING} if it does not exist.
+     * @throws IOException
+     *             if the attributes cannot be read.
+     */
+    static FileState of(Path file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new FileState(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.size(),
+                    attributes.fileKey());
+        } catch (NoSuchFileException e) {
+            return MISSING;
+        }
+    }
+
+    /**
+     * @return the modification time in milliseconds.
+     */
+    long lastModified() {
+        return TimeUnit.NANOSECONDS.toMillis(modified);
+    }
+
+    /**
+     * @return the size in bytes.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @param other
+     *            the state of a file
+     * @return true if both are the state of the same file (inode), also where file keys are not supported.
+     */
+    boolean isSameFile(FileState other) {
+        return fileKey == null
+                || other.fileKey == null
+                || fileKey.equals(other.fileKey);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof FileState)) {
+            return false;
+        }
+        FileState other = (FileState) obj;
+        return modified == other.modified
+                && size == other.size
+                && (fileKey == null ? other.fileKey == null : fileKey.equals(other.fileKey));
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return (int) (modified ^ (modified >>> 32)) * 31 + (int) size;
+    }
+}
@@ -18,6 +18,7 @@ package org.brekka.stillingar.spring.snapshot;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.net.URI;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -124,4 +125,16 @@ public class LoggingSnapshotEventHandler implements SnapshotEventHandler {
     public void invalidSnapshotUpdate(InvalidSnapshotException e) {
         log.error(String.format("Failed to update configuration for '%s' from snapshot", applicationName), e);
     }
+
+
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotEventHandler#unchangedSnapshot(java.net.URI)
+     */
+    @Override
+    public void unchangedSnapshot(URI location) {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Snapshot at '%s' is unchanged, reload skipped", location));
+        }
+    }
 }
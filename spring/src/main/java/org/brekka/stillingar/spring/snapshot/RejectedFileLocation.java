@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import java.io.File;
+
+import org.brekka.stillingar.core.snapshot.RejectedSnapshotLocation;
+
+/**
+ * A file or directory that could not be loaded.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+class RejectedFileLocation implements RejectedSnapshotLocation {
+
+    /**
+     * The file or directory
+     */
+    private final File file;
+
+    /**
+     * What the file is, such as 'conf.d directory'.
+     */
+    private final String disposition;
+
+    /**
+     * Why it could not be loaded
+     */
+    private final String message;
+
+    RejectedFileLocation(File file, String disposition, String message) {
+        this.file = file;
+        this.disposition = disposition;
+        this.message = message;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.RejectedSnapshotLocation#getDisposition()
+     */
+    @Override
+    public String getDisposition() {
+        return disposition;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.RejectedSnapshotLocation#getPath()
+     */
+    @Override
+    public String getPath() {
+        return file.getAbsolutePath();
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.RejectedSnapshotLocation#getMessage()
+     */
+    @Override
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.brekka.stillingar.spring.resource.ResourceContent;
+import org.springframework.core.io.Resource;
+
+/**
+ * Computes a digest of the content of a resource, so that a resource whose timestamp has changed can be checked for an
+ * actual change in content before it is parsed. Files of at least {@link ResourceContent#MAP_THRESHOLD} bytes are
+ * memory-mapped, everything else is streamed through a fixed buffer.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class ResourceDigester {
+
+    /**
+     * The digest algorithm, which only needs to detect accidental differences.
+     */
+    private static final String ALGORITHM = "MD5";
+
+    private ResourceDigester() {
+    }
+
+    /**
+     * Compute the digest of the content of the specified resource.
+     *
+     * @param resource
+     *            the resource to digest
+     * @return the digest
+     * @throws IOException
+     *             if the resource cannot be read.
+     */
+    static byte[] digest(Resource resource) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(String.format("Digest algorithm '%s' not available", ALGORITHM), e);
+        }
+        File file = ResourceContent.fileOf(resource);
+        if (file != null
+                && file.length() >= ResourceContent.MAP_THRESHOLD) {
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                FileChannel channel = fis.getChannel();
+                messageDigest.update(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                fis.close();
+            }
+        } else {
+            InputStream is = resource.getInputStream();
+            try {
+                byte[] buffer = new byte[ResourceContent.BUFFER_SIZE];
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    messageDigest.update(buffer, 0, read);
+                }
+            } finally {
+                is.close();
+            }
+        }
+        return messageDigest.digest();
+    }
+}
@@ -22,7 +22,7 @@ import java.util.Date;
 
 import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
-import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.brekka.stillingar.core.snapshot.SizedSnapshot;
 import org.springframework.core.io.Resource;
 
 /**
@@ -31,7 +31,7 @@ import org.springframework.core.io.Resource;
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
-public final class ResourceSnapshot implements Snapshot {
+public final class ResourceSnapshot implements SizedSnapshot {
 
     /**
      * The source representation of the resource.
@@ -48,6 +48,11 @@ public final class ResourceSnapshot implements Snapshot {
      */
     private final Resource resource;
 
+    /**
+     * The number of bytes parsed to produce the source, -1 if not known.
+     */
+    private final long contentLength;
+
     /**
      * 
      * @param configurationSource The source representation of the resource.
@@ -55,9 +60,22 @@ public final class ResourceSnapshot implements Snapshot {
      * @param resource A reference to the underlying (mutable) resource
      */
     public ResourceSnapshot(ConfigurationSource configurationSource, Date timestamp, Resource resource) {
+        this(configurationSource, timestamp, resource, -1);
+    }
+
+    /**
+     * 
+     * @param configurationSource The source representation of the resource.
+     * @param timestamp Value of the resource's last modified timestamp at the moment this snapshot was created.
+     * @param resource A reference to the underlying (mutable) resource
+     * @param contentLength The number of bytes parsed to produce the source, -1 if not known.
+     */
+    public ResourceSnapshot(ConfigurationSource configurationSource, Date timestamp, Resource resource,
+            long contentLength) {
         this.configurationSource = configurationSource;
         this.timestamp = timestamp;
         this.resource = resource;
+        this.contentLength = contentLength;
     }
 
     /*
@@ -94,6 +112,16 @@ public final class ResourceSnapshot implements Snapshot {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.brekka.stillingar.core.snapshot.SizedSnapshot#getContentLength()
+     */
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
     /**
      * @return the resource
      */
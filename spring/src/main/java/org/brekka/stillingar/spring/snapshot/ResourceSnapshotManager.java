@@ -21,27 +21,60 @@ import static java.lang.String.format;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.CachedConfigurationSource;
+import org.brekka.stillingar.core.ProjectedConfigurationSource;
+import org.brekka.stillingar.core.ProjectingConfigurationSourceLoader;
+import org.brekka.stillingar.core.RecordingConfigurationSource;
+import org.brekka.stillingar.core.ResolvedValues;
 import org.brekka.stillingar.core.snapshot.InvalidSnapshotException;
 import org.brekka.stillingar.core.snapshot.NoSnapshotAvailableException;
+import org.brekka.stillingar.core.snapshot.ProjectableSnapshotManager;
 import org.brekka.stillingar.core.snapshot.Snapshot;
-import org.brekka.stillingar.core.snapshot.SnapshotManager;
+import org.brekka.stillingar.core.snapshot.SnapshotEventHandler;
 import org.brekka.stillingar.spring.resource.RejectedResourceHandler;
+import org.brekka.stillingar.spring.resource.ResourceContent;
 import org.brekka.stillingar.spring.resource.ResourceSelector;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.core.io.Resource;
 
 /**
  * Snapshot manager based around resources.
  * 
+ * When projection is enabled and the loader is a {@link ProjectingConfigurationSourceLoader}, updated snapshots will
+ * only contain the parts of the resource needed to resolve the expressions registered with the configuration service,
+ * plus any explicitly retained expressions. Lookups outside of that projection cause the full resource to be loaded
+ * on demand, provided it has not changed since the snapshot was taken. The initial snapshot is always loaded in full,
+ * as nothing will have been registered at that point.
+ * 
+ * A digest of the resource content is kept for the current snapshot. When the monitor reports a change, the digest is
+ * recalculated first and if the content turns out to be identical, the resource is not parsed, no snapshot is returned
+ * and the skip is reported to the {@link SnapshotEventHandler} (if one is set).
+ * 
+ * Resources are read via {@link ResourceContent}, so file based resources are passed as a single buffer to loaders
+ * that implement {@link org.brekka.stillingar.core.ByteBufferConfigurationSourceLoader}.
+ * 
+ * When a {@link SnapshotCache} is set, the values resolved from the current snapshot are recorded and written to the
+ * cache on the next poll for updates (and when this manager is destroyed). If the cache holds values for the same
+ * content on startup, the initial snapshot is served from those values and the resource is only parsed should a value
+ * be requested that was not recorded.
+ * 
  * @author Andrew Taylor
  */
-public class ResourceSnapshotManager implements SnapshotManager {
+public class ResourceSnapshotManager implements ProjectableSnapshotManager, DisposableBean {
     
     /**
      * Logger
@@ -73,6 +106,56 @@ public class ResourceSnapshotManager implements SnapshotManager {
 	 */
 	private Resource configurationResource;
 	
+	/**
+	 * Should snapshots be restricted to the expressions passed to {@link #project(Set)}.
+	 */
+	private boolean projectionEnabled;
+	
+	/**
+	 * Expressions to always include in a projection, in addition to those that are registered.
+	 */
+	private Set<String> retainedExpressions = Collections.emptySet();
+	
+	/**
+	 * The expressions that snapshots should be restricted to, null to load the whole resource.
+	 */
+	private volatile Set<String> projection;
+	
+	/**
+	 * Informed when an update is skipped because the content is unchanged (optional).
+	 */
+	private SnapshotEventHandler snapshotEventHandler;
+	
+	/**
+	 * Digest of the content of the current snapshot, null if unknown.
+	 */
+	private byte[] currentDigest;
+	
+	/**
+	 * Digest of the content of the snapshot prior to the current one, restored should the current be rejected.
+	 */
+	private byte[] previousDigest;
+	
+	/**
+	 * Where the values resolved from the current snapshot are kept between restarts (optional).
+	 */
+	private SnapshotCache snapshotCache;
+	
+	/**
+	 * The values being recorded for the current snapshot, null if there is no cache.
+	 */
+	private ResolvedValues currentValues;
+	
+	/**
+	 * The values recorded for the snapshot prior to the current one, restored should the current be rejected.
+	 */
+	private ResolvedValues previousValues;
+	
+	/**
+	 * The modification count of {@link #currentValues} when last written to the cache, -1 if not written.
+	 */
+	private long writtenModifications = -1;
+	
 	/**
 	 * @param resourceSelector Determines where the resources that the snapshots will be based on will be loaded from.
 	 * @param configurationSourceLoader Will actually load the snapshots
@@ -121,7 +204,16 @@ public class ResourceSnapshotManager implements SnapshotManager {
 	public Snapshot retrieveInitial() throws NoSnapshotAvailableException {
 	    Resource resource = resourceSelector.getResource();
 	    this.configurationResource = resource;
-	    Snapshot snapshot = performLoad(resource);
+	    // Digest before loading, so a change made in between will not be mistaken for the loaded content.
+	    byte[] digest = digestOf(resource);
+	    Snapshot snapshot = loadCached(resource, digest);
+	    if (snapshot != null) {
+	        this.writtenModifications = valuesOf(snapshot).getModifications();
+	    } else {
+	        snapshot = performLoad(resource);
+	    }
+	    this.currentDigest = digest;
+	    this.currentValues = valuesOf(snapshot);
 	    this.resourceMonitor.initialise(resource);
 	    return snapshot;
 	}
@@ -136,13 +228,46 @@ public class ResourceSnapshotManager implements SnapshotManager {
 	        // No initial configuration yet, just return null
 	        return null;
 	    }
+	    writeCache();
         if (resourceMonitor.hasChanged()) {
+            byte[] digest = digestOf(configurationResource);
+            if (digest != null
+                    && currentDigest != null
+                    && MessageDigest.isEqual(digest, currentDigest)) {
+                if (snapshotEventHandler != null) {
+                    snapshotEventHandler.unchangedSnapshot(locationOf(configurationResource));
+                }
+                return null;
+            }
             Snapshot snapshot = performLoad(configurationResource);
+            if (snapshot != null) {
+                this.previousDigest = currentDigest;
+                this.currentDigest = digest;
+                this.previousValues = currentValues;
+                this.currentValues = valuesOf(snapshot);
+                this.writtenModifications = -1;
+            }
             return snapshot;
         }
         return null;
 	}
 	
+	/* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.ProjectableSnapshotManager#project(java.util.Set)
+     */
+    @Override
+    public void project(Set<String> expressions) {
+        if (!projectionEnabled
+                || expressions == null
+                || expressions.isEmpty()) {
+            this.projection = null;
+            return;
+        }
+        Set<String> merged = new LinkedHashSet<String>(expressions);
+        merged.addAll(retainedExpressions);
+        this.projection = Collections.unmodifiableSet(merged);
+    }
+	
 	/* (non-Javadoc)
      * @see org.brekka.stillingar.core.snapshot.SnapshotManager#reject(org.brekka.stillingar.core.snapshot.Snapshot)
      */
@@ -151,6 +276,10 @@ public class ResourceSnapshotManager implements SnapshotManager {
         if (rejectedSnapshot instanceof ResourceSnapshot) {
             ResourceSnapshot resourceSnapshot = (ResourceSnapshot) rejectedSnapshot;
             Resource resource = resourceSnapshot.getResource();
+            // The rejected content is no longer current
+            this.currentDigest = previousDigest;
+            this.currentValues = previousValues;
+            this.writtenModifications = -1;
             if (rejectedResourceHandler != null) {
                 rejectedResourceHandler.rejected(resource);
             }
@@ -169,10 +298,25 @@ public class ResourceSnapshotManager implements SnapshotManager {
                 && resourceToLoad.isReadable()) {
             InputStream sourceStream = null;
             try {
-                sourceStream = resourceToLoad.getInputStream();
                 long timestamp = resourceToLoad.lastModified();
-                ConfigurationSource configurationSource = configurationSourceLoader.parse(sourceStream, null);
-                snapshot = new ResourceSnapshot(configurationSource, new Date(timestamp), resourceToLoad);
+                long contentLength = resourceToLoad.contentLength();
+                ConfigurationSource configurationSource;
+                Set<String> expressions = this.projection;
+                if (expressions != null
+                        && configurationSourceLoader instanceof ProjectingConfigurationSourceLoader) {
+                    sourceStream = ResourceContent.openStream(resourceToLoad);
+                    ConfigurationSource projectedSource = ((ProjectingConfigurationSourceLoader) configurationSourceLoader)
+                            .parse(sourceStream, null, expressions);
+                    configurationSource = new ProjectedConfigurationSource(projectedSource, expressions, 
+                            new FullLoad(resourceToLoad, timestamp));
+                } else {
+                    configurationSource = ResourceContent.parse(resourceToLoad, configurationSourceLoader, null);
+                }
+                if (snapshotCache != null) {
+                    configurationSource = new RecordingConfigurationSource(configurationSource, new ResolvedValues());
+                }
+                snapshot = new ResourceSnapshot(configurationSource, new Date(timestamp), resourceToLoad,
+                        contentLength);
             } catch (IOException e) {
                 throw new ConfigurationException(format("Resouce '%s'", resourceToLoad), e);
             } catch (RuntimeException e) {
@@ -185,6 +329,153 @@ public class ResourceSnapshotManager implements SnapshotManager {
         return snapshot;
     }
     
+    /**
+     * Load the selected resource in full, without affecting the state of this manager. Used where the snapshot was
+     * obtained by other means and a value is needed that it does not include.
+     * 
+     * @param lastModified
+     *            when the resource was last modified at the time the snapshot was loaded.
+     * @return the configuration source loaded from the resource.
+     * @throws IOException
+     *             if the resource cannot be read.
+     * @throws ConfigurationException
+     *             if the resource has changed since the snapshot was loaded, as the values would not match.
+     */
+    public ConfigurationSource loadSource(long lastModified) throws IOException {
+        Resource resource = this.configurationResource;
+        if (resource == null) {
+            try {
+                resource = resourceSelector.getResource();
+            } catch (NoSnapshotAvailableException e) {
+                throw new IOException("No configuration resource is available", e);
+            }
+        }
+        return new FullLoad(resource, lastModified).call();
+    }
+    
+    /**
+     * Create a snapshot from the values cached for the resource content, if there are any.
+     * 
+     * @param resource
+     *            the resource the snapshot is for
+     * @param digest
+     *            the digest of the resource content
+     * @return the snapshot or null if nothing is cached for the content.
+     */
+    protected Snapshot loadCached(Resource resource, byte[] digest) {
+        if (snapshotCache == null
+                || digest == null) {
+            return null;
+        }
+        ResolvedValues values = snapshotCache.read(digest);
+        if (values == null) {
+            return null;
+        }
+        try {
+            long timestamp = resource.lastModified();
+            CachedConfigurationSource configurationSource = new CachedConfigurationSource(values, 
+                    new FullLoad(resource, timestamp));
+            if (log.isInfoEnabled()) {
+                log.info(format("Resource '%s' unchanged, using the %d values in %s", 
+                        resource, values.size(), snapshotCache));
+            }
+            return new ResourceSnapshot(configurationSource, new Date(timestamp), resource);
+        } catch (IOException e) {
+            throw new ConfigurationException(format("Resouce '%s'", resource), e);
+        }
+    }
+    
+    /**
+     * Write the values recorded for the current snapshot to the cache, if there are any that have not been written.
+     * Failure is not fatal, it will be logged and the write attempted again later.
+     */
+    protected void writeCache() {
+        ResolvedValues values = this.currentValues;
+        byte[] digest = this.currentDigest;
+        if (snapshotCache == null
+                || values == null
+                || digest == null
+                || values.size() == 0) {
+            return;
+        }
+        long modifications = values.getModifications();
+        if (modifications == writtenModifications) {
+            return;
+        }
+        try {
+            snapshotCache.write(digest, values);
+            this.writtenModifications = modifications;
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn(format("Unable to write %s", snapshotCache), e);
+            }
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see org.springframework.beans.factory.DisposableBean#destroy()
+     */
+    @Override
+    public void destroy() {
+        writeCache();
+    }
+    
+    /**
+     * Calculate the digest of the resource content.
+     * 
+     * @param resource
+     *            the resource to digest
+     * @return the digest or null if it could not be calculated, in which case the resource will always be loaded.
+     */
+    protected byte[] digestOf(Resource resource) {
+        if (resource == null 
+                || !resource.exists() 
+                || !resource.isReadable()) {
+            return null;
+        }
+        try {
+            return ResourceDigester.digest(resource);
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn(format("Unable to calculate the digest of resource '%s'", resource), e);
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * @param snapshotCache
+     *            where the values resolved from the current snapshot are kept between restarts.
+     */
+    public void setSnapshotCache(SnapshotCache snapshotCache) {
+        this.snapshotCache = snapshotCache;
+    }
+    
+    /**
+     * @param snapshotEventHandler
+     *            informed when an update is skipped because the content is unchanged.
+     */
+    public void setSnapshotEventHandler(SnapshotEventHandler snapshotEventHandler) {
+        this.snapshotEventHandler = snapshotEventHandler;
+    }
+    
+    /**
+     * @param projectionEnabled
+     *            should snapshots be restricted to the registered expressions (and those retained).
+     */
+    public void setProjectionEnabled(boolean projectionEnabled) {
+        this.projectionEnabled = projectionEnabled;
+    }
+    
+    /**
+     * @param retainedExpressions
+     *            expressions to always include in a projection, in addition to those that are registered.
+     */
+    public void setRetainedExpressions(Collection<String> retainedExpressions) {
+        this.retainedExpressions = (retainedExpressions != null 
+                ? new LinkedHashSet<String>(retainedExpressions) : Collections.<String>emptySet());
+    }
+    
     /**
      * @param rejectedResourceHandler the rejectedResourceHandler to set
      */
@@ -192,6 +483,69 @@ public class ResourceSnapshotManager implements SnapshotManager {
         this.rejectedResourceHandler = rejectedResourceHandler;
     }
 	
+	/**
+	 * Loads the whole of a resource for a snapshot that was loaded with a projection.
+	 */
+	private class FullLoad implements Callable<ConfigurationSource> {
+	    /**
+	     * The resource the snapshot was loaded from
+	     */
+	    private final Resource resource;
+	    
+	    /**
+	     * When the resource was last modified at the time the snapshot was loaded.
+	     */
+	    private final long timestamp;
+	    
+	    FullLoad(Resource resource, long timestamp) {
+	        this.resource = resource;
+	        this.timestamp = timestamp;
+	    }
+	    
+	    /* (non-Javadoc)
+	     * @see java.util.concurrent.Callable#call()
+	     */
+	    @Override
+	    public ConfigurationSource call() throws IOException {
+	        if (resource.lastModified() != timestamp) {
+	            // The content no longer matches the projected snapshot, it will be picked up by the next refresh.
+	            throw new ConfigurationException(format(
+	                    "Resource '%s' has changed since the snapshot was loaded", resource));
+	        }
+	        return ResourceContent.parse(resource, configurationSourceLoader, null);
+	    }
+	}
+	
+	/**
+	 * @param snapshot
+	 * @return the values being recorded for the snapshot, or null if they are not being recorded.
+	 */
+	private static ResolvedValues valuesOf(Snapshot snapshot) {
+	    if (snapshot == null) {
+	        return null;
+	    }
+	    ConfigurationSource source = snapshot.getSource();
+	    if (source instanceof RecordingConfigurationSource) {
+	        return ((RecordingConfigurationSource) source).getValues();
+	    }
+	    if (source instanceof CachedConfigurationSource) {
+	        return ((CachedConfigurationSource) source).getValues();
+	    }
+	    return null;
+	}
+	
+	/**
+	 * @param resource
+	 * @return the location of the resource, or null if it cannot be expressed as a URI.
+	 */
+	private static URI locationOf(Resource resource) {
+	    try {
+	        return resource.getURI();
+	    } catch (IOException e) {
+	        return null;
+	    }
+	}
+	
 	/**
 	 * Close the steams
 	 */
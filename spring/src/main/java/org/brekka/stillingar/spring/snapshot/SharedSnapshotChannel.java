@@ -0,0 +1,298 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.brekka.stillingar.core.ResolvedValues;
+import org.brekka.stillingar.core.support.ByteBufferInputStream;
+import org.brekka.stillingar.spring.resource.ResourceContent;
+
+/**
+ * The files through which snapshot values are shared between processes on the same host, all held in one directory:
+ *
+ * <ul>
+ * <li><code>sequence</code> - eight bytes holding the sequence number of the latest publication, mapped into memory by
+ * every process so that checking for a new publication is a single read.</li>
+ * <li><code>snapshot</code> - the latest publication, replaced by rename before the sequence is updated, so it is never
+ * seen partially written. It repeats the sequence number in its own header.</li>
+ * <li><code>publisher.lock</code> - locked by the publishing process for as long as it runs. The lock is released by
+ * the operating system should the process die, allowing another to take over.</li>
+ * </ul>
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+class SharedSnapshotChannel implements Closeable {
+
+    /**
+     * Identifies a publication
+     */
+    private static final int MAGIC = 0x53544C53;
+
+    /**
+     * Should be incremented whenever the layout of the publication changes in an incompatible way.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The publication file
+     */
+    private final File snapshotFile;
+
+    /**
+     * Application classes that may be read from a publication, in addition to the JDK value types and enums.
+     */
+    private volatile Collection<String> allowedClasses = Collections.emptySet();
+
+    /**
+     * The lock file
+     */
+    private final File lockFile;
+
+    /**
+     * The sequence file, kept open for the mapping.
+     */
+    private final RandomAccessFile sequenceFile;
+
+    /**
+     * The mapped sequence number
+     */
+    private final MappedByteBuffer sequence;
+
+    /**
+     * Channel on the lock file, while this is the publisher.
+     */
+    private FileChannel lockChannel;
+
+    /**
+     * The publisher lock, while this is the publisher.
+     */
+    private FileLock lock;
+
+    /**
+     * @param directory
+     *            the directory holding the files, which will be created if necessary.
+     * @throws IOException
+     *             if the files cannot be prepared.
+     */
+    SharedSnapshotChannel(File directory) throws IOException {
+        if (!directory.isDirectory()
+                && !directory.mkdirs()) {
+            throw new IOException(format("Unable to create directory '%s'", directory));
+        }
+        this.snapshotFile = new File(directory, "snapshot");
+        this.lockFile = new File(directory, "publisher.lock");
+        this.sequenceFile = new RandomAccessFile(new File(directory, "sequence"), "rw");
+        this.sequence = sequenceFile.getChannel().map(MapMode.READ_WRITE, 0, 8);
+    }
+
+    /**
+     * @return the sequence number of the latest publication, zero if there has been none.
+     */
+    long currentSequence() {
+        return sequence.getLong(0);
+    }
+
+    /**
+     * Attempt to become the publisher, which will only succeed if no other process holds the lock.
+     *
+     * @return true if this is now the publisher.
+     * @throws IOException
+     *             if the lock file cannot be opened.
+     */
+    synchronized boolean tryAcquirePublisher() throws IOException {
+        if (lock != null) {
+            return true;
+        }
+        FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+        FileLock acquired = null;
+        try {
+            acquired = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another channel within this process
+        }
+        if (acquired == null) {
+            channel.close();
+            return false;
+        }
+        this.lockChannel = channel;
+        this.lock = acquired;
+        return true;
+    }
+
+    /**
+     * @return true if this is the publisher.
+     */
+    synchronized boolean isPublisher() {
+        return lock != null;
+    }
+
+    /**
+     * Publish the values, which become visible to subscribers once the sequence is updated.
+     *
+     * @param values
+     *            the values to publish
+     * @param timestamp
+     *            the timestamp of the snapshot the values were resolved from.
+     * @param location
+     *            the location of the snapshot the values were resolved from (can be null).
+     * @return the sequence number of the publication.
+     * @throws IOException
+     *             if the publication cannot be written.
+     */
+    synchronized long publish(ResolvedValues values, long timestamp, URI location) throws IOException {
+        if (lock == null) {
+            throw new IllegalStateException("Only the publisher can publish");
+        }
+        long next = currentSequence() + 1;
+        File temp = File.createTempFile(snapshotFile.getName(), ".tmp", snapshotFile.getParentFile());
+        try {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp), ResourceContent.BUFFER_SIZE));
+            try {
+                dos.writeInt(MAGIC);
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeLong(next);
+                dos.writeLong(timestamp);
+                dos.writeUTF(location != null ? location.toString() : "");
+                ObjectOutputStream oos = new ObjectOutputStream(dos);
+                oos.writeObject(values);
+                oos.flush();
+            } finally {
+                dos.close();
+            }
+            SnapshotFiles.replace(temp, snapshotFile);
+        } finally {
+            temp.delete();
+        }
+        sequence.putLong(0, next);
+        return next;
+    }
+
+    /**
+     * @param allowedClasses
+     *            the names of application classes that may be read from a publication, or packages as
+     *            <code>com.example.*</code>.
+     */
+    void setAllowedClasses(Collection<String> allowedClasses) {
+        this.allowedClasses = (allowedClasses != null ? allowedClasses : Collections.<String>emptySet());
+    }
+
+    /**
+     * Read the latest publication. Only the classes allowed by {@link SnapshotFiles} and
+     * {@link #setAllowedClasses(Collection)} are read, so a publication written by anyone else with access to the
+     * directory cannot run arbitrary code in the subscribers.
+     *
+     * @return the publication or null if there is none.
+     * @throws IOException
+     *             if the publication cannot be read
+     */
+    Publication read() throws IOException {
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+        InputStream is = new ByteBufferInputStream(ResourceContent.read(snapshotFile));
+        DataInputStream dis = new DataInputStream(is);
+        if (dis.readInt() != MAGIC
+                || dis.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        long publicationSequence = dis.readLong();
+        long timestamp = dis.readLong();
+        String location = dis.readUTF();
+        try {
+            ResolvedValues values = (ResolvedValues) SnapshotFiles.openObjectStream(is, allowedClasses).readObject();
+            return new Publication(publicationSequence, timestamp,
+                    (location.length() > 0 ? URI.create(location) : null), values);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(format("Publication '%s' contains an unknown type: %s", snapshotFile, e.getMessage()));
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (lock != null) {
+                lock.release();
+                lockChannel.close();
+            }
+        } finally {
+            lock = null;
+            lockChannel = null;
+            sequenceFile.close();
+        }
+    }
+
+    /**
+     * A publication read from the snapshot file.
+     */
+    static class Publication {
+
+        private final long sequence;
+
+        private final long timestamp;
+
+        private final URI location;
+
+        private final ResolvedValues values;
+
+        Publication(long sequence, long timestamp, URI location, ResolvedValues values) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.location = location;
+            this.values = values;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        URI getLocation() {
+            return location;
+        }
+
+        ResolvedValues getValues() {
+            return values;
+        }
+    }
+}
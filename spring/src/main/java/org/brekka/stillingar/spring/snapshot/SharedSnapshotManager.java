@@ -0,0 +1,370 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.CachedConfigurationSource;
+import org.brekka.stillingar.core.RecordingConfigurationSource;
+import org.brekka.stillingar.core.ResolvedValues;
+import org.brekka.stillingar.core.snapshot.InvalidSnapshotException;
+import org.brekka.stillingar.core.snapshot.NoSnapshotAvailableException;
+import org.brekka.stillingar.core.snapshot.ProjectableSnapshotManager;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Shares snapshots between the processes on a host that load the same configuration, so that only one of them needs
+ * to monitor and parse it. The first process to start becomes the publisher: it loads snapshots via its
+ * {@link ResourceSnapshotManager} as normal, records the values resolved from them and publishes those values on the
+ * next poll (and again whenever further values are resolved). Every other process is a subscriber: each poll is a
+ * read of the memory-mapped sequence number and only when that changes is the publication read and served via a
+ * {@link CachedConfigurationSource}. A subscriber that needs a value the publisher did not resolve loads the resource
+ * itself, on demand, provided it has not been modified since the publication (otherwise the lookup fails until the
+ * next publication arrives).
+ *
+ * Should the publisher stop, the next subscriber to poll takes over, reloading the resource itself. A subscriber that
+ * starts before anything has been published loads the resource itself for its initial snapshot. See
+ * {@link SharedSnapshotChannel} for the files involved.
+ *
+ * Publications are read with a restricted set of classes (see {@link #setAllowedClasses(Collection)}), so a process
+ * able to write to the directory cannot run code in the subscribers by way of a crafted publication.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SharedSnapshotManager implements ProjectableSnapshotManager, DisposableBean {
+
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(SharedSnapshotManager.class);
+
+    /**
+     * Loads the snapshots while this is the publisher, or values missing from publications while it is not.
+     */
+    private final ResourceSnapshotManager delegate;
+
+    /**
+     * The shared files
+     */
+    private final SharedSnapshotChannel channel;
+
+    /**
+     * The latest snapshot loaded as publisher, null if there is none or this is not the publisher.
+     */
+    private Snapshot current;
+
+    /**
+     * The values recorded from {@link #current}.
+     */
+    private ResolvedValues currentValues;
+
+    /**
+     * The snapshot loaded prior to {@link #current}, restored should it be rejected.
+     */
+    private Snapshot previous;
+
+    /**
+     * The values recorded from {@link #previous}.
+     */
+    private ResolvedValues previousValues;
+
+    /**
+     * The modification count of {@link #currentValues} when last published, -1 if not published.
+     */
+    private long publishedModifications = -1;
+
+    /**
+     * The sequence number of the last publication read as subscriber.
+     */
+    private long lastSequence;
+
+    /**
+     * @param delegate
+     *            loads the snapshots while this is the publisher, or values missing from publications while it is not.
+     * @param directory
+     *            the directory shared by the processes.
+     */
+    public SharedSnapshotManager(ResourceSnapshotManager delegate, File directory) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("null passed for delegate");
+        }
+        this.delegate = delegate;
+        try {
+            this.channel = new SharedSnapshotChannel(directory);
+        } catch (IOException e) {
+            throw new ConfigurationException(format("Unable to prepare shared snapshot directory '%s'", directory), e);
+        }
+    }
+
+    /**
+     * @param allowedClasses
+     *            the names of application classes that may be read from publications, in addition to the JDK value
+     *            types and enums, or packages as <code>com.example.*</code>. Such classes should be immutable, as
+     *            the same instances are handed out for every lookup.
+     */
+    public void setAllowedClasses(Collection<String> allowedClasses) {
+        channel.setAllowedClasses(allowedClasses);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#retrieveInitial()
+     */
+    @Override
+    public synchronized Snapshot retrieveInitial() throws NoSnapshotAvailableException {
+        if (acquirePublisher()) {
+            return publisherSnapshot(delegate.retrieveInitial());
+        }
+        Snapshot snapshot = null;
+        try {
+            snapshot = subscribe();
+        } catch (InvalidSnapshotException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Unable to read the shared snapshot, loading the resource instead", e);
+            }
+        }
+        if (snapshot == null) {
+            // Nothing (usable) published yet
+            snapshot = delegate.retrieveInitial();
+        }
+        return snapshot;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#retrieveUpdated()
+     */
+    @Override
+    public synchronized Snapshot retrieveUpdated() throws InvalidSnapshotException {
+        if (channel.isPublisher()) {
+            publishPending();
+            return publisherSnapshot(delegate.retrieveUpdated());
+        }
+        if (acquirePublisher()) {
+            if (log.isInfoEnabled()) {
+                log.info("Taking over as publisher of shared snapshots");
+            }
+            try {
+                return publisherSnapshot(delegate.retrieveInitial());
+            } catch (NoSnapshotAvailableException e) {
+                throw new InvalidSnapshotException("Unable to load the configuration after taking over as publisher", e);
+            }
+        }
+        if (channel.currentSequence() == lastSequence) {
+            return null;
+        }
+        return subscribe();
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.ProjectableSnapshotManager#project(java.util.Set)
+     */
+    @Override
+    public void project(Set<String> expressions) {
+        delegate.project(expressions);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#reject(org.brekka.stillingar.core.snapshot.Snapshot)
+     */
+    @Override
+    public synchronized void reject(Snapshot snapshot) {
+        if (!(snapshot instanceof SharedSnapshot)) {
+            delegate.reject(snapshot);
+            return;
+        }
+        SharedSnapshot sharedSnapshot = (SharedSnapshot) snapshot;
+        if (sharedSnapshot.getOriginal() != null) {
+            delegate.reject(sharedSnapshot.getOriginal());
+            if (sharedSnapshot == current) {
+                this.current = previous;
+                this.currentValues = previousValues;
+                this.publishedModifications = -1;
+            }
+        } else if (log.isWarnEnabled()) {
+            // Nothing can be done, the next publication will be tried as normal
+            log.warn(format("Shared snapshot %d was rejected", lastSequence));
+        }
+    }
+
+    /**
+     * @return true if this is currently the publisher.
+     */
+    public boolean isPublisher() {
+        return channel.isPublisher();
+    }
+
+    /* (non-Javadoc)
+     * @see org.springframework.beans.factory.DisposableBean#destroy()
+     */
+    @Override
+    public synchronized void destroy() throws IOException {
+        try {
+            if (channel.isPublisher()) {
+                publishPending();
+            }
+        } finally {
+            channel.close();
+            delegate.destroy();
+        }
+    }
+
+    /**
+     * Publish the values recorded for the current snapshot, if there are any that have not been published. Failure is
+     * not fatal, it will be logged and attempted again on the next poll.
+     */
+    protected void publishPending() {
+        ResolvedValues values = this.currentValues;
+        if (values == null
+                || values.size() == 0
+                || values.getModifications() == publishedModifications) {
+            return;
+        }
+        long modifications = values.getModifications();
+        try {
+            long sequence = channel.publish(values, current.getTimestamp().getTime(), current.getLocation());
+            this.publishedModifications = modifications;
+            if (log.isDebugEnabled()) {
+                log.debug(format("Published shared snapshot %d with %d values", sequence, values.size()));
+            }
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Unable to publish shared snapshot", e);
+            }
+        }
+    }
+
+    private boolean acquirePublisher() {
+        try {
+            return channel.tryAcquirePublisher();
+        } catch (IOException e) {
+            throw new ConfigurationException("Unable to determine the publisher of shared snapshots", e);
+        }
+    }
+
+    /**
+     * Wrap the snapshot loaded as publisher so the values resolved from it are recorded.
+     */
+    private Snapshot publisherSnapshot(Snapshot loaded) {
+        if (loaded == null) {
+            return null;
+        }
+        ResolvedValues values = new ResolvedValues();
+        SharedSnapshot snapshot = new SharedSnapshot(new RecordingConfigurationSource(loaded.getSource(), values),
+                loaded.getTimestamp(), loaded.getLocation(), loaded);
+        this.previous = current;
+        this.previousValues = currentValues;
+        this.current = snapshot;
+        this.currentValues = values;
+        this.publishedModifications = -1;
+        return snapshot;
+    }
+
+    /**
+     * Read the latest publication.
+     *
+     * @return the snapshot or null if there is no publication, or it has already been read.
+     * @throws InvalidSnapshotException
+     *             if the publication cannot be read.
+     */
+    private Snapshot subscribe() throws InvalidSnapshotException {
+        SharedSnapshotChannel.Publication publication;
+        try {
+            publication = channel.read();
+        } catch (IOException e) {
+            throw new InvalidSnapshotException("Unable to read shared snapshot", e);
+        }
+        if (publication == null
+                || publication.getSequence() == lastSequence) {
+            return null;
+        }
+        this.lastSequence = publication.getSequence();
+        final long timestamp = publication.getTimestamp();
+        CachedConfigurationSource source = new CachedConfigurationSource(publication.getValues(),
+                new Callable<ConfigurationSource>() {
+                    @Override
+                    public ConfigurationSource call() throws IOException {
+                        // Fails if the resource no longer matches the publication, rather than mixing versions
+                        return delegate.loadSource(timestamp);
+                    }
+                });
+        return new SharedSnapshot(source, new Date(publication.getTimestamp()), publication.getLocation(), null);
+    }
+
+    /**
+     * A snapshot either loaded as publisher or read from a publication.
+     */
+    private static class SharedSnapshot implements Snapshot {
+
+        private final ConfigurationSource source;
+
+        private final Date timestamp;
+
+        private final URI location;
+
+        /**
+         * The snapshot loaded by the delegate, null for a publication.
+         */
+        private final Snapshot original;
+
+        SharedSnapshot(ConfigurationSource source, Date timestamp, URI location, Snapshot original) {
+            this.source = source;
+            this.timestamp = timestamp;
+            this.location = location;
+            this.original = original;
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getSource()
+         */
+        @Override
+        public ConfigurationSource getSource() {
+            return source;
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getTimestamp()
+         */
+        @Override
+        public Date getTimestamp() {
+            return timestamp;
+        }
+
+        /* (non-Javadoc)
+         * @see org.brekka.stillingar.core.snapshot.Snapshot#getLocation()
+         */
+        @Override
+        public URI getLocation() {
+            return location;
+        }
+
+        Snapshot getOriginal() {
+            return original;
+        }
+    }
+}
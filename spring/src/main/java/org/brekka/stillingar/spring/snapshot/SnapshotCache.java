@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.brekka.stillingar.core.ResolvedValues;
+import org.brekka.stillingar.core.support.ByteBufferInputStream;
+import org.brekka.stillingar.spring.resource.ResourceContent;
+
+/**
+ * Keeps the {@link ResolvedValues} of the last accepted snapshot in a file, so that on startup a resource with
+ * unchanged content can be served without being parsed (see {@link org.brekka.stillingar.core.CachedConfigurationSource}).
+ *
+ * The file starts with a header identifying the format version, the key describing how the content is loaded (engine,
+ * loader settings, application version etc) and the digest of the content. An entry is only returned when all three
+ * match, so a change to any of them invalidates the cache without any further action. Files are replaced atomically
+ * by writing to a temporary file and renaming it, and are read via {@link ResourceContent#read(File)}, which maps
+ * large files into memory.
+ *
+ * Only the classes of values known to be safe to read are accepted from the file (see
+ * {@link #setAllowedClasses(Collection)}), so the file cannot be used to run arbitrary code should someone else be
+ * able to write to it. Any other class causes the whole cache to be ignored.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotCache {
+
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(SnapshotCache.class);
+
+    /**
+     * Identifies a cache file
+     */
+    private static final int MAGIC = 0x5354494C;
+
+    /**
+     * Should be incremented whenever the layout of the file or {@link ResolvedValues} changes in an incompatible way.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * The file the values are written to.
+     */
+    private final File file;
+
+    /**
+     * Describes how the content is loaded.
+     */
+    private final String key;
+
+    /**
+     * Application classes that may be read from the file, in addition to the JDK value types and enums.
+     */
+    private Collection<String> allowedClasses = Collections.emptySet();
+
+    /**
+     * @param file
+     *            the file the values are written to.
+     * @param key
+     *            describes how the content is loaded, any change to which should invalidate the cache.
+     */
+    public SnapshotCache(File file, String key) {
+        if (file == null) {
+            throw new IllegalArgumentException("null passed for file");
+        }
+        this.file = file;
+        this.key = (key != null ? key : "");
+    }
+
+    /**
+     * Read the values cached for the content with the specified digest.
+     *
+     * @param digest
+     *            the digest of the content.
+     * @return the values or null if there are none for this content, format and key.
+     */
+    public ResolvedValues read(byte[] digest) {
+        if (digest == null
+                || !file.isFile()) {
+            return null;
+        }
+        try {
+            InputStream is = new ByteBufferInputStream(ResourceContent.read(file));
+            DataInputStream dis = new DataInputStream(is);
+            if (dis.readInt() != MAGIC
+                    || dis.readInt() != FORMAT_VERSION
+                    || !key.equals(dis.readUTF())) {
+                return null;
+            }
+            byte[] cachedDigest = new byte[dis.readUnsignedShort()];
+            dis.readFully(cachedDigest);
+            if (!MessageDigest.isEqual(digest, cachedDigest)) {
+                return null;
+            }
+            ObjectInputStream ois = SnapshotFiles.openObjectStream(is, allowedClasses);
+            return (ResolvedValues) ois.readObject();
+        } catch (Exception e) {
+            // Never fatal, the content will just be parsed
+            if (log.isWarnEnabled()) {
+                log.warn(format("Unable to read snapshot cache '%s'", file), e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Write the values for the content with the specified digest, replacing whatever was there before.
+     *
+     * @param digest
+     *            the digest of the content
+     * @param values
+     *            the values to write
+     * @throws IOException
+     *             if the cache file cannot be written.
+     */
+    public void write(byte[] digest, ResolvedValues values) throws IOException {
+        File parent = SnapshotFiles.prepareDirectory(file);
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp), ResourceContent.BUFFER_SIZE));
+            try {
+                dos.writeInt(MAGIC);
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeUTF(key);
+                dos.writeShort(digest.length);
+                dos.write(digest);
+                ObjectOutputStream oos = new ObjectOutputStream(dos);
+                oos.writeObject(values);
+                oos.flush();
+            } finally {
+                dos.close();
+            }
+            SnapshotFiles.replace(temp, file);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Remove the cache file, should the values be found to be invalid.
+     */
+    public void clear() {
+        file.delete();
+    }
+
+    /**
+     * @param allowedClasses
+     *            the names of application classes that may be read from the file, in addition to the JDK value types
+     *            and enums, or packages as <code>com.example.*</code>. Such classes should be immutable, as the same
+     *            instances are handed out for every lookup.
+     */
+    public void setAllowedClasses(Collection<String> allowedClasses) {
+        this.allowedClasses = (allowedClasses != null ? allowedClasses : Collections.<String>emptySet());
+    }
+
+    /**
+     * @return the file the values are written to.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return format("%s[%s]", getClass().getSimpleName(), file);
+    }
+}
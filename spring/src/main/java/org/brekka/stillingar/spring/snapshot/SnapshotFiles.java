@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Support for the files used to hold serialized snapshot values.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class SnapshotFiles {
+
+    /**
+     * Classes that may always be read: the values container and its internals, plus the immutable value types of the
+     * JDK. Enums are also allowed, as they are read by name without running any code of the class.
+     */
+    private static final Set<String> ALLOWED_CLASSES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "org.brekka.stillingar.core.ResolvedValues",
+            "java.util.concurrent.ConcurrentHashMap",
+            "java.util.concurrent.ConcurrentHashMap$Segment",
+            "java.util.concurrent.locks.ReentrantLock",
+            "java.util.concurrent.locks.ReentrantLock$Sync",
+            "java.util.concurrent.locks.ReentrantLock$NonfairSync",
+            "java.util.concurrent.locks.AbstractQueuedSynchronizer",
+            "java.util.concurrent.locks.AbstractOwnableSynchronizer",
+            "java.util.concurrent.atomic.AtomicLong",
+            "java.util.ArrayList",
+            "java.lang.Enum",
+            "java.lang.Number",
+            "java.lang.String",
+            "java.lang.Boolean",
+            "java.lang.Character",
+            "java.lang.Byte",
+            "java.lang.Short",
+            "java.lang.Integer",
+            "java.lang.Long",
+            "java.lang.Float",
+            "java.lang.Double",
+            "java.math.BigInteger",
+            "java.math.BigDecimal",
+            "java.net.URI",
+            "java.util.Date",
+            "java.util.Locale",
+            "java.util.UUID",
+            "java.util.regex.Pattern")));
+
+    private SnapshotFiles() {
+    }
+
+    /**
+     * Create the directory that will hold the file, if it does not already exist.
+     *
+     * @param file
+     *            the file
+     * @return the directory
+     * @throws IOException
+     *             if the directory cannot be created.
+     */
+    static File prepareDirectory(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null
+                && !parent.isDirectory()
+                && !parent.mkdirs()) {
+            throw new IOException(format("Unable to create directory '%s'", parent));
+        }
+        return parent;
+    }
+
+    /**
+     * Replace the target with the fully written temporary file, which must be in the same directory.
+     *
+     * @param temp
+     *            the temporary file
+     * @param target
+     *            the file to replace
+     * @throws IOException
+     *             if the target cannot be replaced.
+     */
+    static void replace(File temp, File target) throws IOException {
+        if (!temp.renameTo(target)) {
+            // Some platforms will not rename over an existing file
+            target.delete();
+            if (!temp.renameTo(target)) {
+                throw new IOException(format("Unable to replace '%s'", target));
+            }
+        }
+    }
+
+    /**
+     * Open an object stream that only reads the classes of {@link #ALLOWED_CLASSES}, enums and the additional classes
+     * specified, so that a file written by anyone other than this library cannot cause arbitrary code to run. Classes
+     * are resolved via the context class loader, as the values may be of application types.
+     *
+     * @param in
+     *            the stream to read from
+     * @param additionalClasses
+     *            the names of additional classes to allow, or packages as <code>com.example.*</code>.
+     * @return the object stream
+     * @throws IOException
+     *             if the stream header cannot be read.
+     */
+    static ObjectInputStream openObjectStream(InputStream in, Collection<String> additionalClasses)
+            throws IOException {
+        return new ContextObjectInputStream(in, additionalClasses);
+    }
+
+    /**
+     * @param name
+     *            the class name, or an array type as named by {@link Class#getName()}.
+     * @param additionalClasses
+     *            the names of additional classes to allow, or packages as <code>com.example.*</code>.
+     * @return true if the class is allowed by name.
+     */
+    static boolean isAllowed(String name, Collection<String> additionalClasses) {
+        String className = name;
+        if (className.startsWith("[")) {
+            // Arrays of primitives, or of allowed classes
+            className = className.substring(className.lastIndexOf('[') + 1);
+            if (className.length() == 1) {
+                return true;
+            }
+            if (!className.startsWith("L")
+                    || !className.endsWith(";")) {
+                return false;
+            }
+            className = className.substring(1, className.length() - 1);
+        }
+        if (ALLOWED_CLASSES.contains(className)
+                || className.startsWith("org.brekka.stillingar.core.ResolvedValues$")) {
+            return true;
+        }
+        for (String allowed : additionalClasses) {
+            if (allowed.endsWith(".*")
+                    ? className.startsWith(allowed.substring(0, allowed.length() - 1))
+                    : className.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolves classes via the context class loader, falling back to the default, rejecting any not allowed.
+     */
+    private static class ContextObjectInputStream extends ObjectInputStream {
+
+        /**
+         * Classes allowed in addition to the defaults.
+         */
+        private final Collection<String> additionalClasses;
+
+        ContextObjectInputStream(InputStream in, Collection<String> additionalClasses) throws IOException {
+            super(in);
+            this.additionalClasses = (additionalClasses != null
+                    ? additionalClasses : Collections.<String>emptySet());
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.ObjectInputStream#resolveClass(java.io.ObjectStreamClass)
+         */
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            boolean allowed = isAllowed(name, additionalClasses);
+            Class<?> type = null;
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader != null) {
+                try {
+                    // Not initialised, so nothing of the class runs should it be rejected
+                    type = Class.forName(name, false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    // Fall back to the default
+                }
+            }
+            if (type == null) {
+                type = super.resolveClass(desc);
+            }
+            if (!allowed
+                    && !Enum.class.isAssignableFrom(type)) {
+                throw new InvalidClassException(name, "Not allowed in a snapshot file");
+            }
+            return type;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A single, process-wide {@link WatchService} shared by every {@link WatchedResourceMonitor}. Each directory is
+ * registered once no matter how many files within it are watched, and one daemon thread waits on the service,
+ * signalling the registrations for a file as soon as an event for it arrives.
+ *
+ * The listeners themselves run on a small, bounded pool of daemon threads rather than the dispatch thread, so a slow
+ * or stuck reload only holds up its own registration. Each listener runs at most once at a time, and any events that
+ * arrive for it while it is queued or running are coalesced into a single further invocation.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class WatchDispatcher implements Runnable {
+
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(WatchDispatcher.class);
+
+    /**
+     * Number of threads invoking listeners
+     */
+    private static final int LISTENER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The instance, created on first use.
+     */
+    private static WatchDispatcher instance;
+
+    /**
+     * The service watching every registered directory.
+     */
+    private final WatchService watchService;
+
+    /**
+     * The watched directories, by their key.
+     */
+    private final Map<WatchKey, WatchedDirectory> directoriesByKey = new HashMap<WatchKey, WatchedDirectory>();
+
+    /**
+     * The watched directories, by their path.
+     */
+    private final Map<Path, WatchedDirectory> directoriesByPath = new HashMap<Path, WatchedDirectory>();
+
+    /**
+     * The dispatch thread, started on the first registration.
+     */
+    private Thread thread;
+
+    /**
+     * Invokes the listeners, created on the first registration.
+     */
+    private ExecutorService listenerExecutor;
+
+    private WatchDispatcher(WatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    /**
+     * @return the dispatcher for this process.
+     * @throws IOException
+     *             if the watch service cannot be created.
+     */
+    public static synchronized WatchDispatcher getInstance() throws IOException {
+        if (instance == null) {
+            instance = new WatchDispatcher(FileSystems.getDefault().newWatchService());
+        }
+        return instance;
+    }
+
+    /**
+     * Register a listener to be invoked whenever the file is created or modified. The directory containing the file is
+     * only registered with the watch service if it is not already.
+     *
+     * @param file
+     *            the file to watch
+     * @param listener
+     *            invoked on a listener thread whenever the file changes.
+     * @return the registration, which should be cancelled once the file no longer needs watching.
+     * @throws IOException
+     *             if the directory cannot be registered.
+     */
+    public synchronized Registration register(Path file, Runnable listener) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("null passed for file");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("null passed for listener");
+        }
+        Path path = file.toAbsolutePath();
+        Path parent = path.getParent();
+        WatchedDirectory directory = directoriesByPath.get(parent);
+        if (directory == null) {
+            WatchKey key = parent.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+            directory = new WatchedDirectory(parent, key);
+            directoriesByKey.put(key, directory);
+            directoriesByPath.put(parent, directory);
+        }
+        Registration registration = new Registration(directory, path.getFileName(), listener);
+        directory.registrations.add(registration);
+        if (thread == null) {
+            listenerExecutor = Executors.newFixedThreadPool(LISTENER_THREADS, new ListenerThreadFactory());
+            thread = new Thread(this, "stillingar-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return registration;
+    }
+
+    /**
+     * Waits for events, signalling the registrations they affect.
+     */
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ClosedWatchServiceException e) {
+                break;
+            }
+            for (Registration registration : changedRegistrations(key)) {
+                registration.signal();
+            }
+        }
+    }
+
+    /**
+     * Consume the events of the key, identifying the registrations affected.
+     */
+    private synchronized Set<Registration> changedRegistrations(WatchKey key) {
+        Set<Registration> changed = new LinkedHashSet<Registration>();
+        List<WatchEvent<?>> events = key.pollEvents();
+        boolean valid = key.reset();
+        WatchedDirectory directory = directoriesByKey.get(key);
+        if (directory == null) {
+            // Cancelled since the events arrived
+            return changed;
+        }
+        if (!valid) {
+            // The directory is gone (or no longer accessible), so forget it. The next registration for a file within
+            // it will register the directory again.
+            directoriesByKey.remove(key);
+            if (directoriesByPath.get(directory.path) == directory) {
+                directoriesByPath.remove(directory.path);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("No longer able to watch '%s'", directory.path));
+            }
+        }
+        for (WatchEvent<?> event : events) {
+            for (Registration registration : directory.registrations) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || registration.fileName.equals(event.context())) {
+                    changed.add(registration);
+                }
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Found %d events in '%s' affecting %d registrations",
+                    events.size(), directory.path, changed.size()));
+        }
+        return changed;
+    }
+
+    private synchronized void submit(Runnable task) {
+        listenerExecutor.execute(task);
+    }
+
+    private synchronized void cancel(Registration registration) {
+        WatchedDirectory directory = registration.directory;
+        if (directory.registrations.remove(registration)
+                && directory.registrations.isEmpty()) {
+            directory.key.cancel();
+            directoriesByKey.remove(directory.key);
+            if (directoriesByPath.get(directory.path) == directory) {
+                // Otherwise the directory has already been dropped and registered again
+                directoriesByPath.remove(directory.path);
+            }
+        }
+    }
+
+    /**
+     * A directory registered with the watch service.
+     */
+    private static class WatchedDirectory {
+
+        private final Path path;
+
+        private final WatchKey key;
+
+        /**
+         * The registrations for files within this directory.
+         */
+        private final List<Registration> registrations = new ArrayList<Registration>();
+
+        WatchedDirectory(Path path, WatchKey key) {
+            this.path = path;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The registration of a listener for a file.
+     */
+    public final class Registration implements Runnable {
+
+        private final WatchedDirectory directory;
+
+        private final Path fileName;
+
+        private final Runnable listener;
+
+        /**
+         * Whether the listener is queued or running.
+         */
+        private boolean scheduled;
+
+        /**
+         * Whether a further event arrived after the listener was scheduled.
+         */
+        private boolean repeat;
+
+        /**
+         * Set once cancelled
+         */
+        private volatile boolean cancelled;
+
+        Registration(WatchedDirectory directory, Path fileName, Runnable listener) {
+            this.directory = directory;
+            this.fileName = fileName;
+            this.listener = listener;
+        }
+
+        /**
+         * Stop invoking the listener, unregistering the directory if nothing else within it is being watched.
+         */
+        public void cancel() {
+            this.cancelled = true;
+            WatchDispatcher.this.cancel(this);
+        }
+
+        /**
+         * Invoke the listeners until no further events have arrived.
+         */
+        @Override
+        public void run() {
+            do {
+                synchronized (this) {
+                    repeat = false;
+                }
+                if (cancelled) {
+                    break;
+                }
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    if (log.isWarnEnabled()) {
+                        log.warn(String.format("Listener for '%s' failed", fileName), e);
+                    }
+                }
+            } while (rescheduled());
+        }
+
+        /**
+         * Schedule the listener, unless it already is.
+         */
+        void signal() {
+            synchronized (this) {
+                if (scheduled) {
+                    repeat = true;
+                    return;
+                }
+                scheduled = true;
+            }
+            submit(this);
+        }
+
+        /**
+         * @return true if the listener needs to run again.
+         */
+        private synchronized boolean rescheduled() {
+            if (repeat
+                    && !cancelled) {
+                return true;
+            }
+            scheduled = false;
+            return false;
+        }
+    }
+
+    /**
+     * Creates the daemon threads that invoke the listeners.
+     */
+    private static class ListenerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread listenerThread = new Thread(runnable, "stillingar-watch-listener-" + count.incrementAndGet());
+            listenerThread.setDaemon(true);
+            return listenerThread;
+        }
+    }
+}
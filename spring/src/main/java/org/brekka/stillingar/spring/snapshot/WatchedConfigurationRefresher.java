@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import org.brekka.stillingar.core.snapshot.SnapshotBasedConfigurationService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Refreshes a configuration service as soon as its {@link WatchedResourceMonitor} detects a change, in place of a
+ * scheduled {@link ConfigurationSnapshotRefresher}. The refresh happens on the bounded listener pool of the
+ * {@link WatchDispatcher}, so no threads are needed per service, and repeated changes during a refresh are coalesced
+ * into one further refresh.
+ * 
+ * This is a separate bean, rather than a listener passed to the monitor, as the service depends on the monitor via its
+ * snapshot manager.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class WatchedConfigurationRefresher implements InitializingBean, DisposableBean {
+
+    /**
+     * The monitor to listen to
+     */
+    private final WatchedResourceMonitor resourceMonitor;
+
+    /**
+     * Refreshes the service
+     */
+    private final Runnable refresher;
+
+    /**
+     * @param configurationService
+     *            the service to refresh
+     * @param resourceMonitor
+     *            the monitor used by the snapshot manager of the service.
+     */
+    public WatchedConfigurationRefresher(SnapshotBasedConfigurationService configurationService,
+            WatchedResourceMonitor resourceMonitor) {
+        if (configurationService == null) {
+            throw new IllegalArgumentException("null passed for configurationService");
+        }
+        if (resourceMonitor == null) {
+            throw new IllegalArgumentException("null passed for resourceMonitor");
+        }
+        this.resourceMonitor = resourceMonitor;
+        this.refresher = new ConfigurationSnapshotRefresher(configurationService);
+    }
+
+    /* (non-Javadoc)
+     * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+     */
+    @Override
+    public void afterPropertiesSet() {
+        resourceMonitor.addChangeListener(refresher);
+    }
+
+    /* (non-Javadoc)
+     * @see org.springframework.beans.factory.DisposableBean#destroy()
+     */
+    @Override
+    public void destroy() {
+        resourceMonitor.removeChangeListener(refresher);
+    }
+}
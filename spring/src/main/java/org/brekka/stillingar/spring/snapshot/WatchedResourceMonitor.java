@@ -17,13 +17,10 @@
 package org.brekka.stillingar.spring.snapshot;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardWatchEventKinds;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,9 +29,12 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.core.io.Resource;
 
 /**
- * Monitors for changes to a resource using the JDK 7 "watch" capability. This results in the {@link #hasChanged()}
- * method becoming blocking, waiting for a change to occur. To avoid blocking indefinately, a timeout can be specified
- * after which {@link #hasChanged()} will give up and return false.
+ * Monitors for changes to a resource using the JDK 7 "watch" capability, via the process-wide {@link WatchDispatcher}.
+ * 
+ * Change listeners (see {@link #addChangeListener(Runnable)}) are invoked as soon as a change is detected, which
+ * allows the configuration to be refreshed without polling (see {@link WatchedConfigurationRefresher}). When there are
+ * no listeners, the {@link #hasChanged()} method becomes blocking, waiting for a change to occur. To avoid blocking
+ * indefinately, a timeout can be specified after which {@link #hasChanged()} will give up and return false.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
@@ -50,9 +50,9 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
     private final long timeout;
 
     /**
-     * The service doing the watching of the resource directory.
+     * Invoked whenever a change is detected.
      */
-    private WatchService watchService;
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<Runnable>();
 
     /**
      * The actual resource as a path
@@ -60,9 +60,19 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
     private Path resourceFile;
 
     /**
-     * Watch key
+     * Registration with the dispatcher
+     */
+    private WatchDispatcher.Registration registration;
+
+    /**
+     * Registration for the <code>..data</code> link, when the resource is in a ConfigMap-style directory.
+     */
+    private WatchDispatcher.Registration dataLinkRegistration;
+
+    /**
+     * Whether a change has been detected since the last call to {@link #hasChanged()}.
      */
-    private WatchKey watchKey;
+    private boolean changed;
 
     /**
      * Watch with no timeout
@@ -88,13 +98,27 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
      * @see org.brekka.stillingar.spring.snapshot.ResourceMonitor#initialize(org.springframework.core.io.Resource)
      */
     @Override
-    public void initialise(Resource resource) {
+    public synchronized void initialise(Resource resource) {
         try {
-            this.resourceFile = resource.getFile().toPath();
-            Path parent = resourceFile.getParent();
-            this.watchService = parent.getFileSystem().newWatchService();
-            this.watchKey = parent.register(this.watchService, StandardWatchEventKinds.ENTRY_MODIFY,
-                    StandardWatchEventKinds.ENTRY_CREATE);
+            Path file = resource.getFile().toPath();
+            Runnable changeHandler = new Runnable() {
+                @Override
+                public void run() {
+                    onChange();
+                }
+            };
+            WatchDispatcher dispatcher = WatchDispatcher.getInstance();
+            WatchDispatcher.Registration newRegistration = dispatcher.register(file, changeHandler);
+            WatchDispatcher.Registration newDataLinkRegistration = null;
+            Path dataLink = file.toAbsolutePath().resolveSibling(ConfigMapDirectory.DATA_LINK);
+            if (Files.isSymbolicLink(dataLink)) {
+                // The file itself is a link via '..data', which is swapped rather than modified on update.
+                newDataLinkRegistration = dispatcher.register(dataLink, changeHandler);
+            }
+            cancelRegistrations();
+            this.resourceFile = file;
+            this.registration = newRegistration;
+            this.dataLinkRegistration = newDataLinkRegistration;
         } catch (IOException e) {
             throw new ConfigurationException(String.format(
                     "Failed to initialize watcher for resource '%s'", resource.toString()), e);
@@ -107,43 +131,64 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
      * @see org.brekka.stillingar.spring.snapshot.ResourceMonitor#hasChanged()
      */
     @Override
-    public boolean hasChanged() {
-        if (!watchKey.isValid()) {
+    public synchronized boolean hasChanged() {
+        if (registration == null) {
             return false;
         }
-        boolean changed = false;
-        try {
-            WatchKey wKey;
-            if (timeout > 0) {
-                wKey = watchService.poll(timeout, TimeUnit.MILLISECONDS);
-            } else {
-                // Indefinite blocking
-                wKey = watchService.take();
-            }
-            if (wKey != null) {
-                if (wKey != this.watchKey) {
-                    throw new IllegalStateException("WatchKey does not match that registered with the service");
-                }
-                List<WatchEvent<?>> pollEvents = wKey.pollEvents();
-                if (log.isDebugEnabled()) {
-                    log.debug(String.format("Found %d events", pollEvents.size()));
-                }
-                for (WatchEvent<?> watchEvent : pollEvents) {
-                    Path name = (Path) watchEvent.context();
-                    if (resourceFile.getFileName().equals(name)) {
-                        changed = true;
-                        if (log.isInfoEnabled()) {
-                            log.info(String.format("Found change to file '%s'", name));
+        if (changeListeners.isEmpty()) {
+            // Nothing will be pushed, so wait for the change
+            long deadline = System.currentTimeMillis() + timeout;
+            try {
+                while (!changed
+                        && registration != null) {
+                    if (timeout > 0) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            break;
                         }
-                        break;
+                        wait(remaining);
+                    } else {
+                        // Indefinite blocking
+                        wait();
                     }
                 }
-                wKey.reset();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
         }
-        return changed;
+        boolean result = changed;
+        changed = false;
+        return result;
+    }
+
+    /**
+     * Add a listener to be invoked, on a listener thread of the dispatcher, whenever a change is detected. Should a
+     * change have been detected that has not yet been picked up by {@link #hasChanged()}, the listener is invoked
+     * straight away.
+     * 
+     * @param listener
+     *            the listener
+     */
+    public void addChangeListener(Runnable listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("null passed for listener");
+        }
+        changeListeners.add(listener);
+        boolean pending;
+        synchronized (this) {
+            pending = changed;
+        }
+        if (pending) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @param listener
+     *            the listener to no longer invoke.
+     */
+    public void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
     }
 
     @Override
@@ -151,11 +196,9 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
         if (log.isInfoEnabled()) {
             log.info(String.format("Shutdown watch on '%s'", resourceFile));
         }
-        if (watchKey != null) {
-            watchKey.cancel();
-        }
-        if (watchService != null) {
-            watchService.close();
+        synchronized (this) {
+            cancelRegistrations();
+            notifyAll();
         }
     }
 
@@ -169,4 +212,30 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
         }
     }
     
+    private void cancelRegistrations() {
+        if (registration != null) {
+            registration.cancel();
+            registration = null;
+        }
+        if (dataLinkRegistration != null) {
+            dataLinkRegistration.cancel();
+            dataLinkRegistration = null;
+        }
+    }
+    
+    /**
+     * Invoked by the dispatcher when the file changes.
+     */
+    private void onChange() {
+        synchronized (this) {
+            changed = true;
+            notifyAll();
+        }
+        if (log.isInfoEnabled()) {
+            log.info(String.format("Found change to file '%s'", resourceFile));
+        }
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
 }
@@ -31,11 +31,13 @@ import java.util.Locale;
 import java.util.UUID;
 
 import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ListDelta;
 import org.brekka.stillingar.core.ConfigurationService;
 import org.brekka.stillingar.core.ValueChangeListener;
 import org.brekka.stillingar.core.ValueDefinition;
 import org.brekka.stillingar.core.ValueDefinitionGroup;
 import org.brekka.stillingar.core.ValueListDefinition;
+import org.brekka.stillingar.spring.bpp.ListDeltaTestBean.Rule;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -181,6 +183,57 @@ public class ConfigurationBeanPostProcessorTest {
         beanPostProcessor.destroy();
     }
     
+    @Test
+    public void testScoped() throws Exception {
+        when(beanFactory.isSingleton(eq("scoped"))).thenReturn(true);
+        
+        ScopedTestBean bean = new ScopedTestBean();
+        beanPostProcessor.postProcessBeforeInitialization(bean, "scoped");
+        
+        ArgumentCaptor<ValueDefinitionGroup> vdg = ArgumentCaptor.forClass(ValueDefinitionGroup.class);
+        verify(configurationService).register(vdg.capture(), eq(true));
+        
+        ValueDefinitionGroup valueDefinitionGroup = vdg.getValue();
+        assertEquals("//c:Services", valueDefinitionGroup.getScope());
+        ValueDefinition<?, ?> valueDefinition = valueDefinitionGroup.getValues().iterator().next();
+        verifyValue("c:Rules/c:Transaction/c:MaxQuantity", valueDefinition, 42, Integer.class, false);
+        assertEquals(Integer.valueOf(42), bean.getMaxQuantity());
+    }
+    
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Test
+    public void testListDeltaParameter() throws Exception {
+        when(beanFactory.isSingleton(eq("rules"))).thenReturn(true);
+        
+        ListDeltaTestBean bean = new ListDeltaTestBean();
+        beanPostProcessor.postProcessBeforeInitialization(bean, "rules");
+        
+        ArgumentCaptor<ValueDefinitionGroup> vdg = ArgumentCaptor.forClass(ValueDefinitionGroup.class);
+        verify(configurationService).register(vdg.capture(), eq(true));
+        
+        ValueDefinitionGroup valueDefinitionGroup = vdg.getValue();
+        ValueDefinition<?, ?> valueDefinition = valueDefinitionGroup.getValues().iterator().next();
+        assertEquals("/c:Rule", valueDefinition.getExpression());
+        assertEquals(Rule.class, valueDefinition.getType());
+        assertTrue(valueDefinition instanceof ValueListDefinition);
+        ValueChangeListener changeListener = valueDefinition.getChangeListener();
+        
+        List<Rule> first = Arrays.asList(new Rule("a", 1), new Rule("b", 2));
+        changeListener.onChange(first, null);
+        valueDefinitionGroup.getChangeListener().onChange(configurationService);
+        assertEquals(first, bean.getRules().getAdded());
+        
+        Rule changed = new Rule("b", 3);
+        changeListener.onChange(Arrays.asList(changed), first);
+        valueDefinitionGroup.getChangeListener().onChange(configurationService);
+        ListDelta<Rule> delta = bean.getRules();
+        assertTrue(delta.getAdded().isEmpty());
+        assertEquals(Arrays.asList(first.get(0)), delta.getRemoved());
+        assertEquals(1, delta.getChanged().size());
+        assertSame(changed, delta.getChanged().get(0).getLatest());
+        assertSame(first.get(1), delta.getChanged().get(0).getPrevious());
+    }
+    
     @Test
     public void testInvalidListenerBeanNotFound() throws Exception {
         ConfiguredTestBean bean = new ConfiguredTestBean();
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.bpp;
+
+import org.brekka.stillingar.api.ListDelta;
+import org.brekka.stillingar.api.annotations.ConfigurationListener;
+import org.brekka.stillingar.api.annotations.Configured;
+
+/**
+ * Receives the delta of a list of rules, matched by name.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+@Configured
+public class ListDeltaTestBean {
+
+    private ListDelta<Rule> rules;
+
+    @ConfigurationListener
+    public void configure(@Configured(value = "/c:Rule", key = "name") ListDelta<Rule> rules) {
+        this.rules = rules;
+    }
+
+    public ListDelta<Rule> getRules() {
+        return rules;
+    }
+
+    public static class Rule {
+        private final String name;
+        private final int weight;
+
+        public Rule(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Rule
+                    && ((Rule) obj).name.equals(name)
+                    && ((Rule) obj).weight == weight;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + weight;
+        }
+    }
+}
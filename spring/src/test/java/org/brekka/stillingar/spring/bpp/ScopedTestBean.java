@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.bpp;
+
+import org.brekka.stillingar.api.annotations.Configured;
+
+/**
+ * Bean whose field expressions are relative to a class level scope.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+@Configured("//c:Services")
+class ScopedTestBean {
+
+    @Configured("c:Rules/c:Transaction/c:MaxQuantity")
+    private Integer maxQuantity;
+    
+    public Integer getMaxQuantity() {
+        return maxQuantity;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * AdaptivePollingResourceMonitor Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class AdaptivePollingResourceMonitorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.newFile("config.xml");
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.AdaptivePollingResourceMonitor#hasChanged()}.
+     */
+    @Test
+    public void testBackoffAndReset() throws Exception {
+        AdaptivePollingResourceMonitor monitor = new AdaptivePollingResourceMonitor(20, 320, 2);
+        monitor.initialise(new FileSystemResource(file));
+
+        // Idle, so checks become less frequent than calls
+        for (int i = 0; i < 30; i++) {
+            Thread.sleep(20);
+            assertFalse(monitor.hasChanged());
+        }
+        assertTrue(monitor.getPolls() < 30);
+        assertTrue(monitor.getInterval() > 20);
+
+        // The size differs, whatever the granularity of the modification time
+        TestFiles.write(file, "changed");
+        boolean changed = false;
+        for (int i = 0; i < 100 && !changed; i++) {
+            Thread.sleep(20);
+            changed = monitor.hasChanged();
+        }
+        assertTrue(changed);
+        assertEquals(20, monitor.getInterval());
+        assertEquals(1, monitor.getChanges());
+        assertEquals(monitor.getPolls(), monitor.getPollsPerChange(), 0.0);
+    }
+
+    /**
+     * The metrics are readable as a standard MBean.
+     */
+    @Test
+    public void testMBeanAttributes() throws Exception {
+        AdaptivePollingResourceMonitor monitor = new AdaptivePollingResourceMonitor(20, 320, 2);
+        monitor.initialise(new FileSystemResource(file));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.brekka.stillingar:type=AdaptivePolling,name=test");
+        server.registerMBean(monitor, name);
+        try {
+            assertEquals(Long.valueOf(0), server.getAttribute(name, "Polls"));
+            assertEquals(Long.valueOf(20), server.getAttribute(name, "Interval"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
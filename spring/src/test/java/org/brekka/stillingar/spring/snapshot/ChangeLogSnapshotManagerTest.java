@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.brekka.stillingar.core.changelog.ChangeLog;
+import org.brekka.stillingar.core.snapshot.IncrementalSnapshot;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ChangeLogSnapshotManager Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ChangeLogSnapshotManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File baseFile;
+
+    private File logFile;
+
+    @Before
+    public void setUp() throws Exception {
+        baseFile = new File(folder.getRoot(), "limits.base");
+        logFile = new File(folder.getRoot(), "limits.log");
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ChangeLogSnapshotManager#retrieveUpdated()}.
+     */
+    @Test
+    public void testIncrementalApplyAndCompaction() throws Exception {
+        Map<String, String> updates = new HashMap<String, String>();
+        updates.put("rate.limit", "100");
+        updates.put("kill.switch", "false");
+        ChangeLog.append(logFile, updates);
+        
+        ChangeLogSnapshotManager manager = new ChangeLogSnapshotManager(baseFile, logFile, 40);
+        Snapshot initial = manager.retrieveInitial();
+        assertEquals(Integer.valueOf(100), initial.getSource().retrieve("rate.limit", Integer.class));
+        assertNull(manager.retrieveUpdated());
+        
+        ChangeLog.append(logFile, Collections.singletonMap("rate.limit", "200"));
+        IncrementalSnapshot updated = (IncrementalSnapshot) manager.retrieveUpdated();
+        assertSame(initial, updated.getBase());
+        assertEquals(Integer.valueOf(200), updated.getSource().retrieve("rate.limit", Integer.class));
+        assertTrue(updated.isAffected("rate.limit"));
+        assertTrue(updated.isAffected("rate"));
+        assertFalse(updated.isAffected("kill.switch"));
+        
+        // Past the threshold, the next check compacts the log, keeping the pending record which changes nothing
+        ChangeLog.append(logFile, Collections.singletonMap("rate.limit", "200"));
+        assertNull(manager.retrieveUpdated());
+        assertTrue(baseFile.exists());
+        assertEquals(ChangeLog.header(generation()).length() + "rate.limit=200\n".length(), logFile.length());
+        
+        ChangeLog.append(logFile, Collections.singletonMap("kill.switch", (String) null));
+        IncrementalSnapshot removed = (IncrementalSnapshot) manager.retrieveUpdated();
+        assertFalse(removed.getSource().isAvailable("kill.switch"));
+        assertTrue(removed.isAffected("kill.switch"));
+        
+        // Everything still loads from the compacted files
+        Snapshot reloaded = new ChangeLogSnapshotManager(baseFile, logFile, 0).retrieveInitial();
+        assertEquals(Integer.valueOf(200), reloaded.getSource().retrieve("rate.limit", Integer.class));
+        assertFalse(reloaded.getSource().isAvailable("kill.switch"));
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ChangeLogSnapshotManager#retrieveInitial()}.
+     */
+    @Test
+    public void testInterruptedCompactionNotReplayed() throws Exception {
+        ChangeLog.append(logFile, Collections.singletonMap("rate.limit", "100"));
+        long applied = logFile.length();
+        // Rejected, so left out of the base
+        ChangeLog.append(logFile, Collections.singletonMap("rate.limit", "999"));
+        ChangeLog.append(logFile, Collections.singletonMap("kill.switch", "true"));
+        // The base was written, but the log was never cut back
+        TestFiles.write(baseFile, ChangeLog.compactedHeader(generation(), applied + "rate.limit=999\n".length())
+                + "rate.limit=100\n");
+
+        Snapshot snapshot = new ChangeLogSnapshotManager(baseFile, logFile, 0).retrieveInitial();
+        assertEquals(Integer.valueOf(100), snapshot.getSource().retrieve("rate.limit", Integer.class));
+        assertEquals(Boolean.TRUE, snapshot.getSource().retrieve("kill.switch", Boolean.class));
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ChangeLogSnapshotManager#retrieveUpdated()}.
+     */
+    @Test
+    public void testTruncatedAndRegrownLogReloaded() throws Exception {
+        ChangeLog.append(logFile, Collections.singletonMap("rate.limit", "100"));
+        ChangeLogSnapshotManager manager = new ChangeLogSnapshotManager(baseFile, logFile, 0);
+        manager.retrieveInitial();
+
+        // Truncated in place, then grown beyond the offset with records that do not line up with it
+        RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+        try {
+            file.setLength(0);
+        } finally {
+            file.close();
+        }
+        Map<String, String> updates = new TreeMap<String, String>();
+        updates.put("a.much.longer.key", "with.a.longer.value");
+        updates.put("rate.limit", "300");
+        ChangeLog.append(logFile, updates);
+
+        Snapshot updated = manager.retrieveUpdated();
+        assertEquals(Integer.valueOf(300), updated.getSource().retrieve("rate.limit", Integer.class));
+        assertEquals("with.a.longer.value", updated.getSource().retrieve("a.much.longer.key", String.class));
+    }
+
+    private String generation() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            return ChangeLog.readGeneration(file.getChannel());
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSource;
+
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSourceLoader;
+import org.brekka.stillingar.core.snapshot.IncrementalSnapshot;
+import org.brekka.stillingar.core.snapshot.InvalidSnapshotException;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ConfDirectorySnapshotManager Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfDirectorySnapshotManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot();
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ConfDirectorySnapshotManager#retrieveUpdated()}.
+     */
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        write("10-base.properties", "a=1\nb=1\n");
+        write("20-site.properties", "b=2\n");
+        write("30-other.properties", "c=1\n");
+        write("notes.txt", "a=ignored\n");
+        
+        ConfDirectorySnapshotManager manager = new ConfDirectorySnapshotManager(directory, ".properties",
+                new PropertiesConfigurationSourceLoader());
+        Snapshot initial = manager.retrieveInitial();
+        assertEquals("1", initial.getSource().retrieve("a", String.class));
+        assertEquals("2", initial.getSource().retrieve("b", String.class));
+        assertNull(manager.retrieveUpdated());
+        
+        write("10-base.properties", "a=33\nb=1\n");
+        IncrementalSnapshot updated = (IncrementalSnapshot) manager.retrieveUpdated();
+        assertSame(initial, updated.getBase());
+        assertEquals("33", updated.getSource().retrieve("a", String.class));
+        assertEquals("2", updated.getSource().retrieve("b", String.class));
+        assertTrue(updated.isAffected("a"));
+        assertTrue(updated.isAffected("b"));
+        assertFalse(updated.isAffected("c"));
+        assertNull(manager.retrieveUpdated());
+        
+        // Removing a fragment affects what it held
+        new File(directory, "20-site.properties").delete();
+        IncrementalSnapshot removed = (IncrementalSnapshot) manager.retrieveUpdated();
+        assertEquals("1", removed.getSource().retrieve("b", String.class));
+        assertTrue(removed.isAffected("b"));
+        assertFalse(removed.isAffected("a"));
+        
+        // A rejected set of fragments is not loaded again
+        write("30-other.properties", "c=22\n");
+        manager.reject(manager.retrieveUpdated());
+        assertNull(manager.retrieveUpdated());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ConfDirectorySnapshotManager#retrieveUpdated()}.
+     */
+    @Test
+    public void testUnparseableFragmentRejected() throws Exception {
+        write("10-base.properties", "a=1\n");
+        final AtomicInteger parses = new AtomicInteger();
+        ConfigurationSourceLoader loader = new ConfigurationSourceLoader() {
+            @Override
+            public ConfigurationSource parse(InputStream sourceStream, Charset encoding) throws IOException {
+                parses.incrementAndGet();
+                if (new BufferedReader(new InputStreamReader(sourceStream, "UTF-8")).readLine().equals("invalid")) {
+                    throw new ConfigurationException("Unable to parse");
+                }
+                return new PropertiesConfigurationSource(new Properties());
+            }
+        };
+        ConfDirectorySnapshotManager manager = new ConfDirectorySnapshotManager(directory, ".properties", loader);
+        assertNotNull(manager.retrieveInitial());
+
+        write("20-site.properties", "invalid\n");
+        try {
+            manager.retrieveUpdated();
+            fail();
+        } catch (InvalidSnapshotException e) {
+            assertTrue(e.getCause() instanceof ConfigurationException);
+        }
+        assertEquals(2, parses.get());
+        assertNull(manager.retrieveUpdated());
+        assertEquals(2, parses.get());
+    }
+
+    private void write(String name, String content) throws Exception {
+        TestFiles.write(new File(directory, name), content);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * ConfigMapResourceMonitor Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfigMapResourceMonitorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ConfigMapResourceMonitor#hasChanged()}.
+     */
+    @Test
+    public void testLinkSwapDetected() throws Exception {
+        File directory = folder.getRoot();
+        TestFiles.publish(directory, "..gen1", "value1");
+        Files.createSymbolicLink(new File(directory, "timeout").toPath(), Paths.get("..data/timeout"));
+
+        ConfigMapResourceMonitor monitor = new ConfigMapResourceMonitor();
+        FileSystemResource resource = new FileSystemResource(new File(directory, "timeout"));
+        assertTrue(monitor.canMonitor(resource));
+        monitor.initialise(resource);
+        assertTrue(monitor.isGenerationBased());
+        assertFalse(monitor.hasChanged());
+
+        TestFiles.publish(directory, "..gen2", "value2");
+        assertTrue(monitor.hasChanged());
+        assertFalse(monitor.hasChanged());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ConfigMapResourceMonitor#initialise(org.springframework.core.io.Resource)}.
+     */
+    @Test
+    public void testPlainFileDelegated() throws Exception {
+        File file = folder.newFile("timeout");
+        ConfigMapResourceMonitor monitor = new ConfigMapResourceMonitor();
+        monitor.initialise(new FileSystemResource(file));
+        assertFalse(monitor.isGenerationBased());
+        assertFalse(monitor.hasChanged());
+        assertTrue(file.setLastModified(file.lastModified() + 10000));
+        assertTrue(monitor.hasChanged());
+    }
+}
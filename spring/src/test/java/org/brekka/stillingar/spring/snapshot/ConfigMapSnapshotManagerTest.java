@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSource;
+import org.brekka.stillingar.core.snapshot.InvalidSnapshotException;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ConfigMapSnapshotManager Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfigMapSnapshotManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot();
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ConfigMapSnapshotManager#retrieveUpdated()}.
+     */
+    @Test
+    public void testGenerationSwap() throws Exception {
+        TestFiles.publish(directory, "..gen1", "value1");
+        Files.createSymbolicLink(new File(directory, "timeout").toPath(), Paths.get("..data/timeout"));
+        
+        ConfigMapSnapshotManager manager = new ConfigMapSnapshotManager(new ConfigMapDirectory(directory, null), null);
+        Snapshot initial = manager.retrieveInitial();
+        assertEquals("value1", initial.getSource().retrieve("timeout", String.class));
+        assertNull(manager.retrieveUpdated());
+        
+        TestFiles.publish(directory, "..gen2", "value2");
+        Snapshot updated = manager.retrieveUpdated();
+        assertNotNull(updated);
+        assertEquals("value2", updated.getSource().retrieve("timeout", String.class));
+        assertNull(manager.retrieveUpdated());
+        
+        // A rejected generation is not loaded again
+        TestFiles.publish(directory, "..gen3", "value3");
+        manager.reject(manager.retrieveUpdated());
+        assertNull(manager.retrieveUpdated());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ConfigMapSnapshotManager#retrieveUpdated()}.
+     */
+    @Test
+    public void testUnparseableGenerationRejected() throws Exception {
+        TestFiles.publish(directory, "..gen1", "value1");
+        final AtomicInteger parses = new AtomicInteger();
+        ConfigurationSourceLoader loader = new ConfigurationSourceLoader() {
+            @Override
+            public ConfigurationSource parse(InputStream sourceStream, Charset encoding) throws IOException {
+                parses.incrementAndGet();
+                if (new BufferedReader(new InputStreamReader(sourceStream, "UTF-8")).readLine().equals("invalid")) {
+                    throw new ConfigurationException("Unable to parse");
+                }
+                return new PropertiesConfigurationSource(new Properties());
+            }
+        };
+        ConfigMapSnapshotManager manager = new ConfigMapSnapshotManager(new ConfigMapDirectory(directory, null), loader);
+        assertNotNull(manager.retrieveInitial());
+
+        TestFiles.publish(directory, "..gen2", "invalid");
+        try {
+            manager.retrieveUpdated();
+            fail();
+        } catch (InvalidSnapshotException e) {
+            assertTrue(e.getCause() instanceof ConfigurationException);
+        }
+        assertEquals(2, parses.get());
+        assertNull(manager.retrieveUpdated());
+        assertEquals(2, parses.get());
+    }
+}
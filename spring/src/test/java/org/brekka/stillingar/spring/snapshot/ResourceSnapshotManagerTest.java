@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.snapshot.SnapshotEventHandler;
+import org.brekka.stillingar.spring.resource.ResourceSelector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * ResourceSnapshotManager Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ResourceSnapshotManagerTest {
+
+    private File file;
+
+    private ResourceSelector selector;
+
+    private ConfigurationSourceLoader loader;
+
+    private SnapshotEventHandler snapshotEventHandler;
+
+    private ResourceSnapshotManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile(getClass().getSimpleName(), ".properties");
+        write("key=value\n");
+        FileSystemResource resource = new FileSystemResource(file);
+        selector = mock(ResourceSelector.class);
+        when(selector.getResource()).thenReturn(resource);
+        loader = mock(ConfigurationSourceLoader.class);
+        when(loader.parse(any(InputStream.class), any(Charset.class))).thenReturn(mock(ConfigurationSource.class));
+        snapshotEventHandler = mock(SnapshotEventHandler.class);
+        manager = new ResourceSnapshotManager(selector, loader, new PollingResourceMonitor());
+        manager.setSnapshotEventHandler(snapshotEventHandler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ResourceSnapshotManager#retrieveUpdated()}.
+     */
+    @Test
+    public void testRetrieveUpdatedSkipsUnchangedContent() throws Exception {
+        assertNotNull(manager.retrieveInitial());
+
+        // Touch only
+        file.setLastModified(file.lastModified() + 2000);
+        assertNull(manager.retrieveUpdated());
+        verify(snapshotEventHandler).unchangedSnapshot(any(URI.class));
+        verify(loader, times(1)).parse(any(InputStream.class), any(Charset.class));
+
+        // Actual change
+        write("key=changed\n");
+        file.setLastModified(file.lastModified() + 4000);
+        assertNotNull(manager.retrieveUpdated());
+        verify(loader, times(2)).parse(any(InputStream.class), any(Charset.class));
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ResourceSnapshotManager#reject(org.brekka.stillingar.core.snapshot.Snapshot)}.
+     */
+    @Test
+    public void testRejectedContentIsReloaded() throws Exception {
+        assertNotNull(manager.retrieveInitial());
+        write("key=changed\n");
+        file.setLastModified(file.lastModified() + 2000);
+        manager.reject(manager.retrieveUpdated());
+
+        // The rejected content is not current, so it must be loaded again
+        file.setLastModified(file.lastModified() + 4000);
+        assertNotNull(manager.retrieveUpdated());
+        verify(loader, times(3)).parse(any(InputStream.class), any(Charset.class));
+        verify(snapshotEventHandler, never()).unchangedSnapshot(any(URI.class));
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ResourceSnapshotManager#setSnapshotCache(SnapshotCache)}.
+     */
+    @Test
+    public void testCachedSnapshotUsedOnRestart() throws Exception {
+        File cacheFile = File.createTempFile(getClass().getSimpleName(), ".cache");
+        cacheFile.delete();
+        try {
+            ConfigurationSource source = mock(ConfigurationSource.class);
+            when(source.retrieve("key", String.class)).thenReturn("value");
+            when(loader.parse(any(InputStream.class), any(Charset.class))).thenReturn(source);
+            manager.setSnapshotCache(new SnapshotCache(cacheFile, "test"));
+            assertEquals("value", manager.retrieveInitial().getSource().retrieve("key", String.class));
+            manager.destroy();
+            assertTrue(cacheFile.isFile());
+
+            ResourceSnapshotManager restarted = new ResourceSnapshotManager(selector, loader, new PollingResourceMonitor());
+            restarted.setSnapshotCache(new SnapshotCache(cacheFile, "test"));
+            assertEquals("value", restarted.retrieveInitial().getSource().retrieve("key", String.class));
+            verify(loader, times(1)).parse(any(InputStream.class), any(Charset.class));
+
+            // Changing the key invalidates the cache
+            restarted = new ResourceSnapshotManager(selector, loader, new PollingResourceMonitor());
+            restarted.setSnapshotCache(new SnapshotCache(cacheFile, "changed"));
+            restarted.retrieveInitial();
+            verify(loader, times(2)).parse(any(InputStream.class), any(Charset.class));
+
+            // As does changing the content
+            write("key=changed\n");
+            restarted = new ResourceSnapshotManager(selector, loader, new PollingResourceMonitor());
+            restarted.setSnapshotCache(new SnapshotCache(cacheFile, "test"));
+            restarted.retrieveInitial();
+            verify(loader, times(3)).parse(any(InputStream.class), any(Charset.class));
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+    private void write(String content) throws Exception {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(content.getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.spring.resource.ResourceSelector;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * SharedSnapshotManager Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SharedSnapshotManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private File directory;
+
+    private ResourceSelector selector;
+
+    private ConfigurationSourceLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.newFile("config.properties");
+        TestFiles.write(file, "key=value\n");
+        // Created by the manager
+        directory = new File(folder.getRoot(), "shared");
+        selector = mock(ResourceSelector.class);
+        when(selector.getResource()).thenReturn(new FileSystemResource(file));
+        ConfigurationSource source = mock(ConfigurationSource.class);
+        when(source.retrieve("key", String.class)).thenReturn("value");
+        loader = mock(ConfigurationSourceLoader.class);
+        when(loader.parse(any(InputStream.class), any(Charset.class))).thenReturn(source);
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.SharedSnapshotManager#retrieveUpdated()}.
+     */
+    @Test
+    public void testSubscriberServesPublishedValues() throws Exception {
+        SharedSnapshotManager publisher = newManager();
+        SharedSnapshotManager subscriber = null;
+        try {
+            assertEquals("value", publisher.retrieveInitial().getSource().retrieve("key", String.class));
+            assertTrue(publisher.isPublisher());
+            // Publishes the values resolved above
+            assertNull(publisher.retrieveUpdated());
+            verify(loader, times(1)).parse(any(InputStream.class), any(Charset.class));
+
+            subscriber = newManager();
+            assertEquals("value", subscriber.retrieveInitial().getSource().retrieve("key", String.class));
+            assertFalse(subscriber.isPublisher());
+            assertNull(subscriber.retrieveUpdated());
+            verify(loader, times(1)).parse(any(InputStream.class), any(Charset.class));
+
+            // Takes over once the publisher stops
+            publisher.destroy();
+            publisher = null;
+            assertNotNull(subscriber.retrieveUpdated());
+            assertTrue(subscriber.isPublisher());
+        } finally {
+            if (publisher != null) {
+                publisher.destroy();
+            }
+            if (subscriber != null) {
+                subscriber.destroy();
+            }
+        }
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.ResourceSnapshotManager#loadSource(long)}.
+     */
+    @Test
+    public void testUnpublishedValueFromChangedResourceRejected() throws Exception {
+        SharedSnapshotManager publisher = newManager();
+        SharedSnapshotManager subscriber = null;
+        try {
+            publisher.retrieveInitial().getSource().retrieve("key", String.class);
+            assertNull(publisher.retrieveUpdated());
+
+            subscriber = newManager();
+            ConfigurationSource source = subscriber.retrieveInitial().getSource();
+            assertTrue(file.setLastModified(file.lastModified() + 10000));
+            try {
+                source.retrieve("other", String.class);
+                fail();
+            } catch (ValueConfigurationException e) {
+                assertEquals("other", e.getExpression());
+            }
+            // Only parsed by the publisher
+            verify(loader, times(1)).parse(any(InputStream.class), any(Charset.class));
+        } finally {
+            publisher.destroy();
+            if (subscriber != null) {
+                subscriber.destroy();
+            }
+        }
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.SharedSnapshotChannel#read()}.
+     */
+    @Test
+    public void testPublicationWithDisallowedClassRejected() throws Exception {
+        SharedSnapshotChannel channel = new SharedSnapshotChannel(directory);
+        try {
+            // A publication written by something other than a publisher, holding an arbitrary class
+            DataOutputStream dos = new DataOutputStream(new FileOutputStream(new File(directory, "snapshot")));
+            try {
+                dos.writeInt(0x53544C53);
+                dos.writeInt(1);
+                dos.writeLong(1);
+                dos.writeLong(0);
+                dos.writeUTF("");
+                ObjectOutputStream oos = new ObjectOutputStream(dos);
+                oos.writeObject(new HashMap<String, String>());
+                oos.flush();
+            } finally {
+                dos.close();
+            }
+            try {
+                channel.read();
+                fail();
+            } catch (InvalidClassException e) {
+                assertEquals(HashMap.class.getName(), e.classname);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private SharedSnapshotManager newManager() {
+        ResourceSnapshotManager delegate = new ResourceSnapshotManager(selector, loader, new PollingResourceMonitor());
+        return new SharedSnapshotManager(delegate, directory);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * SnapshotFiles Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotFilesTest {
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.SnapshotFiles#openObjectStream(java.io.InputStream, Collection)}.
+     */
+    @Test
+    public void testValueTypesAndEnumsAllowed() throws Exception {
+        List<Object> values = new ArrayList<Object>(Arrays.<Object>asList("a", 1, new Date(0), TimeUnit.SECONDS,
+                new byte[] { 1 }, new String[] { "b" }));
+        assertEquals(values.size(), ((List<?>) roundTrip(values, Collections.<String>emptySet())).size());
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.SnapshotFiles#openObjectStream(java.io.InputStream, Collection)}.
+     */
+    @Test
+    public void testOtherClassesRejected() throws Exception {
+        try {
+            roundTrip(new HashMap<String, String>(), Collections.<String>emptySet());
+            fail();
+        } catch (InvalidClassException e) {
+            // Expected
+        }
+        try {
+            roundTrip(new Value(), Collections.<String>emptySet());
+            fail();
+        } catch (InvalidClassException e) {
+            // Expected
+        }
+        roundTrip(new Value(), Collections.singleton(Value.class.getName()));
+        roundTrip(new Value(), Collections.singleton("org.brekka.stillingar.spring.*"));
+    }
+
+    private static Object roundTrip(Object value, Collection<String> allowed) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(value);
+        oos.close();
+        return SnapshotFiles.openObjectStream(new ByteArrayInputStream(baos.toByteArray()), allowed).readObject();
+    }
+
+    static final class Value implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes the files used by the snapshot manager and resource monitor tests, which keep them in a
+ * {@link org.junit.rules.TemporaryFolder}.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class TestFiles {
+
+    private TestFiles() {
+    }
+
+    /**
+     * Replace the content of the file.
+     */
+    static void write(File file, String content) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(content.getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Write a generation holding the file 'timeout' and swap the '..data' link to it, as the kubelet does.
+     */
+    static void publish(File directory, String generation, String timeout) throws IOException {
+        File generationDir = new File(directory, generation);
+        generationDir.mkdirs();
+        write(new File(generationDir, "timeout"), timeout);
+        Path tempLink = new File(directory, "..data_tmp").toPath();
+        Files.createSymbolicLink(tempLink, Paths.get(generation));
+        Files.move(tempLink, new File(directory, ConfigMapDirectory.DATA_LINK).toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -20,6 +20,8 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
@@ -77,4 +79,129 @@ public class WatchedResourceMonitorTest {
         dir.delete();
     }
 
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.WatchedResourceMonitor#addChangeListener(Runnable)}.
+     */
+    @Test
+    public void testChangePushedToListener() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), getClass().getSimpleName());
+        dir.mkdirs();
+        File file = new File(dir, "pushed.xml");
+        file.createNewFile();
+        
+        final CountDownLatch latch = new CountDownLatch(1);
+        watchedResourceMonitor.initialise(new FileSystemResource(file));
+        watchedResourceMonitor.addChangeListener(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write("Test\n".getBytes());
+        fos.close();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        // The listener is responsible for the refresh, so no waiting here
+        assertTrue(watchedResourceMonitor.hasChanged());
+        file.delete();
+        dir.delete();
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.WatchDispatcher#register(java.nio.file.Path, Runnable)}.
+     */
+    @Test
+    public void testStuckListenerDoesNotBlockOthers() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), getClass().getSimpleName());
+        dir.mkdirs();
+        File stuckFile = new File(dir, "stuck.xml");
+        File otherFile = new File(dir, "other.xml");
+        stuckFile.createNewFile();
+        otherFile.createNewFile();
+
+        final CountDownLatch stuckStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch otherCalled = new CountDownLatch(1);
+        WatchDispatcher dispatcher = WatchDispatcher.getInstance();
+        WatchDispatcher.Registration stuck = dispatcher.register(stuckFile.toPath(), new Runnable() {
+            @Override
+            public void run() {
+                stuckStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        WatchDispatcher.Registration other = dispatcher.register(otherFile.toPath(), new Runnable() {
+            @Override
+            public void run() {
+                otherCalled.countDown();
+            }
+        });
+        try {
+            write(stuckFile);
+            assertTrue(stuckStarted.await(10, TimeUnit.SECONDS));
+            write(otherFile);
+            assertTrue(otherCalled.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            stuck.cancel();
+            other.cancel();
+            stuckFile.delete();
+            otherFile.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Test method for {@link org.brekka.stillingar.spring.snapshot.WatchDispatcher#register(java.nio.file.Path, Runnable)}.
+     */
+    @Test
+    public void testDeletedDirectoryRegisteredAgain() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), getClass().getSimpleName() + "-deleted");
+        dir.mkdirs();
+        File file = new File(dir, "config.xml");
+        WatchDispatcher dispatcher = WatchDispatcher.getInstance();
+        Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        WatchDispatcher.Registration first = dispatcher.register(file.toPath(), noop);
+        assertTrue(dir.delete());
+        try {
+            // The deleted directory is only dropped once the dispatcher thread sees its key invalidated
+            boolean called = false;
+            for (int i = 0; i < 20 && !called; i++) {
+                dir.mkdirs();
+                final CountDownLatch latch = new CountDownLatch(1);
+                WatchDispatcher.Registration second = dispatcher.register(file.toPath(), new Runnable() {
+                    @Override
+                    public void run() {
+                        latch.countDown();
+                    }
+                });
+                try {
+                    write(file);
+                    called = latch.await(500, TimeUnit.MILLISECONDS);
+                } finally {
+                    second.cancel();
+                }
+            }
+            assertTrue(called);
+        } finally {
+            first.cancel();
+            file.delete();
+            dir.delete();
+        }
+    }
+
+    private static void write(File file) throws Exception {
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write("Test\n".getBytes());
+        fos.close();
+    }
 }
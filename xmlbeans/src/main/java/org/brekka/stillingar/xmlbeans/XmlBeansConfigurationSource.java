@@ -21,31 +21,79 @@ import static java.lang.String.format;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.xmlbeans.XmlCursor;
-import org.apache.xmlbeans.XmlCursor.TokenType;
 import org.apache.xmlbeans.XmlObject;
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.ScopeableConfigurationSource;
 import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.diff.DiffableConfigurationSource;
+import org.brekka.stillingar.core.diff.SnapshotDiff;
+import org.brekka.stillingar.core.dom.DOMDiff;
 import org.brekka.stillingar.core.dom.DefaultNamespaceContext;
+import org.brekka.stillingar.core.dom.NodeHashes;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 
 /**
- * Configuration snapshot based on Apache XmlBeans.
+ * Configuration snapshot based on Apache XmlBeans. The bean may be the whole document or, when obtained via
+ * {@link #scope(String)}, an element within it in which case type lookups are restricted to that element's content.
+ * Relative expressions are evaluated from the scoped element while absolute ones, including those starting with
+ * '//', are evaluated from the document as they are by the DOM and JAXB sources.
+ * Type based lookups are served from an index of the elements that is built on first use.
  * 
  * @author Andrew Taylor
  */
-class XmlBeansConfigurationSource implements ConfigurationSource {
+class XmlBeansConfigurationSource implements ScopeableConfigurationSource, DiffableConfigurationSource {
 
     private final XmlObject bean;
 
+    /**
+     * The bean of the whole document, against which absolute expressions are evaluated. The same as {@link #bean}
+     * unless scoped.
+     */
+    private final XmlObject document;
+
     private final ConversionManager conversionManager;
 
-    private final DefaultNamespaceContext xpathNamespaces;
+    /**
+     * Compiled path expressions, shared with the other snapshots of the same loader.
+     */
+    private final XmlBeansPathCache pathCache;
+    
+    /**
+     * Index of elements by type, built on the first type based lookup.
+     */
+    private volatile XmlBeansTypeIndex typeIndex;
+
+    /**
+     * Subtree hashes of the document, computed on the first diff.
+     */
+    private volatile NodeHashes nodeHashes;
 
     public XmlBeansConfigurationSource(XmlObject bean, DefaultNamespaceContext xpathNamespaces,
             ConversionManager conversionManager) {
+        this(bean, new XmlBeansPathCache(xpathNamespaces), conversionManager);
+    }
+    
+    XmlBeansConfigurationSource(XmlObject bean, XmlBeansPathCache pathCache, ConversionManager conversionManager) {
+        this(bean, bean, pathCache, conversionManager);
+    }
+
+    /**
+     * @param bean
+     *            the element that relative expressions are evaluated from
+     * @param document
+     *            the bean of the whole document
+     * @param pathCache
+     *            compiled path expressions
+     * @param conversionManager
+     *            the conversion manager
+     */
+    private XmlBeansConfigurationSource(XmlObject bean, XmlObject document, XmlBeansPathCache pathCache,
+            ConversionManager conversionManager) {
         this.bean = bean;
-        this.xpathNamespaces = xpathNamespaces;
+        this.document = document;
+        this.pathCache = pathCache;
         this.conversionManager = conversionManager;
     }
 
@@ -56,22 +104,7 @@ class XmlBeansConfigurationSource implements ConfigurationSource {
      */
     @Override
     public boolean isAvailable(Class<?> type) {
-        XmlCursor cursor = bean.newCursor();
-        try {
-            TokenType token = cursor.toNextToken();
-            while (token != TokenType.ENDDOC) {
-                if (token == TokenType.START) {
-                    XmlObject object = cursor.getObject();
-                    if (type.isAssignableFrom(object.getClass())) {
-                        return true;
-                    }
-                }
-                token = cursor.toNextToken();
-            }
-        } finally {
-            cursor.dispose();
-        }
-        return false;
+        return !typeIndex().find(type).isEmpty();
     }
 
     /*
@@ -92,9 +125,12 @@ class XmlBeansConfigurationSource implements ConfigurationSource {
     @Override
     public <T> T retrieve(Class<T> valueType) {
         T result = null;
-        XmlObject[] found = find(valueType, true);
-        if (found.length == 1) {
-            result = convert(valueType, found[0], null);
+        List<XmlObject> found = typeIndex().find(valueType);
+        if (found.size() == 1) {
+            result = convert(valueType, found.get(0), null);
+        } else if (found.size() > 1) {
+            throw new ValueConfigurationException(
+                    "multiple values found, only one expected", valueType, null);
         }
         return result;
     }
@@ -129,8 +165,8 @@ class XmlBeansConfigurationSource implements ConfigurationSource {
      */
     @Override
     public <T> List<T> retrieveList(Class<T> valueType) {
-        List<T> results = new ArrayList<T>();
-        XmlObject[] found = find(valueType, false);
+        List<XmlObject> found = typeIndex().find(valueType);
+        List<T> results = new ArrayList<T>(found.size());
         for (XmlObject xmlObject : found) {
             T value = convert(valueType, xmlObject, null);
             results.add(value);
@@ -154,40 +190,64 @@ class XmlBeansConfigurationSource implements ConfigurationSource {
         return results;
     }
 
-    private XmlObject[] find(Class<?> type, boolean singleExpected) {
-        List<XmlObject> results = new ArrayList<XmlObject>();
-        XmlCursor cursor = bean.newCursor();
-        TokenType token = cursor.toNextToken();
-        while (token != TokenType.ENDDOC) {
-            if (token == TokenType.START) {
-                XmlObject object = cursor.getObject();
-                if (type.isAssignableFrom(object.getClass())) {
-                    results.add(object);
-                    if (results.size() > 1 && singleExpected) {
-                        throw new ValueConfigurationException(
-                                "multiple values found, only one expected",
-                                type.getClass(), null);
-                    }
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.brekka.stillingar.core.ScopeableConfigurationSource#scope(java.lang.String)
+     */
+    @Override
+    public ConfigurationSource scope(String expression) {
+        XmlObject[] found = evaluate(expression);
+        if (found.length == 0) {
+            return null;
+        }
+        return new XmlBeansConfigurationSource(found[0], document, pathCache, conversionManager);
+    }
+
+    /**
+     * Only sources of whole documents are compared, structurally via {@link DOMDiff} on the DOM view of the beans.
+     *
+     * @see org.brekka.stillingar.core.diff.DiffableConfigurationSource#diff(org.brekka.stillingar.api.ConfigurationSource,
+     *      org.brekka.stillingar.core.diff.SnapshotDiff.Builder)
+     */
+    @Override
+    public boolean diff(ConfigurationSource previous, SnapshotDiff.Builder diff) {
+        if (!(previous instanceof XmlBeansConfigurationSource)) {
+            return false;
+        }
+        XmlBeansConfigurationSource other = (XmlBeansConfigurationSource) previous;
+        Node previousNode = other.bean.getDomNode();
+        Node latestNode = bean.getDomNode();
+        if (!(previousNode instanceof Document)
+                || !(latestNode instanceof Document)) {
+            return false;
+        }
+        DOMDiff.diff(previousNode, other.nodeHashes(), latestNode, nodeHashes(), diff);
+        return true;
+    }
+
+    /**
+     * Retrieve the type index for this snapshot, building it if necessary.
+     * 
+     * @return the type index
+     */
+    private XmlBeansTypeIndex typeIndex() {
+        XmlBeansTypeIndex index = this.typeIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = this.typeIndex;
+                if (index == null) {
+                    index = new XmlBeansTypeIndex(bean);
+                    this.typeIndex = index;
                 }
             }
-            token = cursor.toNextToken();
         }
-        cursor.dispose();
-        return results.toArray(new XmlObject[results.size()]);
+        return index;
     }
 
     private XmlObject[] evaluate(String expression) {
-        StringBuilder sb = new StringBuilder();
-        for (String prefix : xpathNamespaces.getPrefixes()) {
-            sb.append("declare namespace ");
-            sb.append(prefix);
-            sb.append("='");
-            sb.append(xpathNamespaces.getNamespaceURI(prefix));
-            sb.append("';");
-        }
-        sb.append('.');
-        sb.append(expression);
-        return bean.selectPath(sb.toString());
+        XmlObject context = (expression.startsWith("/") ? document : bean);
+        return context.selectPath(pathCache.compile(expression));
     }
 
     @SuppressWarnings("unchecked")
@@ -212,4 +272,18 @@ class XmlBeansConfigurationSource implements ConfigurationSource {
         }
         return value;
     }
+
+    private NodeHashes nodeHashes() {
+        NodeHashes hashes = this.nodeHashes;
+        if (hashes == null) {
+            synchronized (this) {
+                hashes = this.nodeHashes;
+                if (hashes == null) {
+                    hashes = new NodeHashes();
+                    this.nodeHashes = hashes;
+                }
+            }
+        }
+        return hashes;
+    }
 }
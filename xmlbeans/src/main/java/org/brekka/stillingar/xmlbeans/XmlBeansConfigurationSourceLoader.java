@@ -65,7 +65,10 @@ public class XmlBeansConfigurationSourceLoader implements ConfigurationSourceLoa
 
     private final ConversionManager conversionManager;
 
-    private final DefaultNamespaceContext xpathNamespaces;
+    /**
+     * Compiled path expressions, shared by all snapshots produced by this loader.
+     */
+    private final XmlBeansPathCache pathCache;
 
     private boolean validate = true;
     
@@ -95,7 +98,7 @@ public class XmlBeansConfigurationSourceLoader implements ConfigurationSourceLoa
         if (xpathNamespaces == null) {
             throw new IllegalArgumentException("null passed for xpathNamespaces");
         }
-        this.xpathNamespaces = xpathNamespaces;
+        this.pathCache = new XmlBeansPathCache(xpathNamespaces);
         
         XmlOptions options = new XmlOptions();
         options.setLoadStripComments();
@@ -118,7 +121,7 @@ public class XmlBeansConfigurationSourceLoader implements ConfigurationSourceLoa
             if (this.validate) {
                 validate(xmlBean);
             }
-            return new XmlBeansConfigurationSource(xmlBean, this.xpathNamespaces, conversionManager);
+            return new XmlBeansConfigurationSource(xmlBean, this.pathCache, conversionManager);
         } catch (XmlException e) {
             throw new ConfigurationException(String.format(
                     "This does not appear to be an XML document"), e);
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.xmlbeans;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.xmlbeans.XmlBeans;
+import org.brekka.stillingar.core.dom.DefaultNamespaceContext;
+
+/**
+ * Caches the path expressions used to resolve values, along with the 'declare namespace' prelude that is prepended to
+ * each of them. Should a new namespace be registered with the {@link DefaultNamespaceContext}, the prelude is rebuilt
+ * and the previously built paths discarded.
+ *
+ * XmlBeans keeps the paths it has compiled in a weakly keyed map, so they are only retained while the path string
+ * passed to <code>selectPath</code> is strongly referenced. By handing out the same string instance for a given
+ * expression, this cache ensures XmlBeans will not need to recompile it. {@link XmlBeans#compilePath(String)} is not
+ * used as it discards the namespace declarations when the path is handled by a delegate engine. A single instance is
+ * shared by all of the snapshots produced by a loader.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class XmlBeansPathCache {
+
+    /**
+     * The namespaces to declare for each expression.
+     */
+    private final DefaultNamespaceContext xpathNamespaces;
+
+    /**
+     * The current prelude and paths.
+     */
+    private volatile Paths paths;
+
+    /**
+     * @param xpathNamespaces
+     *            the namespaces to declare for each expression.
+     */
+    XmlBeansPathCache(DefaultNamespaceContext xpathNamespaces) {
+        this.xpathNamespaces = xpathNamespaces;
+        this.paths = new Paths(xpathNamespaces);
+    }
+
+    /**
+     * Retrieve the full path for the specified expression, building it if this is the first time it has been seen.
+     * The path is evaluated relative to the object it is selected against, so absolute expressions must be selected
+     * against the document.
+     *
+     * @param expression
+     *            the expression to compile
+     * @return the path to pass to <code>selectPath</code>.
+     */
+    String compile(String expression) {
+        Paths current = this.paths;
+        if (current.version != xpathNamespaces.getVersion()) {
+            current = new Paths(xpathNamespaces);
+            this.paths = current;
+        }
+        String path = current.compiled.get(expression);
+        if (path == null) {
+            StringBuilder sb = new StringBuilder(current.prelude);
+            if (expression.startsWith("/")) {
+                sb.append('.');
+            } else {
+                // Relative to the current node
+                sb.append("./");
+            }
+            sb.append(expression);
+            path = sb.toString();
+            String existing = current.compiled.putIfAbsent(expression, path);
+            if (existing != null) {
+                path = existing;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * The prelude and paths built with it for a given version of the namespace context.
+     */
+    private static final class Paths {
+        /**
+         * The version of the namespace context used to build the prelude.
+         */
+        private final int version;
+
+        /**
+         * The 'declare namespace' prelude to prepend to each expression.
+         */
+        private final String prelude;
+
+        /**
+         * The full path keyed on the original expression.
+         */
+        private final ConcurrentMap<String, String> compiled = new ConcurrentHashMap<String, String>();
+
+        Paths(DefaultNamespaceContext xpathNamespaces) {
+            this.version = xpathNamespaces.getVersion();
+            StringBuilder sb = new StringBuilder();
+            for (String prefix : xpathNamespaces.getPrefixes()) {
+                sb.append("declare namespace ");
+                sb.append(prefix);
+                sb.append("='");
+                sb.append(xpathNamespaces.getNamespaceURI(prefix));
+                sb.append("';");
+            }
+            this.prelude = sb.toString();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.xmlbeans;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlCursor.TokenType;
+import org.apache.xmlbeans.XmlObject;
+
+/**
+ * Index of the elements of an XmlBeans document keyed on their Java type. Each element is registered against its own
+ * class along with all of its superclasses and interfaces (which includes the interface generated for its
+ * <code>SchemaType</code> and those of any base types). Built with a single pass over the document, after which type
+ * based lookups are a map probe.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class XmlBeansTypeIndex {
+
+    /**
+     * Elements in document order, keyed on each of the types they are assignable to.
+     */
+    private final Map<Class<?>, List<XmlObject>> index;
+
+    /**
+     * Build the index of all elements contained within <code>bean</code>. When the bean is an element rather than a
+     * document, the element itself is excluded and only its content is indexed.
+     *
+     * @param bean
+     *            the document or element to index.
+     */
+    XmlBeansTypeIndex(XmlObject bean) {
+        Map<Class<?>, List<XmlObject>> index = new HashMap<Class<?>, List<XmlObject>>();
+        Map<Class<?>, Set<Class<?>>> hierarchies = new HashMap<Class<?>, Set<Class<?>>>();
+        XmlCursor cursor = bean.newCursor();
+        try {
+            int depth = 0;
+            TokenType token = cursor.toNextToken();
+            while (token != TokenType.ENDDOC) {
+                if (token == TokenType.START) {
+                    XmlObject object = cursor.getObject();
+                    Class<?> objectClass = object.getClass();
+                    Set<Class<?>> types = hierarchies.get(objectClass);
+                    if (types == null) {
+                        types = new LinkedHashSet<Class<?>>();
+                        collectTypes(objectClass, types);
+                        hierarchies.put(objectClass, types);
+                    }
+                    for (Class<?> type : types) {
+                        List<XmlObject> list = index.get(type);
+                        if (list == null) {
+                            list = new ArrayList<XmlObject>(1);
+                            index.put(type, list);
+                        }
+                        list.add(object);
+                    }
+                    depth++;
+                } else if (token == TokenType.END && --depth < 0) {
+                    // Reached the end of the scoped element
+                    break;
+                }
+                token = cursor.toNextToken();
+            }
+        } finally {
+            cursor.dispose();
+        }
+        this.index = index;
+    }
+
+    /**
+     * Retrieve the elements that are instances of the specified type.
+     *
+     * @param type
+     *            the type to look for
+     * @return the elements in document order, or an empty list if there are none.
+     */
+    List<XmlObject> find(Class<?> type) {
+        List<XmlObject> list = index.get(type);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list;
+    }
+
+    /**
+     * Collect the class, its superclasses and all interfaces they implement.
+     *
+     * @param type
+     *            the type to start from
+     * @param types
+     *            the set to add the types to
+     */
+    private static void collectTypes(Class<?> type, Set<Class<?>> types) {
+        if (type == null
+                || !types.add(type)) {
+            return;
+        }
+        collectTypes(type.getSuperclass(), types);
+        for (Class<?> iface : type.getInterfaces()) {
+            collectTypes(iface, types);
+        }
+    }
+}
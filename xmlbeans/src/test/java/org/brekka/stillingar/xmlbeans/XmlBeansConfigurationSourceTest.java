@@ -19,6 +19,7 @@ package org.brekka.stillingar.xmlbeans;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
@@ -35,7 +36,9 @@ import java.util.concurrent.TimeUnit;
 
 import net.iharder.Base64;
 
+import org.apache.xmlbeans.XmlBoolean;
 import org.apache.xmlbeans.XmlOptions;
+import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ValueConfigurationException;
 import org.brekka.stillingar.core.conversion.ConversionManager;
 import org.brekka.stillingar.core.dom.DefaultNamespaceContext;
@@ -43,6 +46,7 @@ import org.brekka.xml.stillingar.test.v1.ConfigurationDocument;
 import org.brekka.xml.stillingar.test.v1.ConfigurationDocument.Configuration.CompanyX;
 import org.brekka.xml.stillingar.test.v1.ConfigurationDocument.Configuration.CompanyY;
 import org.brekka.xml.stillingar.test.v1.ConfigurationDocument.Configuration.FeatureFlag;
+import org.brekka.xml.stillingar.test.v1.WebServiceType;
 import org.joda.time.Period;
 import org.junit.Before;
 import org.junit.Test;
@@ -146,6 +150,17 @@ public class XmlBeansConfigurationSourceTest {
         assertTrue(list.size() == 2);
     }
 
+    @Test(expected=ValueConfigurationException.class)
+    public void testRetrieveClassMultiple() {
+        configurationSource.retrieve(FeatureFlag.class);
+    }
+    
+    @Test
+    public void testRetrieveListSupertype() {
+        List<XmlBoolean> list = configurationSource.retrieveList(XmlBoolean.class);
+        assertEquals(3, list.size());
+    }
+
     /**
      * Test method for {@link org.brekka.stillingar.xmlbeans.XmlBeansConfigurationSource#retrieveList(java.lang.String, java.lang.Class)}.
      */
@@ -156,6 +171,49 @@ public class XmlBeansConfigurationSourceTest {
         assertEquals(Arrays.asList("KeywordA", "KeywordB", "KeywordC"), list);
     }
     
+    @Test
+    public void testScopeRelative() {
+        ConfigurationSource scoped = configurationSource.scope("//c:Services/c:Rules");
+        assertNotNull(scoped);
+        assertEquals(Integer.valueOf(42), scoped.retrieve("c:Transaction/c:MaxQuantity", Integer.class));
+        assertEquals(Arrays.asList("KeywordA", "KeywordB", "KeywordC"), 
+                scoped.retrieveList("c:Fraud/c:Keyword", String.class));
+        assertFalse(scoped.isAvailable("c:MOTD"));
+    }
+    
+    @Test
+    public void testScopeByType() {
+        ConfigurationSource scoped = configurationSource.scope("//c:Services");
+        assertFalse(scoped.isAvailable(CompanyY.class));
+        assertTrue(configurationSource.scope("//c:CompanyY").isAvailable(WebServiceType.class));
+    }
+    
+    @Test
+    public void testScopeAbsolute() {
+        ConfigurationSource scoped = configurationSource.scope("//c:Services/c:Rules");
+        assertTrue(scoped.isAvailable("//c:MOTD"));
+        assertTrue(scoped.isAvailable("/c:Configuration/c:MOTD"));
+        assertFalse(scoped.isAvailable(".//c:MOTD"));
+        assertEquals(Integer.valueOf(42), scoped.retrieve(".//c:MaxQuantity", Integer.class));
+    }
+    
+    @Test
+    public void testScopeMissing() {
+        assertNull(configurationSource.scope("//c:CompanyX"));
+    }
+    
+    @Test
+    public void testNamespaceRegisteredLater() throws Exception {
+        DefaultNamespaceContext namespaceContext = new DefaultNamespaceContext();
+        XmlBeansConfigurationSource source = new XmlBeansConfigurationSource(
+                ConfigurationDocument.Factory.parse(getClass().getResourceAsStream("TestConfiguration.xml")), 
+                namespaceContext, new ConversionManager(XmlBeansConfigurationSourceLoader.prepareConverters()));
+        namespaceContext.registerNamespace("c", "http://brekka.org/xml/stillingar/test/v1");
+        assertEquals(Integer.valueOf(42), source.retrieve("//c:MaxQuantity", Integer.class));
+        // Second call will use the cached path
+        assertEquals(Integer.valueOf(42), source.retrieve("//c:MaxQuantity", Integer.class));
+    }
+    
     @Test
     public void testRetrieveShort() {
         assertEquals(Short.valueOf((short) 169), configurationSource.retrieve("//c:Scale", Short.class));